@@ -20,6 +20,7 @@ package edu.cmu.tetrad.cli;
 
 import edu.cmu.tetrad.cli.search.FgsCli;
 import edu.cmu.tetrad.cli.search.FgsDiscrete;
+import edu.cmu.tetrad.cli.server.CausalCmdServer;
 import edu.cmu.tetrad.cli.util.Args;
 import java.io.IOException;
 import java.util.jar.Attributes;
@@ -48,6 +49,7 @@ public class TetradCliApp {
         requiredOption.setRequired(true);
         MAIN_OPTIONS.addOption(requiredOption);
 
+        MAIN_OPTIONS.addOption(null, "server", false, "Keep running, reading JSON search requests from stdin.");
         MAIN_OPTIONS.addOption(null, "version", false, "Version.");
     }
 
@@ -64,6 +66,8 @@ public class TetradCliApp {
 
         if (Args.hasOption(args, "version") || Args.hasOption(args, "v")) {
             showVersion();
+        } else if (Args.hasLongOption(args, "server")) {
+            CausalCmdServer.main(args);
         } else {
             algorithm = Args.getOptionValue(args, "algorithm");
             if (algorithm == null) {
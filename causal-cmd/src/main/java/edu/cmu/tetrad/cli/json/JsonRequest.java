@@ -0,0 +1,34 @@
+package edu.cmu.tetrad.cli.json;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A request to the causal-cmd server, one JSON object per line.
+ *
+ * // {"id":"1","command":"load","dataset":"d1","file":"data.txt","delimiter":"tab","type":"continuous"}
+ * // {"id":"2","command":"search","dataset":"d1","algorithm":"fgs","parameters":{"penalty-discount":"2.0"}}
+ * // {"id":"3","command":"cancel","request":"2"}
+ */
+public class JsonRequest {
+    public String id;
+    public String command;
+
+    // load, unload, search
+    public String dataset;
+
+    // load
+    public String file;
+    public String delimiter;
+    public String type;
+    public String excludeVariables;
+    public boolean skipValidation;
+
+    // search
+    public String algorithm;
+    public Map<String, String> parameters = new HashMap<>();
+    public String knowledge;
+
+    // cancel
+    public String request;
+}
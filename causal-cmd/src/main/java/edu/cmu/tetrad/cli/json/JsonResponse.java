@@ -0,0 +1,24 @@
+package edu.cmu.tetrad.cli.json;
+
+/**
+ * A response from the causal-cmd server, one JSON object per line. The id is that of the request answered; status is
+ * one of ok, error or cancelled.
+ *
+ * // {"id":"2","status":"ok","graph":{"name":"2","nodes":[...],"edgeSets":[...]},"elapsed":1520}
+ */
+public class JsonResponse {
+    public String id;
+    public String status;
+    public String message;
+    public JsonGraph graph;
+    public Long elapsed;
+
+    public JsonResponse() {
+    }
+
+    public JsonResponse(String id, String status, String message) {
+        this.id = id;
+        this.status = status;
+        this.message = message;
+    }
+}
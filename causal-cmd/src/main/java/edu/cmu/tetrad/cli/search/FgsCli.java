@@ -32,9 +32,11 @@ import edu.cmu.tetrad.io.TabularContinuousDataReader;
 import edu.cmu.tetrad.search.Fgs;
 import edu.cmu.tetrad.search.SemBicScore;
 import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -192,13 +194,13 @@ public class FgsCli {
             return;
         }
 
-        try (PrintStream graphWriter = new PrintStream(new BufferedOutputStream(Files.newOutputStream(outputFile, StandardOpenOption.CREATE)))) {
+        try (BufferedWriter graphWriter = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
             String fileName = outputFile.getFileName().toString();
 
             String msg = String.format("Writing out GraphML file '%s'.", fileName);
             System.out.printf("%s: %s%n", DateTime.printNow(), msg);
             LOGGER.info(msg);
-            XmlPrint.printPretty(GraphmlSerializer.serialize(graph, outputPrefix), graphWriter);
+            GraphmlStreamWriter.write(graph, outputPrefix, graphWriter);
             msg = String.format("Finished writing out GraphML file '%s'.", fileName);
             System.out.printf("%s: %s%n", DateTime.printNow(), msg);
             LOGGER.info(msg);
@@ -214,14 +216,14 @@ public class FgsCli {
             return;
         }
 
-        try (PrintStream graphWriter = new PrintStream(new BufferedOutputStream(Files.newOutputStream(outputFile, StandardOpenOption.CREATE)))) {
+        try (BufferedWriter graphWriter = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
             String fileName = outputFile.getFileName().toString();
 
             String msg = String.format("Writing out Json file '%s'.", fileName);
             System.out.printf("%s: %s%n", DateTime.printNow(), msg);
             LOGGER.info(msg);
 
-            JsonSerializer.writeToStream(JsonSerializer.serialize(graph, outputPrefix), graphWriter);
+            JsonStreamWriter.write(graph, outputPrefix, graphWriter);
 
             msg = String.format("Finished writing out Json file '%s'.", fileName);
             System.out.printf("%s: %s%n", DateTime.printNow(), msg);
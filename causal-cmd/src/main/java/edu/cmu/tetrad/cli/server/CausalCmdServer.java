@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.cli.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import edu.cmu.tetrad.cli.data.IKnowledgeFactory;
+import edu.cmu.tetrad.cli.json.JsonRequest;
+import edu.cmu.tetrad.cli.json.JsonResponse;
+import edu.cmu.tetrad.cli.search.FgsDiscrete;
+import edu.cmu.tetrad.cli.util.Args;
+import edu.cmu.tetrad.cli.util.FileIO;
+import edu.cmu.tetrad.cli.util.JsonSerializer;
+import edu.cmu.tetrad.cli.validation.DataValidation;
+import edu.cmu.tetrad.cli.validation.LimitDiscreteCategory;
+import edu.cmu.tetrad.cli.validation.NonZeroVariance;
+import edu.cmu.tetrad.cli.validation.TabularContinuousData;
+import edu.cmu.tetrad.cli.validation.TabularDiscreteData;
+import edu.cmu.tetrad.cli.validation.UniqueVariableNames;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.io.DataReader;
+import edu.cmu.tetrad.io.TabularContinuousDataReader;
+import edu.cmu.tetrad.io.VerticalTabularDiscreteDataReader;
+import edu.cmu.tetrad.search.Fgs;
+import edu.cmu.tetrad.search.Score;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-running causal-cmd mode. Requests are read from stdin and responses written to stdout, one JSON object per
+ * line (see JsonRequest and JsonResponse). Datasets are read in and validated once by a load request and stay
+ * resident, along with their covariance matrices, count tables and scores, until unloaded; any number of search
+ * requests may then be run against them, concurrently, and each may be cancelled by id.
+ *
+ * Commands: load, unload, search, cancel and shutdown. Diagnostic output goes to stderr.
+ */
+public class CausalCmdServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CausalCmdServer.class);
+
+    private static final Options MAIN_OPTIONS = new Options();
+
+    static {
+        MAIN_OPTIONS.addOption(null, "server", false, "Run as a server, reading JSON requests from stdin.");
+        MAIN_OPTIONS.addOption(null, "concurrent-requests", true, "Number of requests run at the same time. Default is 2.");
+        MAIN_OPTIONS.addOption(null, "thread", true, "Number of threads per search.");
+        MAIN_OPTIONS.addOption(null, "help", false, "Show help.");
+    }
+
+    private final Map<String, ResidentData> datasets = new ConcurrentHashMap<>();
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    private final PrintStream out;
+
+    private final int numOfThreads;
+
+    private final Gson gson = new Gson();
+
+    public CausalCmdServer(PrintStream out, int concurrentRequests, int numOfThreads) {
+        this(out, Executors.newFixedThreadPool(concurrentRequests), numOfThreads);
+    }
+
+    /**
+     * Runs requests on the given executor, which the server shuts down when it is done.
+     */
+    CausalCmdServer(PrintStream out, ExecutorService executor, int numOfThreads) {
+        this.out = out;
+        this.executor = executor;
+        this.numOfThreads = numOfThreads;
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        if (Args.hasLongOption(args, "help")) {
+            Args.showHelp("server", MAIN_OPTIONS);
+            return;
+        }
+
+        int concurrentRequests = 2;
+        int numOfThreads = Runtime.getRuntime().availableProcessors();
+        try {
+            CommandLineParser cmdParser = new DefaultParser();
+            CommandLine cmd = cmdParser.parse(MAIN_OPTIONS, args);
+            concurrentRequests = Args.getIntegerMin(cmd.getOptionValue("concurrent-requests", "2"), 1);
+            numOfThreads = Args.getIntegerMin(cmd.getOptionValue("thread", Integer.toString(numOfThreads)), 1);
+        } catch (ParseException exception) {
+            System.err.println(exception.getLocalizedMessage());
+            Args.showHelp("server", MAIN_OPTIONS);
+            System.exit(-127);
+        }
+
+        CausalCmdServer server = new CausalCmdServer(System.out, concurrentRequests, numOfThreads);
+        try {
+            server.serve(new BufferedReader(new InputStreamReader(System.in)));
+        } catch (IOException exception) {
+            LOGGER.error("Server failed.", exception);
+            System.exit(-128);
+        }
+    }
+
+    /**
+     * Handles requests until the input ends or a shutdown request is read, then waits for requests still running.
+     */
+    public void serve(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            JsonRequest request;
+            try {
+                request = gson.fromJson(line, JsonRequest.class);
+            } catch (JsonSyntaxException exception) {
+                respond(new JsonResponse(null, "error", "Malformed request: " + exception.getMessage()));
+                continue;
+            }
+
+            if ("shutdown".equals(request.command)) {
+                break;
+            }
+
+            handle(request);
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(JsonRequest request) {
+        if (request.id == null || request.command == null) {
+            respond(new JsonResponse(request.id, "error", "Requests need an id and a command."));
+            return;
+        }
+
+        switch (request.command) {
+            case "cancel":
+                cancel(request);
+                break;
+            case "load":
+            case "unload":
+            case "search":
+                submit(request);
+                break;
+            default:
+                respond(new JsonResponse(request.id, "error", "Unknown command: " + request.command));
+        }
+    }
+
+    private void submit(JsonRequest request) {
+        Job job = new Job(request);
+        if (jobs.putIfAbsent(request.id, job) != null) {
+            respond(new JsonResponse(request.id, "error", "A request with this id is already running."));
+            return;
+        }
+
+        job.future = executor.submit(job);
+    }
+
+    private void cancel(JsonRequest request) {
+        Job job = (request.request == null) ? null : jobs.get(request.request);
+        if (job == null) {
+            respond(new JsonResponse(request.id, "error", "No running request with id " + request.request + "."));
+            return;
+        }
+
+        synchronized (job) {
+            if (!job.started && job.future.cancel(false)) {
+                jobs.remove(job.request.id);
+                respond(new JsonResponse(job.request.id, "cancelled", null));
+            } else {
+                // The job answers for itself once it notices the interrupt.
+                job.future.cancel(true);
+            }
+        }
+
+        respond(new JsonResponse(request.id, "ok", null));
+    }
+
+    private class Job implements Runnable {
+
+        private final JsonRequest request;
+        private boolean started;
+        private Future<?> future;
+
+        Job(JsonRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                started = true;
+            }
+
+            long start = System.currentTimeMillis();
+            JsonResponse response;
+            try {
+                response = execute(request);
+            } catch (Exception exception) {
+                LOGGER.error(String.format("Request %s failed.", request.id), exception);
+                response = new JsonResponse(request.id, "error", exception.getMessage());
+            }
+
+            if (Thread.interrupted()) {
+                response = new JsonResponse(request.id, "cancelled", null);
+            }
+
+            response.elapsed = System.currentTimeMillis() - start;
+            jobs.remove(request.id);
+            respond(response);
+        }
+    }
+
+    private JsonResponse execute(JsonRequest request) throws IOException {
+        switch (request.command) {
+            case "load":
+                return load(request);
+            case "unload":
+                if (request.dataset == null || datasets.remove(request.dataset) == null) {
+                    return new JsonResponse(request.id, "error", "No dataset named " + request.dataset + ".");
+                }
+                return new JsonResponse(request.id, "ok", null);
+            default:
+                return search(request);
+        }
+    }
+
+    private JsonResponse load(JsonRequest request) throws IOException {
+        if (request.dataset == null || request.file == null) {
+            return new JsonResponse(request.id, "error", "A load request needs a dataset name and a file.");
+        }
+
+        Path dataFile = Args.getPathFile(request.file, true);
+        char delimiter = Args.getDelimiterForName((request.delimiter != null)
+                ? request.delimiter
+                : dataFile.getFileName().toString().endsWith(".csv") ? "comma" : "tab");
+        boolean discrete = "discrete".equals(request.type);
+
+        Set<String> excludedVariables = Collections.EMPTY_SET;
+        if (request.excludeVariables != null) {
+            excludedVariables = new HashSet<>(FileIO.extractUniqueLine(Args.getPathFile(request.excludeVariables, true)));
+        }
+
+        DataValidation fileValidation = discrete
+                ? new TabularDiscreteData(excludedVariables, dataFile, delimiter)
+                : new TabularContinuousData(excludedVariables, dataFile, delimiter);
+        if (!request.skipValidation && !fileValidation.validate(System.err, false)) {
+            return new JsonResponse(request.id, "error", "Data file is not valid; see stderr.");
+        }
+
+        DataReader dataReader = discrete
+                ? new VerticalTabularDiscreteDataReader(dataFile, delimiter)
+                : new TabularContinuousDataReader(dataFile, delimiter);
+        DataSet dataSet = dataReader.readInData(excludedVariables);
+
+        if (!request.skipValidation) {
+            List<DataValidation> validations = new LinkedList<>();
+            validations.add(new UniqueVariableNames(dataSet, null));
+            if (discrete) {
+                validations.add(new LimitDiscreteCategory(dataSet, FgsDiscrete.CATEGORY_LIMIT));
+            } else {
+                validations.add(new NonZeroVariance(dataSet, numOfThreads, null));
+            }
+
+            boolean isValid = true;
+            for (DataValidation dataValidation : validations) {
+                isValid = dataValidation.validate(System.err, false) && isValid;
+            }
+            if (!isValid) {
+                return new JsonResponse(request.id, "error", "Dataset is not valid; see stderr.");
+            }
+        }
+
+        datasets.put(request.dataset, new ResidentData(dataSet));
+
+        return new JsonResponse(request.id, "ok", String.format("%d variables, %d cases.",
+                dataSet.getNumColumns(), dataSet.getNumRows()));
+    }
+
+    private JsonResponse search(JsonRequest request) throws IOException {
+        ResidentData data = (request.dataset == null) ? null : datasets.get(request.dataset);
+        if (data == null) {
+            return new JsonResponse(request.id, "error", "No dataset named " + request.dataset + ".");
+        }
+
+        Map<String, String> parameters = request.parameters == null
+                ? Collections.<String, String>emptyMap()
+                : request.parameters;
+        String algorithm = request.algorithm == null ? "fgs" : request.algorithm;
+
+        Score score;
+        switch (algorithm) {
+            case "fgs":
+                if (!data.getDataSet().isContinuous()) {
+                    return new JsonResponse(request.id, "error", "fgs needs continuous data.");
+                }
+                score = data.getSemBicScore(
+                        Args.getDouble(getParameter(parameters, "penalty-discount", "4.0")),
+                        Boolean.parseBoolean(getParameter(parameters, "ignore-linear-dependence", "false")));
+                break;
+            case "fgs-discrete":
+                if (!data.getDataSet().isDiscrete()) {
+                    return new JsonResponse(request.id, "error", "fgs-discrete needs discrete data.");
+                }
+                score = data.getBDeuScore(
+                        Args.getDouble(getParameter(parameters, "sample-prior", "1.0")),
+                        Args.getDouble(getParameter(parameters, "structure-prior", "1.0")));
+                break;
+            default:
+                return new JsonResponse(request.id, "error", "Unknown algorithm: " + algorithm);
+        }
+
+        Fgs fgs = new Fgs(score);
+        fgs.setDepth(Args.getIntegerMin(getParameter(parameters, "depth", "-1"), -1));
+        fgs.setHeuristicSpeedup(!Boolean.parseBoolean(getParameter(parameters, "disable-heuristic-speedup", "false")));
+        fgs.setNumPatternsToStore(0);  // always set to zero
+        fgs.setParallelism(Args.getIntegerMin(getParameter(parameters, "thread", Integer.toString(numOfThreads)), 1));
+        fgs.setVerbose(false);
+        fgs.setOut(System.err);
+        if (request.knowledge != null) {
+            fgs.setKnowledge(IKnowledgeFactory.readInKnowledge(Args.getPathFile(request.knowledge, true)));
+        }
+
+        Graph graph = fgs.search();
+
+        JsonResponse response = new JsonResponse(request.id, "ok", null);
+        response.graph = JsonSerializer.toJsonGraph(graph, request.id);
+
+        return response;
+    }
+
+    private static String getParameter(Map<String, String> parameters, String name, String defaultValue) {
+        String value = parameters.get(name);
+
+        return (value == null) ? defaultValue : value;
+    }
+
+    private void respond(JsonResponse response) {
+        String json = gson.toJson(response);
+        synchronized (out) {
+            out.println(json);
+            out.flush();
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.cli.server;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.CovarianceMatrixOnTheFly;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.data.IncrementalCountTables;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.search.SemBicScore;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dataset loaded by the server, together with the statistics built from it. The covariance matrix (for continuous
+ * data) or count tables (for discrete data) are built on first use and kept, as are scores for each combination of
+ * score parameters, so that later searches over the same data skip all of that work. The count tables read the rows of
+ * the resident dataset in place rather than keeping a copy. Safe for concurrent searches.
+ */
+public class ResidentData {
+
+    /**
+     * Above this many variables the covariance matrix is calculated on the fly rather than stored in full.
+     */
+    public static final int MAX_STORED_COVARIANCE_DIMENSION = 5000;
+
+    private final DataSet dataSet;
+
+    private ICovarianceMatrix covariances;
+
+    private IncrementalCountTables counts;
+
+    private final Map<String, SemBicScore> semBicScores = new ConcurrentHashMap<>();
+
+    private final Map<String, BDeuScore> bdeuScores = new ConcurrentHashMap<>();
+
+    public ResidentData(DataSet dataSet) {
+        if (dataSet == null) {
+            throw new NullPointerException();
+        }
+
+        this.dataSet = dataSet;
+    }
+
+    public DataSet getDataSet() {
+        return dataSet;
+    }
+
+    public synchronized ICovarianceMatrix getCovariances() {
+        if (covariances == null) {
+            covariances = (dataSet.getNumColumns() <= MAX_STORED_COVARIANCE_DIMENSION)
+                    ? new CovarianceMatrix(dataSet)
+                    : new CovarianceMatrixOnTheFly(dataSet);
+        }
+
+        return covariances;
+    }
+
+    public synchronized IncrementalCountTables getCounts() {
+        if (counts == null) {
+            counts = IncrementalCountTables.backedBy(dataSet);
+        }
+
+        return counts;
+    }
+
+    public synchronized SemBicScore getSemBicScore(double penaltyDiscount, boolean ignoreLinearDependent) {
+        String key = penaltyDiscount + ":" + ignoreLinearDependent;
+        SemBicScore score = semBicScores.get(key);
+        if (score == null) {
+            score = new SemBicScore(getCovariances());
+            score.setPenaltyDiscount(penaltyDiscount);
+            score.setIgnoreLinearDependent(ignoreLinearDependent);
+            semBicScores.put(key, score);
+        }
+
+        return score;
+    }
+
+    public synchronized BDeuScore getBDeuScore(double samplePrior, double structurePrior) {
+        String key = samplePrior + ":" + structurePrior;
+        BDeuScore score = bdeuScores.get(key);
+        if (score == null) {
+            score = new BDeuScore(getCounts());
+            score.setSamplePrior(samplePrior);
+            score.setStructurePrior(structurePrior);
+            bdeuScores.put(key, score);
+        }
+
+        return score;
+    }
+
+}
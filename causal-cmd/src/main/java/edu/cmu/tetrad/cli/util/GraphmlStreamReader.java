@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.cli.util;
+
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Edges;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the first graph in a GraphML document, such as those written by GraphmlStreamWriter or GraphmlSerializer,
+ * element by element, so that no DOM of the document is held alongside the graph being built. Edges marked
+ * directed="false" are read as undirected; all others as source --> target.
+ */
+public class GraphmlStreamReader {
+
+    private GraphmlStreamReader() {
+    }
+
+    public static Graph read(Reader reader) throws IOException {
+        Graph graph = new EdgeListGraph();
+        Map<String, Node> nodes = new HashMap<>();
+
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            XMLStreamReader xml = factory.createXMLStreamReader(reader);
+
+            boolean inGraph = false;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if ("graph".equals(name)) {
+                        inGraph = true;
+                    } else if (inGraph && "node".equals(name)) {
+                        String id = xml.getAttributeValue(null, "id");
+                        if (id == null) {
+                            throw new IOException("Node without an id at line " + xml.getLocation().getLineNumber() + ".");
+                        }
+                        node(id, nodes, graph);
+                    } else if (inGraph && "edge".equals(name)) {
+                        Node source = node(xml.getAttributeValue(null, "source"), nodes, graph);
+                        Node target = node(xml.getAttributeValue(null, "target"), nodes, graph);
+                        if ("false".equals(xml.getAttributeValue(null, "directed"))) {
+                            graph.addEdge(Edges.undirectedEdge(source, target));
+                        } else {
+                            graph.addEdge(Edges.directedEdge(source, target));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inGraph && "graph".equals(xml.getLocalName())) {
+                    break;
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException exception) {
+            throw new IOException(exception);
+        }
+
+        return graph;
+    }
+
+    private static Node node(String name, Map<String, Node> nodes, Graph graph) throws IOException {
+        if (name == null) {
+            throw new IOException("Edge without a source or target.");
+        }
+
+        Node node = nodes.get(name);
+        if (node == null) {
+            node = new GraphNode(name);
+            nodes.put(name, node);
+            graph.addNode(node);
+        }
+
+        return node;
+    }
+
+}
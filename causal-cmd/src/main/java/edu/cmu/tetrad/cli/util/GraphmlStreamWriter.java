@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.cli.util;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a graph out as GraphML, one node or edge element at a time, straight to the given writer. Unlike
+ * GraphmlSerializer no JAXB object tree or intermediate string is built, so memory use does not grow with the number
+ * of edges. Each edge is written once, from whichever of its endpoints comes first in the graph's node list.
+ */
+public class GraphmlStreamWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphmlStreamWriter.class);
+
+    public static final String NAMESPACE = "http://graphml.graphdrawing.org/xmlns";
+
+    private static final String INDENT = "    ";
+
+    private GraphmlStreamWriter() {
+    }
+
+    public static void write(Graph graph, String graphId, Writer writer) throws IOException {
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("graphml");
+            xml.writeDefaultNamespace(NAMESPACE);
+            xml.writeCharacters("\n" + INDENT);
+            xml.writeStartElement("graph");
+            if (graphId != null) {
+                xml.writeAttribute("id", graphId);
+            }
+            xml.writeAttribute("edgedefault", "directed");
+
+            List<Node> nodes = graph.getNodes();
+            for (Node node : nodes) {
+                xml.writeCharacters("\n" + INDENT + INDENT);
+                xml.writeEmptyElement("node");
+                xml.writeAttribute("id", node.getName());
+            }
+
+            Map<Node, Integer> index = new HashMap<>();
+            for (int i = 0; i < nodes.size(); i++) {
+                index.put(nodes.get(i), i);
+            }
+
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                for (Edge edge : graph.getEdges(node)) {
+                    if (index.get(edge.getDistalNode(node)) < i) {
+                        continue;
+                    }
+                    writeEdge(edge, xml);
+                }
+            }
+
+            xml.writeCharacters("\n" + INDENT);
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.flush();
+        } catch (XMLStreamException exception) {
+            throw new IOException(exception);
+        }
+        writer.flush();
+    }
+
+    private static void writeEdge(Edge edge, XMLStreamWriter xml) throws XMLStreamException {
+        Node source;
+        Node target;
+        boolean directed;
+        if (edge.getEndpoint1() == Endpoint.TAIL && edge.getEndpoint2() == Endpoint.ARROW) {
+            source = edge.getNode1();
+            target = edge.getNode2();
+            directed = true;
+        } else if (edge.getEndpoint1() == Endpoint.ARROW && edge.getEndpoint2() == Endpoint.TAIL) {
+            source = edge.getNode2();
+            target = edge.getNode1();
+            directed = true;
+        } else if (edge.getEndpoint1() == Endpoint.TAIL && edge.getEndpoint2() == Endpoint.TAIL) {
+            source = edge.getNode2();
+            target = edge.getNode1();
+            directed = false;
+        } else {
+            // cannot handle all edges yet
+            LOGGER.warn("Encountered edge we currently don't handle when serializing graphml: " + edge.toString());
+            return;
+        }
+
+        xml.writeCharacters("\n" + INDENT + INDENT);
+        xml.writeEmptyElement("edge");
+        xml.writeAttribute("source", source.getName());
+        xml.writeAttribute("target", target.getName());
+        xml.writeAttribute("directed", Boolean.toString(directed));
+    }
+
+}
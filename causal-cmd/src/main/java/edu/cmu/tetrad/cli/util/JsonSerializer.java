@@ -45,6 +45,12 @@ import java.util.Set;
 public class JsonSerializer {
 
     public static String serialize(Graph graph, String graphId) throws JAXBException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+        return gson.toJson(toJsonGraph(graph, graphId));
+    }
+
+    public static JsonGraph toJsonGraph(Graph graph, String graphId) {
         List<Node> nodes = graph.getNodes();
         Set<Edge> edgesSet = graph.getEdges();
         HashMap<Node, Integer> nodeIndexMap = new HashMap<Node, Integer>();
@@ -90,10 +96,7 @@ public class JsonSerializer {
             }
         }
 
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-
-
-        return gson.toJson(jsonGraph);
+        return jsonGraph;
     }
 
 
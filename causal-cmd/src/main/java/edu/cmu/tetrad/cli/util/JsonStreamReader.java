@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.cli.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a graph in the JSON layout of JsonSerializer and JsonStreamWriter token by token. The nodes array must come
+ * before the edge sets, since edges refer to nodes by their position in it; edges of all edge sets are added to the
+ * one graph.
+ */
+public class JsonStreamReader {
+
+    private JsonStreamReader() {
+    }
+
+    public static Graph read(Reader reader) throws IOException {
+        Graph graph = new EdgeListGraph();
+        List<Node> nodes = new ArrayList<>();
+
+        JsonReader json = new JsonReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if ("nodes".equals(name)) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    Node node = new GraphNode(readNodeName(json));
+                    nodes.add(node);
+                    graph.addNode(node);
+                }
+                json.endArray();
+            } else if ("edgeSets".equals(name)) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    readEdgeSet(json, nodes, graph);
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        return graph;
+    }
+
+    private static String readNodeName(JsonReader json) throws IOException {
+        String name = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("name".equals(json.nextName())) {
+                name = json.nextString();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (name == null) {
+            throw new IOException("Node without a name.");
+        }
+
+        return name;
+    }
+
+    private static void readEdgeSet(JsonReader json, List<Node> nodes, Graph graph) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("edges".equals(json.nextName()) && json.peek() == JsonToken.BEGIN_ARRAY) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    readEdge(json, nodes, graph);
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private static void readEdge(JsonReader json, List<Node> nodes, Graph graph) throws IOException {
+        int source = -1;
+        int target = -1;
+        String etype = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if ("source".equals(name)) {
+                source = json.nextInt();
+            } else if ("target".equals(name)) {
+                target = json.nextInt();
+            } else if ("etype".equals(name)) {
+                etype = json.nextString();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (source < 0 || source >= nodes.size() || target < 0 || target >= nodes.size()) {
+            throw new IOException("Edge refers to a node that is not in the nodes array: " + source + ", " + target + ".");
+        }
+
+        Endpoint endpoint1;
+        Endpoint endpoint2;
+        if ("-->".equals(etype)) {
+            endpoint1 = Endpoint.TAIL;
+            endpoint2 = Endpoint.ARROW;
+        } else if ("<--".equals(etype)) {
+            endpoint1 = Endpoint.ARROW;
+            endpoint2 = Endpoint.TAIL;
+        } else if ("---".equals(etype)) {
+            endpoint1 = Endpoint.TAIL;
+            endpoint2 = Endpoint.TAIL;
+        } else if ("o->".equals(etype)) {
+            endpoint1 = Endpoint.CIRCLE;
+            endpoint2 = Endpoint.ARROW;
+        } else if ("<-o".equals(etype)) {
+            endpoint1 = Endpoint.ARROW;
+            endpoint2 = Endpoint.CIRCLE;
+        } else if ("o-o".equals(etype)) {
+            endpoint1 = Endpoint.CIRCLE;
+            endpoint2 = Endpoint.CIRCLE;
+        } else {
+            throw new IOException("Unknown edge type: " + etype + ".");
+        }
+
+        graph.addEdge(new Edge(nodes.get(source), nodes.get(target), endpoint1, endpoint2));
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.cli.util;
+
+import com.google.gson.stream.JsonWriter;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a graph out in the JSON layout of JsonSerializer (name, nodes, one edge set of source/target/etype edges),
+ * token by token, straight to the given writer. No JsonGraph or intermediate string is built, so memory use does not
+ * grow with the number of edges. Each edge is written once, from whichever of its endpoints comes first in the
+ * graph's node list.
+ */
+public class JsonStreamWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JsonStreamWriter.class);
+
+    private JsonStreamWriter() {
+    }
+
+    public static void write(Graph graph, String graphId, Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.setIndent("  ");
+
+        json.beginObject();
+        json.name("name").value(graphId);
+
+        List<Node> nodes = graph.getNodes();
+        json.name("nodes").beginArray();
+        for (Node node : nodes) {
+            json.beginObject().name("name").value(node.getName()).endObject();
+        }
+        json.endArray();
+
+        Map<Node, Integer> index = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            index.put(nodes.get(i), i);
+        }
+
+        json.name("edgeSets").beginArray();
+        json.beginObject();
+        json.name("edges").beginArray();
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            for (Edge edge : graph.getEdges(node)) {
+                if (index.get(edge.getDistalNode(node)) < i) {
+                    continue;
+                }
+
+                String etype = etype(edge);
+                if (etype == null) {
+                    // cannot handle all edges yet
+                    LOGGER.warn("Encountered edge we currently don't handle when serializing to json: " + edge.toString());
+                    continue;
+                }
+
+                json.beginObject();
+                json.name("source").value(index.get(edge.getNode1()));
+                json.name("target").value(index.get(edge.getNode2()));
+                json.name("etype").value(etype);
+                json.endObject();
+            }
+        }
+        json.endArray();
+        json.endObject();
+        json.endArray();
+
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * @return the JSON edge type of the given edge, read from node1 to node2, or null if there is none.
+     */
+    public static String etype(Edge edge) {
+        Endpoint endpoint1 = edge.getEndpoint1();
+        Endpoint endpoint2 = edge.getEndpoint2();
+        if (endpoint1 == Endpoint.TAIL && endpoint2 == Endpoint.ARROW) {
+            return "-->";
+        } else if (endpoint1 == Endpoint.ARROW && endpoint2 == Endpoint.TAIL) {
+            return "<--";
+        } else if (endpoint1 == Endpoint.TAIL && endpoint2 == Endpoint.TAIL) {
+            return "---";
+        } else if (endpoint1 == Endpoint.CIRCLE && endpoint2 == Endpoint.ARROW) {
+            return "o->";
+        } else if (endpoint1 == Endpoint.ARROW && endpoint2 == Endpoint.CIRCLE) {
+            return "<-o";
+        } else if (endpoint1 == Endpoint.CIRCLE && endpoint2 == Endpoint.CIRCLE) {
+            return "o-o";
+        } else {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 University of Pittsburgh.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package edu.cmu.tetrad.cli.server;
+
+import com.google.gson.Gson;
+import edu.cmu.tetrad.cli.json.JsonResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs a short session against the server: load both datasets once, then search each several times.
+ */
+public class CausalCmdServerTest {
+
+    @Test
+    public void testSession() throws IOException {
+        Path continuous = Paths.get("test", "data", "diff_delim", "sim_data_20vars_100cases.txt");
+        Path discrete = Paths.get("test", "data", "diff_delim", "sim_discrete_data_20vars_100cases.txt");
+
+        String requests = ""
+                + "{\"id\":\"1\",\"command\":\"load\",\"dataset\":\"c\",\"file\":\"" + path(continuous) + "\",\"delimiter\":\"tab\"}\n"
+                + "{\"id\":\"2\",\"command\":\"load\",\"dataset\":\"d\",\"file\":\"" + path(discrete) + "\",\"delimiter\":\"tab\",\"type\":\"discrete\"}\n"
+                + "{\"id\":\"3\",\"command\":\"search\",\"dataset\":\"c\",\"algorithm\":\"fgs\",\"parameters\":{\"penalty-discount\":2.0}}\n"
+                + "{\"id\":\"4\",\"command\":\"search\",\"dataset\":\"c\",\"algorithm\":\"fgs\",\"parameters\":{\"penalty-discount\":4.0}}\n"
+                + "{\"id\":\"5\",\"command\":\"search\",\"dataset\":\"d\",\"algorithm\":\"fgs-discrete\"}\n"
+                + "{\"id\":\"6\",\"command\":\"search\",\"dataset\":\"x\",\"algorithm\":\"fgs\"}\n"
+                + "{\"id\":\"7\",\"command\":\"cancel\",\"request\":\"none\"}\n"
+                + "{\"id\":\"9\",\"command\":\"search\",\"dataset\":\"c\",\"algorithm\":\"fgs\"}\n"
+                + "{\"id\":\"10\",\"command\":\"cancel\",\"request\":\"9\"}\n"
+                + "{\"id\":\"8\",\"command\":\"shutdown\"}\n";
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+
+        // One request at a time, so that loads finish before the searches that need them. The only worker is held
+        // until the request after the cancel of request 9 is read, so request 9 is still queued when it is cancelled.
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch cancelRead = new CountDownLatch(1);
+
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cancelRead.await();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        CausalCmdServer server = new CausalCmdServer(out, executor, 2);
+        server.serve(new BufferedReader(new StringReader(requests)) {
+            @Override
+            public String readLine() throws IOException {
+                String line = super.readLine();
+                if (line != null && line.contains("\"shutdown\"")) {
+                    cancelRead.countDown();
+                }
+
+                return line;
+            }
+        });
+
+        Gson gson = new Gson();
+        Map<String, JsonResponse> responses = new HashMap<>();
+        for (String line : bytes.toString().split("\n")) {
+            JsonResponse response = gson.fromJson(line, JsonResponse.class);
+            responses.put(response.id, response);
+        }
+
+        Assert.assertEquals(9, responses.size());
+        for (String id : new String[]{"1", "2", "3", "4", "5"}) {
+            Assert.assertEquals(responses.get(id).message, "ok", responses.get(id).status);
+        }
+        Assert.assertEquals(20, responses.get("3").graph.nodes.size());
+        Assert.assertEquals(20, responses.get("5").graph.nodes.size());
+        Assert.assertEquals("error", responses.get("6").status);
+        Assert.assertEquals("error", responses.get("7").status);
+        Assert.assertEquals("cancelled", responses.get("9").status);
+        Assert.assertEquals("ok", responses.get("10").status);
+    }
+
+    private static String path(Path path) {
+        return path.toAbsolutePath().toString().replace("\\", "\\\\");
+    }
+
+}
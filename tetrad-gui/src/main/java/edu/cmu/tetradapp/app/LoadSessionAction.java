@@ -106,9 +106,7 @@ final class LoadSessionAction extends AbstractAction {
         new WatchedProcess(owner) {
             public void watch() {
                 try {
-                    FileInputStream in = new FileInputStream(file);
-//                    ObjectInputStream objIn = new ObjectInputStream(in);
-                    DecompressibleInputStream objIn = new DecompressibleInputStream(in);
+                    ObjectInputStream objIn = SessionFile.openObjects(file);
                     Object o = objIn.readObject();
 
                     TetradMetadata metadata = null;
@@ -130,7 +128,7 @@ final class LoadSessionAction extends AbstractAction {
                         sessionWrapper = (SessionWrapper) o;
                     }
 
-                    in.close();
+                    objIn.close();
 
                     if (metadata == null) {
                         throw new NullPointerException("Could not read metadata.");
@@ -175,7 +173,7 @@ final class LoadSessionAction extends AbstractAction {
     }
 
 
-    public class DecompressibleInputStream extends ObjectInputStream {
+    public static class DecompressibleInputStream extends ObjectInputStream {
 
         public DecompressibleInputStream(InputStream in) throws IOException {
             super(in);
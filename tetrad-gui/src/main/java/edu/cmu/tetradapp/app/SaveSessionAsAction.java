@@ -81,15 +81,11 @@ final class SaveSessionAsAction extends AbstractAction {
 
         // Save it.
         try {
-            FileOutputStream out = new FileOutputStream(file);
-            ObjectOutputStream objOut = new ObjectOutputStream(out);
-            objOut.writeObject(metadata);
-            objOut.writeObject(sessionWrapper);
-            out.close();
-
-            FileInputStream in = new FileInputStream(file);
-            ObjectInputStream objIn = new ObjectInputStream(in);
+            SessionFile.write(file, metadata, sessionWrapper);
+
+            ObjectInputStream objIn = SessionFile.openObjects(file);
             objIn.readObject();
+            objIn.close();
 
             sessionWrapper.setSessionChanged(false);
             sessionWrapper.setNewSession(false);
@@ -0,0 +1,374 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetradapp.app;
+
+import edu.cmu.tetrad.data.DataBox;
+import edu.cmu.tetrad.data.DoubleDataBox;
+import edu.cmu.tetrad.data.MappedDoubleDataBox;
+import edu.cmu.tetrad.data.VerticalDoubleDataBox;
+import edu.cmu.tetrad.util.TetradMatrix;
+import edu.cmu.tetradapp.model.SessionWrapper;
+import edu.cmu.tetradapp.model.TetradMetadata;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes session files. A session file starts with a short header, followed by the
+ * metadata and session wrapper in Java serialization, followed by blobs of raw double data and a
+ * table of where the blobs are. Large continuous data boxes and large matrices (covariance
+ * matrices, for instance) are not serialized with the rest of the session; in their place the
+ * serialized session holds a reference to a blob. On loading, data boxes are memory mapped from
+ * their blobs, so their data is only read in when it is used, by an editor for instance; matrices
+ * are read from their blobs directly.
+ * <p>
+ * Session files saved before this format, which are plain Java serialization, are still read.
+ */
+final class SessionFile {
+
+    private static final int MAGIC = 0x54455442;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * Data boxes and matrices with fewer cells than this are serialized with the session.
+     */
+    private static final long MIN_BLOB_CELLS = 1 << 16;
+
+    private static final int BOX = 0;
+    private static final int MATRIX = 1;
+
+    private SessionFile() {
+    }
+
+    /**
+     * Writes the given session to the given file. The session is written to a temporary file
+     * first, which then replaces the given file, so that data boxes mapped from the given file
+     * (if the session was loaded from it) remain valid while it is being written.
+     * <p>
+     * Some platforms (Windows) will not replace a file while it is memory mapped. In that case the
+     * data boxes of the session are copied onto the heap, off the given file, and the new contents
+     * are then written over the given file in place.
+     */
+    static void write(File file, TetradMetadata metadata, SessionWrapper sessionWrapper) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        List<Object> blobs;
+
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_BYTES);
+
+            BlobOutputStream objOut = new BlobOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)));
+            objOut.writeObject(metadata);
+            objOut.writeObject(sessionWrapper);
+            objOut.flush();
+
+            blobs = objOut.getBlobs();
+            ByteBuffer table = ByteBuffer.allocate(4 + 8 * blobs.size());
+            table.putInt(blobs.size());
+
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+            for (Object blob : blobs) {
+                long position = (channel.position() + 7) / 8 * 8;
+                channel.position(position);
+                table.putLong(position);
+                writeBlob(blob, buffer, channel);
+            }
+
+            long tablePosition = channel.position();
+            table.flip();
+            writeFully(table, channel);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(tablePosition);
+            header.flip();
+            channel.position(0);
+            writeFully(header, channel);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileSystemException e) {
+            for (Object blob : blobs) {
+                if (blob instanceof MappedDoubleDataBox) {
+                    ((MappedDoubleDataBox) blob).copyToHeap();
+                }
+            }
+
+            try {
+                overwrite(temp, file);
+            } finally {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Opens the given session file for reading the objects in it (the metadata, then the session
+     * wrapper). The caller should close the stream; data boxes mapped from the file remain valid
+     * after that.
+     */
+    static ObjectInputStream openObjects(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+            if (channel.size() < HEADER_BYTES || channel.read(header, 0) < HEADER_BYTES
+                    || header.getInt(0) != MAGIC) {
+                channel.close();
+                return new LoadSessionAction.DecompressibleInputStream(
+                        new BufferedInputStream(new FileInputStream(file)));
+            }
+
+            int version = header.getInt(4);
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported session file version: " + version);
+            }
+
+            long tablePosition = header.getLong(8);
+            ByteBuffer count = ByteBuffer.allocate(4);
+            readFully(count, tablePosition, channel);
+
+            ByteBuffer table = ByteBuffer.allocate(8 * count.getInt(0));
+            readFully(table, tablePosition + 4, channel);
+
+            long[] positions = new long[count.getInt(0)];
+
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = table.getLong(8 * i);
+            }
+
+            channel.position(HEADER_BYTES);
+            return new BlobInputStream(new BufferedInputStream(Channels.newInputStream(channel)),
+                    channel, positions);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private static void writeBlob(Object blob, ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.clear();
+
+        if (blob instanceof TetradMatrix) {
+            TetradMatrix matrix = (TetradMatrix) blob;
+
+            for (int i = 0; i < matrix.rows(); i++) {
+                for (int j = 0; j < matrix.columns(); j++) {
+                    put(matrix.get(i, j), buffer, channel);
+                }
+            }
+        } else if (blob instanceof VerticalDoubleDataBox) {
+            double[][] data = ((VerticalDoubleDataBox) blob).getVariableVectors();
+
+            for (double[] column : data) {
+                for (double value : column) {
+                    put(value, buffer, channel);
+                }
+            }
+        } else if (blob instanceof DoubleDataBox) {
+            double[][] data = ((DoubleDataBox) blob).getData();
+
+            for (int j = 0; j < data[0].length; j++) {
+                for (double[] row : data) {
+                    put(row[j], buffer, channel);
+                }
+            }
+        } else {
+            MappedDoubleDataBox box = (MappedDoubleDataBox) blob;
+
+            for (int j = 0; j < box.numCols(); j++) {
+                for (int i = 0; i < box.numRows(); i++) {
+                    put(box.getDouble(i, j), buffer, channel);
+                }
+            }
+        }
+
+        buffer.flip();
+        writeFully(buffer, channel);
+    }
+
+    /**
+     * Writes the contents of the source file over the start of the target file. If the target
+     * is longer and cannot be shortened (while it is still mapped), the bytes left past the end
+     * are never read, since the header says where the blob table is.
+     */
+    private static void overwrite(File source, File target) throws IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {
+                position += out.transferFrom(in, position, size - position);
+            }
+
+            try {
+                out.truncate(size);
+            } catch (IOException e) {
+                // Left at its old length.
+            }
+        }
+    }
+
+    private static void put(double value, ByteBuffer buffer, FileChannel channel) throws IOException {
+        if (buffer.remaining() < 8) {
+            buffer.flip();
+            writeFully(buffer, channel);
+            buffer.clear();
+        }
+
+        buffer.putDouble(value);
+    }
+
+    private static void writeFully(ByteBuffer buffer, FileChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(ByteBuffer buffer, long position, FileChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Session file is truncated.");
+            }
+        }
+    }
+
+    /**
+     * Stands in the serialized session for a blob.
+     */
+    private static final class BlobRef implements Serializable {
+        static final long serialVersionUID = 23L;
+
+        private final int id;
+        private final int type;
+        private final int rows;
+        private final int cols;
+
+        BlobRef(int id, int type, int rows, int cols) {
+            this.id = id;
+            this.type = type;
+            this.rows = rows;
+            this.cols = cols;
+        }
+    }
+
+    /**
+     * Replaces large data boxes and matrices with blob references, keeping the originals to be
+     * written out as blobs after the session.
+     */
+    private static final class BlobOutputStream extends ObjectOutputStream {
+        private final List<Object> blobs = new ArrayList<>();
+
+        BlobOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        List<Object> getBlobs() {
+            return blobs;
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof VerticalDoubleDataBox || obj instanceof DoubleDataBox
+                    || obj instanceof MappedDoubleDataBox) {
+                DataBox box = (DataBox) obj;
+
+                if ((long) box.numRows() * box.numCols() >= MIN_BLOB_CELLS) {
+                    blobs.add(box);
+                    return new BlobRef(blobs.size() - 1, BOX, box.numRows(), box.numCols());
+                }
+            } else if (obj instanceof TetradMatrix) {
+                TetradMatrix matrix = (TetradMatrix) obj;
+
+                if ((long) matrix.rows() * matrix.columns() >= MIN_BLOB_CELLS) {
+                    blobs.add(matrix);
+                    return new BlobRef(blobs.size() - 1, MATRIX, matrix.rows(), matrix.columns());
+                }
+            }
+
+            return obj;
+        }
+    }
+
+    /**
+     * Replaces blob references with data boxes mapped from, or matrices read from, their blobs.
+     */
+    private static final class BlobInputStream extends LoadSessionAction.DecompressibleInputStream {
+        private final FileChannel channel;
+        private final long[] positions;
+
+        BlobInputStream(InputStream in, FileChannel channel, long[] positions) throws IOException {
+            super(in);
+            this.channel = channel;
+            this.positions = positions;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (!(obj instanceof BlobRef)) {
+                return obj;
+            }
+
+            BlobRef ref = (BlobRef) obj;
+
+            if (ref.id < 0 || ref.id >= positions.length) {
+                throw new IOException("Missing blob in session file: " + ref.id);
+            }
+
+            if (ref.type == BOX) {
+                return new MappedDoubleDataBox(channel, positions[ref.id], ref.rows, ref.cols);
+            }
+
+            DoubleBuffer blob = channel.map(FileChannel.MapMode.READ_ONLY, positions[ref.id],
+                    8L * ref.rows * ref.cols).asDoubleBuffer();
+            double[][] data = new double[ref.rows][ref.cols];
+
+            for (double[] row : data) {
+                blob.get(row);
+            }
+
+            return new TetradMatrix(data);
+        }
+    }
+}
@@ -114,10 +114,10 @@ public class ApproximateUpdaterWrapper implements SessionModel, UpdaterWrapper,
         TetradLogger.getInstance().setConfigForClass(this.getClass());
         this.params = params;
         if (params.getEvidence() == null || params.getEvidence().isIncompatibleWith(bayesIm)) {
-            bayesUpdater = new ApproximateUpdater(bayesIm);
+            bayesUpdater = new SamplingUpdater(bayesIm);
         }
         else {
-            bayesUpdater = new ApproximateUpdater(bayesIm,
+            bayesUpdater = new SamplingUpdater(bayesIm,
                     params.getEvidence());
         }
 
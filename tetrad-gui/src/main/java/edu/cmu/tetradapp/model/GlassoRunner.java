@@ -87,29 +87,42 @@ public class GlassoRunner extends AbstractAlgorithmRunner
         if (dataModel instanceof DataSet) {
             DataSet dataSet = (DataSet) dataModel;
 
-            DoubleMatrix2D cov = new DenseDoubleMatrix2D(dataSet.getCovarianceMatrix().toArray());
-
-            Glasso glasso = new Glasso(cov);
-            glasso.setMaxit(params.getMaxit());
-            glasso.setIa(params.isIa());
-            glasso.setIs(params.isIs());
-            glasso.setItr(params.isItr());
-            glasso.setIpen(params.isIpen());
-            glasso.setThr(params.getThr());
-            glasso.setRhoAllEqual(1.0);
-
-            Glasso.Result result = glasso.search();
-            TetradMatrix wwi = new TetradMatrix(result.getWwi().toArray());
-
             List<Node> variables = dataSet.getVariables();
-            Graph resultGraph = new EdgeListGraph(variables);
-
-            for (int i = 0; i < variables.size(); i++) {
-                for (int j = i + 1; j < variables.size(); j++) {
-                    if (wwi.get(i, j) != 0.0 && wwi.get(i, j) != 0.0) {
-                        resultGraph.addUndirectedEdge(variables.get(i), variables.get(j));
+            Graph resultGraph;
+
+            if (params.isIa()) {
+                DoubleMatrix2D cov = new DenseDoubleMatrix2D(dataSet.getCovarianceMatrix().toArray());
+
+                Glasso glasso = new Glasso(cov);
+                glasso.setMaxit(params.getMaxit());
+                glasso.setIa(params.isIa());
+                glasso.setIs(params.isIs());
+                glasso.setItr(params.isItr());
+                glasso.setIpen(params.isIpen());
+                glasso.setThr(params.getThr());
+                glasso.setRhoAllEqual(1.0);
+
+                Glasso.Result result = glasso.search();
+                TetradMatrix wwi = new TetradMatrix(result.getWwi().toArray());
+
+                resultGraph = new EdgeListGraph(variables);
+
+                for (int i = 0; i < variables.size(); i++) {
+                    for (int j = i + 1; j < variables.size(); j++) {
+                        if (wwi.get(i, j) != 0.0 && wwi.get(i, j) != 0.0) {
+                            resultGraph.addUndirectedEdge(variables.get(i), variables.get(j));
+                        }
                     }
                 }
+            } else {
+
+                // The exact solution, split into independent components, which scales to many more variables.
+                GlassoPath glasso = new GlassoPath(dataSet.getCovarianceMatrix());
+                glasso.setMaxit(params.getMaxit());
+                glasso.setPenalizeDiagonal(params.isIpen());
+                glasso.setThr(params.getThr());
+
+                resultGraph = glasso.search(1.0).getGraph(variables);
             }
 
             setResultGraph(resultGraph);
@@ -0,0 +1,127 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+package edu.cmu.tetradapp.app;
+
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.MappedDoubleDataBox;
+import edu.cmu.tetrad.data.VerticalDoubleDataBox;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.session.Session;
+import edu.cmu.tetrad.session.SessionNode;
+import edu.cmu.tetradapp.model.DataWrapper;
+import edu.cmu.tetradapp.model.SessionWrapper;
+import edu.cmu.tetradapp.model.TetradMetadata;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Saves sessions with large data sets and loads them back.
+ */
+public class TestSessionFile {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DataSet data = randomData(500, 200);
+        File file = File.createTempFile("session", ".tet");
+        file.deleteOnExit();
+
+        SessionFile.write(file, new TetradMetadata(), sessionWith(data));
+        DataSet loaded = load(file);
+
+        assertTrue(((BoxDataSet) loaded).getDataBox() instanceof MappedDoubleDataBox);
+        assertSame(data, loaded);
+
+        // Save over the file the loaded data is still mapped from, with one value changed.
+        loaded.setDouble(3, 7, -1.0);
+        SessionFile.write(file, new TetradMetadata(), sessionWith(loaded));
+        DataSet reloaded = load(file);
+
+        assertEquals(-1.0, reloaded.getDouble(3, 7), 0.0);
+        assertSame(loaded, reloaded);
+
+        // The data loaded first still reads its own values.
+        data.setDouble(3, 7, -1.0);
+        assertSame(data, loaded);
+    }
+
+    private static DataSet randomData(int rows, int cols) {
+        List<Node> variables = new ArrayList<>();
+
+        for (int j = 0; j < cols; j++) {
+            variables.add(new ContinuousVariable("X" + (j + 1)));
+        }
+
+        DataSet data = new BoxDataSet(new VerticalDoubleDataBox(rows, cols), variables);
+        Random random = new Random(42);
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                data.setDouble(i, j, random.nextGaussian());
+            }
+        }
+
+        return data;
+    }
+
+    private static SessionWrapper sessionWith(DataSet data) throws Exception {
+        Session session = new Session("test");
+        SessionNode node = new SessionNode(DataWrapper.class);
+        session.addNode(node);
+        node.createModel(DataWrapper.class, false);
+        ((DataWrapper) node.getModel()).setDataModel(data);
+        return new SessionWrapper(session);
+    }
+
+    private static DataSet load(File file) throws Exception {
+        ObjectInputStream objIn = SessionFile.openObjects(file);
+
+        try {
+            assertTrue(objIn.readObject() instanceof TetradMetadata);
+            SessionWrapper sessionWrapper = (SessionWrapper) objIn.readObject();
+            SessionNode node = sessionWrapper.getSession().getNodes().iterator().next();
+            return (DataSet) ((DataWrapper) node.getModel()).getSelectedDataModel();
+        } finally {
+            objIn.close();
+        }
+    }
+
+    private static void assertSame(DataSet expected, DataSet actual) {
+        assertEquals(expected.getNumRows(), actual.getNumRows());
+        assertEquals(expected.getNumColumns(), actual.getNumColumns());
+        assertEquals(expected.getVariableNames(), actual.getVariableNames());
+
+        for (int i = 0; i < expected.getNumRows(); i++) {
+            for (int j = 0; j < expected.getNumColumns(); j++) {
+                assertEquals(expected.getDouble(i, j), actual.getDouble(i, j), 0.0);
+            }
+        }
+    }
+}
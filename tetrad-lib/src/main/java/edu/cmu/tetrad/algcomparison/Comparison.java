@@ -349,6 +349,10 @@ public class Comparison {
                 File file2 = new File(dir1, "graph.txt");
                 GraphUtils.saveGraph(simulationWrapper.getTrueGraph(), file2, false);
 
+                // Binary copy for fast reloading by LoadContinuousDataAndGraphs.
+                File file3 = new File(dir1, "graph.bin");
+                GraphUtils.saveGraphBinary(simulationWrapper.getTrueGraph(), file3);
+
                 for (int i = 0; i < simulationWrapper.getNumDataSets(); i++) {
                     File file = new File(dir2, "data." + (i + 1) + ".txt");
                     Writer out = new FileWriter(file);
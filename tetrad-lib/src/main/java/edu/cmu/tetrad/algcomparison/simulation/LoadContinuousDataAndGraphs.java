@@ -35,9 +35,16 @@ public class LoadContinuousDataAndGraphs implements Simulation {
         if (new File(path + "/data").exists()) {
             int numDataSets = new File(path + "/data").listFiles().length;
 
-            File file2 = new File(path + "/graph/graph.txt");
-            System.out.println("Loading graph from " + file2.getAbsolutePath());
-            this.graph = GraphUtils.loadGraphTxt(file2);
+            File file3 = new File(path + "/graph/graph.bin");
+
+            if (file3.exists()) {
+                System.out.println("Loading graph from " + file3.getAbsolutePath());
+                this.graph = GraphUtils.loadGraphBinary(file3);
+            } else {
+                File file2 = new File(path + "/graph/graph.txt");
+                System.out.println("Loading graph from " + file2.getAbsolutePath());
+                this.graph = GraphUtils.loadGraphTxt(file2);
+            }
 
             try {
                 for (int i = 0; i < numDataSets; i++) {
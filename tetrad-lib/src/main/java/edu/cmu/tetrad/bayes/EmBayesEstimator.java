@@ -28,15 +28,20 @@ import edu.cmu.tetrad.graph.Dag;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.NodeType;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Estimates parameters of the given Bayes net from the given data using maximum
  * likelihood method.
+ * <p>
+ * Rows of the data with the same values (and the same missing values) are
+ * grouped into patterns, so that the posterior over the missing values is
+ * computed once per distinct pattern. The patterns are split over the
+ * ForkJoin pool in the expectation step, each task accumulating its own
+ * counts.
  *
  * @author Frank Wimberly based on related classes by Shane Harwood, Joseph
  *         Ramsey
@@ -59,35 +64,32 @@ public final class EmBayesEstimator {
     //private BayesIm bayesImMixed;
 
     /**
-     * The main data structure of this class is the double[][][] array
-     * estimatedCounts; it stores the values of all of the estimated counts for
-     * the Bayes net.  The first dimension is the node index, in the order of
-     * 'nodes'.  The second dimension is the row index for the table of
-     * parameters associated with node; the third dimension is the column index.
-     * The row index is calculated by the function getRowIndex(int[] values)
-     * where 'values' is an array of numerical indices for each of the parent
-     * values; the order of the values in this array is the same as the order of
-     * nodes in 'parents'; the value indices are obtained from the Bayes PM
-     * for each node.  The column is the index of the value of N, where this
-     * index is obtained from the Bayes PM.
+     * Conditional probability tables with more cells than this store their
+     * expected counts sparsely, by row.
      */
-    private double[][][] estimatedCounts;
+    private static final int SPARSE_CELLS = 1 << 16;
 
     /**
-     * For each row of the conditional probability table for each node, this is
-     * the estimated count of the number of occurrences of the corresponding set
-     * of values of parents in the dataset.  The first dimension is the node
-     * index and the second is the row number. Hence the conditional
-     * probabilities are computed by dividing estimatedCounts[node][row][column]
-     * by estimateCountsDenom[node][row].
+     * The distinct rows of mixedData, indexed by node as in the Bayes IM, with
+     * DiscreteVariable.MISSING_VALUE for values that are missing, and the
+     * number of rows of mixedData equal to each.
      */
-    private double[][] estimatedCountsDenom;
+    private int[][] patterns;
+    private int[] patternCounts;
 
     /**
-     * The conditional proabilities are stored in this array.  As above, the
-     * dimensions are node, row and column respectively.
+     * The expected counts computed by the last expectation step, one table per
+     * node, in the order of 'nodes'. The table for a node is indexed by the row
+     * of its conditional probability table (see BayesIm.getRowIndex) and the
+     * index of its value. The estimated conditional probabilities are the counts
+     * divided by their row totals.
      */
-    private double[][][] condProbs;
+    private CountTable[] estimatedCounts;
+
+    /**
+     * True if the expectation step should be run in parallel.
+     */
+    private boolean parallelized = true;
 
 //    /**
 //     * In case the constructor whose argument list includes a Bayes IM is used
@@ -272,358 +274,109 @@ public final class EmBayesEstimator {
         //System.out.println(bayesImMixed);
         //System.out.println(estimatedIm);
 
-        estimatedCounts = new double[nodes.length][][];
-        estimatedCountsDenom = new double[nodes.length][];
-        condProbs = new double[nodes.length][][];
-
-        for (int i = 0; i < nodes.length; i++) {
-            //int numRows = bayesImMixed.getNumRows(i);
-            int numRows = estimatedIm.getNumRows(i);
-            estimatedCounts[i] = new double[numRows][];
-            estimatedCountsDenom[i] = new double[numRows];
-            condProbs[i] = new double[numRows][];
-            //for(int j = 0; j < bayesImMixed.getNumRows(i); j++) {
-            for (int j = 0; j < estimatedIm.getNumRows(i); j++) {
-                //int numCols = bayesImMixed.getNumColumns(i);
-                int numCols = estimatedIm.getNumColumns(i);
-                estimatedCounts[i][j] = new double[numCols];
-                condProbs[i][j] = new double[numCols];
-            }
-        }
-
-
+        groupPatterns();
     }
 
     /**
-     * This method takes an instantiated Bayes net (BayesIm) whose graph include
-     * all the variables (observed and latent) and computes estimated counts
-     * using the data in the DataSet mixedData. </p> The counts that are
-     * estimated correspond to cells in the conditional probability tables of
-     * the Bayes net.  The outermost loop (indexed by j) is over the set of
-     * variables.  If the variable has no parents, each case in the dataset is
-     * examined and the count for the observed value of the variables is
-     * increased by 1.0; if the value of the variable is missing the marginal
-     * probabilities its values given the values of the variables that are
-     * available for that case are used to increment the corresponding estimated
-     * counts. </p> If a variable has parents then there is a loop which steps
-     * through all possible sets of values of its parents.  This loop is indexed
-     * by the variable "row".  Each case in the dataset is examined.  It the
-     * variable and all its parents have values in the case the corresponding
-     * estimated counts are incremented by 1.0.  If the variable or any of its
-     * parents have missing values, the joint marginal is computed for the
-     * variable and the set of values of its parents corresponding to "row" and
-     * the corresponding estimated counts are incremented by the appropriate
-     * probability. </p> The estimated counts are stored in the double[][][]
-     * array estimatedCounts.  The count (possibly fractional) of the number of
-     * times each combination of parent values occurs is stored in the
-     * double[][] array estimatedCountsDenom.  These two arrays are used to
-     * compute the estimated conditional probabilities of the output Bayes net.
+     * Groups the rows of mixedData into distinct patterns of values.
      */
-    private void expectation(BayesIm inputBayesIm) {
-        //System.out.println("Entered method expectation.");
-
-        int numCases = mixedData.getNumRows();
-        //StoredCellEstCounts estCounts = new StoredCellEstCounts(variables);
-
-        int numVariables = allVariables.size();
-        RowSummingExactUpdater rseu = new RowSummingExactUpdater(inputBayesIm);
-
-        for (int j = 0; j < numVariables; j++) {
-            DiscreteVariable var = (DiscreteVariable) allVariables.get(j);
-            String varName = var.getName();
-            Node varNode = graph.getNode(varName);
-            int varIndex = inputBayesIm.getNodeIndex(varNode);
-            int[] parentVarIndices = inputBayesIm.getParents(varIndex);
-            //System.out.println("graph = " + graph);
-
-            //for(int col = 0; col < ar.getNumSplits(); col++)
-            //    System.out.println("Category " + col + " = " + ar.getCategory(col));
-
-            //System.out.println("Updating estimated counts for node " + varName);
-            //This segment is for variables with no parents:
-            if (parentVarIndices.length == 0) {
-                //System.out.println("No parents");
-                for (int col = 0; col < var.getNumCategories(); col++) {
-                    estimatedCounts[j][0][col] = 0.0;
-                }
-
-                for (int i = 0; i < numCases; i++) {
-                    //System.out.println("Case " + i);
-                    //If this case has a value for ar
-                    if (mixedData.getInt(i, j) != -99) {
-                        estimatedCounts[j][0][mixedData.getInt(i, j)] += 1.0;
-                        //System.out.println("Adding 1.0 to " + varName +
-                        //        " row 0 category " + mixedData[j][i]);
-                    } else {
-                        //find marginal probability, given obs data in this case, p(v=0)
-                        Evidence evidenceThisCase = Evidence.tautology(inputBayesIm);
-                        boolean existsEvidence = false;
-
-                        //Define evidence for updating by using the values of the other vars.
-                        for (int k = 0; k < numVariables; k++) {
-                            if (k == j) {
-                                continue;
-                            }
-                            Node otherVar = allVariables.get(k);
-                            if (mixedData.getInt(i, k) == -99) {
-                                continue;
-                            }
-                            existsEvidence = true;
-                            String otherVarName = otherVar.getName();
-                            Node otherNode = graph.getNode(otherVarName);
-                            int otherIndex =
-                                    inputBayesIm.getNodeIndex(otherNode);
-
-                            evidenceThisCase.getProposition().setCategory(
-                                    otherIndex, mixedData.getInt(i, k));
-                        }
-
-                        if (!existsEvidence) {
-                            continue; //No other variable contained useful data
-                        }
-
-                        rseu.setEvidence(evidenceThisCase);
-
-                        for (int m = 0; m < var.getNumCategories(); m++) {
-                            estimatedCounts[j][0][m] +=
-                                    rseu.getMarginal(varIndex, m);
-                            //System.out.println("Adding " + p + " to " + varName +
-                            //        " row 0 category " + m);
-
-                            //find marginal probability, given obs data in this case, p(v=1)
-                            //estimatedCounts[j][0][1] += 0.5;
-                        }
-                    }
-                }
+    private void groupPatterns() {
+        int[] columns = new int[nodes.length];
 
-                //Print estimated counts:
-                //System.out.println("Estimated counts:  ");
-
-                //Print counts for each value of this variable with no parents.
-                //for(int m = 0; m < ar.getNumSplits(); m++)
-                //    System.out.print("    " + m + " " + estimatedCounts[j][0][m]);
-                //System.out.println();
-            } else {    //For variables with parents:
-                int numRows = inputBayesIm.getNumRows(varIndex);
-                for (int row = 0; row < numRows; row++) {
-                    int[] parValues =
-                            inputBayesIm.getParentValues(varIndex, row);
-                    estimatedCountsDenom[varIndex][row] = 0.0;
-                    for (int col = 0; col < var.getNumCategories(); col++) {
-                        estimatedCounts[varIndex][row][col] = 0.0;
-                    }
-
-                    for (int i = 0; i < numCases; i++) {
-                        //for a case where the parent values = parValues increment the estCount
-
-                        boolean parentMatch = true;
-
-                        for (int p = 0; p < parentVarIndices.length; p++) {
-                            if (parValues[p] !=
-                                    mixedData.getInt(i, parentVarIndices[p]) &&
-                                    mixedData.getInt(i, parentVarIndices[p]) !=
-                                            -99) {
-                                parentMatch = false;
-                                break;
-                            }
-                        }
-
-                        if (!parentMatch) {
-                            continue;  //Not a matching case; go to next.
-                        }
-
-                        boolean parentMissing = false;
-                        for (int parentVarIndice : parentVarIndices) {
-                            if (mixedData.getInt(i, parentVarIndice) == -99) {
-                                parentMissing = true;
-                                break;
-                            }
-                        }
-
-
-                        if (mixedData.getInt(i, j) != -99 && !parentMissing) {
-                            estimatedCounts[j][row][mixedData.getInt(i, j)] +=
-                                    1.0;
-                            estimatedCountsDenom[j][row] += 1.0;
-                            continue;    //Next case
-                        }
-
-                        //for a case with missing data (either ar or one of its parents)
-                        //compute the joint marginal
-                        //distribution for ar & this combination of values of its parents
-                        //and update the estCounts accordingly
-
-                        //To compute marginals create the evidence
-                        boolean existsEvidence = false;
-
-                        Evidence evidenceThisCase = Evidence.tautology(inputBayesIm);
-
-                        // "evidenceVars" not used.
-//                        List<String> evidenceVars = new LinkedList<String>();
-//                        for (int k = 0; k < numVariables; k++) {
-//                            //if(k == j) continue;
-//                            Variable otherVar = allVariables.get(k);
-//                            if (mixedData.getInt(i, k) == -99) {
-//                                continue;
-//                            }
-//                            existsEvidence = true;
-//                            String otherVarName = otherVar.getNode();
-//                            Node otherNode = graph.getNode(otherVarName);
-//                            int otherIndex = inputBayesIm.getNodeIndex(
-//                                    otherNode);
-//                            evidenceThisCase.getProposition().setCategory(
-//                                    otherIndex, mixedData.getInt(i, k));
-//                            evidenceVars.add(otherVarName);
-//                        }
-
-                        if (!existsEvidence) {
-                            continue;
-                        }
-
-                        rseu.setEvidence(evidenceThisCase);
-
-                        estimatedCountsDenom[j][row] += rseu.getJointMarginal(
-                                parentVarIndices, parValues);
+        for (int v = 0; v < nodes.length; v++) {
+            columns[v] = allVariables.indexOf(mixedData.getVariable(estimatedIm.getNode(v).getName()));
+        }
 
-                        int[] parPlusChildIndices =
-                                new int[parentVarIndices.length + 1];
-                        int[] parPlusChildValues =
-                                new int[parentVarIndices.length + 1];
+        Map<Pattern, Integer> indices = new LinkedHashMap<>();
+        List<Integer> counts = new ArrayList<>();
 
-                        parPlusChildIndices[0] = varIndex;
-                        for (int pc = 1; pc < parPlusChildIndices.length; pc++) {
-                            parPlusChildIndices[pc] = parentVarIndices[pc - 1];
-                            parPlusChildValues[pc] = parValues[pc - 1];
-                        }
+        for (int i = 0; i < mixedData.getNumRows(); i++) {
+            int[] values = new int[nodes.length];
 
-                        for (int m = 0; m < var.getNumCategories(); m++) {
-
-                            parPlusChildValues[0] = m;
-
-                            /*
-                            if(varName.equals("X1") && i == 0 ) {
-                                System.out.println("Calling getJointMarginal with parvalues");
-                                for(int k = 0; k < parPlusChildIndices.length; k++) {
-                                    int pIndex = parPlusChildIndices[k];
-                                    Node pNode = inputBayesIm.getIndex(pIndex);
-                                    String pName = pNode.getNode();
-                                    System.out.println(pName + " " + parPlusChildValues[k]);
-                                }
-                            }
-                            */
-
-                            /*
-                            if(varName.equals("X1") && i == 0 ) {
-                                System.out.println("Evidence = " + evidenceThisCase);
-                                //int[] vars = {l1Index, x1Index};
-                                Node nodex1 = inputBayesIm.getIndex("X1");
-                                int x1Index = inputBayesIm.getNodeIndex(nodex1);
-                                Node nodel1 = inputBayesIm.getIndex("L1");
-                                int l1Index = inputBayesIm.getNodeIndex(nodel1);
-
-                                int[] vars = {l1Index, x1Index};
-                                int[] vals = {0, 0};
-                                double ptest = rseu.getJointMarginal(vars, vals);
-                                System.out.println("Joint marginal (X1=0, L1 = 0) = " + p);
-                            }
-                            */
-
-                            estimatedCounts[j][row][m] += rseu.getJointMarginal(
-                                    parPlusChildIndices, parPlusChildValues);
-
-                            //System.out.println("Case " + i + " parent values ");
-                            //for (int pp = 0; pp < parentVarIndices.length; pp++) {
-                            //    Variable par = (Variable) allVariables.get(parentVarIndices[pp]);
-                            //    System.out.print("    " + par.getNode() + " " + parValues[pp]);
-                            //}
-
-                            //System.out.println();
-                            //System.out.println("Adding " + p + " to " + varName +
-                            //        " row " + row + " category " + m);
-
-                        }
-                        //}
-                    }
+            for (int v = 0; v < nodes.length; v++) {
+                values[v] = mixedData.getInt(i, columns[v]);
+            }
 
-                    //Print estimated counts:
-                    //System.out.println("Estimated counts:  ");
-                    //System.out.println("    Parent values:  ");
-                    //for (int i = 0; i < parentVarIndices.length; i++) {
-                    //    Variable par = (Variable) allVariables.get(parentVarIndices[i]);
-                    //    System.out.print("    " + par.getNode() + " " + parValues[i] + "    ");
-                    //}
-                    //System.out.println();
+            Pattern pattern = new Pattern(values);
+            Integer index = indices.get(pattern);
 
-                    //for(int m = 0; m < ar.getNumSplits(); m++)
-                    //    System.out.print("    " + m + " " + estimatedCounts[j][row][m]);
-                    //System.out.println();
+            if (index == null) {
+                indices.put(pattern, counts.size());
+                counts.add(1);
+            } else {
+                counts.set(index, counts.get(index) + 1);
+            }
+        }
 
-                }
+        this.patterns = new int[indices.size()][];
+        this.patternCounts = new int[indices.size()];
 
+        for (Map.Entry<Pattern, Integer> entry : indices.entrySet()) {
+            patterns[entry.getValue()] = entry.getKey().values;
+            patternCounts[entry.getValue()] = counts.get(entry.getValue());
+        }
+    }
 
-            }        //else
-        }      // j < numVariables
+    /**
+     * This method takes an instantiated Bayes net (BayesIm) whose graph include
+     * all the variables (observed and latent) and computes estimated counts
+     * using the data in the DataSet mixedData. </p> The counts that are
+     * estimated correspond to cells in the conditional probability tables of
+     * the Bayes net. For each pattern of values in the data, the joint
+     * probability of every completion of its missing values is computed from
+     * the given Bayes net; each completion adds the count of the pattern,
+     * times the posterior probability of the completion, to the cell of each
+     * node's table that it falls in. A pattern with no missing values simply
+     * adds its count. </p> The conditional probabilities of the estimated Bayes
+     * net are the estimated counts divided by their row totals; rows with no
+     * estimated count keep the probabilities of the given Bayes net.
+     */
+    private void expectation(BayesIm inputBayesIm) {
+        ExpectationStep step = new ExpectationStep(inputBayesIm);
+        int parallelism = ForkJoinPoolInstance.getInstance().getPool().getParallelism();
+
+        if (parallelized && parallelism > 1 && patterns.length > 1) {
+            int chunk = Math.max(patterns.length / (4 * parallelism), 1);
+            estimatedCounts = ForkJoinPoolInstance.getInstance().getPool().invoke(
+                    new ExpectationTask(step, 0, patterns.length, chunk));
+        } else {
+            estimatedCounts = step.compute(0, patterns.length);
+        }
 
         BayesIm outputBayesIm = new MlBayesIm(bayesPm);
 
-        for (int j = 0; j < nodes.length; j++) {
-
-            DiscreteVariable var = (DiscreteVariable) allVariables.get(j);
-            String varName = var.getName();
-            Node varNode = graph.getNode(varName);
-            int varIndex = inputBayesIm.getNodeIndex(varNode);
-//            int[] parentVarIndices = inputBayesIm.getParents(varIndex);
+        for (int v = 0; v < nodes.length; v++) {
+            int numCols = inputBayesIm.getNumColumns(v);
 
-            int numRows = inputBayesIm.getNumRows(j);
-            //System.out.println("Conditional probabilities for variable " + varName);
-
-            int numCols = inputBayesIm.getNumColumns(j);
-            if (numRows == 1) {
-                double sum = 0.0;
-                for (int m = 0; m < numCols; m++) {
-                    sum += estimatedCounts[j][0][m];
-                }
+            for (int row = 0; row < inputBayesIm.getNumRows(v); row++) {
+                double total = estimatedCounts[v].getRowTotal(row);
 
                 for (int m = 0; m < numCols; m++) {
-                    condProbs[j][0][m] = estimatedCounts[j][0][m] / sum;
-                    //System.out.print("  " + condProbs[j][0][m]);
-                    outputBayesIm.setProbability(varIndex, 0, m,
-                            condProbs[j][0][m]);
+                    double p = total > 0
+                            ? estimatedCounts[v].get(row, m) / total
+                            : inputBayesIm.getProbability(v, row, m);
+                    outputBayesIm.setProbability(v, row, m, p);
                 }
-                //System.out.println();
-            } else {
+            }
+        }
 
-                for (int row = 0; row < numRows; row++) {
-//                    int[] parValues = inputBayesIm.getParentValues(varIndex,
-//                            row);
-                    //int numCols = inputBayesIm.getNumColumns(j);
-
-                    //for (int p = 0; p < parentVarIndices.length; p++) {
-                    //    Variable par = (Variable) allVariables.get(parentVarIndices[p]);
-                    //    System.out.print("    " + par.getNode() + " " + parValues[p]);
-                    //}
-
-                    //double sum = 0.0;
-                    //for(int m = 0; m < numCols; m++)
-                    //    sum += estimatedCounts[j][row][m];
-
-                    for (int m = 0; m < numCols; m++) {
-                        if (estimatedCountsDenom[j][row] != 0.0) {
-                            condProbs[j][row][m] = estimatedCounts[j][row][m] /
-                                    estimatedCountsDenom[j][row];
-                        } else {
-                            condProbs[j][row][m] = Double.NaN;
-                        }
-                        //System.out.print("  " + condProbs[j][row][m]);
-                        outputBayesIm.setProbability(varIndex, row, m,
-                                condProbs[j][row][m]);
-                    }
-                    //System.out.println();
+        estimatedIm = outputBayesIm;
+    }
 
-                }
-            }
+    /**
+     * True (the default) if the expectation step should be split over the
+     * ForkJoin pool.
+     */
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
 
-        }
+    /**
+     * @return the number of distinct patterns of values (including missing
+     * values) in the data.
+     */
+    public int getNumPatterns() {
+        return patterns.length;
     }
 
     /**
@@ -836,9 +589,284 @@ public final class EmBayesEstimator {
 //        return index;
 //    }
 
-}
+    /**
+     * Computes expected counts for a range of patterns from a fixed Bayes IM.
+     * Its tables are read only, so one instance is shared by all tasks.
+     */
+    private final class ExpectationStep {
+        private final int[][] parents;
+        private final int[][] parentDims;
+        private final int[] numCategories;
+        private final double[][][] probs;
+
+        ExpectationStep(BayesIm bayesIm) {
+            int numNodes = bayesIm.getNumNodes();
+            this.parents = new int[numNodes][];
+            this.parentDims = new int[numNodes][];
+            this.numCategories = new int[numNodes];
+            this.probs = new double[numNodes][][];
+
+            for (int v = 0; v < numNodes; v++) {
+                parents[v] = bayesIm.getParents(v);
+                parentDims[v] = bayesIm.getParentDims(v);
+                numCategories[v] = bayesIm.getNumColumns(v);
+                probs[v] = new double[bayesIm.getNumRows(v)][numCategories[v]];
+
+                for (int row = 0; row < probs[v].length; row++) {
+                    for (int m = 0; m < numCategories[v]; m++) {
+                        probs[v][row][m] = bayesIm.getProbability(v, row, m);
+                    }
+                }
+            }
+        }
 
+        CountTable[] compute(int from, int to) {
+            int numNodes = parents.length;
+            CountTable[] counts = new CountTable[numNodes];
 
+            for (int v = 0; v < numNodes; v++) {
+                counts[v] = new CountTable(probs[v].length, numCategories[v]);
+            }
 
+            int[] values = new int[numNodes];
+            int[] missing = new int[numNodes];
 
+            for (int p = from; p < to; p++) {
+                int[] pattern = patterns[p];
+                double n = patternCounts[p];
+                int numMissing = 0;
 
+                for (int v = 0; v < numNodes; v++) {
+                    values[v] = pattern[v];
+
+                    if (values[v] == DiscreteVariable.MISSING_VALUE) {
+                        missing[numMissing++] = v;
+                        values[v] = 0;
+                    }
+                }
+
+                if (numMissing == 0) {
+                    for (int v = 0; v < numNodes; v++) {
+                        counts[v].add(rowIndex(v, values), values[v], n);
+                    }
+
+                    continue;
+                }
+
+                // Two passes over the completions, the first for the normalizing total, so that no weight
+                // need be stored for each of them.
+                double total = 0.0;
+
+                do {
+                    total += jointProbability(values);
+                } while (nextCompletion(values, missing, numMissing));
+
+                // The observed values are impossible under the current model.
+                if (!(total > 0)) {
+                    continue;
+                }
+
+                do {
+                    double w = n * jointProbability(values) / total;
+
+                    if (w > 0) {
+                        for (int v = 0; v < numNodes; v++) {
+                            counts[v].add(rowIndex(v, values), values[v], w);
+                        }
+                    }
+                } while (nextCompletion(values, missing, numMissing));
+            }
+
+            return counts;
+        }
+
+        private double jointProbability(int[] values) {
+            double p = 1.0;
+
+            for (int v = 0; v < parents.length && p > 0; v++) {
+                p *= probs[v][rowIndex(v, values)][values[v]];
+            }
+
+            return p;
+        }
+
+        /**
+         * Same as BayesIm.getRowIndex, for the values of the parents of v in
+         * 'values'.
+         */
+        private int rowIndex(int v, int[] values) {
+            int[] _parents = parents[v];
+            int[] dims = parentDims[v];
+            int row = 0;
+
+            for (int i = 0; i < _parents.length; i++) {
+                row *= dims[i];
+                row += values[_parents[i]];
+            }
+
+            return row;
+        }
+
+        /**
+         * Advances the missing values to the next completion, odometer style.
+         *
+         * @return false, with the missing values back at 0, once all completions
+         * have been visited.
+         */
+        private boolean nextCompletion(int[] values, int[] missing, int numMissing) {
+            for (int i = numMissing - 1; i >= 0; i--) {
+                int v = missing[i];
+
+                if (++values[v] < numCategories[v]) {
+                    return true;
+                }
+
+                values[v] = 0;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Splits the patterns over the pool; the counts of the two halves are added.
+     */
+    private final class ExpectationTask extends RecursiveTask<CountTable[]> {
+        private final ExpectationStep step;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        ExpectationTask(ExpectationStep step, int from, int to, int chunk) {
+            this.step = step;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected CountTable[] compute() {
+            if (to - from <= chunk) {
+                return step.compute(from, to);
+            }
+
+            int mid = (from + to) / 2;
+            ExpectationTask left = new ExpectationTask(step, from, mid, chunk);
+            ExpectationTask right = new ExpectationTask(step, mid, to, chunk);
+            left.fork();
+            CountTable[] counts = right.compute();
+            CountTable[] leftCounts = left.join();
+
+            for (int v = 0; v < counts.length; v++) {
+                leftCounts[v].addAll(counts[v]);
+            }
+
+            return leftCounts;
+        }
+    }
+
+    /**
+     * Expected counts for one node, by row of its conditional probability table
+     * and value. Tables with more than SPARSE_CELLS cells keep only the rows that
+     * have been counted, which for nodes with many parents are usually few.
+     */
+    private static final class CountTable {
+        private final int numCols;
+        private final double[][] dense;
+        private final Map<Integer, double[]> sparse;
+
+        CountTable(int numRows, int numCols) {
+            this.numCols = numCols;
+
+            if ((long) numRows * numCols > SPARSE_CELLS) {
+                this.dense = null;
+                this.sparse = new HashMap<>();
+            } else {
+                this.dense = new double[numRows][numCols];
+                this.sparse = null;
+            }
+        }
+
+        void add(int row, int col, double count) {
+            getOrCreateRow(row)[col] += count;
+        }
+
+        void addAll(CountTable other) {
+            if (other.dense != null) {
+                for (int row = 0; row < other.dense.length; row++) {
+                    addRow(row, other.dense[row]);
+                }
+            } else {
+                for (Map.Entry<Integer, double[]> entry : other.sparse.entrySet()) {
+                    addRow(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        double get(int row, int col) {
+            double[] counts = getRow(row);
+            return counts == null ? 0.0 : counts[col];
+        }
+
+        double getRowTotal(int row) {
+            double[] counts = getRow(row);
+            double total = 0.0;
+
+            if (counts != null) {
+                for (double count : counts) {
+                    total += count;
+                }
+            }
+
+            return total;
+        }
+
+        private void addRow(int row, double[] counts) {
+            double[] _counts = getOrCreateRow(row);
+
+            for (int col = 0; col < numCols; col++) {
+                _counts[col] += counts[col];
+            }
+        }
+
+        private double[] getRow(int row) {
+            return dense != null ? dense[row] : sparse.get(row);
+        }
+
+        private double[] getOrCreateRow(int row) {
+            if (dense != null) {
+                return dense[row];
+            }
+
+            double[] counts = sparse.get(row);
+
+            if (counts == null) {
+                counts = new double[numCols];
+                sparse.put(row, counts);
+            }
+
+            return counts;
+        }
+    }
+
+    /**
+     * A row of values, hashed by content.
+     */
+    private static final class Pattern {
+        private final int[] values;
+        private final int hashCode;
+
+        Pattern(int[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Pattern && Arrays.equals(values, ((Pattern) o).values);
+        }
+    }
+}
@@ -33,8 +33,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.text.NumberFormat;
 import java.util.*;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RecursiveAction;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.pow;
@@ -938,7 +937,7 @@ public final class MlBayesIm implements BayesIm {
             return simulateTimeSeries(sampleSize);
         }
 
-        return simulateDataHelper(sampleSize, latentDataSaved, tiers);
+        return simulateDataHelper(sampleSize, latentDataSaved, tiers, null);
     }
 
     public DataSet simulateData(int sampleSize, boolean latentDataSaved) {
@@ -955,7 +954,28 @@ public final class MlBayesIm implements BayesIm {
             tiers[i] = getNodeIndex(tierOrdering.get(i));
         }
 
-        return simulateDataHelper(sampleSize, latentDataSaved, tiers);
+        return simulateDataHelper(sampleSize, latentDataSaved, tiers, null);
+    }
+
+    /**
+     * Simulates a sample with the given sample size in parallel, drawing from child streams of the given stream, so
+     * that the same stream (with the same seed) always gives the same sample.
+     */
+    public DataSet simulateData(int sampleSize, boolean latentDataSaved, RandomStream stream) {
+        if (getBayesPm().getDag().isTimeLagModel()) {
+            return simulateTimeSeries(sampleSize);
+        }
+
+        // Get a tier ordering and convert it to an int array.
+        Graph graph = getBayesPm().getDag();
+        List<Node> tierOrdering = graph.getCausalOrdering();
+        int[] tiers = new int[tierOrdering.size()];
+
+        for (int i = 0; i < tierOrdering.size(); i++) {
+            tiers[i] = getNodeIndex(tierOrdering.get(i));
+        }
+
+        return simulateDataHelper(sampleSize, latentDataSaved, tiers, stream);
     }
 
     public DataSet simulateData(DataSet dataSet, boolean latentDataSaved, int[] tiers) {
@@ -1077,7 +1097,7 @@ public final class MlBayesIm implements BayesIm {
      * @param sampleSize the sample size.
      * @return the simulated sample as a DataSet.
      */
-    private DataSet simulateDataHelper(int sampleSize, boolean latentDataSaved, int[] tiers) {
+    private DataSet simulateDataHelper(int sampleSize, boolean latentDataSaved, int[] tiers, RandomStream stream) {
         int numMeasured = 0;
         int[] map = new int[nodes.length];
         List<Node> variables = new LinkedList<>();
@@ -1104,7 +1124,7 @@ public final class MlBayesIm implements BayesIm {
 
 
         DataSet dataSet = new BoxDataSet(new VerticalIntDataBox(sampleSize, variables.size()), variables);
-        constructSample(sampleSize, dataSet, map, tiers);
+        constructSample(sampleSize, dataSet, map, tiers, stream);
 
         if (!latentDataSaved) {
             dataSet = DataUtils.restrictToMeasured(dataSet);
@@ -1156,7 +1176,7 @@ public final class MlBayesIm implements BayesIm {
             dataSet.changeVariable(node, _node);
         }
 
-        constructSample(sampleSize, dataSet, map, tiers);
+        constructSample(sampleSize, dataSet, map, tiers, null);
 
         if (latentDataSaved) {
             return dataSet;
@@ -1165,108 +1185,172 @@ public final class MlBayesIm implements BayesIm {
         }
     }
 
-    final long[] seed = new long[]{new Date().getTime()};
+    /**
+     * The number of rows simulated from each child stream when simulating in parallel.
+     */
+    private static final int ROWS_PER_STREAM = 4096;
 
-    private void constructSample(int sampleSize, DataSet dataSet, int[] map, int[] tiers) {
+    /**
+     * Constructs the sample, drawing from RandomUtil if the stream is null, or else in parallel, giving each block of
+     * rows a child stream of its own, so that the sample depends only on the stream. In parallel, each row of each
+     * conditional probability table is first compiled into an alias table, and each block is simulated a column (that
+     * is, a node, in tier order) at a time, directly into the columns of the data.
+     */
+    private void constructSample(int sampleSize, final DataSet dataSet, final int[] map, final int[] tiers,
+                                 final RandomStream stream) {
+        if (stream != null) {
+            final AliasTable[][] tables = compileAliasTables();
+            final int[][] columns = getColumns(dataSet, map);
+
+            class SimulationTask extends RecursiveAction {
+                private final int from;
+                private final int to;
+
+                public SimulationTask(int from, int to) {
+                    this.from = from;
+                    this.to = to;
+                }
 
-//        //Do the simulation.
-//        class SimulationTask extends RecursiveTask<Boolean> {
-//            private int chunk;
-//            private int from;
-//            private int to;
-//            private int[] tiers;
-//            private DataSet dataSet;
-//            private int[] map;
-//
-//            public SimulationTask(int chunk, int from, int to, int[] tiers, DataSet dataSet, int[] map) {
-//                this.chunk = chunk;
-//                this.from = from;
-//                this.to = to;
-//                this.tiers = tiers;
-//                this.dataSet = dataSet;
-//                this.map = map;
-//            }
-//
-//            @Override
-//            protected Boolean compute() {
-//                if (to - from <= chunk) {
-//                    RandomGenerator randomGenerator = new Well1024a(++seed[0]);
-//
-//                    for (int row = from; row < to; row++) {
-//                        for (int t : tiers) {
-//                            int[] parentValues = new int[parents[t].length];
-//
-//                            for (int k = 0; k < parentValues.length; k++) {
-//                                parentValues[k] = dataSet.getInt(row, parents[t][k]);
-//                            }
-//
-//                            int rowIndex = getRowIndex(t, parentValues);
-//                            double sum = 0.0;
-//                            double r;
-//
-//                            r = randomGenerator.nextDouble();
-//
-//                            for (int k = 0; k < getNumColumns(t); k++) {
-//                                double probability = getProbability(t, rowIndex, k);
-//                                sum += probability;
-//
-//                                if (sum >= r) {
-//                                    dataSet.setInt(row, map[t], k);
-//                                    break;
-//                                }
-//                            }
-//                        }
-//                    }
-//
-//                    return true;
-//                } else {
-//                    int mid = (to + from) / 2;
-//                    SimulationTask left = new SimulationTask(chunk, from, mid, tiers, dataSet, map);
-//                    SimulationTask right = new SimulationTask(chunk, mid, to, tiers, dataSet, map);
-//
-//                    left.fork();
-//                    right.compute();
-//                    left.join();
-//
-//                    return true;
-//                }
-//            }
-//        }
-//
-//        int chunk = 25;
-//
-//        ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
-//        SimulationTask task = new SimulationTask(chunk, 0, sampleSize, tiers, dataSet, map);
-//        pool.invoke(task);
+                @Override
+                protected void compute() {
+                    if (to - from == 1) {
+                        RandomStream random = stream.split(from);
+                        int last = Math.min(dataSet.getNumRows(), (from + 1) * ROWS_PER_STREAM);
+                        simulateBlock(from * ROWS_PER_STREAM, last, columns, tiers, tables, random);
+                    } else {
+                        int mid = (to + from) / 2;
+                        invokeAll(new SimulationTask(from, mid), new SimulationTask(mid, to));
+                    }
+                }
+            }
+
+            int numBlocks = (sampleSize + ROWS_PER_STREAM - 1) / ROWS_PER_STREAM;
 
+            if (numBlocks > 0) {
+                ForkJoinPoolInstance.getInstance().getPool().invoke(new SimulationTask(0, numBlocks));
+            }
+
+            if (!isVerticalIntData(dataSet)) {
+                for (int t : tiers) {
+                    for (int i = 0; i < sampleSize; i++) {
+                        dataSet.setInt(i, map[t], columns[t][i]);
+                    }
+                }
+            }
+
+            return;
+        }
 
         // Construct the sample.
+        RandomGenerator random = RandomUtil.getInstance().getRandomGenerator();
+
         for (int i = 0; i < sampleSize; i++) {
-            for (int t : tiers) {
-                int[] parentValues = new int[parents[t].length];
+            simulateRow(i, dataSet, map, tiers, random);
+        }
 
-                for (int k = 0; k < parentValues.length; k++) {
-                    parentValues[k] = dataSet.getInt(i, parents[t][k]);
+//        System.out.println(dataSet);
+    }
+
+    /**
+     * Simulates rows first to last - 1 into the given columns, one node at a time.
+     */
+    private void simulateBlock(int first, int last, int[][] columns, int[] tiers, AliasTable[][] tables,
+                               RandomGenerator random) {
+        for (int t : tiers) {
+            int[] column = columns[t];
+            int[] _parents = parents[t];
+            int[] dims = parentDims[t];
+            AliasTable[] _tables = tables[t];
+
+            for (int i = first; i < last; i++) {
+                int rowIndex = 0;
+
+                for (int k = 0; k < _parents.length; k++) {
+                    rowIndex *= dims[k];
+                    rowIndex += columns[_parents[k]][i];
                 }
 
-                int rowIndex = getRowIndex(t, parentValues);
-                double sum = 0.0;
+                AliasTable table = _tables[rowIndex];
 
-                double r = RandomUtil.getInstance().nextDouble();
+                if (table == null) {
+                    throw new IllegalStateException("Some probability " +
+                            "values in the BayesIm are not filled in; " +
+                            "cannot simulate data.");
+                }
 
-                for (int k = 0; k < getNumColumns(t); k++) {
-                    double probability = getProbability(t, rowIndex, k);
-                    sum += probability;
+                column[i] = table.sample(random);
+            }
+        }
+    }
 
-                    if (sum >= r) {
-                        dataSet.setInt(i, map[t], k);
-                        break;
-                    }
+    /**
+     * @return an alias table for each row of each node's conditional probability table, or null for rows that are not
+     * proper distributions.
+     */
+    private AliasTable[][] compileAliasTables() {
+        AliasTable[][] tables = new AliasTable[nodes.length][];
+
+        for (int t = 0; t < nodes.length; t++) {
+            tables[t] = new AliasTable[probs[t].length];
+
+            for (int row = 0; row < probs[t].length; row++) {
+                try {
+                    tables[t][row] = new AliasTable(probs[t][row]);
+                } catch (IllegalArgumentException e) {
+                    tables[t][row] = null;
                 }
             }
         }
 
-//        System.out.println(dataSet);
+        return tables;
+    }
+
+    private static boolean isVerticalIntData(DataSet dataSet) {
+        return dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof VerticalIntDataBox;
+    }
+
+    /**
+     * @return the columns of the data, by node, if the data is stored in int columns; otherwise, new columns, which
+     * must be copied back into the data once simulated.
+     */
+    private int[][] getColumns(DataSet dataSet, int[] map) {
+        if (isVerticalIntData(dataSet)) {
+            int[][] vectors = ((VerticalIntDataBox) ((BoxDataSet) dataSet).getDataBox()).getVariableVectors();
+            int[][] columns = new int[nodes.length][];
+
+            for (int t = 0; t < nodes.length; t++) {
+                columns[t] = vectors[map[t]];
+            }
+
+            return columns;
+        }
+
+        return new int[nodes.length][dataSet.getNumRows()];
+    }
+
+    private void simulateRow(int i, DataSet dataSet, int[] map, int[] tiers, RandomGenerator random) {
+        for (int t : tiers) {
+            int[] parentValues = new int[parents[t].length];
+
+            for (int k = 0; k < parentValues.length; k++) {
+                parentValues[k] = dataSet.getInt(i, parents[t][k]);
+            }
+
+            int rowIndex = getRowIndex(t, parentValues);
+            double sum = 0.0;
+
+            double r = random.nextDouble();
+
+            for (int k = 0; k < getNumColumns(t); k++) {
+                double probability = getProbability(t, rowIndex, k);
+                sum += probability;
+
+                if (sum >= r) {
+                    dataSet.setInt(i, map[t], k);
+                    break;
+                }
+            }
+        }
     }
 
     public boolean equals(Object o) {
@@ -0,0 +1,893 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.AliasTable;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.RandomStream;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates approximate updated marginals for a Bayes net by sampling, either by likelihood weighting or by Gibbs
+ * sampling, in parallel. Marginals for all nodes are accumulated at once, in batches; sampling stops once the 95%
+ * confidence interval for every marginal, estimated from the spread of the batch estimates (the method of batch
+ * means), is no wider than the given interval width, or once the maximum number of samples has been drawn.
+ * <p>
+ * For likelihood weighting, each node is sampled in causal order from its conditional distribution restricted to the
+ * categories the evidence allows, and the sample is weighted by the probability of that restriction (except for
+ * manipulated nodes, which are set uniformly among the categories allowed). For Gibbs sampling, each batch continues
+ * one of a fixed number of chains, each node being resampled in turn, among the categories the evidence allows, from
+ * its distribution given its Markov blanket. Gibbs sampling may mix poorly if the Bayes net has probabilities of zero.
+ * <p>
+ * After each round of batches, a "marginals" property change is fired whose new value is the current estimate of
+ * the marginals, indexed by node and category, for editors that want to show the estimates as they improve. Results
+ * are reproducible for a given seed of RandomUtil whether or not sampling is parallelized.
+ *
+ * @see ApproximateUpdater
+ */
+public final class SamplingUpdater implements ManipulatingBayesUpdater {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The sampling methods.
+     */
+    public enum Method {LIKELIHOOD_WEIGHTING, GIBBS}
+
+    /**
+     * The number of batches sampled in each round, whether or not sampling is parallelized, so that results depend
+     * only on the seed.
+     */
+    private static final int BATCHES_PER_ROUND = 16;
+
+    /**
+     * The minimum number of batches with positive weight from which intervals are estimated.
+     */
+    private static final int MIN_BATCHES = 2 * BATCHES_PER_ROUND;
+
+    /**
+     * The number of tries for each Gibbs chain to find a starting point consistent with the evidence.
+     */
+    private static final int MAX_START_TRIES = 100000;
+
+    /**
+     * The IM which this updater modifies.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm bayesIm;
+
+    /**
+     * Stores evidence for all variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Evidence evidence;
+
+    /**
+     * This is the source BayesIm after manipulation, with the conditional probability tables of the source BayesIm
+     * where they still apply; all samples are taken from this.
+     *
+     * @serial
+     */
+    private BayesIm manipulatedBayesIm;
+
+    /**
+     * The sampling method.
+     *
+     * @serial Cannot be null.
+     */
+    private Method method = Method.LIKELIHOOD_WEIGHTING;
+
+    /**
+     * The target width of the 95% confidence interval of each marginal.
+     *
+     * @serial Range (0, 1].
+     */
+    private double intervalWidth = 0.02;
+
+    /**
+     * The maximum number of samples (for Gibbs sampling, sweeps) drawn.
+     *
+     * @serial Range > 0.
+     */
+    private long maxSamples = 1000000;
+
+    /**
+     * The number of samples in each batch.
+     *
+     * @serial Range > 0.
+     */
+    private int batchSize = 500;
+
+    /**
+     * The number of sweeps discarded at the start of each Gibbs chain.
+     *
+     * @serial Range >= 0.
+     */
+    private int burnIn = 500;
+
+    /**
+     * True if batches are sampled in parallel.
+     *
+     * @serial
+     */
+    private boolean parallelized = true;
+
+    /**
+     * The estimated marginals, indexed by node and category, or null if they have not been estimated for the current
+     * evidence.
+     */
+    private transient double[][] marginals;
+
+    /**
+     * The widths of the 95% confidence intervals of the marginals.
+     */
+    private transient double[][] widths;
+
+    /**
+     * The number of samples drawn for the current estimates.
+     */
+    private transient long numSamples;
+
+    /**
+     * Notifies listeners of intermediate estimates.
+     */
+    private transient PropertyChangeSupport pcs;
+
+    //==============================CONSTRUCTORS===========================//
+
+    public SamplingUpdater(BayesIm bayesIm) {
+        this(bayesIm, Evidence.tautology(bayesIm));
+    }
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public SamplingUpdater(BayesIm bayesIm, Evidence evidence) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(evidence);
+    }
+
+    /**
+     * @return a simple exemplar of this class to test serialization.
+     */
+    public static SamplingUpdater serializableInstance() {
+        return new SamplingUpdater(MlBayesIm.serializableInstance());
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * @return the Bayes instantiated model that is being updated.
+     */
+    public BayesIm getBayesIm() {
+        return bayesIm;
+    }
+
+    /**
+     * @return the Bayes instantiated model after manipulations have been
+     * applied.
+     */
+    public BayesIm getManipulatedBayesIm() {
+        return this.manipulatedBayesIm;
+    }
+
+    /**
+     * @return the graph for getManipulatedBayesIm().
+     */
+    public Graph getManipulatedGraph() {
+        return this.manipulatedBayesIm.getDag();
+    }
+
+    /**
+     * @return the updated Bayes IM, or null if there is no updated Bayes IM.
+     */
+    public BayesIm getUpdatedBayesIm() {
+        return null;
+    }
+
+    /**
+     * @return a copy of the getModel evidence.
+     */
+    public Evidence getEvidence() {
+        return new Evidence(this.evidence);
+    }
+
+    /**
+     * Sets new evidence for the next update operation.
+     */
+    public final void setEvidence(Evidence evidence) {
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence.isIncompatibleWith(bayesIm)) {
+            throw new IllegalArgumentException("The variables for the given " +
+                    "evidence must be compatible with the Bayes IM being updated.");
+        }
+
+        this.evidence = new Evidence(evidence);
+
+        Graph graph = bayesIm.getBayesPm().getDag();
+        Dag manipulatedGraph = createManipulatedGraph(graph);
+        BayesPm manipulatedBayesPm = new BayesPm(manipulatedGraph, bayesIm.getBayesPm());
+        this.manipulatedBayesIm = new MlBayesIm(manipulatedBayesPm, bayesIm, MlBayesIm.MANUAL);
+
+        this.marginals = null;
+    }
+
+    /**
+     * @return the estimated marginal probability of the given category of the given variable given the evidence, or
+     * NaN if no sample drawn was consistent with the evidence.
+     */
+    public double getMarginal(int variable, int category) {
+        doUpdate();
+        return marginals[variable][category];
+    }
+
+    /**
+     * @return the width of the 95% confidence interval of the given marginal, or NaN if it could not be estimated.
+     */
+    public double getIntervalWidth(int variable, int category) {
+        doUpdate();
+        return widths[variable][category];
+    }
+
+    /**
+     * @return the number of samples (for Gibbs sampling, sweeps) drawn for the current estimates.
+     */
+    public long getNumSamples() {
+        doUpdate();
+        return numSamples;
+    }
+
+    public boolean isJointMarginalSupported() {
+        return false;
+    }
+
+    /**
+     * @return the joint marginal.
+     */
+    public double getJointMarginal(int[] variables, int[] values) {
+        throw new UnsupportedOperationException();
+    }
+
+    public double[] calculatePriorMarginals(int nodeIndex) {
+        Evidence evidence = getEvidence();
+        setEvidence(Evidence.tautology(evidence.getVariableSource()));
+
+        double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+        for (int i = 0; i < getBayesIm().getNumColumns(nodeIndex); i++) {
+            marginals[i] = getMarginal(nodeIndex, i);
+        }
+
+        setEvidence(evidence);
+        return marginals;
+    }
+
+    public double[] calculateUpdatedMarginals(int nodeIndex) {
+        double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+        for (int i = 0; i < getBayesIm().getNumColumns(nodeIndex); i++) {
+            marginals[i] = getMarginal(nodeIndex, i);
+        }
+
+        return marginals;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public void setMethod(Method method) {
+        if (method == null) throw new NullPointerException();
+        this.method = method;
+        this.marginals = null;
+    }
+
+    /**
+     * @return the target width of the 95% confidence interval of each marginal.
+     */
+    public double getIntervalWidth() {
+        return intervalWidth;
+    }
+
+    /**
+     * @param intervalWidth The target width of the 95% confidence interval of each marginal, in (0, 1].
+     */
+    public void setIntervalWidth(double intervalWidth) {
+        if (!(intervalWidth > 0 && intervalWidth <= 1)) {
+            throw new IllegalArgumentException("Interval width must be in (0, 1]: " + intervalWidth);
+        }
+
+        this.intervalWidth = intervalWidth;
+        this.marginals = null;
+    }
+
+    public long getMaxSamples() {
+        return maxSamples;
+    }
+
+    /**
+     * @param maxSamples The maximum number of samples (for Gibbs sampling, sweeps) drawn, whether or not the target
+     *                   interval width has been reached.
+     */
+    public void setMaxSamples(long maxSamples) {
+        if (maxSamples < 1) throw new IllegalArgumentException("Max samples must be positive: " + maxSamples);
+        this.maxSamples = maxSamples;
+        this.marginals = null;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.batchSize = batchSize;
+        this.marginals = null;
+    }
+
+    public int getBurnIn() {
+        return burnIn;
+    }
+
+    /**
+     * @param burnIn The number of sweeps discarded at the start of each Gibbs chain.
+     */
+    public void setBurnIn(int burnIn) {
+        if (burnIn < 0) throw new IllegalArgumentException("Burn-in must be non-negative: " + burnIn);
+        this.burnIn = burnIn;
+        this.marginals = null;
+    }
+
+    public boolean isParallelized() {
+        return parallelized;
+    }
+
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
+
+    /**
+     * Adds a listener for the "marginals" property, fired with the current estimates after each round of batches.
+     */
+    public void addPropertyChangeListener(PropertyChangeListener l) {
+        getPcs().addPropertyChangeListener(l);
+    }
+
+    public void removePropertyChangeListener(PropertyChangeListener l) {
+        getPcs().removePropertyChangeListener(l);
+    }
+
+    /**
+     * Prints out the most recent marginal.
+     */
+    public String toString() {
+        return "Sampling updater, evidence = " + evidence;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private void doUpdate() {
+        if (marginals != null) {
+            return;
+        }
+
+        final Network network = new Network(manipulatedBayesIm, evidence);
+        RandomStream root = RandomStream.fromRandomUtil();
+        int numNodes = network.cpts.length;
+
+        final Chain[] chains = new Chain[BATCHES_PER_ROUND];
+
+        if (method == Method.GIBBS) {
+            for (int b = 0; b < BATCHES_PER_ROUND; b++) {
+                chains[b] = new Chain(network, root.split(b));
+            }
+        }
+
+        double[][] pooled = new double[numNodes][];
+        double[][] sums = new double[numNodes][];
+        double[][] sumSquares = new double[numNodes][];
+
+        for (int n = 0; n < numNodes; n++) {
+            pooled[n] = new double[network.cpts[n][0].length];
+            sums[n] = new double[pooled[n].length];
+            sumSquares[n] = new double[pooled[n].length];
+        }
+
+        double totalWeight = 0.0;
+        int numBatches = 0;
+        long numSamples = 0;
+        double[][] estimates = new double[numNodes][];
+        double[][] widths = new double[numNodes][];
+
+        for (int round = 0; numSamples < maxSamples; round++) {
+            final Batch[] batches = new Batch[BATCHES_PER_ROUND];
+            final int size = (int) Math.min(batchSize, (maxSamples - numSamples + BATCHES_PER_ROUND - 1)
+                    / BATCHES_PER_ROUND);
+            final RandomStream roundStream = root.split(BATCHES_PER_ROUND + round);
+
+            class BatchTask extends RecursiveAction {
+                private final int from;
+                private final int to;
+
+                public BatchTask(int from, int to) {
+                    this.from = from;
+                    this.to = to;
+                }
+
+                @Override
+                protected void compute() {
+                    if (to - from == 1) {
+                        batches[from] = method == Method.GIBBS
+                                ? chains[from].sample(size, burnIn)
+                                : network.weightedSample(size, roundStream.split(from));
+                    } else {
+                        int mid = (to + from) / 2;
+                        invokeAll(new BatchTask(from, mid), new BatchTask(mid, to));
+                    }
+                }
+            }
+
+            if (parallelized) {
+                ForkJoinPoolInstance.getInstance().getPool().invoke(new BatchTask(0, BATCHES_PER_ROUND));
+            } else {
+                for (int b = 0; b < BATCHES_PER_ROUND; b++) {
+                    new BatchTask(b, b + 1).compute();
+                }
+            }
+
+            // Batches are merged in order so that the estimates don't depend on scheduling.
+            for (Batch batch : batches) {
+                numSamples += size;
+
+                if (!(batch.weight > 0)) continue;
+
+                numBatches++;
+                totalWeight += batch.weight;
+
+                for (int n = 0; n < numNodes; n++) {
+                    for (int k = 0; k < pooled[n].length; k++) {
+                        double count = batch.counts[network.offsets[n] + k];
+                        double p = count / batch.weight;
+                        pooled[n][k] += count;
+                        sums[n][k] += p;
+                        sumSquares[n][k] += p * p;
+                    }
+                }
+            }
+
+            double maxWidth = 0.0;
+
+            for (int n = 0; n < numNodes; n++) {
+                estimates[n] = new double[pooled[n].length];
+                widths[n] = new double[pooled[n].length];
+
+                for (int k = 0; k < pooled[n].length; k++) {
+                    estimates[n][k] = pooled[n][k] / totalWeight;
+
+                    if (numBatches > 1) {
+                        double mean = sums[n][k] / numBatches;
+                        double variance = (sumSquares[n][k] - numBatches * mean * mean) / (numBatches - 1);
+                        widths[n][k] = 2 * 1.96 * Math.sqrt(Math.max(variance, 0.0) / numBatches);
+                    } else {
+                        widths[n][k] = Double.NaN;
+                    }
+
+                    maxWidth = Math.max(maxWidth, widths[n][k]);
+                }
+            }
+
+            getPcs().firePropertyChange("marginals", null, copy(estimates));
+
+            if (numBatches >= MIN_BATCHES && maxWidth <= intervalWidth) {
+                break;
+            }
+        }
+
+        this.widths = widths;
+        this.numSamples = numSamples;
+        this.marginals = estimates;
+    }
+
+    private static double[][] copy(double[][] arr) {
+        double[][] copy = new double[arr.length][];
+
+        for (int i = 0; i < arr.length; i++) {
+            copy[i] = arr[i].clone();
+        }
+
+        return copy;
+    }
+
+    private Dag createManipulatedGraph(Graph graph) {
+        Dag updatedGraph = new Dag(graph);
+
+        // alters graph for manipulated evidenceItems
+        for (int i = 0; i < evidence.getNumNodes(); ++i) {
+            if (evidence.isManipulated(i)) {
+                Node node = evidence.getNode(i);
+                node = updatedGraph.getNode(node.getName());
+                Collection<Node> parents = updatedGraph.getParents(node);
+
+                for (Node parent1 : parents) {
+                    updatedGraph.removeEdge(node, parent1);
+                }
+            }
+        }
+
+        return updatedGraph;
+    }
+
+    private PropertyChangeSupport getPcs() {
+        if (pcs == null) {
+            pcs = new PropertyChangeSupport(this);
+        }
+
+        return pcs;
+    }
+
+    /**
+     * Weighted counts of the categories of each node, over one batch, stored consecutively by node.
+     */
+    private static class Batch {
+        private final int[] offsets;
+        private final double[] counts;
+        private double weight;
+
+        private Batch(Network network) {
+            offsets = network.offsets;
+            counts = new double[offsets[offsets.length - 1]];
+        }
+
+        private void add(int[] state, double weight) {
+            for (int n = 0; n < state.length; n++) {
+                counts[offsets[n] + state[n]] += weight;
+            }
+
+            this.weight += weight;
+        }
+    }
+
+    /**
+     * The manipulated Bayes net and evidence, compiled into arrays that may be shared by threads.
+     */
+    private static class Network {
+
+        /**
+         * Conditional probability tables, indexed by node, row and category.
+         */
+        private final double[][][] cpts;
+        private final int[][] parents;
+        private final int[][] parentDims;
+        private final int[][] children;
+
+        /**
+         * The index of the first category of each node in the counts of a batch, followed by the number of counts.
+         */
+        private final int[] offsets;
+
+        /**
+         * Node indices in causal order.
+         */
+        private final int[] tiers;
+        private final boolean[][] allowed;
+        private final boolean[] manipulated;
+
+        /**
+         * For each node and row, an alias table for the categories the evidence allows, or null if they have
+         * probability zero; and the probability of the allowed categories.
+         */
+        private final AliasTable[][] tables;
+        private final double[][] masses;
+
+        private Network(BayesIm im, Evidence evidence) {
+            int numNodes = im.getNumNodes();
+            Proposition proposition = evidence.getProposition();
+
+            cpts = new double[numNodes][][];
+            parents = new int[numNodes][];
+            parentDims = new int[numNodes][];
+            allowed = new boolean[numNodes][];
+            manipulated = new boolean[numNodes];
+            tables = new AliasTable[numNodes][];
+            masses = new double[numNodes][];
+
+            List<List<Integer>> _children = new ArrayList<>();
+
+            for (int n = 0; n < numNodes; n++) {
+                _children.add(new ArrayList<Integer>());
+            }
+
+            for (int n = 0; n < numNodes; n++) {
+                parents[n] = im.getParents(n).clone();
+                parentDims[n] = im.getParentDims(n).clone();
+                manipulated[n] = evidence.isManipulated(n);
+
+                for (int parent : parents[n]) {
+                    _children.get(parent).add(n);
+                }
+
+                allowed[n] = new boolean[im.getNumColumns(n)];
+
+                for (int k = 0; k < allowed[n].length; k++) {
+                    allowed[n][k] = proposition.isAllowed(n, k);
+                }
+
+                cpts[n] = new double[im.getNumRows(n)][im.getNumColumns(n)];
+                tables[n] = new AliasTable[im.getNumRows(n)];
+                masses[n] = new double[im.getNumRows(n)];
+
+                for (int row = 0; row < im.getNumRows(n); row++) {
+                    double[] restricted = new double[im.getNumColumns(n)];
+
+                    for (int k = 0; k < restricted.length; k++) {
+
+                        // Manipulated nodes have no parents and are set uniformly among the categories allowed.
+                        double probability = manipulated[n] ? 1.0 / restricted.length : im.getProbability(n, row, k);
+
+                        if (Double.isNaN(probability)) {
+                            throw new IllegalStateException("Some probability " +
+                                    "values in the BayesIm are not filled in; " +
+                                    "cannot simulate data to do approximate updating.");
+                        }
+
+                        cpts[n][row][k] = probability;
+
+                        if (allowed[n][k]) {
+                            restricted[k] = probability;
+                            masses[n][row] += probability;
+                        }
+                    }
+
+                    if (masses[n][row] > 0) {
+                        tables[n][row] = new AliasTable(restricted);
+                    }
+                }
+            }
+
+            children = new int[numNodes][];
+            offsets = new int[numNodes + 1];
+
+            for (int n = 0; n < numNodes; n++) {
+                children[n] = new int[_children.get(n).size()];
+
+                for (int c = 0; c < children[n].length; c++) {
+                    children[n][c] = _children.get(n).get(c);
+                }
+
+                offsets[n + 1] = offsets[n] + allowed[n].length;
+            }
+
+            List<Node> ordering = im.getDag().getCausalOrdering();
+            tiers = new int[ordering.size()];
+
+            for (int i = 0; i < ordering.size(); i++) {
+                tiers[i] = im.getNodeIndex(ordering.get(i));
+            }
+        }
+
+        private int rowIndex(int node, int[] state) {
+            int[] _parents = parents[node];
+            int[] dims = parentDims[node];
+            int rowIndex = 0;
+
+            for (int k = 0; k < _parents.length; k++) {
+                rowIndex *= dims[k];
+                rowIndex += state[_parents[k]];
+            }
+
+            return rowIndex;
+        }
+
+        /**
+         * Draws one point, in causal order, consistent with the evidence into the given state.
+         *
+         * @return the likelihood weight of the point, or zero if the evidence couldn't be satisfied.
+         */
+        private double weightedPoint(int[] state, RandomStream random) {
+            double weight = 1.0;
+
+            for (int n : tiers) {
+                int row = rowIndex(n, state);
+                AliasTable table = tables[n][row];
+
+                if (table == null) {
+                    return 0.0;
+                }
+
+                state[n] = table.sample(random);
+
+                if (!manipulated[n]) {
+                    weight *= masses[n][row];
+                }
+            }
+
+            return weight;
+        }
+
+        private Batch weightedSample(int size, RandomStream random) {
+            Batch batch = new Batch(this);
+            int[] state = new int[cpts.length];
+
+            for (int i = 0; i < size; i++) {
+                double weight = weightedPoint(state, random);
+
+                if (weight > 0) {
+                    batch.add(state, weight);
+                }
+            }
+
+            return batch;
+        }
+    }
+
+    /**
+     * A Gibbs chain, continued by each batch.
+     */
+    private static class Chain {
+        private final Network network;
+        private final RandomStream random;
+        private final int[] state;
+        private final double[] distribution;
+        private boolean started = false;
+        private boolean consistent = false;
+
+        private Chain(Network network, RandomStream random) {
+            this.network = network;
+            this.random = random;
+            this.state = new int[network.cpts.length];
+
+            int maxCategories = 0;
+
+            for (double[][] cpt : network.cpts) {
+                maxCategories = Math.max(maxCategories, cpt[0].length);
+            }
+
+            this.distribution = new double[maxCategories];
+        }
+
+        private Batch sample(int size, int burnIn) {
+            Batch batch = new Batch(network);
+
+            if (!started) {
+                started = true;
+
+                // Starts from a point of positive probability consistent with the evidence.
+                for (int i = 0; i < MAX_START_TRIES && !consistent; i++) {
+                    consistent = network.weightedPoint(state, random) > 0;
+                }
+
+                if (consistent) {
+                    for (int i = 0; i < burnIn; i++) {
+                        sweep();
+                    }
+                }
+            }
+
+            if (!consistent) {
+                return batch;
+            }
+
+            for (int i = 0; i < size; i++) {
+                sweep();
+                batch.add(state, 1.0);
+            }
+
+            return batch;
+        }
+
+        /**
+         * Resamples each node given its Markov blanket, among the categories the evidence allows.
+         */
+        private void sweep() {
+            for (int n : network.tiers) {
+                boolean[] allowed = network.allowed[n];
+                double[][] cpt = network.cpts[n];
+                int row = network.rowIndex(n, state);
+                double sum = 0.0;
+
+                for (int k = 0; k < allowed.length; k++) {
+                    double p = 0.0;
+
+                    if (allowed[k]) {
+                        state[n] = k;
+                        p = cpt[row][k];
+
+                        for (int c : network.children[n]) {
+                            if (p == 0.0) break;
+                            p *= network.cpts[c][network.rowIndex(c, state)][state[c]];
+                        }
+                    }
+
+                    distribution[k] = p;
+                    sum += p;
+                }
+
+                // Can only happen at a point of probability zero, which the chain never visits.
+                if (!(sum > 0)) {
+                    throw new IllegalStateException("Gibbs chain reached a point of probability zero.");
+                }
+
+                double cutoff = random.nextDouble() * sum;
+                double cumulative = 0.0;
+                int last = -1;
+
+                for (int k = 0; k < allowed.length; k++) {
+                    if (distribution[k] == 0.0) continue;
+                    last = k;
+                    cumulative += distribution[k];
+                    if (cumulative > cutoff) break;
+                }
+
+                state[n] = last;
+            }
+        }
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (method == null) {
+            throw new NullPointerException();
+        }
+    }
+}
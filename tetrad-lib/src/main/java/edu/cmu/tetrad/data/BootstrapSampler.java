@@ -22,13 +22,16 @@
 package edu.cmu.tetrad.data;
 
 import edu.cmu.tetrad.util.RandomUtil;
+import org.apache.commons.math3.random.RandomGenerator;
 
 /**
  * Provides a static method for sampling with replacement from a dataset to
  * create a new dataset with a sample size supplied by the user.
  * <p>
  * Since sampling is done with replacement, the output dataset can have more
- * samples than the input.
+ * samples than the input. The output is a view of the rows of the input
+ * where possible (see DataUtils.viewRows), so the input must not be changed
+ * while the output is in use.
  *
  * @author Frank Wimberly
  */
@@ -55,6 +58,14 @@ public final class BootstrapSampler {
      * original dataset.
      */
     public DataSet sample(DataSet dataSet, int newSampleSize) {
+        return sample(dataSet, newSampleSize, RandomUtil.getInstance().getRandomGenerator());
+    }
+
+    /**
+     * Samples as above, drawing the rows with the given generator. Parallel resampling should give each sample its
+     * own generator (for instance, a child of a RandomStream) so that the samples are reproducible.
+     */
+    public DataSet sample(DataSet dataSet, int newSampleSize, RandomGenerator random) {
         if (newSampleSize < 1) {
             throw new IllegalArgumentException("Sample size must be > 0.");
         }
@@ -65,35 +76,14 @@ public final class BootstrapSampler {
         //   this.logger.log("sampleSize", String.valueOf(newSampleSize));
         //Number of samples in input dataset
         int oldSampleSize = dataSet.getNumRows();
-        int ncols = dataSet.getNumColumns();
-
-        DataSet newDataSet = new ColtDataSet(newSampleSize, dataSet.getVariables());
-//        List<Integer> indices = new ArrayList<Integer>();
-
-        // Without replacement.
-
-        // (keeping order)
-//        for (int row = 0; row < newSampleSize; row++) {
-//            indices.add(RandomUtil.getInstance().nextInt(oldSampleSize));
-//        }
-//
-//        Collections.sort(indices);
-//
-//        for (int row = 0; row < indices.size(); row++) {
-//            for (int col = 0; col < ncols; col++) {
-//                newDataSet.setObject(row, col, dataSet.getObject(indices.get(row), col));
-//            }
-//        }
+        int[] rows = new int[newSampleSize];
 
         // (not keeping order)
         for (int row = 0; row < newSampleSize; row++) {
-            int oldCase = RandomUtil.getInstance().nextInt(oldSampleSize);
-
-            for (int col = 0; col < ncols; col++) {
-                newDataSet.setObject(row, col, dataSet.getObject(oldCase, col));
-            }
+            rows[row] = random.nextInt(oldSampleSize);
         }
 
+        DataSet newDataSet = DataUtils.viewRows(dataSet, rows);
         newDataSet.setKnowledge(dataSet.getKnowledge().copy());
 
         return newDataSet;
@@ -70,6 +70,12 @@ public final class CellTable {
 
         int[] coords = new int[indices.length];
 
+        if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof ResampledDataBox
+                && ((ResampledDataBox) ((BoxDataSet) dataSet).getDataBox()).isView()) {
+            addToTable((ResampledDataBox) ((BoxDataSet) dataSet).getDataBox(), indices, coords);
+            return;
+        }
+
         points:
         for (int i = 0; i < dataSet.getNumRows(); i++) {
             for (int j = 0; j < indices.length; j++) {
@@ -89,6 +95,26 @@ public final class CellTable {
         }
     }
 
+    // Counts each distinct parent row of a bootstrap or subsample view once, weighted by the number of times it is
+    // drawn.
+    private void addToTable(ResampledDataBox box, int[] indices, int[] coords) {
+        int[] parentRows = box.getParentRows();
+        int[] weights = box.getWeights();
+
+        points:
+        for (int r = 0; r < parentRows.length; r++) {
+            for (int j = 0; j < indices.length; j++) {
+                coords[j] = box.getParentInt(parentRows[r], indices[j]);
+
+                if (coords[j] == getMissingValue()) {
+                    continue points;
+                }
+            }
+
+            table.increment(coords, weights[r]);
+        }
+    }
+
     /**
      * @param varIndex the index of the variable in question.
      * @return the number of dimensions of the variable.
@@ -137,7 +137,7 @@ public class ColtDataBox implements DataBox {
 
     @Override
     public DataBox viewSelection(int[] rows, int[] cols) {
-        DataBox _dataBox = new ByteDataBox(rows.length, cols.length);
+        DataBox _dataBox = new ColtDataBox(rows.length, cols.length);
 
         for (int i = 0; i < rows.length; i++) {
             for (int j = 0; j < cols.length; j++) {
@@ -147,6 +147,13 @@ public class ColtDataBox implements DataBox {
 
         return _dataBox;
     }
+
+    /**
+     * @return the stored data, without copying.
+     */
+    TetradMatrix getData() {
+        return data;
+    }
 }
 
 
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.RecursiveTask;
 
 /**
@@ -112,6 +113,12 @@ public class CovarianceMatrix implements ICovarianceMatrix {
         this.variables = Collections.unmodifiableList(dataSet.getVariables());
         this.sampleSize = dataSet.getNumRows();
 
+        if (dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof ResampledDataBox
+                && ((ResampledDataBox) ((BoxDataSet) dataSet).getDataBox()).isView()) {
+            setWeightedCovariances((ResampledDataBox) ((BoxDataSet) dataSet).getDataBox());
+            return;
+        }
+
         if (dataSet instanceof BoxDataSet) {
 
             DataBox box = ((BoxDataSet) dataSet).getDataBox().copy();
@@ -273,6 +280,84 @@ public class CovarianceMatrix implements ICovarianceMatrix {
         this.sampleSize=dataSet.getNumRows();
     }
 
+    // Covariances of a bootstrap or subsample view, computed over the distinct parent rows weighted by the number of
+    // times each is drawn, so that the resampled rows are never materialized.
+    private void setWeightedCovariances(ResampledDataBox box) {
+        final int[] parentRows = box.getParentRows();
+        final int[] weights = box.getWeights();
+        final int numVars = box.numCols();
+        final double[][] columns = new double[numVars][parentRows.length];
+
+        for (int i = 0; i < numVars; i++) {
+            double sum = 0.0;
+            int count = 0;
+
+            for (int r = 0; r < parentRows.length; r++) {
+                double value = box.getParentDouble(parentRows[r], i);
+                columns[i][r] = value;
+
+                if (Double.isNaN(value)) continue;
+
+                sum += weights[r] * value;
+                count += weights[r];
+            }
+
+            double mean = sum / count;
+
+            for (int r = 0; r < parentRows.length; r++) {
+                columns[i][r] -= mean;
+            }
+        }
+
+        final int chunk = 50;
+
+        class CovarianceTask extends RecursiveAction {
+            private int from;
+            private int to;
+
+            public CovarianceTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        double[] v1 = columns[i];
+
+                        for (int j = 0; j <= i; j++) {
+                            double[] v2 = columns[j];
+                            double d = 0.0;
+                            int count = 0;
+
+                            for (int r = 0; r < parentRows.length; r++) {
+                                if (Double.isNaN(v1[r]) || Double.isNaN(v2[r])) continue;
+                                d += weights[r] * v1[r] * v2[r];
+                                count += weights[r];
+                            }
+
+                            double v = d / (count - 1);
+                            matrix.set(i, j, v);
+                            matrix.set(j, i, v);
+                        }
+                    }
+                } else {
+                    int mid = (to + from) / 2;
+
+                    CovarianceTask left = new CovarianceTask(from, mid);
+                    CovarianceTask right = new CovarianceTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+                }
+            }
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new CovarianceTask(0, numVars));
+    }
+
     /**
      * Protected constructor to construct a new covariance matrix using the
      * supplied continuous variables and the the given symmetric, positive
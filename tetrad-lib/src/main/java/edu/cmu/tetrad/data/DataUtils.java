@@ -1370,7 +1370,8 @@ public final class DataUtils {
 
     /**
      * @return a sample with replacement with the given sample size from the
-     * given dataset.
+     * given dataset, as a view of its rows.
+     * @see #viewRows
      */
     public static DataSet getBootstrapSample(DataSet data, int sampleSize) {
         int actualSampleSize = data.getNumRows();
@@ -1381,24 +1382,23 @@ public final class DataUtils {
             rows[i] = RandomUtil.getInstance().nextInt(actualSampleSize);
         }
 
-        int[] cols = new int[data.getNumColumns()];
-        for (int i = 0; i < cols.length; i++) cols[i] = i;
-
-        return ColtDataSet.makeData(data.getVariables(), data.getDoubleData().getSelection(rows, cols));
+        return viewRows(data, rows);
     }
 
     /**
      * @return a sample without replacement with the given sample size from the
-     * given dataset. May return a sample of less than the given size; makes
-     * sampleAttempts attempts to sample.
+     * given dataset, as a view of its rows. May return a sample of less than
+     * the given size; makes sampleAttempts attempts to sample.
+     * @see #viewRows
      */
     public static DataSet getBootstrapSample2(DataSet data, int sampleAttempts) {
         int actualSampleSize = data.getNumRows();
         List<Integer> samples = new ArrayList<>();
+        Set<Integer> sampled = new HashSet<>();
 
         for (int i = 0; i < sampleAttempts; i++) {
             int sample = RandomUtil.getInstance().nextInt(actualSampleSize);
-            if (!samples.contains(sample)) samples.add(sample);
+            if (sampled.add(sample)) samples.add(sample);
         }
 
         int[] rows = new int[samples.size()];
@@ -1407,10 +1407,33 @@ public final class DataUtils {
             rows[i] = samples.get(i);
         }
 
+        return viewRows(data, rows);
+    }
+
+    /**
+     * @return the given rows of the data, which may repeat, as a data set that
+     * reads through to the data rather than copying it (see ResampledDataBox),
+     * if the data is a BoxDataSet or a ColtDataSet; otherwise, a copy of the
+     * rows. The data must not be changed while the view is in use.
+     */
+    public static DataSet viewRows(DataSet data, int[] rows) {
+        DataBox box;
+
+        if (data instanceof BoxDataSet) {
+            box = ((BoxDataSet) data).getDataBox();
+        } else if (data instanceof ColtDataSet) {
+            box = new ColtDataBox(data.getDoubleData());
+        } else {
+            return data.subsetRows(rows);
+        }
+
         int[] cols = new int[data.getNumColumns()];
-        for (int i = 0; i < cols.length; i++) cols[i] = i;
+        for (int j = 0; j < cols.length; j++) cols[j] = j;
 
-        return ColtDataSet.makeData(data.getVariables(), data.getDoubleData().getSelection(rows, cols));
+        BoxDataSet view = new BoxDataSet(new ResampledDataBox(box, rows, cols),
+                new LinkedList<>(data.getVariables()));
+        view.setKnowledge(data.getKnowledge().copy());
+        return view;
     }
 
     /**
@@ -0,0 +1,582 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Counts of discrete data for families (a child and a set of parents), kept so that new batches of
+ * rows can be absorbed, or old ones retired, by merging the batch's counts into every table already
+ * computed, rather than recounting all rows.
+ * <p>
+ * Rows are not kept. Each batch is folded into a histogram of the distinct rows seen so far and into
+ * the tables already computed, and is then dropped; a table for a family not seen before is counted from
+ * the histogram, whose size is bounded by the number of distinct rows rather than the number of rows. If
+ * a window size is set, the histogram of each batch in the window is kept as well, so that the oldest
+ * batches can be retired once there are more than that many. Computed tables are cached up to a total
+ * number of cells, least recently used first out; evicted tables are recounted from the histogram on
+ * demand. Counts can also be backed by a data set already in memory (see backedBy), whose rows are then
+ * read in place. The whole object is serializable, so a job can save it and later ingest only new rows.
+ * <p>
+ * Tables are int arrays indexed by parentRow * numCategories(child) + childValue, where parentRow is
+ * the mixed-radix index of the parents' values with the first parent most significant, as in
+ * BDeuScore. Tables may be requested concurrently; batches should not be added or retired while a
+ * search is using the counts.
+ *
+ * @see IncrementalCovarianceMatrix
+ */
+public class IncrementalCountTables implements DataModel {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * @serial May be null.
+     */
+    private String name;
+
+    /**
+     * The discrete variables, in order.
+     *
+     * @serial Cannot be null.
+     */
+    private List<Node> variables;
+
+    /**
+     * The number of categories of each variable.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] numCategories;
+
+    /**
+     * The number of times each distinct row has been absorbed and not retired.
+     *
+     * @serial Cannot be null.
+     */
+    private Map<Row, Integer> rows = new HashMap<>();
+
+    /**
+     * Rows read in place from a data set (see backedBy) rather than copied into the histogram, or null.
+     *
+     * @serial May be null.
+     */
+    private DataSet base;
+
+    /**
+     * Histograms of the distinct rows of the batches in the window, oldest first.
+     *
+     * @serial Cannot be null.
+     */
+    private LinkedList<Map<Row, Integer>> batches = new LinkedList<>();
+
+    /**
+     * The maximum number of batches to keep, or 0 to keep all rows without batch bookkeeping.
+     *
+     * @serial Range >= 0.
+     */
+    private int windowSize = 0;
+
+    /**
+     * The total number of rows absorbed and not retired.
+     *
+     * @serial Range >= 0.
+     */
+    private int sampleSize = 0;
+
+    /**
+     * The maximum total number of cells in the cached tables.
+     *
+     * @serial Range > 0.
+     */
+    private int maxCachedCells = 1 << 24;
+
+    /**
+     * Tables computed so far, keyed by family, in access order. Not serialized; tables are recounted
+     * from the histogram on demand.
+     */
+    private transient LinkedHashMap<Family, int[]> tables = new LinkedHashMap<>(16, .75f, true);
+    private transient long cachedCells = 0;
+
+    /**
+     * @serial Cannot be null.
+     */
+    private IKnowledge knowledge = new Knowledge2();
+
+    //=============================CONSTRUCTORS=========================//
+
+    /**
+     * Constructs empty counts over the given discrete variables.
+     */
+    public IncrementalCountTables(List<Node> variables) {
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        this.numCategories = new int[variables.size()];
+
+        for (int i = 0; i < variables.size(); i++) {
+            if (!(variables.get(i) instanceof DiscreteVariable)) {
+                throw new IllegalArgumentException("Not a discrete variable: " + variables.get(i));
+            }
+
+            numCategories[i] = ((DiscreteVariable) variables.get(i)).getNumCategories();
+        }
+    }
+
+    /**
+     * Constructs counts from the rows of the given discrete data set.
+     */
+    public IncrementalCountTables(DataSet dataSet) {
+        this(dataSet.getVariables());
+        addRows(dataSet);
+    }
+
+    /**
+     * Constructs counts whose initial rows are those of the given discrete data set, read in place whenever a
+     * table is counted rather than copied, so that a data set already held in memory is not held twice. The
+     * data set must not be changed while the counts are in use. Later batches are absorbed as usual; the
+     * initial rows cannot be retired.
+     */
+    public static IncrementalCountTables backedBy(DataSet dataSet) {
+        IncrementalCountTables counts = new IncrementalCountTables(dataSet.getVariables());
+
+        for (int j = 0; j < dataSet.getNumColumns(); j++) {
+            for (int i = 0; i < dataSet.getNumRows(); i++) {
+                counts.checkValue(dataSet.getInt(i, j), i, j);
+            }
+        }
+
+        counts.base = dataSet;
+        counts.sampleSize = dataSet.getNumRows();
+        return counts;
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static IncrementalCountTables serializableInstance() {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new DiscreteVariable("X", 2));
+        return new IncrementalCountTables(variables);
+    }
+
+    //============================PUBLIC METHODS=========================//
+
+    /**
+     * Absorbs the rows of the given data set, whose variables must have the same names, in the same
+     * order, as these variables. Every table already computed is updated with the batch's counts. If a
+     * window size is set, this counts as one batch, and the oldest batches are retired if the window is
+     * full.
+     */
+    public void addRows(DataSet batch) {
+        if (!batch.getVariableNames().equals(getVariableNames())) {
+            throw new IllegalArgumentException("Batch variables don't match: " + batch.getVariableNames());
+        }
+
+        int n = batch.getNumRows();
+        if (n == 0) return;
+
+        Map<Row, Integer> histogram = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            int[] values = new int[variables.size()];
+
+            for (int j = 0; j < variables.size(); j++) {
+                int value = batch.getInt(i, j);
+                checkValue(value, i, j);
+                values[j] = value;
+            }
+
+            add(histogram, new Row(values), 1);
+        }
+
+        merge(histogram, n, 1);
+
+        if (windowSize > 0) {
+            batches.addLast(histogram);
+
+            while (batches.size() > windowSize) {
+                retireOldestBatch();
+            }
+        }
+    }
+
+    /**
+     * Retires the oldest batch in the window, subtracting its counts from every table computed so far.
+     *
+     * @throws IllegalStateException if no batches are being tracked.
+     */
+    public void retireOldestBatch() {
+        if (batches.isEmpty()) {
+            throw new IllegalStateException("No batches are being tracked; set a window size first.");
+        }
+
+        Map<Row, Integer> histogram = batches.removeFirst();
+        int n = 0;
+
+        for (int count : histogram.values()) {
+            n += count;
+        }
+
+        merge(histogram, n, -1);
+    }
+
+    /**
+     * Sets the number of most recent batches to keep. 0 (the default) keeps every row ever added and
+     * does no batch bookkeeping. Only batches added after the window is set are tracked.
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 0) {
+            throw new IllegalArgumentException("Window size must be >= 0: " + windowSize);
+        }
+
+        this.windowSize = windowSize;
+
+        if (windowSize == 0) {
+            batches.clear();
+        }
+
+        while (batches.size() > windowSize && windowSize > 0) {
+            retireOldestBatch();
+        }
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return the number of batches currently in the window.
+     */
+    public int getNumBatches() {
+        return batches.size();
+    }
+
+    /**
+     * @return the number of distinct rows absorbed and not retired, other than those read from a backing data
+     * set.
+     */
+    public int getNumDistinctRows() {
+        return rows.size();
+    }
+
+    /**
+     * @return the counts for the given child and parents (indices into the variables). The array
+     * returned is shared and must not be modified.
+     */
+    public int[] getCounts(int child, int[] parents) {
+        Family family = new Family(child, parents.clone());
+
+        synchronized (tables) {
+            int[] table = tables.get(family);
+            if (table != null) return table;
+        }
+
+        int[] table = new int[numRows(parents) * numCategories[child]];
+        count(rows, family, table, 1);
+        countBase(family, table);
+
+        synchronized (tables) {
+            int[] other = tables.get(family);
+            if (other != null) return other;
+
+            tables.put(family, table);
+            cachedCells += table.length;
+            evict(family);
+        }
+
+        return table;
+    }
+
+    /**
+     * Drops all tables computed so far; they will be recounted on demand.
+     */
+    public void clearTables() {
+        synchronized (tables) {
+            tables.clear();
+            cachedCells = 0;
+        }
+    }
+
+    /**
+     * Sets the maximum total number of cells in the cached tables; the least recently used tables are
+     * dropped beyond that. The default is 2^24.
+     */
+    public void setMaxCachedCells(int maxCachedCells) {
+        if (maxCachedCells < 1) {
+            throw new IllegalArgumentException("Max cached cells must be > 0: " + maxCachedCells);
+        }
+
+        this.maxCachedCells = maxCachedCells;
+
+        synchronized (tables) {
+            evict(null);
+        }
+    }
+
+    public int getMaxCachedCells() {
+        return maxCachedCells;
+    }
+
+    /**
+     * @return the number of tables currently cached.
+     */
+    public int getNumCachedTables() {
+        synchronized (tables) {
+            return tables.size();
+        }
+    }
+
+    public int getNumCategories(int i) {
+        return numCategories[i];
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public List<Node> getVariables() {
+        return variables;
+    }
+
+    public List<String> getVariableNames() {
+        List<String> names = new ArrayList<>();
+
+        for (Node variable : variables) {
+            names.add(variable.getName());
+        }
+
+        return names;
+    }
+
+    public Node getVariable(String name) {
+        for (Node variable : variables) {
+            if (variable.getName().equals(name)) {
+                return variable;
+            }
+        }
+
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge.copy();
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        this.knowledge = knowledge.copy();
+    }
+
+    public String toString() {
+        return "Count tables over " + getVariableNames() + ", " + sampleSize + " rows ("
+                + rows.size() + " distinct) in " + batches.size() + " batches, "
+                + getNumCachedTables() + " tables";
+    }
+
+    //========================PRIVATE METHODS============================//
+
+    private void merge(Map<Row, Integer> histogram, int n, int sign) {
+        for (Map.Entry<Row, Integer> entry : histogram.entrySet()) {
+            add(rows, entry.getKey(), sign * entry.getValue());
+        }
+
+        sampleSize += sign * n;
+
+        synchronized (tables) {
+            for (Map.Entry<Family, int[]> entry : tables.entrySet()) {
+                count(histogram, entry.getKey(), entry.getValue(), sign);
+            }
+        }
+    }
+
+    private static void add(Map<Row, Integer> histogram, Row row, int count) {
+        Integer old = histogram.get(row);
+        int c = (old == null ? 0 : old) + count;
+
+        if (c == 0) {
+            histogram.remove(row);
+        } else {
+            histogram.put(row, c);
+        }
+    }
+
+    private void count(Map<Row, Integer> histogram, Family family, int[] table, int sign) {
+        int c = numCategories[family.child];
+
+        for (Map.Entry<Row, Integer> entry : histogram.entrySet()) {
+            int[] values = entry.getKey().values;
+            int row = 0;
+
+            for (int parent : family.parents) {
+                row *= numCategories[parent];
+                row += values[parent];
+            }
+
+            table[row * c + values[family.child]] += sign * entry.getValue();
+        }
+    }
+
+    private void countBase(Family family, int[] table) {
+        if (base == null) return;
+
+        int c = numCategories[family.child];
+        int[][] columns = null;
+
+        if (base instanceof BoxDataSet && ((BoxDataSet) base).getDataBox() instanceof VerticalIntDataBox) {
+            columns = ((VerticalIntDataBox) ((BoxDataSet) base).getDataBox()).getVariableVectors();
+        }
+
+        for (int i = 0; i < base.getNumRows(); i++) {
+            int row = 0;
+
+            for (int parent : family.parents) {
+                row *= numCategories[parent];
+                row += columns != null ? columns[parent][i] : base.getInt(i, parent);
+            }
+
+            table[row * c + (columns != null ? columns[family.child][i] : base.getInt(i, family.child))]++;
+        }
+    }
+
+    private void checkValue(int value, int i, int j) {
+        if (value == DiscreteVariable.MISSING_VALUE) {
+            throw new IllegalArgumentException("Please remove or impute missing values (record "
+                    + i + " column " + j + ")");
+        }
+
+        if (value < 0 || value >= numCategories[j]) {
+            throw new IllegalArgumentException("Value out of range at record " + i + " column " + j
+                    + ": " + value);
+        }
+    }
+
+    // Drops least recently used tables, other than the given one, until the cache is within bounds.
+    private void evict(Family keep) {
+        Iterator<Map.Entry<Family, int[]>> it = tables.entrySet().iterator();
+
+        while (cachedCells > maxCachedCells && it.hasNext()) {
+            Map.Entry<Family, int[]> entry = it.next();
+            if (entry.getKey().equals(keep)) continue;
+
+            cachedCells -= entry.getValue().length;
+            it.remove();
+        }
+    }
+
+    private int numRows(int[] parents) {
+        int r = 1;
+
+        for (int parent : parents) {
+            r *= numCategories[parent];
+        }
+
+        return r;
+    }
+
+    /**
+     * The values of one row.
+     */
+    private static final class Row implements Serializable {
+        static final long serialVersionUID = 23L;
+
+        private final int[] values;
+        private final int hash;
+
+        Row(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Row && hash == ((Row) o).hash && Arrays.equals(values, ((Row) o).values);
+        }
+    }
+
+    /**
+     * A child and its parents.
+     */
+    private static final class Family {
+        private final int child;
+        private final int[] parents;
+
+        Family(int child, int[] parents) {
+            this.child = child;
+            this.parents = parents;
+        }
+
+        public int hashCode() {
+            return 31 * child + Arrays.hashCode(parents);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Family)) return false;
+            Family f = (Family) o;
+            return child == f.child && Arrays.equals(parents, f.parents);
+        }
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (variables == null || numCategories == null || rows == null || batches == null
+                || knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        if (maxCachedCells < 1) {
+            throw new IllegalStateException("Max cached cells must be > 0: " + maxCachedCells);
+        }
+
+        tables = new LinkedHashMap<>(16, .75f, true);
+    }
+}
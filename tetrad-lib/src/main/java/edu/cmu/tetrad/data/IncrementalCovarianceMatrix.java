@@ -0,0 +1,646 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.text.NumberFormat;
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A covariance matrix kept as running sufficient statistics (sample size, means and centered
+ * cross products), so that it can absorb new batches of rows, or retire old ones, in O(b p^2) time for
+ * a batch of b rows, without revisiting earlier data. Batches are merged with the pairwise update of
+ * Chan, Golub and LeVeque, which is the batch form of Welford's algorithm, and retired by running the
+ * same update backwards.
+ * <p>
+ * If a window size is set, the statistics of each batch are kept and the oldest batches are retired
+ * automatically once there are more than that many, giving a sliding window over the most recent
+ * batches. The statistics are serializable, so a job can save them and later ingest only new rows.
+ * <p>
+ * Since this implements ICovarianceMatrix it can be given directly to SemBicScore, IndTestFisherZ
+ * and the like. It should not be updated while a search is using it.
+ *
+ * @see CovarianceMatrix
+ */
+public class IncrementalCovarianceMatrix implements ICovarianceMatrix {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The name of the covariance matrix.
+     *
+     * @serial May be null.
+     */
+    private String name;
+
+    /**
+     * The variables (in order) for this covariance matrix.
+     *
+     * @serial Cannot be null.
+     */
+    private List<Node> variables;
+
+    /**
+     * The number of rows currently absorbed.
+     *
+     * @serial Range >= 0.
+     */
+    private int sampleSize;
+
+    /**
+     * The means of the variables over the absorbed rows.
+     *
+     * @serial Cannot be null.
+     */
+    private double[] means;
+
+    /**
+     * Sums of centered cross products over the absorbed rows; lower triangle, row by row.
+     *
+     * @serial Cannot be null.
+     */
+    private double[][] crossProducts;
+
+    /**
+     * The maximum number of batches to keep, or 0 to keep all rows without batch bookkeeping.
+     *
+     * @serial Range >= 0.
+     */
+    private int windowSize = 0;
+
+    /**
+     * Sample sizes, means and cross products of the batches in the window, oldest first.
+     *
+     * @serial Cannot be null.
+     */
+    private LinkedList<Integer> batchSizes = new LinkedList<>();
+    private LinkedList<double[]> batchMeans = new LinkedList<>();
+    private LinkedList<double[][]> batchCrossProducts = new LinkedList<>();
+
+    /**
+     * The list of selected variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Set<Node> selectedVariables = new HashSet<>();
+
+    /**
+     * The knowledge for this data.
+     *
+     * @serial Cannot be null.
+     */
+    private IKnowledge knowledge = new Knowledge2();
+
+    //=============================CONSTRUCTORS=========================//
+
+    /**
+     * Constructs an empty matrix over the given continuous variables.
+     */
+    public IncrementalCovarianceMatrix(List<Node> variables) {
+        for (Node variable : variables) {
+            if (!(variable instanceof ContinuousVariable)) {
+                throw new IllegalArgumentException("Not a continuous variable: " + variable);
+            }
+        }
+
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        this.means = new double[variables.size()];
+        this.crossProducts = triangle(variables.size());
+    }
+
+    /**
+     * Constructs a matrix from the rows of the given continuous data set.
+     */
+    public IncrementalCovarianceMatrix(DataSet dataSet) {
+        this(dataSet.getVariables());
+        addRows(dataSet);
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static IncrementalCovarianceMatrix serializableInstance() {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X"));
+        return new IncrementalCovarianceMatrix(variables);
+    }
+
+    //============================PUBLIC METHODS=========================//
+
+    /**
+     * Absorbs the rows of the given data set, whose variables must have the same names, in the same
+     * order, as the variables of this matrix. If a window size is set, this counts as one batch, and
+     * the oldest batches are retired if the window is full.
+     */
+    public void addRows(DataSet batch) {
+        int n = batch.getNumRows();
+        if (n == 0) return;
+
+        double[] batchMeans = new double[getDimension()];
+        double[][] batchCross = batchStatistics(batch, batchMeans);
+
+        merge(n, batchMeans, batchCross, 1);
+
+        if (windowSize > 0) {
+            this.batchSizes.addLast(n);
+            this.batchMeans.addLast(batchMeans);
+            this.batchCrossProducts.addLast(batchCross);
+
+            while (this.batchSizes.size() > windowSize) {
+                retireOldestBatch();
+            }
+        }
+    }
+
+    /**
+     * Removes the rows of the given data set, which must previously have been added. Use this when
+     * batches are not being tracked by a window.
+     */
+    public void removeRows(DataSet batch) {
+        int n = batch.getNumRows();
+        if (n == 0) return;
+
+        if (n > sampleSize) {
+            throw new IllegalArgumentException("Cannot remove more rows than have been added.");
+        }
+
+        double[] batchMeans = new double[getDimension()];
+        double[][] batchCross = batchStatistics(batch, batchMeans);
+        merge(n, batchMeans, batchCross, -1);
+    }
+
+    /**
+     * Retires the oldest batch in the window.
+     *
+     * @throws IllegalStateException if no batches are being tracked.
+     */
+    public void retireOldestBatch() {
+        if (batchSizes.isEmpty()) {
+            throw new IllegalStateException("No batches are being tracked; set a window size first.");
+        }
+
+        merge(batchSizes.removeFirst(), batchMeans.removeFirst(), batchCrossProducts.removeFirst(), -1);
+    }
+
+    /**
+     * Sets the number of most recent batches to keep. 0 (the default) keeps every row ever added and
+     * does no batch bookkeeping. Only batches added after the window is set are tracked.
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 0) {
+            throw new IllegalArgumentException("Window size must be >= 0: " + windowSize);
+        }
+
+        this.windowSize = windowSize;
+
+        if (windowSize == 0) {
+            batchSizes.clear();
+            batchMeans.clear();
+            batchCrossProducts.clear();
+        }
+
+        while (batchSizes.size() > windowSize && windowSize > 0) {
+            retireOldestBatch();
+        }
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return the number of batches currently in the window.
+     */
+    public int getNumBatches() {
+        return batchSizes.size();
+    }
+
+    /**
+     * @return the mean of variable i over the absorbed rows.
+     */
+    public double getMean(int i) {
+        return means[i];
+    }
+
+    /**
+     * @return the list of variables (unmodifiable).
+     */
+    public final List<Node> getVariables() {
+        return this.variables;
+    }
+
+    /**
+     * @return the variable names, in order.
+     */
+    public final List<String> getVariableNames() {
+        List<String> names = new ArrayList<>();
+
+        for (Node variable : getVariables()) {
+            names.add(variable.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * @return the variable name at the given index.
+     */
+    public final String getVariableName(int index) {
+        if (index >= getVariables().size()) {
+            throw new IllegalArgumentException("Index out of range: " + index);
+        }
+
+        return getVariables().get(index).getName();
+    }
+
+    /**
+     * @return the dimension of the covariance matrix.
+     */
+    public final int getDimension() {
+        return variables.size();
+    }
+
+    /**
+     * The number of rows currently absorbed.
+     */
+    public final int getSampleSize() {
+        return this.sampleSize;
+    }
+
+    public final String getName() {
+        return this.name;
+    }
+
+    public final void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the knowledge associated with this data.
+     */
+    public final IKnowledge getKnowledge() {
+        return this.knowledge.copy();
+    }
+
+    /**
+     * Associates knowledge with this data.
+     */
+    public final void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        this.knowledge = knowledge.copy();
+    }
+
+    /**
+     * @return a snapshot of the submatrix with variables in the given order.
+     */
+    public final ICovarianceMatrix getSubmatrix(int[] indices) {
+        List<Node> submatrixVars = new ArrayList<>();
+
+        for (int index : indices) {
+            submatrixVars.add(variables.get(index));
+        }
+
+        return new CovarianceMatrix(submatrixVars, getSelection(indices, indices), getSampleSize());
+    }
+
+    public final ICovarianceMatrix getSubmatrix(List<String> submatrixVarNames) {
+        return getSubmatrix(submatrixVarNames.toArray(new String[submatrixVarNames.size()]));
+    }
+
+    public final ICovarianceMatrix getSubmatrix(String[] submatrixVarNames) {
+        int[] indices = new int[submatrixVarNames.length];
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = getVariableNames().indexOf(submatrixVarNames[i]);
+
+            if (indices[i] == -1) {
+                throw new IllegalArgumentException("Not a variable in this matrix: " + submatrixVarNames[i]);
+            }
+        }
+
+        return getSubmatrix(indices);
+    }
+
+    /**
+     * @return the value of element (i,j) in the matrix
+     */
+    public final double getValue(int i, int j) {
+        if (sampleSize < 2) return Double.NaN;
+        return (i >= j ? crossProducts[i][j] : crossProducts[j][i]) / (sampleSize - 1);
+    }
+
+    /**
+     * Not supported; the matrix is determined by the rows absorbed.
+     */
+    public void setMatrix(TetradMatrix matrix) {
+        throw new UnsupportedOperationException("The matrix is determined by the rows absorbed.");
+    }
+
+    /**
+     * Not supported; the sample size is the number of rows absorbed.
+     */
+    public final void setSampleSize(int sampleSize) {
+        throw new UnsupportedOperationException("The sample size is the number of rows absorbed.");
+    }
+
+    /**
+     * @return the size of the square matrix.
+     */
+    public final int getSize() {
+        return getDimension();
+    }
+
+    /**
+     * @return a copy of the covariance matrix.
+     */
+    public final TetradMatrix getMatrix() {
+        int[] all = new int[getDimension()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        return getSelection(all, all);
+    }
+
+    public final void select(Node variable) {
+        if (variables.contains(variable)) {
+            selectedVariables.add(variable);
+        }
+    }
+
+    public final void clearSelection() {
+        selectedVariables.clear();
+    }
+
+    public final boolean isSelected(Node variable) {
+        if (variable == null) {
+            throw new NullPointerException("Null variable. Try again.");
+        }
+
+        return selectedVariables.contains(variable);
+    }
+
+    public final List<String> getSelectedVariableNames() {
+        List<String> selectedVariableNames = new LinkedList<>();
+
+        for (Node variable : selectedVariables) {
+            selectedVariableNames.add(variable.getName());
+        }
+
+        return selectedVariableNames;
+    }
+
+    /**
+     * Prints out the matrix
+     */
+    public final String toString() {
+        NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
+
+        StringBuilder buf = new StringBuilder();
+
+        int numVars = getDimension();
+        buf.append(getSampleSize()).append("\n");
+
+        for (int i = 0; i < numVars; i++) {
+            buf.append(getVariableName(i)).append("\t");
+        }
+
+        buf.append("\n");
+
+        for (int j = 0; j < numVars; j++) {
+            for (int i = 0; i <= j; i++) {
+                buf.append(nf.format(getValue(i, j))).append("\t");
+            }
+            buf.append("\n");
+        }
+
+        return buf.toString();
+    }
+
+    public Node getVariable(String name) {
+        for (Node variable : getVariables()) {
+            if (name.equals(variable.getName())) {
+                return variable;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Not supported; the matrix is determined by the rows absorbed.
+     */
+    public void setValue(int i, int j, double v) {
+        throw new UnsupportedOperationException("The matrix is determined by the rows absorbed.");
+    }
+
+    public void removeVariables(List<String> remaining) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void setVariables(List<Node> variables) {
+        if (variables.size() != this.variables.size()) throw new IllegalArgumentException("Wrong # of variables.");
+        this.variables = variables;
+    }
+
+    public TetradMatrix getSelection(int[] rows, int[] cols) {
+        TetradMatrix m = new TetradMatrix(rows.length, cols.length);
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                m.set(i, j, getValue(rows[i], cols[j]));
+            }
+        }
+
+        return m;
+    }
+
+    //========================PRIVATE METHODS============================//
+
+    /**
+     * Computes the means of the batch into batchMeans and returns its centered cross products.
+     */
+    private double[][] batchStatistics(DataSet batch, double[] batchMeans) {
+        if (!batch.getVariableNames().equals(getVariableNames())) {
+            throw new IllegalArgumentException("Batch variables don't match: " + batch.getVariableNames());
+        }
+
+        final int n = batch.getNumRows();
+        final int p = getDimension();
+        final double[][] columns = new double[p][n];
+
+        for (int j = 0; j < p; j++) {
+            double sum = 0.0;
+
+            for (int i = 0; i < n; i++) {
+                double d = batch.getDouble(i, j);
+
+                if (Double.isNaN(d)) {
+                    throw new IllegalArgumentException("Please remove or impute missing values.");
+                }
+
+                columns[j][i] = d;
+                sum += d;
+            }
+
+            batchMeans[j] = sum / n;
+
+            for (int i = 0; i < n; i++) {
+                columns[j][i] -= batchMeans[j];
+            }
+        }
+
+        final double[][] cross = triangle(p);
+
+        class CrossProductTask extends RecursiveAction {
+            private int from;
+            private int to;
+
+            public CrossProductTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if ((to - from) * (long) n * p <= 1000000 || to - from <= 1) {
+                    for (int i = from; i < to; i++) {
+                        double[] vi = columns[i];
+
+                        for (int j = 0; j <= i; j++) {
+                            double[] vj = columns[j];
+                            double d = 0.0;
+
+                            for (int k = 0; k < n; k++) {
+                                d += vi[k] * vj[k];
+                            }
+
+                            cross[i][j] = d;
+                        }
+                    }
+                } else {
+                    int mid = (to + from) / 2;
+                    invokeAll(new CrossProductTask(from, mid), new CrossProductTask(mid, to));
+                }
+            }
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new CrossProductTask(0, p));
+
+        return cross;
+    }
+
+    /**
+     * Adds (sign = 1) or subtracts (sign = -1) the statistics of a batch of n rows.
+     */
+    private void merge(int n, double[] batchMeans, double[][] batchCross, int sign) {
+        int p = getDimension();
+        int nA = sampleSize;
+        int nAB = sign > 0 ? nA + n : nA - n;
+
+        if (nAB == 0) {
+            sampleSize = 0;
+            Arrays.fill(means, 0.0);
+            for (double[] row : crossProducts) Arrays.fill(row, 0.0);
+            return;
+        }
+
+        // delta is the batch mean minus the mean of the other rows; weight = n_other * n_batch / n_total.
+        double[] delta = new double[p];
+        double weight;
+
+        if (sign > 0) {
+            for (int j = 0; j < p; j++) {
+                delta[j] = batchMeans[j] - means[j];
+                means[j] += delta[j] * n / nAB;
+            }
+
+            weight = (double) nA * n / nAB;
+        } else {
+            for (int j = 0; j < p; j++) {
+                double rest = (nA * means[j] - n * batchMeans[j]) / nAB;
+                delta[j] = batchMeans[j] - rest;
+                means[j] = rest;
+            }
+
+            weight = (double) nAB * n / nA;
+        }
+
+        for (int i = 0; i < p; i++) {
+            for (int j = 0; j <= i; j++) {
+                crossProducts[i][j] += sign * (batchCross[i][j] + delta[i] * delta[j] * weight);
+            }
+        }
+
+        sampleSize = nAB;
+    }
+
+    private static double[][] triangle(int p) {
+        double[][] t = new double[p][];
+
+        for (int i = 0; i < p; i++) {
+            t[i] = new double[i + 1];
+        }
+
+        return t;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (variables == null || means == null || crossProducts == null) {
+            throw new NullPointerException();
+        }
+
+        if (knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        if (sampleSize < 0) {
+            throw new IllegalStateException();
+        }
+
+        if (selectedVariables == null) {
+            selectedVariables = new HashSet<>();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.TetradSerializableExcluded;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Stores a 2D array of double data column by column in a region of a file, mapped into memory
+ * rather than read onto the heap, so that pages of the data are only brought in when they are
+ * used. The region is mapped read-only, in chunks of whole columns of at most 1 GB each; the
+ * first value set in a chunk copies that chunk onto the heap, so the file is never written. The
+ * copy replaces the mapped chunk atomically, so values may be read from other threads meanwhile.
+ * <p>
+ * Copies and selections of this box are ordinary VerticalDoubleDataBoxes. Serialized, the box
+ * writes out its data column by column, and reads it back onto the heap.
+ */
+public class MappedDoubleDataBox implements DataBox, TetradSerializableExcluded {
+    static final long serialVersionUID = 23L;
+
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    /**
+     * The number of rows.
+     */
+    private int rows;
+
+    /**
+     * The number of columns.
+     */
+    private int cols;
+
+    /**
+     * The number of columns in each chunk.
+     */
+    private int colsPerChunk;
+
+    /**
+     * The chunks of column-major data.
+     */
+    private transient AtomicReferenceArray<DoubleBuffer> chunks;
+
+    /**
+     * Maps rows * cols doubles, stored column by column starting at the given position of the
+     * given channel. The mapping stays valid after the channel is closed.
+     */
+    public MappedDoubleDataBox(FileChannel channel, long position, int rows, int cols) throws IOException {
+        if (rows < 1 || cols < 1) {
+            throw new IllegalArgumentException("Rows and columns must be positive.");
+        }
+
+        this.rows = rows;
+        this.cols = cols;
+        this.colsPerChunk = colsPerChunk(rows);
+        this.chunks = new AtomicReferenceArray<>((cols + colsPerChunk - 1) / colsPerChunk);
+
+        for (int c = 0; c < chunks.length(); c++) {
+            int chunkCols = Math.min(colsPerChunk, cols - c * colsPerChunk);
+            long start = position + (long) c * colsPerChunk * rows * 8;
+            chunks.set(c, channel.map(FileChannel.MapMode.READ_ONLY, start, (long) chunkCols * rows * 8)
+                    .asDoubleBuffer());
+        }
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return cols;
+    }
+
+    /**
+     * Sets the value at the given row/column to the given Number value.
+     * The value used is number.doubleValue().
+     */
+    public void set(int row, int col, Number value) {
+        writableChunk(col / colsPerChunk).put(index(row, col), value == null ? Double.NaN : value.doubleValue());
+    }
+
+    /**
+     * @return the Number value at the given row and column.
+     */
+    public Number get(int row, int col) {
+        return getDouble(row, col);
+    }
+
+    /**
+     * @return the double value at the given row and column, without boxing.
+     */
+    public double getDouble(int row, int col) {
+        return chunks.get(col / colsPerChunk).get(index(row, col));
+    }
+
+    /**
+     * @return true if some of the data is still mapped from the file.
+     */
+    public boolean isMapped() {
+        for (int c = 0; c < chunks.length(); c++) {
+            if (chunks.get(c).isReadOnly()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Copies all of the data still mapped from the file onto the heap, after which this box no
+     * longer uses the file. The file itself may stay mapped until the old mappings are garbage
+     * collected.
+     */
+    public void copyToHeap() {
+        for (int c = 0; c < chunks.length(); c++) {
+            writableChunk(c);
+        }
+    }
+
+    /**
+     * @return a copy of this data box, on the heap.
+     */
+    public DataBox copy() {
+        double[][] copy = new double[cols][rows];
+
+        for (int j = 0; j < cols; j++) {
+            DoubleBuffer column = column(j);
+            column.get(copy[j]);
+        }
+
+        return new VerticalDoubleDataBox(copy);
+    }
+
+    /**
+     * @return a DataBox of type VerticalDoubleDataBox, but with the given dimensions.
+     */
+    public DataBox like() {
+        int[] rows = new int[numRows()];
+        int[] cols = new int[numCols()];
+
+        for (int i = 0; i < numRows(); i++) rows[i] = i;
+        for (int j = 0; j < numCols(); j++) cols[j] = j;
+
+        return viewSelection(rows, cols);
+    }
+
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        DataBox _dataBox = new VerticalDoubleDataBox(rows.length, cols.length);
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                _dataBox.set(i, j, getDouble(rows[i], cols[j]));
+            }
+        }
+
+        return _dataBox;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private int index(int row, int col) {
+        return (col % colsPerChunk) * rows + row;
+    }
+
+    /**
+     * @return a view of the given column.
+     */
+    private DoubleBuffer column(int col) {
+        DoubleBuffer column = chunks.get(col / colsPerChunk).duplicate();
+        column.position(index(0, col));
+        column.limit(index(0, col) + rows);
+        return column;
+    }
+
+    /**
+     * @return the given chunk, first copying it onto the heap if it is still mapped.
+     */
+    private synchronized DoubleBuffer writableChunk(int c) {
+        DoubleBuffer chunk = chunks.get(c);
+
+        if (chunk.isReadOnly()) {
+            DoubleBuffer copy = ByteBuffer.allocate(chunk.capacity() * 8).asDoubleBuffer();
+            copy.put(chunk.duplicate());
+            chunks.set(c, copy);
+            return copy;
+        }
+
+        return chunk;
+    }
+
+    private static int colsPerChunk(int rows) {
+        return (int) Math.max(1, MAX_CHUNK_BYTES / (8L * rows));
+    }
+
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+
+        for (int j = 0; j < cols; j++) {
+            for (int i = 0; i < rows; i++) {
+                s.writeDouble(getDouble(i, j));
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        chunks = new AtomicReferenceArray<>((cols + colsPerChunk - 1) / colsPerChunk);
+
+        for (int c = 0; c < chunks.length(); c++) {
+            int chunkCols = Math.min(colsPerChunk, cols - c * colsPerChunk);
+            chunks.set(c, ByteBuffer.allocate(chunkCols * rows * 8).asDoubleBuffer());
+        }
+
+        for (int j = 0; j < cols; j++) {
+            for (int i = 0; i < rows; i++) {
+                chunks.get(j / colsPerChunk).put(index(i, j), s.readDouble());
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+/**
+ * A view of selected rows and columns of another data box, for bootstrap samples and subsamples, which doesn't copy
+ * the data. Rows may be selected more than once. The view reads through to the parent data box, which must not be
+ * changed while the view is in use; the view is copied on write, the first time one of its values is set.
+ * <p>
+ * Routines that only need sums over the rows (covariances, cell counts) can instead go through the distinct rows of
+ * the parent, weighting each by the number of times it is selected; see getParentRows and getWeights.
+ *
+ * @see DataUtils#viewRows
+ */
+public class ResampledDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The data box being viewed.
+     *
+     * @serial Cannot be null.
+     */
+    private DataBox parent;
+
+    /**
+     * The row of the parent for each row of the view.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] rows;
+
+    /**
+     * The column of the parent for each column of the view.
+     *
+     * @serial Cannot be null.
+     */
+    private int[] cols;
+
+    /**
+     * A copy of the view, once a value has been set, to which all calls are then delegated.
+     *
+     * @serial May be null.
+     */
+    private DataBox copy;
+
+    /**
+     * The distinct parent rows in the view, in increasing order, and the number of times each is selected.
+     */
+    private transient int[] parentRows;
+    private transient int[] weights;
+
+    /**
+     * Constructs a view of the given rows and columns of the given data box.
+     */
+    public ResampledDataBox(DataBox parent, int[] rows, int[] cols) {
+        if (parent == null) throw new NullPointerException("Parent data box is null.");
+
+        for (int row : rows) {
+            if (row < 0 || row >= parent.numRows()) {
+                throw new IllegalArgumentException("Row out of range: " + row);
+            }
+        }
+
+        for (int col : cols) {
+            if (col < 0 || col >= parent.numCols()) {
+                throw new IllegalArgumentException("Column out of range: " + col);
+            }
+        }
+
+        this.parent = parent;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        return new BoxDataSet(new ResampledDataBox(new ShortDataBox(4, 4), new int[]{0, 0, 3}, new int[]{0, 1, 2, 3}),
+                null);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return rows.length;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return cols.length;
+    }
+
+    /**
+     * Sets the value at the given row and column, first copying the view if it hasn't been copied yet.
+     */
+    public void set(int row, int col, Number value) {
+        synchronized (this) {
+            if (copy == null) {
+                copy = parent.viewSelection(rows, cols);
+                parentRows = null;
+                weights = null;
+            }
+        }
+
+        copy.set(row, col, value);
+    }
+
+    /**
+     * @return the Number value at the given row and column, or null if it is missing.
+     */
+    public Number get(int row, int col) {
+        if (copy != null) return copy.get(row, col);
+        return parent.get(rows[row], cols[col]);
+    }
+
+    /**
+     * @return a view of the same rows and columns, or a copy of the copy, if there is one.
+     */
+    public DataBox copy() {
+        if (copy != null) return copy.copy();
+        return new ResampledDataBox(parent, rows.clone(), cols.clone());
+    }
+
+    /**
+     * @return this data box, restricted to the given rows and columns, as a view of the parent.
+     */
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        if (copy != null) return copy.viewSelection(rows, cols);
+
+        int[] _rows = new int[rows.length];
+        int[] _cols = new int[cols.length];
+
+        for (int i = 0; i < rows.length; i++) _rows[i] = this.rows[rows[i]];
+        for (int j = 0; j < cols.length; j++) _cols[j] = this.cols[cols[j]];
+
+        return new ResampledDataBox(parent, _rows, _cols);
+    }
+
+    /**
+     * @return a data box of the type of the parent, holding a copy of the data in this view.
+     */
+    public DataBox like() {
+        if (copy != null) return copy.like();
+        return parent.viewSelection(rows, cols);
+    }
+
+    /**
+     * @return true if the view has not been copied, so that it still reads through to the parent.
+     */
+    public boolean isView() {
+        return copy == null;
+    }
+
+    /**
+     * @return the data box being viewed.
+     */
+    public DataBox getParent() {
+        return parent;
+    }
+
+    /**
+     * @return the parent column for the given column of the view.
+     */
+    public int getParentColumn(int col) {
+        return cols[col];
+    }
+
+    /**
+     * @return the distinct parent rows selected by the view, in increasing order.
+     */
+    public int[] getParentRows() {
+        countRows();
+        return parentRows;
+    }
+
+    /**
+     * @return the number of times each of the distinct parent rows is selected, in the order of getParentRows().
+     */
+    public int[] getWeights() {
+        countRows();
+        return weights;
+    }
+
+    /**
+     * @return the value at the given parent row and view column as a double, or NaN if it is missing, reading
+     * directly from the storage of the parent where possible.
+     */
+    public double getParentDouble(int parentRow, int col) {
+        if (parent instanceof VerticalDoubleDataBox) {
+            return ((VerticalDoubleDataBox) parent).getVariableVectors()[cols[col]][parentRow];
+        } else if (parent instanceof DoubleDataBox) {
+            return ((DoubleDataBox) parent).getData()[parentRow][cols[col]];
+        } else if (parent instanceof ColtDataBox) {
+            return ((ColtDataBox) parent).getData().get(parentRow, cols[col]);
+        }
+
+        Number value = parent.get(parentRow, cols[col]);
+        return value == null ? Double.NaN : value.doubleValue();
+    }
+
+    /**
+     * @return the value at the given parent row and view column as an int, or DiscreteVariable.MISSING_VALUE if it is
+     * missing.
+     */
+    public int getParentInt(int parentRow, int col) {
+        if (parent instanceof VerticalIntDataBox) {
+            return ((VerticalIntDataBox) parent).getVariableVectors()[cols[col]][parentRow];
+        }
+
+        Number value = parent.get(parentRow, cols[col]);
+        return value == null ? DiscreteVariable.MISSING_VALUE : value.intValue();
+    }
+
+    //=============================PRIVATE METHODS=======================//
+
+    private synchronized void countRows() {
+        if (parentRows != null) return;
+
+        int[] counts = new int[parent.numRows()];
+        int numDistinct = 0;
+
+        for (int row : rows) {
+            if (counts[row]++ == 0) numDistinct++;
+        }
+
+        int[] _parentRows = new int[numDistinct];
+        int[] _weights = new int[numDistinct];
+        int k = 0;
+
+        for (int row = 0; row < counts.length; row++) {
+            if (counts[row] > 0) {
+                _parentRows[k] = row;
+                _weights[k++] = counts[row];
+            }
+        }
+
+        this.weights = _weights;
+        this.parentRows = _parentRows;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (parent == null) {
+            throw new NullPointerException();
+        }
+
+        if (rows == null || cols == null) {
+            throw new NullPointerException();
+        }
+    }
+}
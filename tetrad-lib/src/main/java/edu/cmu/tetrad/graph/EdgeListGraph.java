@@ -1134,6 +1134,43 @@ public class EdgeListGraph implements Graph {
         return endpoints;
     }
 
+    /**
+     * Fills this empty graph with the given nodes and edges in one pass, without checking graph
+     * constraints, looking for duplicate nodes or edges, or firing property change events. This is
+     * for readers of graphs that were written out from a graph and so are already consistent; the
+     * nodes must be distinct, and every edge must be distinct and connect two of the nodes.
+     *
+     * @param nodes the nodes of the graph.
+     * @param edges the edges of the graph.
+     */
+    void bulkLoad(List<Node> nodes, List<Edge> edges) {
+        if (!this.nodes.isEmpty()) {
+            throw new IllegalStateException("Bulk loading is only for empty graphs.");
+        }
+
+        for (Node node : nodes) {
+            edgeLists.put(node, new ArrayList<Edge>(4));
+            this.nodes.add(node);
+            namesHash.put(node.getName(), node);
+        }
+
+        for (Edge edge : edges) {
+            List<Edge> edgeList1 = edgeLists.get(edge.getNode1());
+            List<Edge> edgeList2 = edgeLists.get(edge.getNode2());
+
+            if (edgeList1 == null || edgeList2 == null) {
+                throw new IllegalArgumentException("Can't add an edge unless both " +
+                        "nodes are in the graph: " + edge);
+            }
+
+            edgeList1.add(edge);
+            edgeList2.add(edge);
+            edgesSet.add(edge);
+        }
+
+        ancestors = null;
+    }
+
     /**
      * Adds an edge to the graph.
      *
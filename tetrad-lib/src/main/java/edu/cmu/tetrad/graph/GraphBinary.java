@@ -0,0 +1,218 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.graph;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes graphs in a compact binary format, for saving and reloading many graphs quickly.
+ * The format is a node table (name, node type and, optionally, center), an edge table giving for each
+ * edge the indices of its two nodes and its two endpoints packed into a byte, and, optionally, the
+ * ambiguous, underline and dotted underline triples as index triples. Graphs are read back through
+ * EdgeListGraph's bulk loading path, so edges are not checked or announced one at a time.
+ * <p>
+ * Nodes are read back as GraphNodes, as with the text and XML formats.
+ */
+public final class GraphBinary {
+
+    private static final int MAGIC = 0x54475242;
+    private static final int VERSION = 1;
+
+    private static final int LAYOUT = 1;
+    private static final int TRIPLES = 2;
+
+    private static final Endpoint[] ENDPOINTS = {Endpoint.TAIL, Endpoint.ARROW, Endpoint.CIRCLE, Endpoint.NULL};
+
+    private static final NodeType[] NODE_TYPES = {NodeType.MEASURED, NodeType.LATENT, NodeType.ERROR,
+            NodeType.SESSION, NodeType.RANDOMIZE, NodeType.LOCK, NodeType.NO_TYPE};
+
+    private GraphBinary() {
+    }
+
+    /**
+     * Writes the given graph to the given stream. The stream is flushed but not closed.
+     */
+    public static void write(Graph graph, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        List<Node> nodes = graph.getNodes();
+
+        Map<Node, Integer> index = new HashMap<>();
+        boolean layout = false;
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            index.put(node, i);
+            if (node.getCenterX() != -1 || node.getCenterY() != -1) layout = true;
+        }
+
+        boolean triples = !graph.getAmbiguousTriples().isEmpty() || !graph.getUnderLines().isEmpty()
+                || !graph.getDottedUnderlines().isEmpty();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte((layout ? LAYOUT : 0) | (triples ? TRIPLES : 0));
+
+        out.writeInt(nodes.size());
+
+        for (Node node : nodes) {
+            out.writeUTF(node.getName());
+            out.writeByte(code(NODE_TYPES, node.getNodeType()));
+
+            if (layout) {
+                out.writeInt(node.getCenterX());
+                out.writeInt(node.getCenterY());
+            }
+        }
+
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        out.writeInt(edges.size());
+
+        for (Edge edge : edges) {
+            out.writeInt(index.get(edge.getNode1()));
+            out.writeInt(index.get(edge.getNode2()));
+            out.writeByte(code(ENDPOINTS, edge.getEndpoint1()) << 4 | code(ENDPOINTS, edge.getEndpoint2()));
+        }
+
+        if (triples) {
+            writeTriples(graph.getAmbiguousTriples(), index, out);
+            writeTriples(graph.getUnderLines(), index, out);
+            writeTriples(graph.getDottedUnderlines(), index, out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Reads a graph written by <code>write</code> from the given stream. The stream is not closed.
+     */
+    public static Graph read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binary graph.");
+        }
+
+        int version = in.readInt();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary graph version: " + version);
+        }
+
+        int flags = in.readByte();
+        boolean layout = (flags & LAYOUT) != 0;
+        boolean triples = (flags & TRIPLES) != 0;
+
+        int numNodes = in.readInt();
+        List<Node> nodes = new ArrayList<>(numNodes);
+
+        for (int i = 0; i < numNodes; i++) {
+            Node node = new GraphNode(in.readUTF());
+            node.setNodeType(lookup(NODE_TYPES, in.readByte()));
+
+            if (layout) {
+                node.setCenter(in.readInt(), in.readInt());
+            }
+
+            nodes.add(node);
+        }
+
+        int numEdges = in.readInt();
+        List<Edge> edges = new ArrayList<>(numEdges);
+
+        for (int i = 0; i < numEdges; i++) {
+            Node node1 = node(nodes, in.readInt());
+            Node node2 = node(nodes, in.readInt());
+            int endpoints = in.readByte();
+            edges.add(new Edge(node1, node2, lookup(ENDPOINTS, endpoints >> 4 & 0xf),
+                    lookup(ENDPOINTS, endpoints & 0xf)));
+        }
+
+        EdgeListGraph graph = new EdgeListGraph();
+        graph.bulkLoad(nodes, edges);
+
+        if (triples) {
+            graph.setAmbiguousTriples(readTriples(nodes, in));
+            graph.setUnderLineTriples(readTriples(nodes, in));
+            graph.setDottedUnderLineTriples(readTriples(nodes, in));
+        }
+
+        return graph;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private static void writeTriples(Set<Triple> triples, Map<Node, Integer> index, DataOutputStream out)
+            throws IOException {
+        out.writeInt(triples.size());
+
+        for (Triple triple : triples) {
+            out.writeInt(index.get(triple.getX()));
+            out.writeInt(index.get(triple.getY()));
+            out.writeInt(index.get(triple.getZ()));
+        }
+    }
+
+    private static Set<Triple> readTriples(List<Node> nodes, DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Set<Triple> triples = new HashSet<>();
+
+        for (int i = 0; i < size; i++) {
+            triples.add(new Triple(node(nodes, in.readInt()), node(nodes, in.readInt()), node(nodes, in.readInt())));
+        }
+
+        return triples;
+    }
+
+    private static Node node(List<Node> nodes, int i) throws IOException {
+        if (i < 0 || i >= nodes.size()) {
+            throw new IOException("Node index out of range: " + i);
+        }
+
+        return nodes.get(i);
+    }
+
+    private static <T> int code(T[] values, T value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
+        }
+
+        throw new IllegalArgumentException("Can't write " + value + " in a binary graph.");
+    }
+
+    private static <T> T lookup(T[] values, int code) throws IOException {
+        if (code < 0 || code >= values.length) {
+            throw new IOException("Unknown code in binary graph: " + code);
+        }
+
+        return values[code];
+    }
+}
@@ -26,14 +26,18 @@ import edu.cmu.tetrad.util.PointXy;
 import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TaskManager;
 import edu.cmu.tetrad.util.TextTable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.CharArrayReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
@@ -2302,6 +2306,31 @@ public final class GraphUtils {
         return graph;
     }
 
+    /**
+     * Saves the given graph to the given file in the binary format of GraphBinary.
+     *
+     * @param graph The graph to be saved.
+     * @param file  The file to save it in.
+     */
+    public static void saveGraphBinary(Graph graph, File file) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            GraphBinary.write(graph, out);
+        } catch (IOException e1) {
+            throw new IllegalArgumentException("Output file could not be written: " + file, e1);
+        }
+    }
+
+    /**
+     * Loads a graph saved with <code>saveGraphBinary</code>.
+     */
+    public static Graph loadGraphBinary(File file) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return GraphBinary.read(in);
+        } catch (IOException e1) {
+            throw new IllegalArgumentException("Could not read " + file, e1);
+        }
+    }
+
     public static Graph loadGraphTxt(File file) {
         try {
             Reader in1 = new FileReader(file);
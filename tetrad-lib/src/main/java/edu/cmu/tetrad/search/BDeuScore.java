@@ -35,6 +35,9 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     private int[][] data;
     private int sampleSize;
 
+    // If not null, counts are taken from here instead of from data.
+    private IncrementalCountTables counts;
+
     private double samplePrior = 1;
     private double structurePrior = 1;
 
@@ -80,6 +83,24 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         }
     }
 
+    /**
+     * Scores from incrementally maintained count tables, so that after new rows are added to (or old
+     * ones retired from) the counts, tables already computed don't have to be recounted from all rows.
+     */
+    public BDeuScore(IncrementalCountTables counts) {
+        if (counts == null) {
+            throw new NullPointerException();
+        }
+
+        this.counts = counts;
+        this.variables = counts.getVariables();
+
+        numCategories = new int[variables.size()];
+        for (int i = 0; i < variables.size(); i++) {
+            numCategories[i] = counts.getNumCategories(i);
+        }
+    }
+
     private DiscreteVariable getVariable(int i) {
         return (DiscreteVariable) variables.get(i);
     }
@@ -108,32 +129,42 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
         int n_jk[][] = new int[r][c];
         int n_j[] = new int[r];
 
-        int[] parentValues = new int[parents.length];
+        if (counts != null) {
+            int[] table = counts.getCounts(node, parents);
 
-        int[][] myParents = new int[parents.length][];
-        for (int i = 0; i < parents.length; i++) {
-            myParents[i] = data[parents[i]];
-        }
+            for (int j = 0; j < r; j++) {
+                for (int k = 0; k < c; k++) {
+                    n_jk[j][k] = table[j * c + k];
+                    n_j[j] += n_jk[j][k];
+                }
+            }
+        } else {
+            int[] parentValues = new int[parents.length];
 
-        int[] myChild = data[node];
+            int[][] myParents = new int[parents.length][];
+            for (int i = 0; i < parents.length; i++) {
+                myParents[i] = data[parents[i]];
+            }
 
+            int[] myChild = data[node];
 
-        for (int i = 0; i < sampleSize; i++) {
-            for (int p = 0; p < parents.length; p++) {
-                parentValues[p] = myParents[p][i];
-            }
+            for (int i = 0; i < sampleSize; i++) {
+                for (int p = 0; p < parents.length; p++) {
+                    parentValues[p] = myParents[p][i];
+                }
 
-            int childValue = myChild[i];
+                int childValue = myChild[i];
 
-            if (childValue == -99) {
-                throw new IllegalStateException("Please remove or impute missing " +
-                        "values (record " + i + " column " + i + ")");
-            }
+                if (childValue == -99) {
+                    throw new IllegalStateException("Please remove or impute missing " +
+                            "values (record " + i + " column " + i + ")");
+                }
 
-            int rowIndex = getRowIndex(dims, parentValues);
+                int rowIndex = getRowIndex(dims, parentValues);
 
-            n_jk[rowIndex][childValue]++;
-            n_j[rowIndex]++;
+                n_jk[rowIndex][childValue]++;
+                n_j[rowIndex]++;
+            }
         }
 
         //Finally, compute the score
@@ -160,7 +191,7 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
     private double getPriorForStructure(int numParents) {
         double e = getStructurePrior();
-        int vm = data.length - 1;
+        int vm = variables.size() - 1;
         return numParents * Math.log(e / (vm)) + (vm - numParents) * Math.log(1.0 - (e / (vm)));
     }
 
@@ -197,7 +228,7 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
     }
 
     public int getSampleSize() {
-        return sampleSize;
+        return counts != null ? counts.getSampleSize() : sampleSize;
     }
 
     /**
@@ -274,7 +305,7 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
     @Override
     public int getMaxIndegree() {
-        return (int) Math.ceil(Math.log(sampleSize));
+        return (int) Math.ceil(Math.log(getSampleSize()));
     }
 }
 
@@ -21,11 +21,13 @@
 
 package edu.cmu.tetrad.search;
 
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.StatUtils;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.linear.RealMatrix;
 
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 
 import static edu.cmu.tetrad.util.StatUtils.median;
 import static java.lang.Math.*;
@@ -79,6 +81,27 @@ public final class Cci {
      */
     private final double cutoff;
 
+    /**
+     * The columns of the data, for fast access.
+     */
+    private final double[][] columns;
+
+    /**
+     * The maximum number of residual vectors to cache.
+     */
+    private int residualsCacheSize = 500;
+
+    /**
+     * Cached residuals, keyed by variable index and sorted conditioning indices, least
+     * recently used first.
+     */
+    private final Map<String, double[]> residualsCache = new LinkedHashMap<String, double[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+            return size() > residualsCacheSize;
+        }
+    };
+
     //==================CONSTRUCTORS====================//
 
     /**
@@ -106,6 +129,12 @@ public final class Cci {
             indices.put(variables.get(i), i);
         }
 
+        columns = new double[data.getColumnDimension()][];
+
+        for (int i = 0; i < data.getColumnDimension(); i++) {
+            columns[i] = data.getColumn(i);
+        }
+
         h = new double[data.getColumnDimension()];
 
         for (int i = 0; i < data.getColumnDimension(); i++) {
@@ -241,80 +270,154 @@ public final class Cci {
 
     /**
      * Calculates the residuals of x regressed nonparametrically onto z. Left public
-     * so it can be accessed separately.
+     * so it can be accessed separately. Residuals are cached by x and the set of
+     * variables in z.
      */
     public double[] residuals(String x, List<String> z) {
-        int N = data.getRowDimension();
-
         int _x = indices.get(x);
 
-        double[] residuals = new double[N];
+        int[] _z = new int[z.size()];
+
+        for (int m = 0; m < z.size(); m++) {
+            _z[m] = indices.get(z.get(m));
+        }
 
-        if (z.size() == 0) {
+        Arrays.sort(_z);
 
-            // No need to center; the covariance calculation does that.
-            for (int i = 0; i < N; i++) {
-                residuals[i] = data.getEntry(i, _x);
+        String key = _x + ":" + Arrays.toString(_z);
+        double[] residuals;
+
+        synchronized (residualsCache) {
+            residuals = residualsCache.get(key);
+        }
+
+        if (residuals == null) {
+            residuals = residuals(_x, _z);
+
+            synchronized (residualsCache) {
+                residualsCache.put(key, residuals);
             }
+        }
 
-            return residuals;
+        return Arrays.copyOf(residuals, residuals.length);
+    }
+
+    /**
+     * Sets the maximum number of residual vectors to cache; the least recently used
+     * are dropped first. The default is 500.
+     */
+    public void setResidualsCacheSize(int residualsCacheSize) {
+        if (residualsCacheSize < 0) throw new IllegalArgumentException("Cache size must be >= 0.");
+        this.residualsCacheSize = residualsCacheSize;
+
+        synchronized (residualsCache) {
+            residualsCache.clear();
         }
+    }
 
-        int[] _z = new int[z.size()];
+    //=====================PRIVATE METHODS====================//
 
-        for (int m = 0; m < z.size(); m++) {
-            _z[m] = indices.get(z.get(m));
+    // The residuals of column x given columns z, by averaging x over the points within the
+    // uniform kernel's bandwidth of each point in z. Only those neighbors are visited: for a
+    // single conditioning variable by a sweep over the sorted values, otherwise by a k-d tree.
+    private double[] residuals(int x, int[] z) {
+        int N = columns[x].length;
+        final double[] xCol = columns[x];
+
+        if (z.length == 0) {
+
+            // No need to center; the covariance calculation does that.
+            return Arrays.copyOf(xCol, N);
         }
 
         double h = 0.0;
 
-        for (int c : _z) {
+        for (int c : z) {
             if (this.h[c] > h) {
                 h = this.h[c];
             }
         }
 
-        h *= sqrt(_z.length);
+        h *= sqrt(z.length);
 
-        double[] sums = new double[N];
-        double[] weights = new double[N];
+        final double[] residuals = new double[N];
 
-        for (int i = 0; i < N; i++) {
+        if (z.length == 1) {
+            sweepResiduals(xCol, columns[z[0]], h, residuals);
+        } else {
+            final double[][] zCols = new double[z.length][];
+            for (int m = 0; m < z.length; m++) zCols[m] = columns[z[m]];
 
-            double xi = data.getEntry(i, _x);
+            final KdTree tree = new KdTree(zCols);
+            final double _h = h;
 
-            for (int j = i + 1; j < N; j++) {
-                double d = distance(data, _z, i, j);
-                double k = kernel(d / h);
+            class ResidualsTask extends RecursiveAction {
+                private final int from;
+                private final int to;
 
-                double xj = data.getEntry(j, _x);
-
-                sums[i] += k * xj;
-                weights[i] += k;
+                private ResidualsTask(int from, int to) {
+                    this.from = from;
+                    this.to = to;
+                }
 
-                sums[j] += k * xi;
-                weights[j] += k;
+                @Override
+                protected void compute() {
+                    if (to - from <= 100) {
+                        double[] sum = new double[2];
+
+                        for (int i = from; i < to; i++) {
+                            sum[0] = 0.0;
+                            sum[1] = 0.0;
+                            tree.sumWithin(i, _h, xCol, sum);
+                            residuals[i] = xCol[i] - sum[0] / sum[1];
+                        }
+                    } else {
+                        int mid = (from + to) / 2;
+                        invokeAll(new ResidualsTask(from, mid), new ResidualsTask(mid, to));
+                    }
+                }
             }
+
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new ResidualsTask(0, N));
         }
 
-        for (int i = 0; i < N; i++) {
-            double xi = data.getEntry(i, _x);
+        return residuals;
+    }
 
-            double d = distance(data, _z, i, i);
-            double k = kernel(d / h);
+    // Residuals given one variable. Sorted by z, the points within bandwidth of each point
+    // form a window whose ends only move forward, so prefix sums give each average.
+    private void sweepResiduals(double[] x, final double[] z, double h, double[] residuals) {
+        int N = x.length;
+        Integer[] boxed = new Integer[N];
+        for (int i = 0; i < N; i++) boxed[i] = i;
 
-            sums[i] += k * xi;
-            weights[i] += k;
-        }
+        Arrays.sort(boxed, new Comparator<Integer>() {
+            public int compare(Integer i, Integer j) {
+                return Double.compare(z[i], z[j]);
+            }
+        });
+
+        int[] order = new int[N];
+        double[] prefix = new double[N + 1];
 
-        for (int i = 0; i < residuals.length; i++) {
-            residuals[i] = data.getEntry(i, _x) - sums[i] / weights[i];
+        for (int k = 0; k < N; k++) {
+            order[k] = boxed[k];
+            prefix[k + 1] = prefix[k] + x[order[k]];
         }
 
-        return residuals;
-    }
+        int lo = 0;
+        int hi = 0;
 
-    //=====================PRIVATE METHODS====================//
+        for (int k = 0; k < N; k++) {
+            double zk = z[order[k]];
+
+            while (kernel(abs(zk - z[order[lo]]) / h) == 0.) lo++;
+            if (hi < k) hi = k;
+            while (hi + 1 < N && kernel(abs(z[order[hi + 1]] - zk) / h) != 0.) hi++;
+
+            residuals[order[k]] = x[order[k]] - (prefix[hi + 1] - prefix[lo]) / (hi + 1 - lo);
+        }
+    }
 
     private double moment22(double[] x, double[] y) {
         int N = x.length;
@@ -372,17 +475,17 @@ public final class Cci {
     }
 
     // Uniform kernel.
-    private double kernel(double z) {
+    private static double kernel(double z) {
         if (abs(z) > 1.) return 0.;
         else return .5;
     }
 
-    // Euclidean distance.
-    private double distance(RealMatrix data, int[] yCols, int i, int j) {
+    // Euclidean distance between rows i and j of the given columns.
+    private static double distance(double[][] cols, int i, int j) {
         double sum = 0.0;
 
-        for (int yCol : yCols) {
-            double d = data.getEntry(i, yCol) - data.getEntry(j, yCol);
+        for (double[] col : cols) {
+            double d = col[i] - col[j];
             sum += d * d;
         }
 
@@ -474,8 +577,96 @@ public final class Cci {
         return q;
     }
 
-}
+    // A k-d tree over the rows of a set of columns, for finding the rows within a given
+    // distance of a row.
+    private static class KdTree {
+        private static final int LEAF_SIZE = 16;
+
+        private final double[][] cols;
+        private final int[] rows;
+
+        private KdTree(double[][] cols) {
+            this.cols = cols;
+            this.rows = new int[cols[0].length];
+            for (int i = 0; i < rows.length; i++) rows[i] = i;
+            build(0, rows.length, 0);
+        }
+
+        // Adds to sum[0] the values of x and to sum[1] the number of rows within distance h of
+        // row i, by the same test the uniform kernel applies.
+        private void sumWithin(int i, double h, double[] x, double[] sum) {
+            sumWithin(i, h, x, sum, 0, rows.length, 0);
+        }
+
+        private void sumWithin(int i, double h, double[] x, double[] sum, int from, int to, int depth) {
+            if (to - from <= LEAF_SIZE) {
+                for (int k = from; k < to; k++) {
+                    addIfWithin(i, rows[k], h, x, sum);
+                }
+
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            double[] col = cols[depth % cols.length];
+            double diff = col[i] - col[rows[mid]];
 
+            addIfWithin(i, rows[mid], h, x, sum);
 
+            // Slightly widened so rounding never prunes a row the kernel would include.
+            double bound = h * (1 + 1e-9);
+
+            if (diff <= bound) sumWithin(i, h, x, sum, from, mid, depth + 1);
+            if (diff >= -bound) sumWithin(i, h, x, sum, mid + 1, to, depth + 1);
+        }
+
+        private void addIfWithin(int i, int j, double h, double[] x, double[] sum) {
+            if (kernel(distance(cols, i, j) / h) != 0.) {
+                sum[0] += x[j];
+                sum[1]++;
+            }
+        }
 
+        // Arranges rows[from, to) so that the median by the depth's column is in the middle,
+        // with rows no greater before it and no less after it, then recurses on each side.
+        private void build(int from, int to, int depth) {
+            if (to - from <= LEAF_SIZE) return;
 
+            int mid = (from + to) >>> 1;
+            select(cols[depth % cols.length], from, to - 1, mid);
+
+            build(from, mid, depth + 1);
+            build(mid + 1, to, depth + 1);
+        }
+
+        // Quickselect on rows[lo, hi] by the given column, placing the k-th smallest at k.
+        private void select(double[] col, int lo, int hi, int k) {
+            while (hi > lo) {
+                double pivot = col[rows[(lo + hi) >>> 1]];
+                int i = lo;
+                int j = hi;
+
+                while (i <= j) {
+                    while (col[rows[i]] < pivot) i++;
+                    while (col[rows[j]] > pivot) j--;
+
+                    if (i <= j) {
+                        int t = rows[i];
+                        rows[i] = rows[j];
+                        rows[j] = t;
+                        i++;
+                        j--;
+                    }
+                }
+
+                if (k <= j) {
+                    hi = j;
+                } else if (k >= i) {
+                    lo = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
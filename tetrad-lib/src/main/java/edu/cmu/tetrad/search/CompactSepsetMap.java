@@ -0,0 +1,409 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.*;
+
+/**
+ * Stores sepsets for the pairs of a fixed list of nodes compactly, as an alternative to SepsetMap for searches over
+ * many variables. Pairs are keyed by their two node indices packed into a long, in an open addressing table, so that
+ * looking up a pair allocates nothing, and sepsets are stored as runs of node indices in a single int array, with
+ * identical sepsets stored only once. P values, if set, are kept in a parallel array.
+ * <p>
+ * All methods are synchronized. For searches that remove edges from several threads at once, each thread may collect
+ * its sepsets in a map of its own, from emptyCopy(), and merge them into the shared map in bulk when it is done.
+ *
+ * @see SepsetMap
+ */
+public final class CompactSepsetMap implements ISepsetMap {
+
+    private static final long EMPTY = -1L;
+
+    /**
+     * The nodes, and the index of each.
+     */
+    private final List<Node> nodes;
+    private final Map<Node, Integer> indices;
+
+    /**
+     * The open addressing table of pairs: the packed key of each slot, the arena offset of its sepset (-1 for none)
+     * and its p value (NaN for none).
+     */
+    private long[] keys;
+    private int[] offsets;
+    private double[] pValues;
+    private int numSlotsUsed = 0;
+    private int size = 0;
+
+    /**
+     * The sepsets, each stored as its length followed by its node indices.
+     */
+    private int[] arena = new int[64];
+    private int arenaSize = 0;
+
+    /**
+     * The open addressing table of distinct sepsets, by arena offset (-1 for empty slots).
+     */
+    private int[] distinct;
+    private int numDistinct = 0;
+
+    private boolean returnEmptyIfNotSet = false;
+
+    //=============================CONSTRUCTORS===========================//
+
+    public CompactSepsetMap(List<Node> nodes) {
+        this.nodes = new ArrayList<>(nodes);
+        this.indices = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        initTables(16);
+    }
+
+    private CompactSepsetMap(List<Node> nodes, Map<Node, Integer> indices) {
+        this.nodes = nodes;
+        this.indices = indices;
+        initTables(16);
+    }
+
+    //=============================PUBLIC METHODS========================//
+
+    /**
+     * @return an empty map over the same nodes, sharing their index, so that it may be merged into this one.
+     */
+    public CompactSepsetMap emptyCopy() {
+        CompactSepsetMap copy = new CompactSepsetMap(nodes, indices);
+        copy.returnEmptyIfNotSet = returnEmptyIfNotSet;
+        return copy;
+    }
+
+    /**
+     * Sets the sepset for {x, y} to be z. Note that {x, y} is unordered.
+     */
+    public synchronized void set(Node x, Node y, List<Node> z) {
+        int slot = slot(index(x), index(y), true);
+
+        if (z == null) {
+            if (offsets[slot] != -1) size--;
+            offsets[slot] = -1;
+            return;
+        }
+
+        int[] sepset = new int[z.size()];
+
+        for (int i = 0; i < z.size(); i++) {
+            sepset[i] = index(z.get(i));
+        }
+
+        if (offsets[slot] == -1) size++;
+        offsets[slot] = store(sepset, 0, sepset.length);
+    }
+
+    public synchronized void setPValue(Node x, Node y, double p) {
+        pValues[slot(index(x), index(y), true)] = p;
+    }
+
+    /**
+     * Retrieves the sepset previously set for {x, y}, or null if no such set was previously set (or the empty list,
+     * if returnEmptyIfNotSet is true).
+     */
+    public synchronized List<Node> get(Node x, Node y) {
+        int slot = slot(index(x), index(y), false);
+
+        if (slot == -1 || offsets[slot] == -1) {
+            return returnEmptyIfNotSet ? Collections.<Node>emptyList() : null;
+        }
+
+        int offset = offsets[slot];
+        List<Node> sepset = new ArrayList<>(arena[offset]);
+
+        for (int i = 0; i < arena[offset]; i++) {
+            sepset.add(nodes.get(arena[offset + 1 + i]));
+        }
+
+        return sepset;
+    }
+
+    /**
+     * @return the p value set for {x, y}, or NaN if none was set.
+     */
+    public synchronized double getPValue(Node x, Node y) {
+        int slot = slot(index(x), index(y), false);
+        return slot == -1 ? Double.NaN : pValues[slot];
+    }
+
+    /**
+     * Adds all of the sepsets and p values of the other map, which must be over the same nodes, replacing any already
+     * set for the same pairs. The other map should no longer be modified while it is merged.
+     */
+    public void merge(CompactSepsetMap other) {
+        if (other.indices != indices && !other.nodes.equals(nodes)) {
+            throw new IllegalArgumentException("Sepset maps over different nodes cannot be merged.");
+        }
+
+        if (other == this) {
+            return;
+        }
+
+        synchronized (this) {
+            for (int s = 0; s < other.keys.length; s++) {
+                if (other.keys[s] == EMPTY) continue;
+
+                int i = (int) (other.keys[s] >>> 32);
+                int j = (int) other.keys[s];
+                int slot = slot(i, j, true);
+
+                if (other.offsets[s] != -1) {
+                    if (offsets[slot] == -1) size++;
+                    offsets[slot] = store(other.arena, other.offsets[s] + 1, other.arena[other.offsets[s]]);
+                }
+
+                if (!Double.isNaN(other.pValues[s])) {
+                    pValues[slot] = other.pValues[s];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of pairs with sepsets.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of distinct sepsets stored.
+     */
+    public synchronized int getNumDistinctSepsets() {
+        return numDistinct;
+    }
+
+    public boolean isReturnEmptyIfNotSet() {
+        return returnEmptyIfNotSet;
+    }
+
+    public void setReturnEmptyIfNotSet(boolean returnEmptyIfNotSet) {
+        this.returnEmptyIfNotSet = returnEmptyIfNotSet;
+    }
+
+    /**
+     * @return the same sepsets and p values in a SepsetMap.
+     */
+    public synchronized SepsetMap toSepsetMap() {
+        SepsetMap map = new SepsetMap();
+        map.setReturnEmptyIfNotSet(returnEmptyIfNotSet);
+
+        for (int s = 0; s < keys.length; s++) {
+            if (keys[s] == EMPTY) continue;
+
+            Node x = nodes.get((int) (keys[s] >>> 32));
+            Node y = nodes.get((int) keys[s]);
+
+            if (offsets[s] != -1) {
+                map.set(x, y, get(x, y));
+            }
+
+            if (!Double.isNaN(pValues[s])) {
+                map.setPValue(x, y, pValues[s]);
+            }
+        }
+
+        return map;
+    }
+
+    public synchronized String toString() {
+        return toSepsetMap().toString();
+    }
+
+    //=============================PRIVATE METHODS========================//
+
+    private void initTables(int capacity) {
+        keys = new long[capacity];
+        offsets = new int[capacity];
+        pValues = new double[capacity];
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(offsets, -1);
+        Arrays.fill(pValues, Double.NaN);
+
+        distinct = new int[capacity];
+        Arrays.fill(distinct, -1);
+    }
+
+    private int index(Node node) {
+        Integer index = indices.get(node);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Not one of the nodes of this sepset map: " + node);
+        }
+
+        return index;
+    }
+
+    /**
+     * @return the slot of the pair {i, j}, adding it if create is true, or -1 if it is absent and create is false.
+     */
+    private int slot(int i, int j, boolean create) {
+        long key = i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+
+        if (!create) {
+            return -1;
+        }
+
+        if (2 * (numSlotsUsed + 1) > keys.length) {
+            growPairs();
+            return slot(i, j, true);
+        }
+
+        keys[slot] = key;
+        numSlotsUsed++;
+        return slot;
+    }
+
+    private void growPairs() {
+        long[] oldKeys = keys;
+        int[] oldOffsets = offsets;
+        double[] oldPValues = pValues;
+
+        keys = new long[2 * oldKeys.length];
+        offsets = new int[keys.length];
+        pValues = new double[keys.length];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+
+        for (int s = 0; s < oldKeys.length; s++) {
+            if (oldKeys[s] == EMPTY) continue;
+            int slot = mix(oldKeys[s]) & mask;
+
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = oldKeys[s];
+            offsets[slot] = oldOffsets[s];
+            pValues[slot] = oldPValues[s];
+        }
+
+        for (int s = 0; s < keys.length; s++) {
+            if (keys[s] == EMPTY) {
+                offsets[s] = -1;
+                pValues[s] = Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * @return the arena offset of the sepset source[from..from + length), storing it if it is not there already.
+     */
+    private int store(int[] source, int from, int length) {
+        int hash = hash(source, from, length);
+        int mask = distinct.length - 1;
+        int slot = hash & mask;
+
+        while (distinct[slot] != -1) {
+            int offset = distinct[slot];
+
+            if (equal(arena, offset + 1, arena[offset], source, from, length)) {
+                return offset;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        if (arenaSize + length + 1 > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(2 * arena.length, arenaSize + length + 1));
+        }
+
+        int offset = arenaSize;
+        arena[arenaSize++] = length;
+        System.arraycopy(source, from, arena, arenaSize, length);
+        arenaSize += length;
+
+        distinct[slot] = offset;
+        numDistinct++;
+
+        if (2 * numDistinct > distinct.length) {
+            growDistinct();
+        }
+
+        return offset;
+    }
+
+    private void growDistinct() {
+        int[] old = distinct;
+        distinct = new int[2 * old.length];
+        Arrays.fill(distinct, -1);
+        int mask = distinct.length - 1;
+
+        for (int offset : old) {
+            if (offset == -1) continue;
+            int slot = hash(arena, offset + 1, arena[offset]) & mask;
+
+            while (distinct[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+
+            distinct[slot] = offset;
+        }
+    }
+
+    private static int hash(int[] a, int from, int length) {
+        int hash = length;
+
+        for (int i = from; i < from + length; i++) {
+            hash = 31 * hash + a[i];
+        }
+
+        return mix(hash);
+    }
+
+    private static boolean equal(int[] a, int aFrom, int aLength, int[] b, int bFrom, int bLength) {
+        if (aLength != bLength) return false;
+
+        for (int i = 0; i < aLength; i++) {
+            if (a[aFrom + i] != b[bFrom + i]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Spreads the bits of a key, so that nearby keys fall into different slots.
+     */
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
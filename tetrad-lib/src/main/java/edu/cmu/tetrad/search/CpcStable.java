@@ -82,7 +82,7 @@ public final class CpcStable implements GraphSearch {
     /**
      * The sepsets.
      */
-    private SepsetMap sepsets;
+    private ISepsetMap sepsets;
 
     /**
      * Whether verbose output about independencies is output.
@@ -243,7 +243,7 @@ public final class CpcStable implements GraphSearch {
         // Note that we are ignoring the sepset map returned by this method
         // on purpose; it is not used in this search.
         graph = fas.search();
-        sepsets = fas.getSepsets();
+        sepsets = SearchGraphUtils.getSepsets(fas);
 
 //        for (int i = 0; i < nodes.size(); i++) {
 //            for (int j = i+1; j < nodes.size(); j++) {
@@ -463,8 +463,12 @@ public final class CpcStable implements GraphSearch {
                 !knowledge.isForbidden(from.toString(), to.toString());
     }
 
+    /**
+     * @return the sepsets from the most recent search, copied into a new SepsetMap if the adjacency search kept them
+     * compactly.
+     */
     public SepsetMap getSepsets() {
-        return sepsets;
+        return SearchGraphUtils.toSepsetMap(sepsets);
     }
 
     /**
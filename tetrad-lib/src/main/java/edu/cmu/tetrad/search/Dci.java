@@ -326,6 +326,12 @@ public class Dci {
     //============================= Private Methods ============================//
 
     private void findSepsets(List<IndependenceTest> independenceTests) {
+        // one cache for all of the searches, so that each fact is tested at most once in each dataset
+        PooledPValueCache pValueCache = null;
+        if (method != null) {
+            pValueCache = new PooledPValueCache(independenceTests);
+            pValueCache.setParallelized(maxThreads > 1);
+        }
         for (int k = 0; k < marginalVars.size(); k++) {
             IndependenceTest independenceTest = independenceTests.get(k);
             FasDci adj;
@@ -334,6 +340,7 @@ public class Dci {
             if (method != null) {
                 adj = new FasDci(marginalGraph, independenceTest,
                         method, marginalVars, independenceTests, null, null);
+                adj.setPValueCache(pValueCache);
             } else {
                 adj = new FasDci(marginalGraph, independenceTest);
             }
@@ -43,6 +43,7 @@ public class DeltaSextadTest {
     private int N;
     private ICovarianceMatrix cov;
     private List<Node> variables;
+    private FourthMoments fourthMoments;
 
     // As input we require a data set and a list of non-redundant Tetrads.
 
@@ -68,6 +69,7 @@ public class DeltaSextadTest {
 
         TetradMatrix centered = DataUtils.centerData(dataSet.getDoubleData());
         this.data = centered.transpose().toArray();
+        this.fourthMoments = new FourthMoments(data);
         this.N = dataSet.getNumRows();
         this.variables = dataSet.getVariables();
     }
@@ -334,20 +336,7 @@ public class DeltaSextadTest {
 
     // Assumes data are mean-centered.
     private double r(int x, int y, int z, int w) {
-        double sxyzw = 0.0;
-
-        double[] _x = data[x];
-        double[] _y = data[y];
-        double[] _z = data[z];
-        double[] _w = data[w];
-
-        int N = _x.length;
-
-        for (int j = 0; j < N; j++) {
-            sxyzw += _x[j] * _y[j] * _z[j] * _w[j];
-        }
-
-        return (1.0 / N) * sxyzw;
+        return fourthMoments.get(x, y, z, w);
     }
 
     // Assumes data are mean-centered.
@@ -42,12 +42,11 @@ public class DeltaTetradTest {
     private ICovarianceMatrix cov;
     private int df;
     private double chisq;
-    //    private double[][][][] fourthMoment;
-//    private int numVars;
+    //    private int numVars;
 //    private double[] means;
     private List<Node> variables;
     private Map<Node, Integer> variablesHash;
-//    private boolean cacheFourthMoments = false;
+    private FourthMoments fourthMoments;
 
 
     // As input we require a data set and a list of non-redundant Tetrads.
@@ -79,6 +78,7 @@ public class DeltaTetradTest {
         this.dataSet = data2.get(0);
 
         this.data = this.dataSet.getDoubleData().transpose().toArray();
+        this.fourthMoments = new FourthMoments(data);
         this.N = dataSet.getNumRows();
         this.variables = dataSet.getVariables();
 //        this.numVars = dataSet.getNumColumns();
@@ -116,11 +116,6 @@ public class DeltaTetradTest {
         }
     }
 
-//    private void initializeForthMomentMatrix(List<Node> variables) {
-//        int n = variables.size();
-//        fourthMoment = new double[n][n][n][n];
-//    }
-
     /**
      * Takes a list of tetrads for the given data set and returns the chi square value for the test. We assume that the
      * tetrads are non-redundant; if not, a matrix exception will be thrown.
@@ -129,7 +124,34 @@ public class DeltaTetradTest {
      * Square distribution with degrees of freedom equal to the number of nonredundant tetrads tested.
      */
     public double calcChiSquare(Tetrad... tetrads) {
-        this.df = tetrads.length;
+        double chisq = chiSquare(tetrads);
+
+        synchronized (this) {
+            this.df = tetrads.length;
+            this.chisq = chisq;
+        }
+
+        return chisq;
+    }
+
+    /**
+     * @return the p value for the most recent test.
+     */
+    public synchronized double getPValue() {
+        double cdf = new ChiSquaredDistribution(this.df).cumulativeProbability(this.chisq);
+        return 1.0 - cdf;
+    }
+
+    /**
+     * Tests the given tetrads and returns the p value. This may be called from several threads at once.
+     */
+    public double getPValue(Tetrad... tetrads) {
+        double chisq = calcChiSquare(tetrads);
+        double cdf = new ChiSquaredDistribution(tetrads.length).cumulativeProbability(chisq);
+        return 1.0 - cdf;
+    }
+
+    private double chiSquare(Tetrad... tetrads) {
 
         // Need a list of symbolic covariances--i.e. covariances that appear in tetrads.
         Set<Sigma> boldSigmaSet = new LinkedHashSet<>();
@@ -229,24 +251,7 @@ public class DeltaTetradTest {
         TetradMatrix v0 = sigma_tt.inverse();
         TetradMatrix v1 = t.transpose().times(v0);
         TetradMatrix v2 = v1.times(t);
-        double chisq = N * v2.get(0, 0);
-
-        this.chisq = chisq;
-
-        return chisq;
-    }
-
-    /**
-     * @return the p value for the most recent test.
-     */
-    public double getPValue() {
-        double cdf = new ChiSquaredDistribution(this.df).cumulativeProbability(this.chisq);
-        return 1.0 - cdf;
-    }
-
-    public double getPValue(Tetrad... tetrads) {
-        calcChiSquare(tetrads);
-        return getPValue();
+        return N * v2.get(0, 0);
     }
 
     private double sxyzw(Node e, Node f, Node g, Node h) {
@@ -262,53 +267,8 @@ public class DeltaTetradTest {
         return getForthMoment(x, y, z, w);
     }
 
-//    private void setForthMoment(int x, int y, int z, int w, double sxyzw) {
-//        fourthMoment[x][y][z][w] = sxyzw;
-//        fourthMoment[x][y][w][z] = sxyzw;
-//        fourthMoment[x][w][z][y] = sxyzw;
-//        fourthMoment[x][w][y][z] = sxyzw;
-//        fourthMoment[x][z][y][w] = sxyzw;
-//        fourthMoment[x][z][w][y] = sxyzw;
-//
-//        fourthMoment[y][x][z][w] = sxyzw;
-//        fourthMoment[y][x][w][z] = sxyzw;
-//        fourthMoment[y][z][x][w] = sxyzw;
-//        fourthMoment[y][z][w][x] = sxyzw;
-//        fourthMoment[y][w][x][z] = sxyzw;
-//        fourthMoment[y][w][z][x] = sxyzw;
-//
-//        fourthMoment[z][x][y][w] = sxyzw;
-//        fourthMoment[z][x][w][y] = sxyzw;
-//        fourthMoment[z][y][x][w] = sxyzw;
-//        fourthMoment[z][y][w][x] = sxyzw;
-//        fourthMoment[z][w][x][y] = sxyzw;
-//        fourthMoment[z][w][y][x] = sxyzw;
-//
-//        fourthMoment[w][x][y][z] = sxyzw;
-//        fourthMoment[w][x][z][y] = sxyzw;
-//        fourthMoment[w][y][x][z] = sxyzw;
-//        fourthMoment[w][y][z][x] = sxyzw;
-//        fourthMoment[w][z][x][y] = sxyzw;
-//        fourthMoment[w][z][y][x] = sxyzw;
-//    }
-
     private double getForthMoment(int x, int y, int z, int w) {
-//        if (cacheFourthMoments) {
-//            if (fourthMoment == null) {
-//                initializeForthMomentMatrix(dataSet.getVariables());
-//            }
-//
-//            double sxyzw = fourthMoment[x][y][z][w];
-//
-//            if (sxyzw == 0.0) {
-//                sxyzw = sxyzw(x, y, z, w);
-////                setForthMoment(x, y, z, w, sxyzw);
-//            }
-//
-//            return sxyzw;
-//        } else {
-        return sxyzw(x, y, z, w);
-//        }
+        return fourthMoments.get(x, y, z, w);
     }
 
     /**
@@ -364,10 +324,6 @@ public class DeltaTetradTest {
         return 0.0;
     }
 
-//    public void setCacheFourthMoments(boolean cacheFourthMoments) {
-//        this.cacheFourthMoments = cacheFourthMoments;
-//    }
-
     private static class Sigma {
         private Node a;
         private Node b;
@@ -403,23 +359,6 @@ public class DeltaTetradTest {
         }
     }
 
-    private double sxyzw(int x, int y, int z, int w) {
-        double sxyzw = 0.0;
-
-        double[] _x = data[x];
-        double[] _y = data[y];
-        double[] _z = data[z];
-        double[] _w = data[w];
-
-        int N = _x.length;
-
-        for (int j = 0; j < N; j++) {
-            sxyzw += _x[j] * _y[j] * _z[j] * _w[j];
-        }
-
-        return (1.0 / N) * sxyzw;
-    }
-
     private double sxy(double array1[], double array2[], int N) {
         int i;
         double sum = 0.0;
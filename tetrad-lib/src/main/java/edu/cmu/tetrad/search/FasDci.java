@@ -26,6 +26,7 @@ import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.Edge;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.TetradLogger;
@@ -93,6 +94,12 @@ public class FasDci {
      */
     private List<IndependenceTest> independenceTests;
 
+    /**
+     * If resolving independencies, the judgments and p values of the independence tests for every dataset, which
+     * may be shared with the searches over the other datasets.
+     */
+    private PooledPValueCache pValueCache;
+
     /**
      * Independencies known prior to the search
      */
@@ -176,6 +183,12 @@ public class FasDci {
 
         SepsetMapDci sepset = new SepsetMapDci();
 
+        if (method != null && pValueCache == null) {
+            // with no other datasets given, judgments are pooled over this one alone
+            pValueCache = new PooledPValueCache(independenceTests == null || independenceTests.isEmpty()
+                    ? Collections.singletonList(independenceTest) : independenceTests);
+        }
+
         int _depth = depth;
 
         if (_depth == -1) {
@@ -237,6 +250,18 @@ public class FasDci {
         this.knowledge = knowledge;
     }
 
+    /**
+     * Sets the cache of judgments and p values to use when resolving independencies. Searches over different
+     * datasets from the same list of tests may share a cache, so that each fact is tested once in each dataset. By
+     * default a cache of the tests given to the constructor is made when the search starts.
+     */
+    public void setPValueCache(PooledPValueCache pValueCache) {
+        if (pValueCache == null) {
+            throw new NullPointerException("Cannot set the p value cache to null");
+        }
+        this.pValueCache = pValueCache;
+    }
+
     //==============================PRIVATE METHODS======================/
 
     /**
@@ -280,6 +305,12 @@ public class FasDci {
                                   IKnowledge knowledge, SepsetMapDci sepset, int depth) {
 
         boolean more = false;
+        boolean cached = false;
+
+        if (method != null) {
+            pValueCache.computeAll(factsAtDepth(graph, knowledge, depth));
+            cached = isCached(independenceTest);
+        }
 
         for (Node x : variables) {
             List<Node> b = new LinkedList<Node>();
@@ -311,46 +342,37 @@ public class FasDci {
 
                         boolean independent = false;
                         boolean known = false;
-                        if (knownIndependencies != null && knownIndependencies.get(x, y) != null) {
-                            for (List<Node> set : knownIndependencies.getSet(x, y)) {
-                                if (set.containsAll(condSet) && set.size() == condSet.size()) {
-                                    independent = true;
-                                    known = true;
-                                    break;
-                                }
-                            }
+                        if (isKnown(knownIndependencies, x, y, condSet)) {
+                            independent = true;
+                            known = true;
                         }
-                        if (knownAssociations != null && knownAssociations.get(x, y) != null) {
-                            for (List<Node> set : knownAssociations.getSet(x, y)) {
-                                if (set.containsAll(condSet) && set.size() == condSet.size()) {
-                                    independent = false;
-                                    known = true;
-                                    break;
-                                }
-                            }
+                        if (isKnown(knownAssociations, x, y, condSet)) {
+                            independent = false;
+                            known = true;
                         }
                         if (!known) {
-                            independent = independenceTest.isIndependent(x, y, condSet);
                             if (method != null) {
-                                List<IndependenceTest> testsWithVars = new ArrayList<IndependenceTest>();
-                                for (int k = 0; k < marginalVars.size(); k++) {
-                                    Set<Node> marginalSet = marginalVars.get(k);
-                                    if (marginalSet.contains(x) && marginalSet.contains(y) &&
-                                            marginalSet.containsAll(condSet)) {
-                                        testsWithVars.add(independenceTests.get(k));
-                                    }
-                                }
-                                boolean inconsistency = false;
-                                for (IndependenceTest testWithVars : testsWithVars) {
-                                    if (testWithVars.isIndependent(x, y, condSet) != independent) {
-                                        inconsistency = true;
-                                        break;
-                                    }
+                                // the judgments of every dataset with the variables, this one's included, were
+                                // cached for the whole depth above, and the searches over the other datasets will
+                                // ask for them again
+                                PooledPValueCache.Entry entry = pValueCache.get(x, y, condSet);
+                                boolean inconsistency;
+                                if (cached) {
+                                    // this dataset's judgment is among the entry's, so if they all agree it is
+                                    // theirs
+                                    independent = entry.getNumIndependent() > 0;
+                                    inconsistency = !entry.isConsistent();
+                                } else {
+                                    independent = independenceTest.isIndependent(x, y, condSet);
+                                    inconsistency = entry.getNumIndependent()
+                                            != (independent ? entry.size() : 0);
                                 }
                                 if (inconsistency) {
                                     independent = ResolveSepsets.isIndependentPooled(method,
-                                            testsWithVars, x, y, condSet);
+                                            pValueCache, x, y, condSet);
                                 }
+                            } else {
+                                independent = independenceTest.isIndependent(x, y, condSet);
                             }
                             numIndependenceTests++;
                         }
@@ -381,6 +403,73 @@ public class FasDci {
         return more;
     }
 
+    /**
+     * @return the facts that may be tested at the given depth, given the adjacencies at its start and leaving out
+     * facts known beforehand, so that they can be tested in one batch. Some of them are not needed in the end, if
+     * their edge is removed at this depth before they come up; the searches over the other datasets sharing the
+     * cache often need them.
+     */
+    private List<IndependenceFact> factsAtDepth(Graph graph, IKnowledge knowledge, int depth) {
+        List<IndependenceFact> facts = new ArrayList<IndependenceFact>();
+
+        for (Node x : variables) {
+            List<Node> b = new LinkedList<Node>();
+            for (Node node : graph.getAdjacentNodes(x)) {
+                if (variables.contains(node)) {
+                    b.add(node);
+                }
+            }
+
+            for (Node y : b) {
+                List<Node> adjx = new ArrayList<Node>(b);
+                adjx.remove(y);
+                List<Node> ppx = possibleParents(x, adjx, knowledge);
+
+                if (ppx.size() >= depth) {
+                    ChoiceGenerator cg = new ChoiceGenerator(ppx.size(), depth);
+                    int[] choice;
+
+                    while ((choice = cg.next()) != null) {
+                        List<Node> condSet = GraphUtils.asList(choice, ppx);
+
+                        if (!isKnown(knownIndependencies, x, y, condSet) && !isKnown(knownAssociations, x, y, condSet)) {
+                            facts.add(new IndependenceFact(x, y, condSet));
+                        }
+                    }
+                }
+            }
+        }
+
+        return facts;
+    }
+
+    /**
+     * @return true if the given map of known facts has x and y with exactly the nodes of condSet.
+     */
+    private boolean isKnown(SepsetMapDci known, Node x, Node y, List<Node> condSet) {
+        if (known == null || known.get(x, y) == null) {
+            return false;
+        }
+        for (List<Node> set : known.getSet(x, y)) {
+            if (set.containsAll(condSet) && set.size() == condSet.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the given test is one of the cached tests, so that its judgments are pooled in the cache.
+     */
+    private boolean isCached(IndependenceTest test) {
+        for (IndependenceTest cached : pValueCache.getTests()) {
+            if (cached == test) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public int getNumIndependenceTests() {
         return numIndependenceTests;
     }
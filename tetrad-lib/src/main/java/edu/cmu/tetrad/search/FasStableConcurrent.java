@@ -33,6 +33,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements the "fast adjacency search" used in several causal algorithms in this package. In the fast adjacency
@@ -67,9 +68,9 @@ public class FasStableConcurrent implements IFas {
     private int depth = 1000;
 
     /**
-     * The number of independence tests.
+     * The number of independence tests, counted from the parallel tasks.
      */
-    private int numIndependenceTests;
+    private final AtomicInteger numIndependenceTests = new AtomicInteger();
 
 
     private TetradLogger logger = TetradLogger.getInstance();
@@ -77,7 +78,7 @@ public class FasStableConcurrent implements IFas {
     /**
      * The ns found during the search.
      */
-    private SepsetMap sepsets = new SepsetMap();
+    private CompactSepsetMap sepsets;
 
     /**
      * The depth 0 graph, specified initially.
@@ -139,7 +140,8 @@ public class FasStableConcurrent implements IFas {
         // x. It is hoped (i.e. true in the large sample limit) that true adjacencies are never removed.
         Graph graph = new EdgeListGraphSingleConnections(test.getVariables());
 
-        sepsets = new SepsetMap();
+        // Each task collects its sepsets separately and merges them in when it's done.
+        sepsets = new CompactSepsetMap(test.getVariables());
 
         //this is bad when starting from init graph --AJ
         sepsets.setReturnEmptyIfNotSet(true);
@@ -272,6 +274,8 @@ public class FasStableConcurrent implements IFas {
             @Override
             protected Boolean compute() {
                 if (to - from <= chunk) {
+                    CompactSepsetMap local = sepsets.emptyCopy();
+
                     for (int i = from; i < to; i++) {
                         if (verbose) {
                             if ((i + 1) % 1000 == 0) System.out.println("i = " + (i + 1));
@@ -300,14 +304,14 @@ public class FasStableConcurrent implements IFas {
                                 independent = true;
                             }
 
-                            numIndependenceTests++;
+                            numIndependenceTests.incrementAndGet();
 
                             boolean noEdgeRequired =
                                     knowledge.noEdgeRequired(x.getName(), y.getName());
 
                             if (independent && noEdgeRequired) {
                                 if (!sepsets.isReturnEmptyIfNotSet()) {
-                                    getSepsets().set(x, y, empty);
+                                    local.set(x, y, empty);
                                 }
 
                                 if (verbose) {
@@ -329,6 +333,7 @@ public class FasStableConcurrent implements IFas {
                         }
                     }
 
+                    sepsets.merge(local);
                     return true;
                 } else {
                     List<Depth0Task> tasks = new ArrayList<>();
@@ -428,22 +433,56 @@ public class FasStableConcurrent implements IFas {
             @Override
             protected Boolean compute() {
                 if (to - from <= chunk) {
+                    CompactSepsetMap local = sepsets.emptyCopy();
+
                     for (int i = from; i < to; i++) {
                         if (verbose) {
                             if ((i + 1) % 1000 == 0) System.out.println("i = " + (i + 1));
                         }
 
-                        Node x = nodes.get(i);
+                        final Node x = nodes.get(i);
 
                         List<Node> adjx = new ArrayList<>(adjacenciesCopy.get(x));
 
                         EDGE:
-                        for (Node y : adjx) {
+                        for (final Node y : adjx) {
                             List<Node> _adjx = new ArrayList<>(adjx);
                             _adjx.remove(y);
-                            List<Node> ppx = possibleParents(x, _adjx, knowledge);
+                            final List<Node> ppx = possibleParents(x, _adjx, knowledge);
+
+                            if (ppx.size() >= depth && ChoiceRange.choose(ppx.size(), depth) > chunk) {
+
+                                // Too many conditioning sets for one task; divide them among tasks, which stop
+                                // once the first independence (in the order of ChoiceGenerator) is found.
+                                if (!knowledge.noEdgeRequired(x.getName(), y.getName())) continue;
+
+                                int[] choice = ChoiceRange.findFirst(new ChoiceRange(ppx.size(), depth),
+                                        new ChoiceRange.Condition() {
+                                            public boolean holds(int[] choice) {
+                                                numIndependenceTests.incrementAndGet();
+
+                                                try {
+                                                    return test.isIndependent(x, y, GraphUtils.asList(choice, ppx));
+                                                } catch (Exception e) {
+                                                    return false;
+                                                }
+                                            }
+                                        }, chunk);
+
+                                if (choice != null) {
+                                    List<Node> condSet = GraphUtils.asList(choice, ppx);
+
+                                    adjacencies.get(x).remove(y);
+                                    adjacencies.get(y).remove(x);
 
-                            if (ppx.size() >= depth) {
+                                    local.set(x, y, condSet);
+
+                                    if (verbose) {
+                                        TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFact(x, y, condSet));
+                                        out.println(SearchLogUtils.independenceFact(x, y, condSet));
+                                    }
+                                }
+                            } else if (ppx.size() >= depth) {
                                 ChoiceGenerator cg = new ChoiceGenerator(ppx.size(), depth);
                                 int[] choice;
 
@@ -453,7 +492,7 @@ public class FasStableConcurrent implements IFas {
                                     boolean independent;
 
                                     try {
-                                        numIndependenceTests++;
+                                        numIndependenceTests.incrementAndGet();
                                         independent = test.isIndependent(x, y, condSet);
                                     } catch (Exception e) {
                                         independent = false;
@@ -466,7 +505,7 @@ public class FasStableConcurrent implements IFas {
                                         adjacencies.get(x).remove(y);
                                         adjacencies.get(y).remove(x);
 
-                                        getSepsets().set(x, y, condSet);
+                                        local.set(x, y, condSet);
 
                                         if (verbose) {
                                             TetradLogger.getInstance().log("independencies", SearchLogUtils.independenceFact(x, y, condSet) + " p = " +
@@ -481,6 +520,7 @@ public class FasStableConcurrent implements IFas {
                         }
                     }
 
+                    sepsets.merge(local);
                     return true;
                 } else {
                     List<DepthTask> tasks = new ArrayList<DepthTask>();
@@ -529,7 +569,7 @@ public class FasStableConcurrent implements IFas {
     }
 
     public int getNumIndependenceTests() {
-        return numIndependenceTests;
+        return numIndependenceTests.get();
     }
 
     @Override
@@ -547,7 +587,18 @@ public class FasStableConcurrent implements IFas {
         return null;
     }
 
+    /**
+     * @return a copy of the sepsets found by the last search in a new SepsetMap, for callers that need one. This
+     * search does not keep the copy; searches that use it should take getCompactSepsets() instead.
+     */
     public SepsetMap getSepsets() {
+        return sepsets == null ? new SepsetMap() : sepsets.toSepsetMap();
+    }
+
+    /**
+     * @return the sepsets found by the last search, stored compactly.
+     */
+    public CompactSepsetMap getCompactSepsets() {
         return sepsets;
     }
 
@@ -60,7 +60,7 @@ public final class Fci implements GraphSearch {
     /**
      * The SepsetMap being constructed.
      */
-    private SepsetMap sepsets;
+    private ISepsetMap sepsets;
 
     /**
      * The background knowledge.
@@ -194,7 +194,7 @@ public final class Fci implements GraphSearch {
         fas.setDepth(depth);
         fas.setVerbose(verbose);
         this.graph = fas.search();
-        this.sepsets = fas.getSepsets();
+        this.sepsets = SearchGraphUtils.getSepsets(fas);
 
         graph.reorientAllWith(Endpoint.CIRCLE);
 
@@ -263,8 +263,12 @@ public final class Fci implements GraphSearch {
         return graph;
     }
 
+    /**
+     * @return the sepsets from the most recent search, copied into a new SepsetMap if the adjacency search kept them
+     * compactly.
+     */
     public SepsetMap getSepsets() {
-        return this.sepsets;
+        return SearchGraphUtils.toSepsetMap(sepsets);
     }
 
     public IKnowledge getKnowledge() {
@@ -58,7 +58,7 @@ public final class FciMax implements GraphSearch {
     /**
      * The SepsetMap being constructed.
      */
-    private SepsetMap sepsets;
+    private ISepsetMap sepsets;
 
     /**
      * The background knowledge.
@@ -200,7 +200,7 @@ public final class FciMax implements GraphSearch {
         fas.setDepth(depth);
         fas.setVerbose(verbose);
         this.graph = fas.search();
-        this.sepsets = fas.getSepsets();
+        this.sepsets = SearchGraphUtils.getSepsets(fas);
 
         graph.reorientAllWith(Endpoint.CIRCLE);
 
@@ -377,8 +377,12 @@ public final class FciMax implements GraphSearch {
     }
 
 
+    /**
+     * @return the sepsets from the most recent search, copied into a new SepsetMap if the adjacency search kept them
+     * compactly.
+     */
     public SepsetMap getSepsets() {
-        return this.sepsets;
+        return SearchGraphUtils.toSepsetMap(sepsets);
     }
 
     public IKnowledge getKnowledge() {
@@ -161,6 +161,15 @@ public final class Fgs implements GraphSearch, GraphScorer {
     // The final score after search.
     private double modelScore;
 
+    // Variables whose statistics have changed since the initial graph was found, or null.
+    private Set<Node> changedNodes = null;
+
+    // For an incremental search, the nodes whose arrows have been rescored so far, or null.
+    private Set<Node> affectedNodes = null;
+
+    // The thread running the current search; interrupting it stops the search early.
+    private volatile Thread searchThread = null;
+
     //===========================CONSTRUCTORS=============================//
 
     /**
@@ -230,78 +239,91 @@ public final class Fgs implements GraphSearch, GraphScorer {
 
     /**
      * Greedy equivalence search: Start from the empty graph, add edges till model is significant. Then start deleting
-     * edges till a minimum is achieved.
+     * edges till a minimum is achieved. If the calling thread is interrupted, the arrow initializations and the
+     * forward and backward phases stop early and the graph as it stands is returned.
      *
      * @return the resulting Pattern.
      */
     public Graph search() {
-        topGraphs.clear();
+        searchThread = Thread.currentThread();
 
-        lookupArrows = new ConcurrentHashMap<>();
-        final List<Node> nodes = new ArrayList<>(variables);
+        // affectedNodes restricts rescoring to the neighborhood of the changed nodes in this search only.
+        try {
+            topGraphs.clear();
 
-        if (adjacencies != null) {
-            adjacencies = GraphUtils.replaceNodes(adjacencies, nodes);
-        }
-
-        addRequiredEdges(graph);
-
-        if (initialGraph != null) {
-            graph.clear();
-            graph.transferNodesAndEdges(initialGraph);
-            graph = new EdgeListGraphSingleConnections(initialGraph);
+            lookupArrows = new ConcurrentHashMap<>();
+            final List<Node> nodes = new ArrayList<>(variables);
 
-            initializeForwardEdgesFromExistingGraph(getVariables());
+            if (adjacencies != null) {
+                adjacencies = GraphUtils.replaceNodes(adjacencies, nodes);
+            }
 
-            // Do forward search.
-            fes();
-        } else {
             addRequiredEdges(graph);
 
-            if (!graph.getEdges().isEmpty()) {
-                initializeForwardEdgesFromExistingGraph(getVariables());
+            if (initialGraph != null) {
+                graph.clear();
+                graph.transferNodesAndEdges(initialGraph);
+                graph = new EdgeListGraphSingleConnections(initialGraph);
+
+                if (changedNodes != null) {
+                    initializeForwardEdgesFromChangedNodes(getVariables());
+                } else {
+                    initializeForwardEdgesFromExistingGraph(getVariables());
+                }
 
                 // Do forward search.
                 fes();
             } else {
-                if (isHeuristicSpeedup()) {
-                    graph = new EdgeListGraphSingleConnections(getVariables());
-                    initializeForwardEdgesFromEmptyGraph(getVariables());
+                addRequiredEdges(graph);
+
+                if (!graph.getEdges().isEmpty()) {
+                    initializeForwardEdgesFromExistingGraph(getVariables());
 
                     // Do forward search.
                     fes();
                 } else {
-                    graph = new EdgeListGraphSingleConnections(getVariables());
+                    if (isHeuristicSpeedup()) {
+                        graph = new EdgeListGraphSingleConnections(getVariables());
+                        initializeForwardEdgesFromEmptyGraph(getVariables());
 
-                    setHeuristicSpeedup(true);
-                    initializeForwardEdgesFromEmptyGraph(getVariables());
+                        // Do forward search.
+                        fes();
+                    } else {
+                        graph = new EdgeListGraphSingleConnections(getVariables());
 
-                    // Do forward search.
-                    fes();
+                        setHeuristicSpeedup(true);
+                        initializeForwardEdgesFromEmptyGraph(getVariables());
 
-                    setHeuristicSpeedup(false);
-                    initializeForwardEdgesFromExistingGraph(getVariables());
-                    fes();
+                        // Do forward search.
+                        fes();
+
+                        setHeuristicSpeedup(false);
+                        initializeForwardEdgesFromExistingGraph(getVariables());
+                        fes();
+                    }
                 }
             }
-        }
 
-        long start = System.currentTimeMillis();
-        score = 0.0;
+            long start = System.currentTimeMillis();
+            score = 0.0;
 
-        // Do backward search.
-        bes();
+            // Do backward search.
+            bes();
 
-        long endTime = System.currentTimeMillis();
-        this.elapsedTime = endTime - start;
-        this.logger.log("graph", "\nReturning this graph: " + graph);
+            long endTime = System.currentTimeMillis();
+            this.elapsedTime = endTime - start;
+            this.logger.log("graph", "\nReturning this graph: " + graph);
 
-        this.logger.log("info", "Elapsed time = " + (elapsedTime) / 1000. + " s");
-        this.logger.flush();
+            this.logger.log("info", "Elapsed time = " + (elapsedTime) / 1000. + " s");
+            this.logger.flush();
 
-        this.modelScore = score;
+            this.modelScore = score;
 
-        return graph;
+            return graph;
+        } finally {
+            this.affectedNodes = null;
+            this.searchThread = null;
+        }
     }
 
     /**
@@ -414,6 +436,49 @@ public final class Fgs implements GraphSearch, GraphScorer {
         this.initialGraph = initialGraph;
     }
 
+    /**
+     * @return the variables whose statistics have changed since the initial graph was found, or null if the
+     * search is not incremental.
+     */
+    public Set<Node> getChangedNodes() {
+        return changedNodes;
+    }
+
+    /**
+     * Sets the variables whose statistics have changed materially since the initial graph was found, for
+     * instance after new rows have been appended to the data. If this is non-null and an initial graph is
+     * given, only arrows touching these variables or their adjacents in the initial graph are rescored
+     * before the forward search; arrows elsewhere are assumed to be as they were when the initial graph was
+     * found. The backward search is likewise restricted to edges touching nodes rescored along the way.
+     * Set to null for a full search.
+     */
+    public void setChangedNodes(Collection<Node> changedNodes) {
+        if (changedNodes == null) {
+            this.changedNodes = null;
+            return;
+        }
+
+        Map<String, Node> byName = new HashMap<>();
+
+        for (Node variable : variables) {
+            byName.put(variable.getName(), variable);
+        }
+
+        Set<Node> nodes = new HashSet<>();
+
+        for (Node node : changedNodes) {
+            Node variable = byName.get(node.getName());
+
+            if (variable == null) {
+                throw new IllegalArgumentException("Not a variable in the score: " + node);
+            }
+
+            nodes.add(variable);
+        }
+
+        this.changedNodes = nodes;
+    }
+
     /**
      * Sets whether verbose output should be produced.
      */
@@ -563,6 +628,8 @@ public final class Fgs implements GraphSearch, GraphScorer {
             protected Boolean compute() {
                 if (to - from <= chunk) {
                     for (int i = from; i < to; i++) {
+                        if (isCancelled()) break;
+
                         if (verbose) {
                             synchronized (count) {
                                 if (((count[0]++) + 1) % 1000 == 0)
@@ -671,6 +738,8 @@ public final class Fgs implements GraphSearch, GraphScorer {
             protected Boolean compute() {
                 if (to - from <= chunk) {
                     for (int i = from; i < to; i++) {
+                        if (isCancelled()) break;
+
                         if (verbose) {
                             synchronized (count) {
                                 if (((count[0]++) + 1) % 1000 == 0)
@@ -731,6 +800,127 @@ public final class Fgs implements GraphSearch, GraphScorer {
         }
     }
 
+    // Initializes the sorted arrows lists for an incremental forward search from an existing graph. Only pairs
+    // with an endpoint among the changed nodes or their adjacents are rescored; the families of all other
+    // nodes are untouched by the change, so their arrows scored no better than when the initial graph was found.
+    private void initializeForwardEdgesFromChangedNodes(final List<Node> nodes) {
+        long start = System.currentTimeMillis();
+
+        sortedArrows = new ConcurrentSkipListSet<>();
+        lookupArrows = new ConcurrentHashMap<>();
+        neighbors = new ConcurrentHashMap<>();
+
+        this.effectEdgesGraph = new EdgeListGraphSingleConnections(getVariables());
+
+        for (Edge edge : initialGraph.getEdges()) {
+            if (!effectEdgesGraph.isAdjacentTo(edge.getNode1(), edge.getNode2())) {
+                effectEdgesGraph.addUndirectedEdge(edge.getNode1(), edge.getNode2());
+            }
+        }
+
+        affectedNodes = new HashSet<>(changedNodes);
+
+        for (Node node : changedNodes) {
+            affectedNodes.addAll(graph.getAdjacentNodes(node));
+        }
+
+        buildIndexing(nodes);
+
+        for (Node node : nodes) {
+            neighbors.put(node, getNeighbors(node));
+        }
+
+        final List<Node> affected = new ArrayList<>(affectedNodes);
+        final Map<Node, Integer> affectedIndices = new HashMap<>();
+
+        for (int i = 0; i < affected.size(); i++) {
+            affectedIndices.put(affected.get(i), i);
+        }
+
+        final Set<Node> emptySet = new HashSet<>(0);
+
+        class InitializeFromChangedNodesTask extends RecursiveTask<Boolean> {
+            private int chunk;
+            private int from;
+            private int to;
+
+            public InitializeFromChangedNodesTask(int chunk, int from, int to) {
+                this.chunk = chunk;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        if (isCancelled()) break;
+
+                        Node y = affected.get(i);
+
+                        for (Node x : nodes) {
+                            if (x == y) continue;
+
+                            // Pairs within the affected set are visited once, from the lower index.
+                            Integer j = affectedIndices.get(x);
+                            if (j != null && j < i) continue;
+
+                            if (existsKnowledge()) {
+                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                    continue;
+                                }
+
+                                if (!validSetByKnowledge(y, emptySet)) {
+                                    continue;
+                                }
+                            }
+
+                            if (adjacencies != null && !adjacencies.isAdjacentTo(x, y)) {
+                                continue;
+                            }
+
+                            if (isHeuristicSpeedup() && (changedNodes.contains(x) || changedNodes.contains(y))) {
+                                double bump = fgsScore.localScoreDiff(hashIndices.get(x), hashIndices.get(y), new int[]{});
+
+                                if (fgsScore.isEffectEdge(bump) && !effectEdgesGraph.isAdjacentTo(x, y)
+                                        && (boundGraph == null || boundGraph.isAdjacentTo(x, y))) {
+                                    effectEdgesGraph.addUndirectedEdge(x, y);
+                                }
+                            }
+
+                            if (graph.isAdjacentTo(x, y)) continue;
+
+                            calculateArrowsForward(x, y);
+                            calculateArrowsForward(y, x);
+                        }
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to - from) / 2;
+
+                    List<InitializeFromChangedNodesTask> tasks = new ArrayList<>();
+
+                    tasks.add(new InitializeFromChangedNodesTask(chunk, from, from + mid));
+                    tasks.add(new InitializeFromChangedNodesTask(chunk, from + mid, to));
+
+                    invokeAll(tasks);
+
+                    return true;
+                }
+            }
+        }
+
+        pool.invoke(new InitializeFromChangedNodesTask(Math.max(1, minChunk / 10), 0, affected.size()));
+
+        long stop = System.currentTimeMillis();
+
+        if (verbose) {
+            out.println("Rescoring arrows for " + affected.size() + " of " + nodes.size() + " nodes.");
+            out.println("Elapsed initializeForwardEdgesFromChangedNodes = " + (stop - start) + " ms");
+        }
+    }
+
     /**
      * Forward equivalence search.
      */
@@ -738,6 +928,9 @@ public final class Fgs implements GraphSearch, GraphScorer {
         TetradLogger.getInstance().log("info", "** FORWARD EQUIVALENCE SEARCH");
 
         while (!sortedArrows.isEmpty()) {
+            // A caller running the search on its own thread may stop it early by interrupting that thread.
+            if (isCancelled()) break;
+
             Arrow arrow = sortedArrows.first();
             sortedArrows.remove(arrow);
 
@@ -783,6 +976,11 @@ public final class Fgs implements GraphSearch, GraphScorer {
             toProcess.add(x);
             toProcess.add(y);
 
+            if (affectedNodes != null) {
+                affectedNodes.addAll(visited);
+                affectedNodes.addAll(toProcess);
+            }
+
             storeGraph();
             reevaluateForward(toProcess);
         }
@@ -801,6 +999,8 @@ public final class Fgs implements GraphSearch, GraphScorer {
         initializeArrowsBackward();
 
         while (!sortedArrows.isEmpty()) {
+            if (isCancelled()) break;
+
             Arrow arrow = sortedArrows.first();
             sortedArrows.remove(arrow);
 
@@ -873,6 +1073,13 @@ public final class Fgs implements GraphSearch, GraphScorer {
         return meekOrientRestricted(new ArrayList<>(toProcess), getKnowledge());
     }
 
+    // Returns true if the thread running the search has been interrupted. Tasks running on the pool check this
+    // rather than their own threads, so that the expensive arrow initializations stop early too.
+    private boolean isCancelled() {
+        Thread thread = searchThread;
+        return thread != null && thread.isInterrupted();
+    }
+
     // Returns true if knowledge is not empty.
     private boolean existsKnowledge() {
         return !knowledge.isEmpty();
@@ -885,6 +1092,10 @@ public final class Fgs implements GraphSearch, GraphScorer {
             Node x = edge.getNode1();
             Node y = edge.getNode2();
 
+            if (affectedNodes != null && !affectedNodes.contains(x) && !affectedNodes.contains(y)) {
+                continue;
+            }
+
             if (existsKnowledge()) {
                 if (!getKnowledge().noEdgeRequired(x.getName(), y.getName())) {
                     continue;
@@ -27,6 +27,10 @@ import edu.cmu.tetrad.sem.*;
 import edu.cmu.tetrad.util.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.sqrt;
@@ -75,6 +79,14 @@ public class FindOneFactorClusters {
     private boolean significanceCalculated = false;
     private Algorithm algorithm = Algorithm.GAP;
 
+    // insignificant[i][j] is true just in case corr(i, j) does not test as significantly different from zero.
+    private boolean[][] insignificant;
+
+    // The number of candidate quartets examined in parallel at a time when looking for pure clusters.
+    private static final int QUARTET_BLOCK_SIZE = 512;
+
+    private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
     //========================================PUBLIC METHODS====================================//
 
     public FindOneFactorClusters(ICovarianceMatrix cov, TestType testType, Algorithm algorithm, double alpha) {
@@ -89,8 +101,7 @@ public class FindOneFactorClusters {
         this.algorithm = algorithm;
 
         this.corr = new CorrelationMatrix(cov);
-
-
+        this.insignificant = insignificantCorrelations();
     }
 
     public FindOneFactorClusters(DataSet dataSet, TestType testType, Algorithm algorithm, double alpha) {
@@ -104,6 +115,7 @@ public class FindOneFactorClusters {
         this.algorithm = algorithm;
 
         this.corr = new CorrelationMatrix(dataSet);
+        this.insignificant = insignificantCorrelations();
     }
 
     // renjiey
@@ -263,54 +275,90 @@ public class FindOneFactorClusters {
 
     }
 
-    private Set<Set<Integer>> findPuretriples(List<Integer> allVariables) {
+    // Triples are partitioned by their first index across the fork join pool; the result does not depend on the
+    // order in which they are examined.
+    private Set<Set<Integer>> findPuretriples(final List<Integer> allVariables) {
         if (allVariables.size() < 4) {
             return new HashSet<Set<Integer>>();
         }
 
         log("Finding pure triples.", true);
 
-        ChoiceGenerator gen = new ChoiceGenerator(allVariables.size(), 3);
-        int[] choice;
-        Set<Set<Integer>> puretriples = new HashSet<Set<Integer>>();
-        CHOICE:
-        while ((choice = gen.next()) != null) {
-            int n1 = allVariables.get(choice[0]);
-            int n2 = allVariables.get(choice[1]);
-            int n3 = allVariables.get(choice[2]);
+        final Set<Set<Integer>> puretriples
+                = Collections.newSetFromMap(new ConcurrentHashMap<Set<Integer>, Boolean>());
 
-            List<Integer> triple = triple(n1, n2, n3);
+        class PureTriplesTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
 
-            if (zeroCorr(triple)) continue;
+            private PureTriplesTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
 
-            for (int o : allVariables) {
-                if (triple.contains(o)) {
-                    continue;
-                }
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 1) {
+                    for (int i = from; i < to; i++) {
+                        findPureTriples(i);
+                    }
 
-                List<Integer> quartet = quartet(n1, n2, n3, o);
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
 
-                boolean vanishes = vanishes(quartet);
+                    PureTriplesTask left = new PureTriplesTask(from, mid);
+                    PureTriplesTask right = new PureTriplesTask(mid, to);
 
-                if (!vanishes) {
-                    continue CHOICE;
-                }
+                    left.fork();
+                    right.compute();
+                    left.join();
 
-//                if (!(avgSumLnP(quartet) > -20)) {
-//                    continue CHOICE;
-//                }
+                    return true;
+                }
             }
 
-            HashSet<Integer> _cluster = new HashSet<Integer>(triple);
+            private void findPureTriples(int i) {
+                int n1 = allVariables.get(i);
 
-            if (verbose) {
-                log("++" + variablesForIndices(triple), false);
-            }
+                for (int j = i + 1; j < allVariables.size(); j++) {
+                    int n2 = allVariables.get(j);
+
+                    if (insignificant[n1][n2]) continue;
+
+                    CHOICE:
+                    for (int k = j + 1; k < allVariables.size(); k++) {
+                        int n3 = allVariables.get(k);
 
-            puretriples.add(_cluster);
+                        List<Integer> triple = triple(n1, n2, n3);
+
+                        if (zeroCorr(triple)) continue;
+
+                        for (int o : allVariables) {
+                            if (triple.contains(o)) {
+                                continue;
+                            }
+
+                            List<Integer> quartet = quartet(n1, n2, n3, o);
+
+                            if (!vanishes(quartet)) {
+                                continue CHOICE;
+                            }
+                        }
+
+                        if (verbose) {
+                            log("++" + variablesForIndices(triple), false);
+                        }
+
+                        puretriples.add(new HashSet<Integer>(triple));
+                    }
+                }
+            }
         }
 
-        return puretriples;
+        pool.invoke(new PureTriplesTask(0, allVariables.size() - 2));
+
+        return new HashSet<Set<Integer>>(puretriples);
     }
 
     private Set<Set<Integer>> combinePuretriples(Set<Set<Integer>> puretriples, List<Integer> _variables) {
@@ -680,18 +728,36 @@ public class FindOneFactorClusters {
 
             ChoiceGenerator gen = new ChoiceGenerator(_variables.size(), 4);
             int[] choice;
+            List<List<Integer>> block = new ArrayList<List<Integer>>();
 
-            while ((choice = gen.next()) != null) {
-                int n1 = _variables.get(choice[0]);
-                int n2 = _variables.get(choice[1]);
-                int n3 = _variables.get(choice[2]);
-                int n4 = _variables.get(choice[3]);
+            while (true) {
+                choice = gen.next();
+
+                if (choice != null) {
+                    int n1 = _variables.get(choice[0]);
+                    int n2 = _variables.get(choice[1]);
+                    int n3 = _variables.get(choice[2]);
+                    int n4 = _variables.get(choice[3]);
+
+                    List<Integer> quartet = quartet(n1, n2, n3, n4);
+
+                    if (!zeroCorr(quartet)) {
+                        block.add(quartet);
+                    }
 
-                List<Integer> cluster = quartet(n1, n2, n3, n4);
+                    if (block.size() < QUARTET_BLOCK_SIZE) continue;
+                }
+
+                if (block.isEmpty()) break;
 
                 // Note that purity needs to be assessed with respect to all of the variables in order to
-                // remove all latent-measure impurities between pairs of latents.
-                if (pure(cluster, allVariables, alpha)) {
+                // remove all latent-measure impurities between pairs of latents. The first pure quartet in
+                // the block is taken, as it would be if the block were examined in order.
+                int first = firstPure(block, allVariables);
+                List<Integer> cluster = first == -1 ? null : block.get(first);
+                block.clear();
+
+                if (cluster != null) {
                     if (verbose) {
                         log("Found a pure: " + variablesForIndices(cluster), false);
                     }
@@ -708,6 +774,8 @@ public class FindOneFactorClusters {
 
                     continue VARIABLES;
                 }
+
+                if (choice == null) break;
             }
 
             break;
@@ -716,6 +784,58 @@ public class FindOneFactorClusters {
         return clusters;
     }
 
+    // Returns the index of the first pure quartet in the given list, or -1 if none is pure. The quartets are
+    // tested in parallel; tests of quartets after one already found to be pure are skipped.
+    private int firstPure(final List<List<Integer>> quartets, final List<Integer> allVariables) {
+        final AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+
+        class PureTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private PureTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 4) {
+                    for (int i = from; i < to; i++) {
+                        if (i > first.get()) return true;
+
+                        if (pure(quartets.get(i), allVariables, alpha)) {
+                            int f;
+
+                            do {
+                                f = first.get();
+                            } while (i < f && !first.compareAndSet(f, i));
+
+                            return true;
+                        }
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    PureTask left = new PureTask(from, mid);
+                    PureTask right = new PureTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        pool.invoke(new PureTask(0, quartets.size()));
+
+        return first.get() == Integer.MAX_VALUE ? -1 : first.get();
+    }
+
     private void addOtherVariables(List<Integer> _variables, List<Integer> allVariables, List<Integer> cluster) {
         O:
         for (int o : _variables) {
@@ -1066,15 +1186,31 @@ public class FindOneFactorClusters {
 
         for (int i = 0; i < cluster.size(); i++) {
             for (int j = i + 1; j < cluster.size(); j++) {
-                double r = this.corr.getValue(cluster.get(i), cluster.get(j));
-                int N = this.corr.getSampleSize();
+                if (insignificant[cluster.get(i)][cluster.get(j)]) count++;
+            }
+        }
+
+        return count >= 1;
+    }
+
+    // Tests each correlation against zero once up front, since zeroCorr is asked about the same pairs over and
+    // over again and is used to prune candidates before the much more expensive tetrad tests.
+    private boolean[][] insignificantCorrelations() {
+        int numVars = this.corr.getDimension();
+        int N = this.corr.getSampleSize();
+        boolean[][] insignificant = new boolean[numVars][numVars];
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = i + 1; j < numVars; j++) {
+                double r = this.corr.getValue(i, j);
                 double f = sqrt(N) * Math.log((1. + r) / (1. - r));
                 double p = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, abs(f)));
-                if (p > alpha) count++;
+                insignificant[i][j] = p > alpha;
+                insignificant[j][i] = p > alpha;
             }
         }
 
-        return count >= 1;
+        return insignificant;
     }
 
     /**
@@ -1095,7 +1231,10 @@ public class FindOneFactorClusters {
 
             return test.getPValue(t1, t2) > alpha;
         } else if (testType == TestType.TETRAD_WISHART) {
-            return test2.tetradPValue(x, y, z, w) > alpha && test2.tetradPValue(x, y, w, z) > alpha;
+            // The Wishart test keeps intermediate results in fields, so calls to it cannot overlap.
+            synchronized (test2) {
+                return test2.tetradPValue(x, y, z, w) > alpha && test2.tetradPValue(x, y, w, z) > alpha;
+            }
         }
 
         throw new IllegalArgumentException("Only the delta and wishart tests are being used: " + testType);
@@ -27,6 +27,10 @@ import edu.cmu.tetrad.sem.*;
 import edu.cmu.tetrad.util.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.sqrt;
@@ -68,6 +72,14 @@ public class FindTwoFactorClusters {
     private boolean verbose = false;
     private Algorithm algorithm = Algorithm.GAP;
 
+    // insignificant[i][j] is true just in case corr(i, j) does not test as significantly different from zero.
+    private boolean[][] insignificant;
+
+    // The number of candidate sextets examined in parallel at a time when looking for pure clusters.
+    private static final int SEXTET_BLOCK_SIZE = 512;
+
+    private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
     //========================================PUBLIC METHODS====================================//
 
     public FindTwoFactorClusters(ICovarianceMatrix cov, Algorithm algorithm, double alpha) {
@@ -79,8 +91,7 @@ public class FindTwoFactorClusters {
         this.algorithm = algorithm;
 
         this.corr = new CorrelationMatrix(cov);
-
-
+        this.insignificant = insignificantCorrelations();
     }
 
     public FindTwoFactorClusters(DataSet dataSet, Algorithm algorithm, double alpha) {
@@ -91,6 +102,7 @@ public class FindTwoFactorClusters {
         this.algorithm = algorithm;
 
         this.corr = new CorrelationMatrix(dataSet);
+        this.insignificant = insignificantCorrelations();
     }
 
     // renjiey
@@ -246,55 +258,92 @@ public class FindTwoFactorClusters {
 
     }
 
-    private Set<List<Integer>> findPurepentads(List<Integer> variables) {
+    // Pentads are partitioned by their first index across the fork join pool; the result does not depend on the
+    // order in which they are examined.
+    private Set<List<Integer>> findPurepentads(final List<Integer> variables) {
         if (variables.size() < 6) {
             return new HashSet<>();
         }
 
         log("Finding pure pentads.", true);
 
-        ChoiceGenerator gen = new ChoiceGenerator(variables.size(), 5);
-        int[] choice;
-        Set<List<Integer>> purePentads = new HashSet<>();
-        CHOICE:
-        while ((choice = gen.next()) != null) {
-            int n1 = variables.get(choice[0]);
-            int n2 = variables.get(choice[1]);
-            int n3 = variables.get(choice[2]);
-            int n4 = variables.get(choice[3]);
-            int n5 = variables.get(choice[4]);
+        final Set<List<Integer>> purePentads = Collections.newSetFromMap(new ConcurrentHashMap<List<Integer>, Boolean>());
 
-            List<Integer> pentad = pentad(n1, n2, n3, n4, n5);
+        class PurePentadsTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
 
-            if (zeroCorr(pentad, 4)) continue;
+            private PurePentadsTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
 
-            for (int o : variables) {
-                if (pentad.contains(o)) {
-                    continue;
-                }
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 1) {
+                    for (int i = from; i < to; i++) {
+                        findPurePentads(i);
+                    }
 
-                List<Integer> sextet = sextet(n1, n2, n3, n4, n5, o);
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
 
-                Collections.sort(sextet);
+                    PurePentadsTask left = new PurePentadsTask(from, mid);
+                    PurePentadsTask right = new PurePentadsTask(mid, to);
 
-                boolean vanishes = vanishes(sextet);
+                    left.fork();
+                    right.compute();
+                    left.join();
 
-                if (!vanishes) {
-                    continue CHOICE;
+                    return true;
                 }
             }
 
-            List<Integer> _cluster = new ArrayList<>(pentad);
+            private void findPurePentads(int i) {
+                int n1 = variables.get(i);
 
-            if (verbose) {
-                System.out.println(variablesForIndices(pentad));
-                log("++" + variablesForIndices(pentad), false);
-            }
+                ChoiceGenerator gen = new ChoiceGenerator(variables.size() - i - 1, 4);
+                int[] choice;
+
+                CHOICE:
+                while ((choice = gen.next()) != null) {
+                    int n2 = variables.get(i + 1 + choice[0]);
+                    int n3 = variables.get(i + 1 + choice[1]);
+                    int n4 = variables.get(i + 1 + choice[2]);
+                    int n5 = variables.get(i + 1 + choice[3]);
+
+                    List<Integer> pentad = pentad(n1, n2, n3, n4, n5);
+
+                    if (zeroCorr(pentad, 4)) continue;
 
-            purePentads.add(_cluster);
+                    for (int o : variables) {
+                        if (pentad.contains(o)) {
+                            continue;
+                        }
+
+                        List<Integer> sextet = sextet(n1, n2, n3, n4, n5, o);
+
+                        Collections.sort(sextet);
+
+                        if (!vanishes(sextet)) {
+                            continue CHOICE;
+                        }
+                    }
+
+                    if (verbose) {
+                        System.out.println(variablesForIndices(pentad));
+                        log("++" + variablesForIndices(pentad), false);
+                    }
+
+                    purePentads.add(new ArrayList<>(pentad));
+                }
+            }
         }
 
-        return purePentads;
+        pool.invoke(new PurePentadsTask(0, variables.size() - 4));
+
+        return new HashSet<>(purePentads);
     }
 
     private Set<List<Integer>> combinePurePentads(Set<List<Integer>> purePentads, List<Integer> _variables) {
@@ -622,20 +671,38 @@ public class FindTwoFactorClusters {
 
                 ChoiceGenerator gen = new ChoiceGenerator(_variables.size(), 6);
                 int[] choice;
+                List<List<Integer>> block = new ArrayList<>();
 
-                while ((choice = gen.next()) != null) {
-                    int n1 = _variables.get(choice[0]);
-                    int n2 = _variables.get(choice[1]);
-                    int n3 = _variables.get(choice[2]);
-                    int n4 = _variables.get(choice[3]);
-                    int n5 = _variables.get(choice[4]);
-                    int n6 = _variables.get(choice[5]);
+                while (true) {
+                    choice = gen.next();
+
+                    if (choice != null) {
+                        int n1 = _variables.get(choice[0]);
+                        int n2 = _variables.get(choice[1]);
+                        int n3 = _variables.get(choice[2]);
+                        int n4 = _variables.get(choice[3]);
+                        int n5 = _variables.get(choice[4]);
+                        int n6 = _variables.get(choice[5]);
+
+                        List<Integer> sextet = sextet(n1, n2, n3, n4, n5, n6);
+
+                        if (!zeroCorr(sextet, 5)) {
+                            block.add(sextet);
+                        }
+
+                        if (block.size() < SEXTET_BLOCK_SIZE) continue;
+                    }
 
-                    List<Integer> cluster = sextet(n1, n2, n3, n4, n5, n6);
+                    if (block.isEmpty()) break;
 
                     // Note that purity needs to be assessed with respect to all of the variables in order to
-                    // remove all latent-measure impurities between pairs of latents.
-                    if (pure(cluster)) {
+                    // remove all latent-measure impurities between pairs of latents. The first pure sextet in
+                    // the block is taken, as it would be if the block were examined in order.
+                    int first = firstPure(block);
+                    List<Integer> cluster = first == -1 ? null : block.get(first);
+                    block.clear();
+
+                    if (cluster != null) {
                         if (verbose) {
                             log("Found a pure: " + variablesForIndices(cluster), false);
                         }
@@ -654,6 +721,8 @@ public class FindTwoFactorClusters {
 
                         continue VARIABLES;
                     }
+
+                    if (choice == null) break;
                 }
 
                 break;
@@ -689,6 +758,58 @@ public class FindTwoFactorClusters {
         return clusters;
     }
 
+    // Returns the index of the first pure sextet in the given list, or -1 if none is pure. The sextets are
+    // tested in parallel; tests of sextets after one already found to be pure are skipped.
+    private int firstPure(final List<List<Integer>> sextets) {
+        final AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+
+        class PureTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private PureTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 4) {
+                    for (int i = from; i < to; i++) {
+                        if (i > first.get()) return true;
+
+                        if (pure(sextets.get(i))) {
+                            int f;
+
+                            do {
+                                f = first.get();
+                            } while (i < f && !first.compareAndSet(f, i));
+
+                            return true;
+                        }
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    PureTask left = new PureTask(from, mid);
+                    PureTask right = new PureTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        pool.invoke(new PureTask(0, sextets.size()));
+
+        return first.get() == Integer.MAX_VALUE ? -1 : first.get();
+    }
+
     private void addOtherVariables(List<Integer> _variables, List<Integer> cluster) {
 
         O:
@@ -1034,15 +1155,31 @@ public class FindTwoFactorClusters {
 
         for (int i = 0; i < cluster.size(); i++) {
             for (int j = i + 1; j < cluster.size(); j++) {
-                double r = this.corr.getValue(cluster.get(i), cluster.get(j));
-                int N = this.corr.getSampleSize();
+                if (insignificant[cluster.get(i)][cluster.get(j)]) count++;
+            }
+        }
+
+        return count >= n;
+    }
+
+    // Tests each correlation against zero once up front, since zeroCorr is asked about the same pairs over and
+    // over again and is used to prune candidates before the much more expensive sextad tests.
+    private boolean[][] insignificantCorrelations() {
+        int numVars = this.corr.getDimension();
+        int N = this.corr.getSampleSize();
+        boolean[][] insignificant = new boolean[numVars][numVars];
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = i + 1; j < numVars; j++) {
+                double r = this.corr.getValue(i, j);
                 double f = sqrt(N) * Math.log((1. + r) / (1. - r));
                 double p = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, abs(f)));
-                if (p > alpha) count++;
+                insignificant[i][j] = p > alpha;
+                insignificant[j][i] = p > alpha;
             }
         }
 
-        return count >= n;
+        return insignificant;
     }
 
     /**
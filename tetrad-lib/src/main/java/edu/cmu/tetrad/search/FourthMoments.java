@@ -0,0 +1,132 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoizes fourth moments E(xyzw) of mean-centered data for the delta tetrad and sextad tests. Since the moment
+ * is symmetric in its four arguments, entries are keyed by the sorted indices, so all 24 orderings share one
+ * slot. The store is safe to use from several threads at once; the number of entries is capped so that very
+ * large searches do not exhaust memory--once the cap is reached further moments are computed but not stored.
+ */
+class FourthMoments {
+
+    /**
+     * The default maximum number of stored moments.
+     */
+    private static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+    /**
+     * The centered data, indexed as data[variable][case].
+     */
+    private final double[][] data;
+
+    /**
+     * The stored moments, keyed by the packed sorted indices.
+     */
+    private final Map<Long, Double> moments = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of stored moments.
+     */
+    private final int maxSize;
+
+    /**
+     * @param data Mean-centered data, indexed as data[variable][case].
+     */
+    public FourthMoments(double[][] data) {
+        this(data, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param data    Mean-centered data, indexed as data[variable][case].
+     * @param maxSize The maximum number of moments to store.
+     */
+    public FourthMoments(double[][] data, int maxSize) {
+        if (data == null) throw new NullPointerException();
+        if (maxSize < 0) throw new IllegalArgumentException("Max size must be >= 0: " + maxSize);
+        this.data = data;
+        this.maxSize = data.length > (1 << 16) ? 0 : maxSize;
+    }
+
+    /**
+     * @return E(xyzw), looked up if it has been calculated already.
+     */
+    public double get(int x, int y, int z, int w) {
+        if (maxSize == 0) {
+            return moment(x, y, z, w);
+        }
+
+        long key = key(x, y, z, w);
+        Double m = moments.get(key);
+
+        if (m == null) {
+            m = moment(x, y, z, w);
+
+            if (moments.size() < maxSize) {
+                moments.put(key, m);
+            }
+        }
+
+        return m;
+    }
+
+    /**
+     * @return The number of stored moments.
+     */
+    public int size() {
+        return moments.size();
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    private double moment(int x, int y, int z, int w) {
+        double[] _x = data[x];
+        double[] _y = data[y];
+        double[] _z = data[z];
+        double[] _w = data[w];
+
+        int N = _x.length;
+        double sum = 0.0;
+
+        for (int j = 0; j < N; j++) {
+            sum += _x[j] * _y[j] * _z[j] * _w[j];
+        }
+
+        return (1.0 / N) * sum;
+    }
+
+    // Sorts the four indices with a small network and packs them 16 bits apiece.
+    private static long key(int a, int b, int c, int d) {
+        int t;
+        if (a > b) { t = a; a = b; b = t; }
+        if (c > d) { t = c; c = d; d = t; }
+        if (a > c) { t = a; a = c; c = t; }
+        if (b > d) { t = b; b = d; d = t; }
+        if (b > c) { t = b; b = c; c = t; }
+        return ((long) a << 48) | ((long) b << 32) | ((long) c << 16) | (long) d;
+    }
+}
+
+
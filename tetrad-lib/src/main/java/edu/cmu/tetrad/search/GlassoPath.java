@@ -0,0 +1,712 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Solves the graphical lasso for a path of penalties, for problems too large for Glasso. For each penalty rho, the
+ * variables are first split into the connected components of the graph with an edge wherever the absolute
+ * covariance exceeds rho; the solution is exactly block diagonal over these components (Witten, Friedman and Simon,
+ * 2011; Mazumder and Hastie, 2012), so each component is solved separately, in parallel. Penalties are taken in
+ * decreasing order, each warm-started from the solution for the one before, and the solution for each penalty is
+ * kept, by component, for model selection.
+ * <p>
+ * Within a component, this is the block coordinate descent of Friedman, Hastie and Tibshirani (2008), as in Glasso,
+ * over flat arrays. Off-diagonal entries are penalized by rho; the diagonal is penalized only if requested.
+ *
+ * @see Glasso
+ */
+public class GlassoPath {
+
+    /**
+     * The covariance matrix.
+     */
+    private final TetradMatrix cov;
+
+    /**
+     * Number of variables.
+     */
+    private final int p;
+
+    /**
+     * Maximum number of sweeps over the columns of each component.
+     */
+    private int maxit = 10000;
+
+    /**
+     * Convergence threshold: sweeps stop when the largest total absolute change in a column of the covariance
+     * estimate is less than thr times the average absolute off-diagonal covariance in a column of the component.
+     */
+    private double thr = 1.0e-4;
+
+    /**
+     * True if the diagonal is penalized.
+     */
+    private boolean penalizeDiagonal = false;
+
+    /**
+     * True if components are solved in parallel.
+     */
+    private boolean parallelized = true;
+
+    //============================CONSTRUCTORS============================//
+
+    /**
+     * @param cov The covariance matrix.
+     */
+    public GlassoPath(TetradMatrix cov) {
+        if (cov == null) throw new NullPointerException("Covariance matrix is null.");
+
+        if (!cov.isSquare()) {
+            throw new IllegalArgumentException("Covariance matrix must be square.");
+        }
+
+        this.cov = cov;
+        this.p = cov.rows();
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * @return the solution for a single penalty.
+     */
+    public Result search(double rho) {
+        return search(new double[]{rho}).get(0);
+    }
+
+    /**
+     * @param rhos The penalties, in any order.
+     * @return the solutions for the penalties, in decreasing order of penalty.
+     */
+    public List<Result> search(double[] rhos) {
+        double[] path = rhos.clone();
+        Arrays.sort(path);
+
+        List<Result> results = new ArrayList<>();
+        Result previous = null;
+
+        for (int r = path.length - 1; r >= 0; r--) {
+            if (!(path[r] >= 0)) {
+                throw new IllegalArgumentException("Penalties must be non-negative: " + path[r]);
+            }
+
+            previous = solve(path[r], previous);
+            results.add(previous);
+        }
+
+        return results;
+    }
+
+    /**
+     * @return the smallest penalty for which every variable is its own component, that is, the largest absolute
+     * off-diagonal covariance. This is the natural start of a path.
+     */
+    public double getRhoMax() {
+        double max = 0.0;
+
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                max = Math.max(max, Math.abs(cov.get(i, j)));
+            }
+        }
+
+        return max;
+    }
+
+    public int getMaxit() {
+        return maxit;
+    }
+
+    public void setMaxit(int maxit) {
+        if (maxit <= 0) throw new IllegalArgumentException("Max iterations must be > 0: " + maxit);
+        this.maxit = maxit;
+    }
+
+    public double getThr() {
+        return thr;
+    }
+
+    public void setThr(double thr) {
+        if (thr < 0) throw new IllegalArgumentException("Threshold must be >= 0: " + thr);
+        this.thr = thr;
+    }
+
+    public boolean isPenalizeDiagonal() {
+        return penalizeDiagonal;
+    }
+
+    public void setPenalizeDiagonal(boolean penalizeDiagonal) {
+        this.penalizeDiagonal = penalizeDiagonal;
+    }
+
+    public boolean isParallelized() {
+        return parallelized;
+    }
+
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
+
+    /**
+     * The solution for one penalty, stored by component; entries between components are zero.
+     */
+    public static class Result {
+        private final double rho;
+
+        /**
+         * The variables in each component, in increasing order.
+         */
+        private final int[][] components;
+
+        /**
+         * The component of each variable, and its position in the component.
+         */
+        private final int[] componentOf;
+        private final int[] positions;
+
+        /**
+         * The covariance and precision estimates for each component, row-major.
+         */
+        private final double[][] covBlocks;
+        private final double[][] precisionBlocks;
+
+        private double logLikelihood;
+        private int niter;
+
+        private Result(double rho, int[][] components, int p) {
+            this.rho = rho;
+            this.components = components;
+            this.componentOf = new int[p];
+            this.positions = new int[p];
+            this.covBlocks = new double[components.length][];
+            this.precisionBlocks = new double[components.length][];
+
+            for (int c = 0; c < components.length; c++) {
+                for (int a = 0; a < components[c].length; a++) {
+                    componentOf[components[c][a]] = c;
+                    positions[components[c][a]] = a;
+                }
+            }
+        }
+
+        public double getRho() {
+            return rho;
+        }
+
+        public int getNumComponents() {
+            return components.length;
+        }
+
+        /**
+         * @return the variables in the given component, in increasing order.
+         */
+        public int[] getComponent(int c) {
+            return components[c].clone();
+        }
+
+        /**
+         * @return the estimated precision (inverse covariance) between variables i and j.
+         */
+        public double getPrecision(int i, int j) {
+            return get(precisionBlocks, i, j);
+        }
+
+        /**
+         * @return the estimated covariance between variables i and j.
+         */
+        public double getCov(int i, int j) {
+            return get(covBlocks, i, j);
+        }
+
+        /**
+         * @return the estimated precision matrix, as a dense matrix.
+         */
+        public TetradMatrix getPrecision() {
+            return toMatrix(precisionBlocks);
+        }
+
+        /**
+         * @return the estimated covariance matrix, as a dense matrix.
+         */
+        public TetradMatrix getCov() {
+            return toMatrix(covBlocks);
+        }
+
+        /**
+         * @return the number of nonzero off-diagonal entries above the diagonal of the precision matrix.
+         */
+        public int getNumEdges() {
+            int numEdges = 0;
+
+            for (int c = 0; c < components.length; c++) {
+                int q = components[c].length;
+
+                for (int a = 0; a < q; a++) {
+                    for (int b = a + 1; b < q; b++) {
+                        if (precisionBlocks[c][a * q + b] != 0.0) numEdges++;
+                    }
+                }
+            }
+
+            return numEdges;
+        }
+
+        /**
+         * @return the undirected graph over the given variables with an edge wherever the precision is nonzero.
+         */
+        public Graph getGraph(List<Node> variables) {
+            if (variables.size() != componentOf.length) {
+                throw new IllegalArgumentException("Expecting " + componentOf.length + " variables.");
+            }
+
+            Graph graph = new EdgeListGraph(variables);
+
+            for (int c = 0; c < components.length; c++) {
+                int q = components[c].length;
+
+                for (int a = 0; a < q; a++) {
+                    for (int b = a + 1; b < q; b++) {
+                        if (precisionBlocks[c][a * q + b] != 0.0) {
+                            graph.addUndirectedEdge(variables.get(components[c][a]),
+                                    variables.get(components[c][b]));
+                        }
+                    }
+                }
+            }
+
+            return graph;
+        }
+
+        /**
+         * @return log det(Theta) - tr(S Theta), for precision estimate Theta and covariance matrix S--that is, the
+         * Gaussian log likelihood of the estimate, times 2 / N, up to a constant--for model selection with criteria
+         * such as BIC.
+         */
+        public double getLogLikelihood() {
+            return logLikelihood;
+        }
+
+        /**
+         * @return the largest number of sweeps over the columns of any component.
+         */
+        public int getNiter() {
+            return niter;
+        }
+
+        private double get(double[][] blocks, int i, int j) {
+            int c = componentOf[i];
+            if (componentOf[j] != c) return 0.0;
+            return blocks[c][positions[i] * components[c].length + positions[j]];
+        }
+
+        private TetradMatrix toMatrix(double[][] blocks) {
+            TetradMatrix matrix = new TetradMatrix(componentOf.length, componentOf.length);
+
+            for (int c = 0; c < components.length; c++) {
+                int q = components[c].length;
+
+                for (int a = 0; a < q; a++) {
+                    for (int b = 0; b < q; b++) {
+                        matrix.set(components[c][a], components[c][b], blocks[c][a * q + b]);
+                    }
+                }
+            }
+
+            return matrix;
+        }
+    }
+
+    //============================PRIVATE METHODS=========================//
+
+    private Result solve(final double rho, final Result previous) {
+        final Result result = new Result(rho, components(rho), p);
+
+        // Larger components first, so that they start early.
+        final Integer[] order = new Integer[result.components.length];
+
+        for (int c = 0; c < order.length; c++) order[c] = c;
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer c1, Integer c2) {
+                return Integer.compare(result.components[c2].length, result.components[c1].length);
+            }
+        });
+
+        final double[] logLikelihoods = new double[order.length];
+        final int[] niters = new int[order.length];
+
+        class ComponentTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            public ComponentTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from == 1) {
+                    int c = order[from];
+                    niters[c] = solveComponent(result, c, previous);
+                    logLikelihoods[c] = logLikelihood(result, c);
+                } else {
+                    int mid = (to + from) / 2;
+                    invokeAll(new ComponentTask(from, mid), new ComponentTask(mid, to));
+                }
+            }
+        }
+
+        if (order.length > 0) {
+            if (parallelized) {
+                ForkJoinPoolInstance.getInstance().getPool().invoke(new ComponentTask(0, order.length));
+            } else {
+                for (int k = 0; k < order.length; k++) {
+                    new ComponentTask(k, k + 1).compute();
+                }
+            }
+        }
+
+        for (int c = 0; c < order.length; c++) {
+            result.logLikelihood += logLikelihoods[c];
+            result.niter = Math.max(result.niter, niters[c]);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the connected components of the graph with an edge wherever |cov(i, j)| > rho, each in increasing
+     * order, found by union-find.
+     */
+    private int[][] components(double rho) {
+        int[] parent = new int[p];
+
+        for (int i = 0; i < p; i++) parent[i] = i;
+
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                if (Math.abs(cov.get(i, j)) > rho) {
+                    int ri = find(parent, i);
+                    int rj = find(parent, j);
+                    if (ri != rj) parent[Math.max(ri, rj)] = Math.min(ri, rj);
+                }
+            }
+        }
+
+        int[] index = new int[p];
+        int[] sizes = new int[p];
+        int numComponents = 0;
+
+        for (int i = 0; i < p; i++) {
+            int root = find(parent, i);
+            if (root == i) index[i] = numComponents++;
+            sizes[index[root]]++;
+        }
+
+        int[][] components = new int[numComponents][];
+        int[] filled = new int[numComponents];
+
+        for (int c = 0; c < numComponents; c++) components[c] = new int[sizes[c]];
+
+        for (int i = 0; i < p; i++) {
+            int c = index[find(parent, i)];
+            components[c][filled[c]++] = i;
+        }
+
+        return components;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Solves the graphical lasso for component c of the result, warm-starting from the previous result if there is
+     * one. The warm start takes the previous solution within each previous component and the covariance matrix
+     * between them; if it fails to converge to a positive definite solution, the component is solved again from the
+     * covariance matrix.
+     *
+     * @return the number of sweeps.
+     */
+    private int solveComponent(Result result, int c, Result previous) {
+        int[] vars = result.components[c];
+        int q = vars.length;
+        double diagonalPenalty = penalizeDiagonal ? result.rho : 0.0;
+
+        double[] s = new double[q * q];
+
+        for (int a = 0; a < q; a++) {
+            for (int b = 0; b < q; b++) {
+                s[a * q + b] = cov.get(vars[a], vars[b]);
+            }
+        }
+
+        double[] w = new double[q * q];
+        double[] theta = new double[q * q];
+
+        if (q == 1) {
+            w[0] = s[0] + diagonalPenalty;
+            theta[0] = 1.0 / w[0];
+            result.covBlocks[c] = w;
+            result.precisionBlocks[c] = theta;
+            return 0;
+        }
+
+        // beta[m * q + k] is the coefficient of variable k in the lasso for column m.
+        double[] beta = new double[q * q];
+        int niter = -1;
+
+        if (previous != null) {
+            for (int a = 0; a < q; a++) {
+                for (int b = 0; b < q; b++) {
+                    boolean together = previous.componentOf[vars[a]] == previous.componentOf[vars[b]];
+                    w[a * q + b] = together ? previous.getCov(vars[a], vars[b]) : s[a * q + b];
+                    theta[a * q + b] = previous.getPrecision(vars[a], vars[b]);
+                }
+            }
+
+            for (int m = 0; m < q; m++) {
+                for (int k = 0; k < q; k++) {
+                    if (k != m) beta[m * q + k] = -theta[k * q + m] / theta[m * q + m];
+                }
+            }
+
+            niter = descend(q, s, w, beta, result.rho, diagonalPenalty);
+
+            if (niter == maxit || !precision(q, w, beta, theta)) {
+                niter = -1;
+            }
+        }
+
+        if (niter == -1) {
+            System.arraycopy(s, 0, w, 0, s.length);
+            Arrays.fill(beta, 0.0);
+            niter = descend(q, s, w, beta, result.rho, diagonalPenalty);
+            precision(q, w, beta, theta);
+        }
+
+        result.covBlocks[c] = w;
+        result.precisionBlocks[c] = theta;
+        return niter;
+    }
+
+    /**
+     * Block coordinate descent over the columns of w, from the given w and beta.
+     *
+     * @return the number of sweeps.
+     */
+    private int descend(int q, double[] s, double[] w, double[] beta, double rho, double diagonalPenalty) {
+        for (int m = 0; m < q; m++) {
+            w[m * q + m] = s[m * q + m] + diagonalPenalty;
+        }
+
+        double shr = 0.0;
+
+        for (int a = 0; a < q; a++) {
+            for (int b = 0; b < q; b++) {
+                if (a != b) shr += Math.abs(s[a * q + b]);
+            }
+        }
+
+        shr = thr * shr / (q - 1);
+
+        double[] wb = new double[q];
+        int niter = 0;
+
+        while (niter < maxit) {
+            double sumAbsW = 0.0;
+
+            for (double _w : w) sumAbsW += Math.abs(_w);
+
+            double dlx = 0.0;
+
+            for (int m = 0; m < q; m++) {
+                lasso(m, q, s, w, beta, wb, rho, shr / sumAbsW);
+
+                // The new column of w is W11 * beta.
+                double change = 0.0;
+
+                for (int k = 0; k < q; k++) {
+                    if (k == m) continue;
+                    change += Math.abs(wb[k] - w[k * q + m]);
+                    w[k * q + m] = wb[k];
+                    w[m * q + k] = wb[k];
+                }
+
+                dlx = Math.max(dlx, change);
+            }
+
+            niter++;
+
+            if (dlx < shr) break;
+        }
+
+        return niter;
+    }
+
+    /**
+     * Sets theta to the precision matrix implied by w and beta.
+     *
+     * @return false if some diagonal entry of theta was not positive, in which case w is not positive definite.
+     */
+    private static boolean precision(int q, double[] w, double[] beta, double[] theta) {
+        boolean positive = true;
+
+        for (int m = 0; m < q; m++) {
+            double d = w[m * q + m];
+
+            for (int k = 0; k < q; k++) {
+                if (k != m) d -= w[k * q + m] * beta[m * q + k];
+            }
+
+            if (!(d > 0)) positive = false;
+
+            theta[m * q + m] = 1.0 / d;
+
+            for (int k = 0; k < q; k++) {
+                if (k != m) theta[k * q + m] = -beta[m * q + k] / d;
+            }
+        }
+
+        for (int a = 0; a < q; a++) {
+            for (int b = a + 1; b < q; b++) {
+                double t = (theta[a * q + b] + theta[b * q + a]) / 2.0;
+                theta[a * q + b] = t;
+                theta[b * q + a] = t;
+            }
+        }
+
+        return positive;
+    }
+
+    /**
+     * Coordinate descent for the lasso problem of column m: minimizes beta' W11 beta / 2 - beta' s12 + rho |beta|_1.
+     * On return, wb holds W11 * beta.
+     */
+    private void lasso(int m, int q, double[] s, double[] w, double[] beta, double[] wb, double rho,
+                       double threshold) {
+        int offset = m * q;
+
+        // wb = W11 * beta, over the nonzero coefficients only.
+        Arrays.fill(wb, 0.0);
+
+        for (int j = 0; j < q; j++) {
+            double bj = beta[offset + j];
+            if (j == m || bj == 0.0) continue;
+            int row = j * q;
+
+            for (int k = 0; k < q; k++) {
+                wb[k] += w[row + k] * bj;
+            }
+        }
+
+        for (int iter = 0; iter < maxit; iter++) {
+            double dlx = 0.0;
+
+            for (int j = 0; j < q; j++) {
+                if (j == m) continue;
+
+                int row = j * q;
+                double bj = beta[offset + j];
+                double wjj = w[row + j];
+                double t = s[row + m] - wb[j] + wjj * bj;
+                double bNew = 0.0;
+
+                if (Math.abs(t) > rho) {
+                    bNew = Math.signum(t) * (Math.abs(t) - rho) / wjj;
+                }
+
+                if (bNew == bj) continue;
+
+                double del = bNew - bj;
+                beta[offset + j] = bNew;
+                dlx = Math.max(dlx, Math.abs(del));
+
+                for (int k = 0; k < q; k++) {
+                    wb[k] += w[row + k] * del;
+                }
+            }
+
+            if (dlx < threshold) break;
+        }
+    }
+
+    /**
+     * @return log det(Theta) - tr(S Theta) for component c, using a Cholesky factorization of Theta.
+     */
+    private double logLikelihood(Result result, int c) {
+        int[] vars = result.components[c];
+        int q = vars.length;
+        double[] theta = result.precisionBlocks[c];
+
+        double trace = 0.0;
+
+        for (int a = 0; a < q; a++) {
+            for (int b = 0; b < q; b++) {
+                trace += cov.get(vars[a], vars[b]) * theta[b * q + a];
+            }
+        }
+
+        double[] l = theta.clone();
+        double logDet = 0.0;
+
+        for (int j = 0; j < q; j++) {
+            double d = l[j * q + j];
+
+            for (int k = 0; k < j; k++) {
+                d -= l[j * q + k] * l[j * q + k];
+            }
+
+            if (!(d > 0)) return Double.NEGATIVE_INFINITY;
+
+            d = Math.sqrt(d);
+            l[j * q + j] = d;
+            logDet += 2 * Math.log(d);
+
+            for (int i = j + 1; i < q; i++) {
+                double e = l[i * q + j];
+
+                for (int k = 0; k < j; k++) {
+                    e -= l[i * q + k] * l[j * q + k];
+                }
+
+                l[i * q + j] = e / d;
+            }
+        }
+
+        return logDet - trace;
+    }
+}
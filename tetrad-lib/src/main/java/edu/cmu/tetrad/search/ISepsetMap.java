@@ -0,0 +1,59 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.List;
+
+/**
+ * An interface for maps from unordered pairs of nodes to their sepsets, so that searches may use either a SepsetMap or
+ * a CompactSepsetMap.
+ *
+ * @see SepsetMap
+ * @see CompactSepsetMap
+ */
+public interface ISepsetMap {
+
+    /**
+     * Sets the sepset for {x, y} to be z, or removes it if z is null. Note that {x, y} is unordered.
+     */
+    void set(Node x, Node y, List<Node> z);
+
+    /**
+     * Retrieves the sepset previously set for {x, y}, or null if no such set was previously set (or the empty list,
+     * if returnEmptyIfNotSet is true).
+     */
+    List<Node> get(Node x, Node y);
+
+    /**
+     * @return the number of pairs with sepsets.
+     */
+    int size();
+
+    boolean isReturnEmptyIfNotSet();
+
+    void setReturnEmptyIfNotSet(boolean returnEmptyIfNotSet);
+}
+
+
+
@@ -0,0 +1,559 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pools a list of scores, one per data set, into a single score for IMaGES. The local score of a family is the
+ * average of its local scores over the data sets for which it is defined.
+ * <p>
+ * Per-data-set local scores are evaluated in parallel and cached by data set and family, so a family that FGS
+ * scores again (for instance as the base of several bumps) is computed only once per data set. Each data set's
+ * cache keeps at most a fixed number of families (see setCacheSize), dropping the least recently used first; an
+ * entry costs on the order of 100 bytes, so the default of 100,000 families is about 10 MB per data set. Data sets need not
+ * share all of their variables; variables are matched by name, and data sets with identical variable lists share
+ * one index translation. For SEM BIC scores, a bump whose partial sum over the data sets scored so far, plus an
+ * upper bound on the gain from each remaining data set, cannot be positive is returned early as that (negative)
+ * upper bound, without scoring the remaining data sets.
+ */
+public class ImagesScore implements Score {
+
+    // The pooled scores, one per data set.
+    private final List<Score> scores;
+
+    // The union of the variables of the scores, in order of first appearance.
+    private final List<Node> variables;
+
+    // For each group of scores over the same variables, the index in those scores of each pooled variable, or -1.
+    private final List<int[]> groupIndices = new ArrayList<>();
+
+    // The group of each score.
+    private final int[] groups;
+
+    // Cached local scores, one map per score, least recently used first.
+    private final List<Map<Family, Double>> caches = new ArrayList<>();
+
+    // The maximum number of local scores cached per score.
+    private int cacheSize = 100000;
+
+    // For each SEM BIC score, -n log of the residual variance of each variable given all others, or null if not
+    // yet calculated. Used to bound the gain from adding a parent.
+    private final double[][] bestFits;
+
+    // True if bumps should be cut off early when they are bounded above by zero.
+    private boolean boundPruning = true;
+
+    // The pool used to score the data sets in parallel.
+    private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
+    /**
+     * Constructs the pooled score.
+     *
+     * @param scores The scores to pool, one per data set. Variables are matched across scores by name.
+     */
+    public ImagesScore(List<Score> scores) {
+        if (scores == null) throw new NullPointerException();
+        if (scores.isEmpty()) throw new IllegalArgumentException("Need at least one score.");
+
+        this.scores = new ArrayList<>(scores);
+        this.variables = new ArrayList<>();
+        this.groups = new int[scores.size()];
+        this.bestFits = new double[scores.size()][];
+
+        Map<String, Integer> pooledIndices = new HashMap<>();
+
+        for (Score score : scores) {
+            for (Node node : score.getVariables()) {
+                if (!pooledIndices.containsKey(node.getName())) {
+                    pooledIndices.put(node.getName(), variables.size());
+                    variables.add(node);
+                }
+            }
+        }
+
+        Map<List<String>, Integer> groupsByNames = new HashMap<>();
+
+        for (int d = 0; d < scores.size(); d++) {
+            List<Node> _variables = scores.get(d).getVariables();
+            List<String> names = new ArrayList<>();
+            for (Node node : _variables) names.add(node.getName());
+
+            Integer group = groupsByNames.get(names);
+
+            if (group == null) {
+                int[] indices = new int[variables.size()];
+                Arrays.fill(indices, -1);
+
+                for (int i = 0; i < _variables.size(); i++) {
+                    indices[pooledIndices.get(names.get(i))] = i;
+                }
+
+                group = groupIndices.size();
+                groupIndices.add(indices);
+                groupsByNames.put(names, group);
+            }
+
+            groups[d] = group;
+            caches.add(new LinkedHashMap<Family, Double>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Family, Double> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the average over the data sets of the local score of the given node given the given parents.
+     */
+    @Override
+    public double localScore(int node, int... parents) {
+        Family family = new Family(node, parents);
+        double[][] local = evaluate(new Family[]{family}, allDataSets());
+
+        double sum = 0.0;
+        int count = 0;
+
+        for (double score : local[0]) {
+            if (!Double.isNaN(score)) {
+                sum += score;
+                count++;
+            }
+        }
+
+        return sum / count;
+    }
+
+    @Override
+    public double localScore(int node, int parent) {
+        return localScore(node, new int[]{parent});
+    }
+
+    @Override
+    public double localScore(int node) {
+        return localScore(node, new int[0]);
+    }
+
+    /**
+     * @return the average over the data sets of the change in the local score of y given z when x is added to
+     * z. If bound pruning is on and this change is bounded above by zero before all data sets have been scored,
+     * that bound is returned instead.
+     */
+    @Override
+    public double localScoreDiff(int x, int y, int[] z) {
+        int[] zx = Arrays.copyOf(z, z.length + 1);
+        zx[z.length] = x;
+
+        Family[] families = {new Family(y, zx), new Family(y, z)};
+        int[] dataSets = allDataSets();
+
+        if (!boundPruning) {
+            return averageDiff(evaluate(families, dataSets));
+        }
+
+        double[] bounds = new double[dataSets.length];
+        double remaining = 0.0;
+
+        for (int d = 0; d < dataSets.length; d++) {
+            bounds[d] = gainBound(d, families[0], families[1]);
+            remaining += bounds[d];
+        }
+
+        if (remaining <= 0) {
+            return remaining / dataSets.length;
+        }
+
+        int blockSize = Math.max(1, pool.getParallelism());
+        double sum = 0.0;
+        int count = 0;
+
+        for (int from = 0; from < dataSets.length; from += blockSize) {
+            int to = Math.min(from + blockSize, dataSets.length);
+            double[][] local = evaluate(families, Arrays.copyOfRange(dataSets, from, to));
+
+            for (int k = 0; k < to - from; k++) {
+                double diff = local[0][k] - local[1][k];
+
+                if (!Double.isNaN(diff)) {
+                    sum += diff;
+                    count++;
+                }
+
+                remaining -= bounds[from + k];
+            }
+
+            int numRemaining = dataSets.length - to;
+
+            if (numRemaining > 0 && sum + remaining <= 0) {
+                return (sum + remaining) / (count + numRemaining);
+            }
+        }
+
+        return sum / count;
+    }
+
+    @Override
+    public double localScoreDiff(int x, int y) {
+        return localScoreDiff(x, y, new int[0]);
+    }
+
+    @Override
+    public List<Node> getVariables() {
+        return new ArrayList<>(variables);
+    }
+
+    @Override
+    public boolean isEffectEdge(double bump) {
+        return scores.get(0).isEffectEdge(bump);
+    }
+
+    @Override
+    public double getParameter1() {
+        return scores.get(0).getParameter1();
+    }
+
+    /**
+     * Sets the first parameter of each pooled score and clears the cache.
+     */
+    @Override
+    public void setParameter1(double alpha) {
+        for (Score score : scores) {
+            score.setParameter1(alpha);
+        }
+
+        clearCache();
+    }
+
+    /**
+     * @return the sample size of the first data set.
+     */
+    @Override
+    public int getSampleSize() {
+        return scores.get(0).getSampleSize();
+    }
+
+    @Override
+    public Node getVariable(String targetName) {
+        for (Node node : variables) {
+            if (node.getName().equals(targetName)) {
+                return node;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public int getMaxIndegree() {
+        int max = 0;
+
+        for (Score score : scores) {
+            max = Math.max(max, score.getMaxIndegree());
+        }
+
+        return max;
+    }
+
+    /**
+     * @return the pooled scores, one per data set.
+     */
+    public List<Score> getScores() {
+        return new ArrayList<>(scores);
+    }
+
+    /**
+     * Clears the cached local scores. This must be called if any of the pooled scores is modified other than
+     * through this class.
+     */
+    public void clearCache() {
+        for (Map<Family, Double> cache : caches) {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
+
+        Arrays.fill(bestFits, null);
+    }
+
+    /**
+     * Sets the maximum number of local scores cached for each data set; the least recently used are dropped
+     * first. Each cached score costs on the order of 100 bytes. The default is 100,000. Clears the cache.
+     */
+    public void setCacheSize(int cacheSize) {
+        if (cacheSize < 0) throw new IllegalArgumentException("Cache size must be >= 0: " + cacheSize);
+        this.cacheSize = cacheSize;
+        clearCache();
+    }
+
+    /**
+     * @return true if bumps are cut off early when they are bounded above by zero.
+     */
+    public boolean isBoundPruning() {
+        return boundPruning;
+    }
+
+    /**
+     * Sets whether bumps may be cut off early when they are bounded above by zero. Bounds are available only for
+     * SEM BIC scores; other scores are always evaluated in full. The default is true.
+     */
+    public void setBoundPruning(boolean boundPruning) {
+        this.boundPruning = boundPruning;
+    }
+
+    /**
+     * Sets the number of threads used to score the data sets; 0 (the default) uses the shared pool. A pool
+     * created by an earlier call is shut down.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Parallelism must be >= 0: " + parallelism);
+        }
+
+        ForkJoinPool shared = ForkJoinPoolInstance.getInstance().getPool();
+
+        if (pool != shared) {
+            pool.shutdown();
+        }
+
+        this.pool = parallelism == 0 || parallelism == shared.getParallelism()
+                ? shared : new ForkJoinPool(parallelism);
+    }
+
+    //===========================PRIVATE METHODS========================//
+
+    private int[] allDataSets() {
+        int[] dataSets = new int[scores.size()];
+        for (int d = 0; d < dataSets.length; d++) dataSets[d] = d;
+        return dataSets;
+    }
+
+    private double averageDiff(double[][] local) {
+        double sum = 0.0;
+        int count = 0;
+
+        for (int k = 0; k < local[0].length; k++) {
+            double diff = local[0][k] - local[1][k];
+
+            if (!Double.isNaN(diff)) {
+                sum += diff;
+                count++;
+            }
+        }
+
+        return sum / count;
+    }
+
+    // Scores each family for each of the given data sets, in parallel over the data sets. The families are
+    // translated once per group of data sets with the same variables.
+    private double[][] evaluate(Family[] families, int[] dataSets) {
+        int[][][] translated = new int[groupIndices.size()][][];
+
+        for (int d : dataSets) {
+            int group = groups[d];
+
+            if (translated[group] == null) {
+                translated[group] = new int[families.length][];
+
+                for (int f = 0; f < families.length; f++) {
+                    translated[group][f] = families[f].translate(groupIndices.get(group));
+                }
+            }
+        }
+
+        double[][] local = new double[families.length][dataSets.length];
+        pool.invoke(new ScoreTask(families, translated, dataSets, local, 0, dataSets.length));
+        return local;
+    }
+
+    // The local score of a family for one data set, given the family in that data set's indices (child first),
+    // or NaN if the data set is missing one of its variables (translated is null).
+    private double localScore(int d, Family family, int[] translated) {
+        if (translated == null) return Double.NaN;
+
+        Double score = cachedScore(d, family);
+
+        if (score == null) {
+            score = scores.get(d).localScore(translated[0], Arrays.copyOfRange(translated, 1, translated.length));
+            Map<Family, Double> cache = caches.get(d);
+
+            synchronized (cache) {
+                cache.put(family, score);
+            }
+        }
+
+        return score;
+    }
+
+    // The cached local score of a family for data set d, or null if it is not cached.
+    private Double cachedScore(int d, Family family) {
+        Map<Family, Double> cache = caches.get(d);
+
+        synchronized (cache) {
+            return cache.get(family);
+        }
+    }
+
+    // An upper bound on the gain in data set d from extending the family y | z to y | z, x. The residual
+    // variance of y given any parents is at least its residual variance given all other variables, and at most
+    // its variance, or exactly its residual variance given z if that score has been cached. Data sets missing a
+    // variable of the extended family don't contribute.
+    private double gainBound(int d, Family extended, Family family) {
+        if (!(scores.get(d) instanceof SemBicScore)) return Double.POSITIVE_INFINITY;
+
+        int[] translated = family.translate(groupIndices.get(groups[d]));
+        if (translated == null || extended.translate(groupIndices.get(groups[d])) == null) return 0.0;
+
+        SemBicScore score = (SemBicScore) scores.get(d);
+        double[] bestFit = getBestFits(d);
+        int y = translated[0];
+
+        if (Double.isInfinite(bestFit[y])) return Double.POSITIVE_INFINITY;
+
+        int n = score.getSampleSize();
+        double penalty = score.getPenaltyDiscount() * Math.log(n);
+        int p = translated.length - 1;
+
+        Double current = cachedScore(d, family);
+
+        if (current == null || Double.isNaN(current)) {
+            current = -n * Math.log(score.getCovariances().getValue(y, y)) - penalty * (p + 1);
+        }
+
+        return bestFit[y] - penalty * (p + 2) - current;
+    }
+
+    private double[] getBestFits(int d) {
+        double[] bestFit = bestFits[d];
+        if (bestFit != null) return bestFit;
+
+        synchronized (bestFits) {
+            if (bestFits[d] != null) return bestFits[d];
+
+            SemBicScore score = (SemBicScore) scores.get(d);
+            int numVars = score.getVariables().size();
+            bestFit = new double[numVars];
+
+            try {
+                if (numVars >= score.getSampleSize()) throw new IllegalArgumentException();
+
+                TetradMatrix inverse = score.getCovariances().getMatrix().inverse();
+
+                for (int i = 0; i < numVars; i++) {
+                    double residualVariance = 1.0 / inverse.get(i, i);
+
+                    bestFit[i] = residualVariance > 0
+                            ? -score.getSampleSize() * Math.log(residualVariance)
+                            : Double.POSITIVE_INFINITY;
+                }
+            } catch (Exception e) {
+                Arrays.fill(bestFit, Double.POSITIVE_INFINITY);
+            }
+
+            bestFits[d] = bestFit;
+            return bestFit;
+        }
+    }
+
+    // Scores families for a range of data sets, splitting down to single data sets.
+    private class ScoreTask extends RecursiveAction {
+        private final Family[] families;
+        private final int[][][] translated;
+        private final int[] dataSets;
+        private final double[][] local;
+        private final int from;
+        private final int to;
+
+        private ScoreTask(Family[] families, int[][][] translated, int[] dataSets, double[][] local,
+                          int from, int to) {
+            this.families = families;
+            this.translated = translated;
+            this.dataSets = dataSets;
+            this.local = local;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int k = from; k < to; k++) {
+                    int d = dataSets[k];
+
+                    for (int f = 0; f < families.length; f++) {
+                        local[f][k] = localScore(d, families[f], translated[groups[d]][f]);
+                    }
+                }
+            } else {
+                int mid = (from + to) / 2;
+                invokeAll(new ScoreTask(families, translated, dataSets, local, from, mid),
+                        new ScoreTask(families, translated, dataSets, local, mid, to));
+            }
+        }
+    }
+
+    // A child with a set of parents, in pooled indices.
+    private static class Family {
+        private final int child;
+        private final int[] parents;
+        private final int hashCode;
+
+        private Family(int child, int[] parents) {
+            this.child = child;
+            this.parents = Arrays.copyOf(parents, parents.length);
+            Arrays.sort(this.parents);
+            this.hashCode = 31 * child + Arrays.hashCode(this.parents);
+        }
+
+        // Returns the child followed by the parents in the given indices, or null if any of them is missing.
+        private int[] translate(int[] indices) {
+            int[] translated = new int[parents.length + 1];
+            translated[0] = indices[child];
+            if (translated[0] == -1) return null;
+
+            for (int i = 0; i < parents.length; i++) {
+                translated[i + 1] = indices[parents[i]];
+                if (translated[i + 1] == -1) return null;
+            }
+
+            return translated;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Family)) return false;
+            Family family = (Family) o;
+            return child == family.child && Arrays.equals(parents, family.parents);
+        }
+    }
+}
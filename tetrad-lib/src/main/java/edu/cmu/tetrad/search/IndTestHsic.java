@@ -29,15 +29,16 @@ import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.search.kernel.Kernel;
 import edu.cmu.tetrad.search.kernel.KernelGaussian;
 import edu.cmu.tetrad.search.kernel.KernelUtils;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.RandomStream;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
+import org.apache.commons.math3.distribution.GammaDistribution;
 
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Checks the conditional independence X _||_ Y | S, where S is a set of continuous variable, and X and Y are discrete
@@ -100,6 +101,28 @@ public final class IndTestHsic implements IndependenceTest {
     private double useIncompleteCholesky = 1e-18;
     private boolean verbose = false;
 
+    /**
+     * True if unconditional tests should use the gamma approximation to the null distribution instead of
+     * permutations.
+     */
+    private boolean gammaApproximation = false;
+
+    /**
+     * The maximum number of Gram matrix factors to cache.
+     */
+    private int factorsCacheSize = 100;
+
+    /**
+     * Cached incomplete Cholesky factors of Gram matrices, by the variables they are over, least recently used
+     * first.
+     */
+    private final Map<List<Node>, Factor> factors = new LinkedHashMap<List<Node>, Factor>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Node>, Factor> eldest) {
+            return size() > factorsCacheSize;
+        }
+    };
+
     //==========================CONSTRUCTORS=============================//
 
     /**
@@ -167,154 +190,12 @@ public final class IndTestHsic implements IndependenceTest {
      * @return true iff x _||_ y | z.
      */
     public boolean isIndependent(Node y, Node x, List<Node> z) {
-
-        int m = sampleSize();
-
-        // choose kernels using median distance heuristic
-        Kernel xKernel = new KernelGaussian(1);
-        Kernel yKernel = new KernelGaussian(1);
-        List<Kernel> zKernel = new ArrayList<Kernel>();
-        yKernel.setDefaultBw(this.dataSet, y);
-        xKernel.setDefaultBw(this.dataSet, x);
-        if (!z.isEmpty()) {
-            for (int i = 0; i < z.size(); i++) {
-                Kernel Zi = new KernelGaussian(1);
-                Zi.setDefaultBw(this.dataSet, z.get(i));
-                zKernel.add(Zi);
-            }
-        }
-
-        // consruct Gram matricces
-        TetradMatrix Ky = null;
-        TetradMatrix Kx = null;
-        TetradMatrix Kz = null;
-        // use incomplete Cholesky to approximate
         if (useIncompleteCholesky > 0) {
-            Ky = KernelUtils.incompleteCholeskyGramMatrix(Arrays.asList(yKernel), this.dataSet, Arrays.asList(y), useIncompleteCholesky);
-            Kx = KernelUtils.incompleteCholeskyGramMatrix(Arrays.asList(xKernel), this.dataSet, Arrays.asList(x), useIncompleteCholesky);
-            if (!z.isEmpty()) {
-                Kz = KernelUtils.incompleteCholeskyGramMatrix(zKernel, this.dataSet, z, useIncompleteCholesky);
-            }
-        }
-        // otherwise compute directly
-        else {
-            Ky = KernelUtils.constructCentralizedGramMatrix(Arrays.asList(yKernel), this.dataSet, Arrays.asList(y));
-            Kx = KernelUtils.constructCentralizedGramMatrix(Arrays.asList(xKernel), this.dataSet, Arrays.asList(x));
-            if (!z.isEmpty()) {
-                Kz = KernelUtils.constructCentralizedGramMatrix(zKernel, this.dataSet, z);
-            }
-        }
-
-        // get Hilbert-Schmidt dependence measure
-        if (z.isEmpty()) {
-            if (useIncompleteCholesky > 0) {
-                this.hsic = empiricalHSICincompleteCholesky(Ky, Kx, m);
-            } else {
-                this.hsic = empiricalHSIC(Ky, Kx, m);
-            }
+            this.pValue = lowRankPValue(y, x, z);
         } else {
-            if (useIncompleteCholesky > 0) {
-                this.hsic = empiricalHSICincompleteCholesky(Ky, Kx, Kz, m);
-            } else {
-                this.hsic = empiricalHSIC(Ky, Kx, Kz, m);
-            }
-        }
-
-        // shuffle data for approximate the null distribution
-        double[] nullapprox = new double[this.perms];
-        int[] zind = null;
-        int ycol = this.dataSet.getColumn(y);
-        List<List<Integer>> clusterAssign = null;
-        if (!z.isEmpty()) {
-            // get clusters for z
-            KMeans kmeans = KMeans.randomClusters((m / 3));
-            zind = new int[z.size()];
-            for (int j = 0; j < z.size(); j++) {
-                zind[j] = dataSet.getColumn(z.get(j));
-            }
-            kmeans.cluster(dataSet.subsetColumns(z).getDoubleData());
-            clusterAssign = kmeans.getClusters();
-        }
-        for (int i = 0; i < this.perms; i++) {
-            DataSet shuffleData = new ColtDataSet((ColtDataSet) dataSet);
-            // shuffle data
-            if (z.isEmpty()) {
-                List<Integer> indicesList = new ArrayList<Integer>();
-                for (int j = 0; j < m; j++) {
-                    indicesList.add(j);
-                }
-                Collections.shuffle(indicesList);
-                for (int j = 0; j < m; j++) {
-                    double shuffleVal = dataSet.getDouble(indicesList.get(j), ycol);
-                    shuffleData.setDouble(j, ycol, shuffleVal);
-                }
-            } else {
-                // shuffle data within clusters
-                for (int j = 0; j < clusterAssign.size(); j++) {
-                    List<Integer> shuffleCluster = new ArrayList<Integer>(clusterAssign.get(j));
-
-                    Collections.shuffle(shuffleCluster);
-
-                    for (int k = 0; k < shuffleCluster.size(); k++) {
-                        // first swap y;
-                        double swapVal = dataSet.getDouble(clusterAssign.get(j).get(k), ycol);
-                        shuffleData.setDouble(shuffleCluster.get(k), ycol, swapVal);
-                        // now swap z
-                        for (int zi = 0; zi < z.size(); zi++) {
-                            swapVal = dataSet.getDouble(clusterAssign.get(j).get(k), zind[zi]);
-                            shuffleData.setDouble(shuffleCluster.get(k), zind[zi], swapVal);
-                        }
-                    }
-                }
-            }
-            // reset bandwidths
-            yKernel.setDefaultBw(shuffleData, y);
-            for (int j = 0; j < z.size(); j++) {
-                zKernel.get(j).setDefaultBw(shuffleData, z.get(j));
-            }
-            // Gram matrices
-            TetradMatrix Kyn = null;
-            if (useIncompleteCholesky > 0) {
-                Kyn = KernelUtils.incompleteCholeskyGramMatrix(Arrays.asList(yKernel), shuffleData, Arrays.asList(y), useIncompleteCholesky);
-            } else {
-                Kyn = KernelUtils.constructCentralizedGramMatrix(Arrays.asList(yKernel), shuffleData, Arrays.asList(y));
-
-            }
-            TetradMatrix Kzn = null;
-            if (!z.isEmpty()) {
-                if (useIncompleteCholesky > 0) {
-                    Kzn = KernelUtils.incompleteCholeskyGramMatrix(zKernel, shuffleData, z, useIncompleteCholesky);
-                } else {
-                    Kzn = KernelUtils.constructCentralizedGramMatrix(zKernel, shuffleData, z);
-                }
-            }
-            // HSIC
-            if (z.isEmpty()) {
-                if (useIncompleteCholesky > 0) {
-                    nullapprox[i] = empiricalHSICincompleteCholesky(Kyn, Kx, m);
-                } else {
-                    nullapprox[i] = empiricalHSIC(Kyn, Kx, m);
-                }
-            } else {
-                if (useIncompleteCholesky > 0) {
-                    nullapprox[i] = empiricalHSICincompleteCholesky(Kyn, Kx, Kz, m);
-                } else {
-                    nullapprox[i] = empiricalHSIC(Kyn, Kx, Kz, m);
-                }
-            }
+            this.pValue = gramPValue(y, x, z);
         }
 
-        // permutation test to get p-value
-        double evalCdf = 0.0;
-        for (int i = 0; i < this.perms; i++) {
-            if (nullapprox[i] <= this.hsic) {
-                evalCdf += 1.0;
-            }
-        }
-
-        evalCdf /= (double) this.perms;
-        this.pValue = 1.0 - evalCdf;
-
         // reject if pvalue <= alpha
         if (this.pValue <= this.alpha) {
             TetradLogger.getInstance().log("dependencies", SearchLogUtils
@@ -705,6 +586,39 @@ public final class IndTestHsic implements IndependenceTest {
      */
     public void setIncompleteCholesky(double precision) {
         this.useIncompleteCholesky = precision;
+
+        synchronized (factors) {
+            this.factors.clear();
+        }
+    }
+
+    /**
+     * Sets the maximum number of Gram matrix factors to cache; the least recently used are dropped first. Each
+     * factor holds n x k doubles, for n the sample size and k the rank of the factorization. The default is 100.
+     */
+    public void setFactorsCacheSize(int factorsCacheSize) {
+        if (factorsCacheSize < 0) throw new IllegalArgumentException("Cache size must be >= 0.");
+        this.factorsCacheSize = factorsCacheSize;
+
+        synchronized (factors) {
+            factors.clear();
+        }
+    }
+
+    /**
+     * Sets whether unconditional tests use a gamma approximation to the null distribution, which needs no
+     * permutations, instead of a permutation test. Conditional tests always use permutations. Applies only when
+     * the incomplete Cholesky method is used.
+     */
+    public void setGammaApproximation(boolean gammaApproximation) {
+        this.gammaApproximation = gammaApproximation;
+    }
+
+    /**
+     * @return true if unconditional tests use a gamma approximation to the null distribution.
+     */
+    public boolean isGammaApproximation() {
+        return gammaApproximation;
     }
 
     /**
@@ -838,6 +752,417 @@ public final class IndTestHsic implements IndependenceTest {
         return this.dataSet.getNumRows();
     }
 
+    // The p value of the test using exact Gram matrices, by permuting y (and z, within clusters of z).
+    private double gramPValue(Node y, Node x, List<Node> z) {
+        int m = sampleSize();
+
+        // choose kernels using median distance heuristic
+        Kernel xKernel = new KernelGaussian(1);
+        Kernel yKernel = new KernelGaussian(1);
+        List<Kernel> zKernel = new ArrayList<Kernel>();
+        yKernel.setDefaultBw(this.dataSet, y);
+        xKernel.setDefaultBw(this.dataSet, x);
+        if (!z.isEmpty()) {
+            for (int i = 0; i < z.size(); i++) {
+                Kernel Zi = new KernelGaussian(1);
+                Zi.setDefaultBw(this.dataSet, z.get(i));
+                zKernel.add(Zi);
+            }
+        }
+
+        // consruct Gram matricces
+        TetradMatrix Ky = KernelUtils.constructCentralizedGramMatrix(Arrays.asList(yKernel), this.dataSet, Arrays.asList(y));
+        TetradMatrix Kx = KernelUtils.constructCentralizedGramMatrix(Arrays.asList(xKernel), this.dataSet, Arrays.asList(x));
+        TetradMatrix Kz = null;
+        if (!z.isEmpty()) {
+            Kz = KernelUtils.constructCentralizedGramMatrix(zKernel, this.dataSet, z);
+        }
+
+        // get Hilbert-Schmidt dependence measure
+        if (z.isEmpty()) {
+            this.hsic = empiricalHSIC(Ky, Kx, m);
+        } else {
+            this.hsic = empiricalHSIC(Ky, Kx, Kz, m);
+        }
+
+        // shuffle data for approximate the null distribution
+        double[] nullapprox = new double[this.perms];
+        int[] zind = null;
+        int ycol = this.dataSet.getColumn(y);
+        List<List<Integer>> clusterAssign = null;
+        if (!z.isEmpty()) {
+            // get clusters for z
+            KMeans kmeans = KMeans.randomClusters((m / 3));
+            zind = new int[z.size()];
+            for (int j = 0; j < z.size(); j++) {
+                zind[j] = dataSet.getColumn(z.get(j));
+            }
+            kmeans.cluster(dataSet.subsetColumns(z).getDoubleData());
+            clusterAssign = kmeans.getClusters();
+        }
+        for (int i = 0; i < this.perms; i++) {
+            DataSet shuffleData = new ColtDataSet((ColtDataSet) dataSet);
+            // shuffle data
+            if (z.isEmpty()) {
+                List<Integer> indicesList = new ArrayList<Integer>();
+                for (int j = 0; j < m; j++) {
+                    indicesList.add(j);
+                }
+                Collections.shuffle(indicesList);
+                for (int j = 0; j < m; j++) {
+                    double shuffleVal = dataSet.getDouble(indicesList.get(j), ycol);
+                    shuffleData.setDouble(j, ycol, shuffleVal);
+                }
+            } else {
+                // shuffle data within clusters
+                for (int j = 0; j < clusterAssign.size(); j++) {
+                    List<Integer> shuffleCluster = new ArrayList<Integer>(clusterAssign.get(j));
+
+                    Collections.shuffle(shuffleCluster);
+
+                    for (int k = 0; k < shuffleCluster.size(); k++) {
+                        // first swap y;
+                        double swapVal = dataSet.getDouble(clusterAssign.get(j).get(k), ycol);
+                        shuffleData.setDouble(shuffleCluster.get(k), ycol, swapVal);
+                        // now swap z
+                        for (int zi = 0; zi < z.size(); zi++) {
+                            swapVal = dataSet.getDouble(clusterAssign.get(j).get(k), zind[zi]);
+                            shuffleData.setDouble(shuffleCluster.get(k), zind[zi], swapVal);
+                        }
+                    }
+                }
+            }
+            // reset bandwidths
+            yKernel.setDefaultBw(shuffleData, y);
+            for (int j = 0; j < z.size(); j++) {
+                zKernel.get(j).setDefaultBw(shuffleData, z.get(j));
+            }
+            // Gram matrices
+            TetradMatrix Kyn = KernelUtils.constructCentralizedGramMatrix(Arrays.asList(yKernel), shuffleData, Arrays.asList(y));
+            TetradMatrix Kzn = null;
+            if (!z.isEmpty()) {
+                Kzn = KernelUtils.constructCentralizedGramMatrix(zKernel, shuffleData, z);
+            }
+            // HSIC
+            if (z.isEmpty()) {
+                nullapprox[i] = empiricalHSIC(Kyn, Kx, m);
+            } else {
+                nullapprox[i] = empiricalHSIC(Kyn, Kx, Kzn, m);
+            }
+        }
+
+        return permutationPValue(nullapprox);
+    }
+
+    // The p value of the test using cached incomplete Cholesky factors of the Gram matrices. Permuting the
+    // data permutes the rows of the factors, so permutations reuse them, and run in parallel, each with its
+    // own random number generator seeded in order so that results don't depend on scheduling.
+    private double lowRankPValue(Node y, Node x, List<Node> z) {
+        final int m = sampleSize();
+        final Factor fy = getFactor(Collections.singletonList(y));
+        final Factor fx = getFactor(Collections.singletonList(x));
+
+        if (z.isEmpty()) {
+            this.hsic = frobenius2(crossProduct(fy.centered, fx.centered, null)) / Math.pow(m - 1, 2);
+
+            if (gammaApproximation) {
+                return gammaPValue(fy, fx, m);
+            }
+
+            final List<List<Integer>> all = Collections.singletonList(range(m));
+
+            return permutationPValue(permutationNull(all, new PermutedHsic() {
+                public double hsic(int[] perm) {
+                    return frobenius2(crossProduct(fy.centered, fx.centered, perm)) / Math.pow(m - 1, 2);
+                }
+            }));
+        }
+
+        List<Node> _z = new ArrayList<Node>(z);
+        Collections.sort(_z, new Comparator<Node>() {
+            public int compare(Node o1, Node o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+
+        final Factor fz = getFactor(_z);
+        int kz = fz.centered[0].length;
+
+        // Gz'Gz, the pushed-through regularized inverse (Gz'Gz + rI)^-1 Gz'Gz (Gz'Gz + rI)^-1, and
+        // the sum of squared off-diagonal entries of Kz. None of these change when y and z are permuted together.
+        TetradMatrix S = new TetradMatrix(crossProduct(fz.centered, fz.centered, null));
+        TetradMatrix Sr = S.copy();
+        for (int i = 0; i < kz; i++) {
+            Sr.set(i, i, S.get(i, i) + this.regularizer);
+        }
+        TetradMatrix SrInv = Sr.inverse();
+        final TetradMatrix M = SrInv.times(S).times(SrInv);
+
+        double betaz = frobenius2(S.toArray());
+        for (double[] g : fz.centered) {
+            double gg = 0.0;
+            for (double v : g) gg += v * v;
+            betaz -= gg * gg;
+        }
+
+        final double scale = m / (betaz * (m - 1));
+        final TetradMatrix Ayz = new TetradMatrix(crossProduct(fy.centered, fz.centered, null));
+
+        PermutedHsic conditional = new PermutedHsic() {
+            public double hsic(int[] perm) {
+                TetradMatrix Ayx = new TetradMatrix(crossProduct(fy.centered, fx.centered, perm));
+                TetradMatrix Azx = new TetradMatrix(crossProduct(fz.centered, fx.centered, perm));
+                return frobenius2(Ayx.minus(Ayz.times(M).times(Azx)).toArray()) * scale;
+            }
+        };
+
+        this.hsic = conditional.hsic(null);
+
+        // get clusters for z
+        KMeans kmeans = KMeans.randomClusters((m / 3));
+        kmeans.cluster(dataSet.subsetColumns(z).getDoubleData());
+
+        return permutationPValue(permutationNull(kmeans.getClusters(), conditional));
+    }
+
+    // The statistic for data whose rows of y (and z) are taken from rows perm, or unpermuted if perm is null.
+    private interface PermutedHsic {
+        double hsic(int[] perm);
+    }
+
+    // Evaluates the statistic for random permutations within the given groups of rows, in parallel. Permutation i
+    // draws from child stream i of a stream seeded from RandomUtil, so the null sample does not depend on scheduling.
+    private double[] permutationNull(final List<List<Integer>> groups, final PermutedHsic statistic) {
+        final double[] nullapprox = new double[this.perms];
+        final RandomStream stream = RandomStream.fromRandomUtil();
+
+        class PermutationTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private PermutationTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= 1) {
+                    for (int i = from; i < to; i++) {
+                        RandomStream random = stream.split(i);
+                        int[] perm = new int[sampleSize()];
+
+                        for (List<Integer> group : groups) {
+                            List<Integer> shuffled = new ArrayList<Integer>(group);
+
+                            for (int k = shuffled.size() - 1; k > 0; k--) {
+                                Collections.swap(shuffled, k, random.nextInt(k + 1));
+                            }
+
+                            for (int k = 0; k < group.size(); k++) {
+                                perm[shuffled.get(k)] = group.get(k);
+                            }
+                        }
+
+                        nullapprox[i] = statistic.hsic(perm);
+                    }
+                } else {
+                    int mid = (from + to) / 2;
+                    invokeAll(new PermutationTask(from, mid), new PermutationTask(mid, to));
+                }
+            }
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new PermutationTask(0, this.perms));
+        return nullapprox;
+    }
+
+    // permutation test to get p-value
+    private double permutationPValue(double[] nullapprox) {
+        double evalCdf = 0.0;
+        for (int i = 0; i < nullapprox.length; i++) {
+            if (nullapprox[i] <= this.hsic) {
+                evalCdf += 1.0;
+            }
+        }
+
+        evalCdf /= (double) nullapprox.length;
+        return 1.0 - evalCdf;
+    }
+
+    // The p value of the unconditional test from a gamma approximation to the null distribution of m * HSIC_b,
+    // matching its first two moments (Gretton et al., 2008, "A kernel statistical test of independence").
+    private double gammaPValue(final Factor fy, final Factor fx, final int m) {
+        if (m < 6) return Double.NaN;
+
+        final double[] sums = new double[m];
+
+        class VarianceTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private VarianceTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= 100) {
+                    for (int i = from; i < to; i++) {
+                        double sum = 0.0;
+
+                        for (int j = 0; j < m; j++) {
+                            if (i == j) continue;
+                            double kl = dot(fy.centered[i], fy.centered[j]) * dot(fx.centered[i], fx.centered[j]) / 6.0;
+                            sum += kl * kl;
+                        }
+
+                        sums[i] = sum;
+                    }
+                } else {
+                    int mid = (from + to) / 2;
+                    invokeAll(new VarianceTask(from, mid), new VarianceTask(mid, to));
+                }
+            }
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new VarianceTask(0, m));
+
+        double variance = 0.0;
+        for (double sum : sums) variance += sum;
+        variance /= m * (m - 1.0);
+        variance *= 72.0 * (m - 4) * (m - 5) / (m * (m - 1.0) * (m - 2) * (m - 3));
+
+        double muY = offDiagonalMean(fy.factor, m);
+        double muX = offDiagonalMean(fx.factor, m);
+        double mean = (1 + muX * muY - muX - muY) / m;
+
+        double shape = mean * mean / variance;
+        double scale = variance * m / mean;
+
+        double statistic = this.hsic * Math.pow(m - 1, 2) / m;
+        return 1.0 - new GammaDistribution(shape, scale).cumulativeProbability(statistic);
+    }
+
+    // The mean off-diagonal entry of the Gram matrix G G'.
+    private static double offDiagonalMean(double[][] G, int m) {
+        double[] total = new double[G[0].length];
+        double diagonal = 0.0;
+
+        for (double[] g : G) {
+            for (int k = 0; k < g.length; k++) total[k] += g[k];
+            diagonal += dot(g, g);
+        }
+
+        return (dot(total, total) - diagonal) / (m * (m - 1.0));
+    }
+
+    // The incomplete Cholesky factor of the Gram matrix over the given variables, with bandwidths from the
+    // median distance heuristic. These depend only on the variables, so are cached.
+    private Factor getFactor(List<Node> nodes) {
+        Factor factor;
+
+        synchronized (factors) {
+            factor = factors.get(nodes);
+        }
+
+        if (factor == null) {
+            List<Kernel> kernels = new ArrayList<Kernel>();
+
+            for (Node node : nodes) {
+                Kernel kernel = new KernelGaussian(1);
+                kernel.setDefaultBw(this.dataSet, node);
+                kernels.add(kernel);
+            }
+
+            TetradMatrix G = KernelUtils.incompleteCholeskyGramMatrix(kernels, this.dataSet, nodes,
+                    useIncompleteCholesky);
+            factor = new Factor(G.toArray());
+
+            synchronized (factors) {
+                factors.put(nodes, factor);
+            }
+        }
+
+        return factor;
+    }
+
+    // A' B, where the rows of A are taken in the order perm if it is not null.
+    private static double[][] crossProduct(double[][] A, double[][] B, int[] perm) {
+        int ka = A[0].length;
+        int kb = B[0].length;
+        double[][] product = new double[ka][kb];
+
+        for (int i = 0; i < B.length; i++) {
+            double[] a = A[perm == null ? i : perm[i]];
+            double[] b = B[i];
+
+            for (int r = 0; r < ka; r++) {
+                double ar = a[r];
+                if (ar == 0.0) continue;
+                double[] row = product[r];
+
+                for (int c = 0; c < kb; c++) {
+                    row[c] += ar * b[c];
+                }
+            }
+        }
+
+        return product;
+    }
+
+    private static double frobenius2(double[][] A) {
+        double sum = 0.0;
+
+        for (double[] row : A) {
+            for (double v : row) {
+                sum += v * v;
+            }
+        }
+
+        return sum;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.0;
+        for (int k = 0; k < a.length; k++) sum += a[k] * b[k];
+        return sum;
+    }
+
+    private static List<Integer> range(int m) {
+        List<Integer> range = new ArrayList<Integer>(m);
+        for (int i = 0; i < m; i++) range.add(i);
+        return range;
+    }
+
+    // An incomplete Cholesky factor of a Gram matrix, with rows in data order, and the same with its columns
+    // centered, which is a factor of the centered Gram matrix.
+    private static class Factor {
+        private final double[][] factor;
+        private final double[][] centered;
+
+        private Factor(double[][] factor) {
+            this.factor = factor;
+
+            int m = factor.length;
+            int k = m == 0 ? 0 : factor[0].length;
+            double[] means = new double[k];
+
+            for (double[] g : factor) {
+                for (int c = 0; c < k; c++) means[c] += g[c] / m;
+            }
+
+            this.centered = new double[m][k];
+
+            for (int i = 0; i < m; i++) {
+                for (int c = 0; c < k; c++) {
+                    centered[i][c] = factor[i][c] - means[c];
+                }
+            }
+        }
+    }
+
     private double matrixProductEntry(TetradMatrix X, TetradMatrix Y, int i, int j) {
         double entry = 0.0;
         for (int k = 0; k < X.columns(); k++) {
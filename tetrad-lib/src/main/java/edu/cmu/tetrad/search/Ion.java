@@ -23,9 +23,12 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements the ION (Integration of Overlapping Networks) algorithm for distributed causal inference. The algorithm
@@ -85,6 +88,27 @@ public class Ion {
     // maximum memory usage
     private double maxMemory;
 
+    // checks the candidate graphs of each hitting set computation in parallel
+    private boolean parallelized = false;
+
+    // hitting sets with more changes than this are not explored
+    private int maxHittingSetSize = Integer.MAX_VALUE;
+
+    // budgets after which the search stops and returns what it has so far; -1 for none
+    private long timeLimit = -1;
+    private long memoryLimit = -1;
+
+    // false if a budget ran out before the search finished
+    private boolean complete = true;
+    private long deadline = Long.MAX_VALUE;
+
+    // whether each candidate graph predicts an independence known not to hold, keyed by the graph's edges as they were
+    // when it was checked, since the graphs themselves may be changed afterward
+    private Map<Set<String>, Boolean> falseIndependence = new ConcurrentHashMap<Set<String>, Boolean>();
+
+    // candidate graphs checked in parallel per task
+    private static final int CANDIDATES_PER_TASK = 8;
+
     //============================= Constructor ============================//
 
 
@@ -128,12 +152,56 @@ public class Ion {
         adjacencySearch = b;
     }
 
+    /**
+     * Sets whether the graphs produced by the hitting sets of each step 3 iteration are checked against the input PAGs
+     * in parallel. The result is the same either way.
+     */
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
+
+    /**
+     * Sets the largest number of graph changes in a hitting set that is explored. Hitting sets are explored in order
+     * of increasing size, so this prunes the largest ones first.
+     */
+    public void setMaxHittingSetSize(int maxHittingSetSize) {
+        if (maxHittingSetSize < 1) throw new IllegalArgumentException("Max hitting set size must be at least 1.");
+        this.maxHittingSetSize = maxHittingSetSize;
+    }
+
+    /**
+     * Sets a time budget for the search in milliseconds, or -1 for none. Once it is used up, the search stops
+     * branching and returns the output PAGs it can form from the graphs it has so far.
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Sets a memory budget for the search in bytes of used heap, or -1 for none. When it is exceeded, cached
+     * d-separation results are dropped first; if that is not enough, the search stops as when out of time.
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * @return false if the last search stopped early because its time or memory budget ran out, in which case its
+     * output is a partial result.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
     /**
      * Begins the ION search procedure, described at each step
      */
     public List<Graph> search() {
 
         long start = System.currentTimeMillis();
+        this.complete = true;
+        this.deadline = timeLimit < 0 ? Long.MAX_VALUE : start + timeLimit;
+        this.falseIndependence.clear();
         TetradLogger.getInstance().log("info", "Starting ION Search.");
         logGraphs("\nInitial Pags: ", this.input);
         TetradLogger.getInstance().log("info", "Transfering local information.");
@@ -177,6 +245,8 @@ public class Ion {
         this.associations = sepAndAssoc.get(1);
         Map<Collection<Node>, List<PossibleDConnectingPath>> paths;
         Queue<Graph> step3Pags = new LinkedList<Graph>();
+        // the graphs in step3Pags, for fast membership checks
+        Set<Graph> step3Set = new HashSet<Graph>();
         Set<Graph> reject = new HashSet<Graph>();
         // if no d-separations, nothing left to search
         if (separations.isEmpty()) {
@@ -184,6 +254,7 @@ public class Ion {
             // do final orientations
 //            doFinalOrientation(graph);
             step3Pags.add(graph);
+            step3Set.add(graph);
         }
         // sets length to iterate once if search over path lengths not enabled, otherwise set to 2
         int numNodes = graph.getNumNodes();
@@ -192,7 +263,7 @@ public class Ion {
             pl = 2;
         }
         // iterates over path length, then adjacencies
-        for (int l = pl; l < numNodes; l++) {
+        for (int l = pl; l < numNodes && complete; l++) {
             if (pathLengthSearch) {
                 TetradLogger.getInstance().log("info", "Braching over path lengths: " + l + " of " + (numNodes - 1));
             }
@@ -200,6 +271,9 @@ public class Ion {
             int currentSep = 1;
             int numAdjacencies = separations.size();
             for (IonIndependenceFacts fact : separations) {
+                if (!complete) {
+                    break;
+                }
                 if (adjacencySearch) {
                     TetradLogger.getInstance().log("info", "Braching over path nonadjacencies: " + currentSep + " of " + numAdjacencies);
                 }
@@ -209,10 +283,21 @@ public class Ion {
                 searchPags.addAll(step3Pags);
                 recGraphs.add(searchPags.size());
                 step3Pags.clear();
+                step3Set.clear();
                 while (!searchPags.isEmpty()) {
                     System.out.println("ION Step 3 size: " + searchPags.size());
                     double currentUsage = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
                     if (currentUsage > maxMemory) maxMemory = currentUsage;
+                    // out of budget; the graphs not yet branched on go forward as they are
+                    if (!withinBudget()) {
+                        for (Graph remaining : searchPags) {
+                            if (step3Set.add(remaining)) {
+                                step3Pags.add(remaining);
+                            }
+                        }
+                        searchPags.clear();
+                        break;
+                    }
                     // deques first PAG from searchPags
                     Graph pag = searchPags.poll();
                     // Part 3.a - finds possibly d-connecting undirectedPaths between each pair of nodes
@@ -248,6 +333,7 @@ public class Ion {
                     if (dConnections.isEmpty()) {
 //                        doFinalOrientation(pag);
                         step3Pags.add(pag);
+                        step3Set.add(pag);
                         continue;
                     }
                     // maps conditioning sets to list of possibly d-connecting undirectedPaths
@@ -295,93 +381,40 @@ public class Ion {
                         }
                     }
                     float starthitset = System.currentTimeMillis();
-                    Collection<GraphChange> hittingSets = IonHittingSet.findHittingSet(possibleChanges);
+                    List<GraphChange> hittingSets = new ArrayList<GraphChange>();
+                    if (!IonHittingSet.findHittingSet(possibleChanges, maxHittingSetSize, deadline, hittingSets)) {
+                        complete = false;
+                    }
                     recHitTimes.add((System.currentTimeMillis() - starthitset) / 1000.);
                     // Part 3.c - checks the newly constructed graphs from 3.b and rejects those that
                     // cycles or produce independencies known not to occur from the input PAGs or
                     // include undirectedPaths from definite nonancestors
-                    for (GraphChange gc : hittingSets) {
-                        boolean badhittingset = false;
-                        for (Edge edge : gc.getRemoves()) {
-                            Node node1 = edge.getNode1();
-                            Node node2 = edge.getNode2();
-                            Set<Triple> triples = new HashSet<Triple>();
-                            triples.addAll(gc.getColliders());
-                            triples.addAll(gc.getNoncolliders());
-                            if (triples.size() != (gc.getColliders().size() + gc.getNoncolliders().size())) {
-                                badhittingset = true;
-                                break;
-                            }
-                            for (Triple triple : triples) {
-                                if (node1.equals(triple.getY())) {
-                                    if (node2.equals(triple.getX()) ||
-                                            node2.equals(triple.getZ())) {
-                                        badhittingset = true;
-                                        break;
-                                    }
-                                }
-                                if (node2.equals(triple.getY())) {
-                                    if (node1.equals(triple.getX()) ||
-                                            node1.equals(triple.getZ())) {
-                                        badhittingset = true;
-                                        break;
-                                    }
-                                }
-                            }
-                            if (badhittingset) {
-                                break;
-                            }
-                            for (NodePair pair : gc.getOrients()) {
-                                if ((node1.equals(pair.getFirst()) && node2.equals(pair.getSecond())) ||
-                                        (node2.equals(pair.getFirst()) && node1.equals(pair.getSecond()))) {
-                                    badhittingset = true;
-                                    break;
-                                }
-                            }
-                            if (badhittingset) {
-                                break;
-                            }
-                        }
-                        if (!badhittingset) {
-                            for (NodePair pair : gc.getOrients()) {
-                                for (Triple triple : gc.getNoncolliders()) {
-                                    if (pair.getSecond().equals(triple.getY())) {
-                                        if (pair.getFirst().equals(triple.getX()) &&
-                                                pag.getEndpoint(triple.getZ(), triple.getY()).equals(Endpoint.ARROW)) {
-                                            badhittingset = true;
-                                            break;
-
-                                        }
-                                        if (pair.getFirst().equals(triple.getZ()) &&
-                                                pag.getEndpoint(triple.getX(), triple.getY()).equals(Endpoint.ARROW)) {
-                                            badhittingset = true;
-                                            break;
-                                        }
-                                    }
-                                    if (badhittingset) {
-                                        break;
-                                    }
-                                }
-                                if (badhittingset) {
-                                    break;
-                                }
-                            }
+                    Graph[] changedGraphs = new Graph[hittingSets.size()];
+                    boolean[] rejected = new boolean[hittingSets.size()];
+                    if (parallelized) {
+                        ForkJoinPoolInstance.getInstance().getPool().invoke(
+                                new CandidateTask(hittingSets, pag, changedGraphs, rejected, 0, hittingSets.size()));
+                    }
+                    for (int h = 0; h < hittingSets.size(); h++) {
+                        Graph changed;
+                        if (parallelized) {
+                            changed = changedGraphs[h];
+                        } else {
+                            changed = candidate(hittingSets.get(h), pag);
                         }
-                        if (badhittingset) {
+                        if (changed == null) {
                             continue;
                         }
-                        Graph changed = gc.applyTo(pag);
                         // if graph change has already been rejected move on to next graph
                         if (reject.contains(changed)) {
                             continue;
                         }
                         // if graph change has already been accepted move on to next graph
-                        if (step3Pags.contains(changed)) {
+                        if (step3Set.contains(changed)) {
                             continue;
                         }
                         // reject if null, predicts false independencies or has cycle
-                        if (predictsFalseIndependence(associations, changed)
-                                || changed.existsDirectedCycle()) {
+                        if (parallelized ? rejected[h] : isRejected(changed)) {
                             reject.add(changed);
                         }
                         // makes orientations preventing definite noncolliders from becoming colliders
@@ -389,6 +422,7 @@ public class Ion {
 //                        doFinalOrientation(changed);
                         // now add graph to queue
                         step3Pags.add(changed);
+                        step3Set.add(changed);
                     }
                 }
                 // exits loop if not looping over adjacencies
@@ -409,6 +443,9 @@ public class Ion {
         Map<Edge, Boolean> necEdges;
         Set<Graph> outputPags = new HashSet<Graph>();
         while (!step3Pags.isEmpty()) {
+            if (!outputPags.isEmpty() && !withinBudget()) {
+                break;
+            }
             Graph pag = step3Pags.poll();
             necEdges = new HashMap<Edge, Boolean>();
             // Step 4.a - if x and y are known to be unconditionally associated and there is
@@ -482,6 +519,9 @@ public class Ion {
         steps = System.currentTimeMillis();
         Set<Graph> outputSet = new HashSet<Graph>();
         for (Graph pag : outputPags) {
+            if (!outputSet.isEmpty() && !withinBudget()) {
+                break;
+            }
             Set<Triple> unshieldedPossibleColliders = new HashSet<Triple>();
             for (Triple triple : getPossibleTriples(pag)) {
                 if (!pag.isAdjacentTo(triple.getX(), triple.getZ())) {
@@ -499,7 +539,7 @@ public class Ion {
                 doFinalOrientation(newGraph);
             }
             for (Graph outputPag : finalResult) {
-                if (!predictsFalseIndependence(associations, outputPag)) {
+                if (!predictsFalseIndependenceCached(outputPag)) {
                     Set<Triple> underlineTriples = new HashSet<Triple>(outputPag.getUnderLines());
                     for (Triple triple : underlineTriples) {
                         outputPag.removeUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
@@ -600,6 +640,171 @@ public class Ion {
 
     //============================= Private Methods ============================//
 
+    /**
+     * @return the graph the given hitting set makes of the given PAG, or null if the hitting set is inconsistent with
+     * the PAG or the change cannot be applied.
+     */
+    private Graph candidate(GraphChange gc, Graph pag) {
+        boolean badhittingset = false;
+        for (Edge edge : gc.getRemoves()) {
+            Node node1 = edge.getNode1();
+            Node node2 = edge.getNode2();
+            Set<Triple> triples = new HashSet<Triple>();
+            triples.addAll(gc.getColliders());
+            triples.addAll(gc.getNoncolliders());
+            if (triples.size() != (gc.getColliders().size() + gc.getNoncolliders().size())) {
+                badhittingset = true;
+                break;
+            }
+            for (Triple triple : triples) {
+                if (node1.equals(triple.getY())) {
+                    if (node2.equals(triple.getX()) ||
+                            node2.equals(triple.getZ())) {
+                        badhittingset = true;
+                        break;
+                    }
+                }
+                if (node2.equals(triple.getY())) {
+                    if (node1.equals(triple.getX()) ||
+                            node1.equals(triple.getZ())) {
+                        badhittingset = true;
+                        break;
+                    }
+                }
+            }
+            if (badhittingset) {
+                break;
+            }
+            for (NodePair pair : gc.getOrients()) {
+                if ((node1.equals(pair.getFirst()) && node2.equals(pair.getSecond())) ||
+                        (node2.equals(pair.getFirst()) && node1.equals(pair.getSecond()))) {
+                    badhittingset = true;
+                    break;
+                }
+            }
+            if (badhittingset) {
+                break;
+            }
+        }
+        if (!badhittingset) {
+            for (NodePair pair : gc.getOrients()) {
+                for (Triple triple : gc.getNoncolliders()) {
+                    if (pair.getSecond().equals(triple.getY())) {
+                        if (pair.getFirst().equals(triple.getX()) &&
+                                pag.getEndpoint(triple.getZ(), triple.getY()).equals(Endpoint.ARROW)) {
+                            badhittingset = true;
+                            break;
+
+                        }
+                        if (pair.getFirst().equals(triple.getZ()) &&
+                                pag.getEndpoint(triple.getX(), triple.getY()).equals(Endpoint.ARROW)) {
+                            badhittingset = true;
+                            break;
+                        }
+                    }
+                    if (badhittingset) {
+                        break;
+                    }
+                }
+                if (badhittingset) {
+                    break;
+                }
+            }
+        }
+        if (badhittingset) {
+            return null;
+        }
+        return gc.applyTo(pag);
+    }
+
+    /**
+     * @return true if the given candidate graph predicts a false independence or has a directed cycle.
+     */
+    private boolean isRejected(Graph changed) {
+        return predictsFalseIndependenceCached(changed) || changed.existsDirectedCycle();
+    }
+
+    /**
+     * As predictsFalseIndependence for the associations found in the input PAGs, remembering the answer for each
+     * graph, since the same graphs come up again and again from different hitting sets.
+     */
+    private boolean predictsFalseIndependenceCached(Graph graph) {
+        Set<String> key = new HashSet<String>();
+        for (Edge edge : graph.getEdges()) {
+            key.add(edge.toString());
+        }
+        Boolean predicts = falseIndependence.get(key);
+        if (predicts == null) {
+            predicts = predictsFalseIndependence(associations, graph);
+            falseIndependence.put(key, predicts);
+        }
+        return predicts;
+    }
+
+    /**
+     * @return false, and marks the search incomplete, if the time budget is used up or the memory budget is exceeded.
+     * The first time the memory budget is exceeded with cached d-separation results, these are dropped and the search
+     * goes on; it stops if the budget is still exceeded once the cache is empty.
+     */
+    private boolean withinBudget() {
+        if (System.currentTimeMillis() >= deadline) {
+            complete = false;
+        } else if (memoryLimit >= 0 && usedMemory() > memoryLimit) {
+            if (falseIndependence.isEmpty()) {
+                complete = false;
+            } else {
+                falseIndependence.clear();
+            }
+        }
+        if (!complete) {
+            TetradLogger.getInstance().log("info", "ION budget used up; returning a partial result.");
+        }
+        return complete;
+    }
+
+    private static long usedMemory() {
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    /**
+     * Forms and checks the candidate graphs for hitting sets from..to, storing the graphs and whether each is
+     * rejected.
+     */
+    private class CandidateTask extends RecursiveAction {
+        private final List<GraphChange> hittingSets;
+        private final Graph pag;
+        private final Graph[] changed;
+        private final boolean[] rejected;
+        private final int from;
+        private final int to;
+
+        CandidateTask(List<GraphChange> hittingSets, Graph pag, Graph[] changed, boolean[] rejected,
+                      int from, int to) {
+            this.hittingSets = hittingSets;
+            this.pag = pag;
+            this.changed = changed;
+            this.rejected = rejected;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CANDIDATES_PER_TASK) {
+                for (int h = from; h < to; h++) {
+                    changed[h] = candidate(hittingSets.get(h), pag);
+                    if (changed[h] != null) {
+                        rejected[h] = isRejected(changed[h]);
+                    }
+                }
+            } else {
+                int mid = (from + to) / 2;
+                invokeAll(new CandidateTask(hittingSets, pag, changed, rejected, from, mid),
+                        new CandidateTask(hittingSets, pag, changed, rejected, mid, to));
+            }
+        }
+    }
+
     /**
      * Logs a set of graphs with a corresponding message
      */
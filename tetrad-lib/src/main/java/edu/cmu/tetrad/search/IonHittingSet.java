@@ -22,6 +22,7 @@
 package edu.cmu.tetrad.search;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -50,10 +51,24 @@ public class IonHittingSet {
      * takes a List of HashSets of GraphChanges, and returns a List of GraphChanges.
      */
     public static List<GraphChange> findHittingSet(List<Set<GraphChange>> Forig) {
+        List<GraphChange> hittingSets = new ArrayList<GraphChange>();
+        findHittingSet(Forig, Integer.MAX_VALUE, Long.MAX_VALUE, hittingSets);
+        return hittingSets;
+    }
+
+    /**
+     * As above, but bounded, adding the hitting sets to the given list. Hitting sets are found level by level, that
+     * is, in order of increasing size; nodes deeper than maxLevel (paths made up of more than maxLevel changes) are not
+     * expanded, and once the time given by deadline (as System.currentTimeMillis()) is reached, the search stops with
+     * the hitting sets found so far. Returns false if it was stopped by the deadline.
+     */
+    public static boolean findHittingSet(List<Set<GraphChange>> Forig, int maxLevel, long deadline,
+                                         List<GraphChange> hittingSets) {
 
         LinkedList<HsNode> currentLevel = new LinkedList<HsNode>();
         LinkedList<HsNode> nextLevel = new LinkedList<HsNode>();
-        List<GraphChange> hittingSets = new ArrayList<GraphChange>();
+        Set<GraphChange> nextLevelPaths = new HashSet<GraphChange>();
+        int level = 0;
         List<Set<GraphChange>> F;
 
         /* Enhancement Step 3 */
@@ -66,6 +81,10 @@ public class IonHittingSet {
          * starting the next. Only breaks when there are no more nodes in
          * getModel and next levels */
         while (!currentLevel.isEmpty()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+
             HsNode n = currentLevel.removeFirst();
 
             /* check redundency here in case of new hitting sets since node creation */
@@ -79,7 +98,7 @@ public class IonHittingSet {
                     hittingSets.add(n.getPath());
 
                     /* Node is labeled with first non-intersection */
-                else {
+                else if (level < maxLevel) {
                     n.updateLabel(nextUCSigma);
 
                     /* All possible downward arcs examined; either added or ignored */
@@ -88,7 +107,7 @@ public class IonHittingSet {
 
                         if (newPath.isConsistent(nextLCSigma)) {
                             newPath.union(nextLCSigma);
-                            if (pathNecessary(newPath, nextLevel))
+                            if (pathNecessary(newPath, nextLevelPaths))
                                 nextLevel.add(new HsNode(newPath, n.getLabel()));
                         }
                     }
@@ -99,28 +118,23 @@ public class IonHittingSet {
             if (currentLevel.isEmpty()) {
                 currentLevel = nextLevel;
                 nextLevel = new LinkedList<HsNode>();
+                nextLevelPaths = new HashSet<GraphChange>();
+                level++;
             }
         }
-        return hittingSets;
+        return true;
     }
 
 
     /**
      * Implements one of the listed enhancements, checking if there is a node on the next level which already has the
      * new path. Returns true if a new node should be created with that path and false if a new node is unnecessary.
+     * The paths of the next level are kept in a hash set, so that this is not a scan of the whole level.
      */
-    private static boolean pathNecessary(GraphChange path, LinkedList<HsNode> nextLevel) {
-        boolean necessary = true;
+    private static boolean pathNecessary(GraphChange path, Set<GraphChange> nextLevelPaths) {
 
         /* Enhancement Step 1 */
-        for (HsNode m : nextLevel) {
-            if ((m.getPath()).equals(path)) {
-                necessary = false;
-                break;
-            }
-        }
-
-        return necessary;
+        return nextLevelPaths.add(path);
     }
 
 
@@ -77,6 +77,7 @@ public class Lofs2 {
     private double zeta = 0.0;
     private boolean edgeCorrected = false;
     private double selfLoopStrength;
+    private PairwiseOrientation pairwiseOrientation;
 
     //===============================CONSTRUCTOR============================//
 
@@ -211,6 +212,15 @@ public class Lofs2 {
         return graph;
     }
 
+    /**
+     * @return the orientation of each edge, with its confidence, from the last call to orient() using one of the
+     * pairwise rules Skew, SkewE, RSkew, RSkewE, Tanh or EB; otherwise an empty list.
+     */
+    public List<PairwiseOrientation.Orientation> getPairwiseOrientations() {
+        if (pairwiseOrientation == null) return new ArrayList<PairwiseOrientation.Orientation>();
+        return pairwiseOrientation.getOrientations();
+    }
+
     public double getAlpha() {
         return alpha;
     }
@@ -268,6 +278,15 @@ public class Lofs2 {
         return this.regressions;
     }
 
+    // The standardized data, column by column, is shared by all of the pairwise rules.
+    private PairwiseOrientation getPairwiseOrientation() {
+        if (this.pairwiseOrientation == null) {
+            this.pairwiseOrientation = new PairwiseOrientation(dataSets);
+        }
+
+        return this.pairwiseOrientation;
+    }
+
     private void setDataSets(List<DataSet> dataSets) {
         this.dataSets = dataSets;
 
@@ -1152,211 +1171,30 @@ public class Lofs2 {
     }
 
     private Graph entropyBased(Graph graph) {
-        DataSet dataSet = DataUtils.concatenate(dataSets);
-        dataSet = DataUtils.standardizeData(dataSet);
-        Graph _graph = new EdgeListGraph(graph.getNodes());
-
-        for (Edge edge : graph.getEdges()) {
-            Node x = edge.getNode1();
-            Node y = edge.getNode2();
-
-            Node _x = dataSet.getVariable(x.getName());
-            Node _y = dataSet.getVariable(y.getName());
-
-            List<double[]> ret = extractData(dataSet, _x, _y);
-
-            double[] xData = ret.get(0);
-            double[] yData = ret.get(1);
-
-            double[] d = new double[xData.length];
-            double[] e = new double[xData.length];
-
-            double cov = StatUtils.covariance(xData, yData);
-
-            for (int i = 0; i < xData.length; i++) {
-                d[i] = yData[i] - cov * xData[i];  // y regressed on x
-                e[i] = xData[i] - cov * yData[i];  // x regressed on y
-            }
-
-            double R = -StatUtils.maxEntApprox(xData) - StatUtils.maxEntApprox(d)
-                    + StatUtils.maxEntApprox(yData) + StatUtils.maxEntApprox(e);
-
-            if (R > 0) {
-                _graph.addDirectedEdge(x, y);
-            } else {
-                _graph.addDirectedEdge(y, x);
-            }
-        }
-
-        return _graph;
+        return getPairwiseOrientation().orient(graph, PairwiseOrientation.Statistic.EB);
     }
 
     private Graph tanhGraph(Graph graph) {
-        DataSet dataSet = DataUtils.concatenate(dataSets);
-        graph = GraphUtils.replaceNodes(graph, dataSet.getVariables());
-        dataSet = DataUtils.standardizeData(dataSet);
-        double[][] data = dataSet.getDoubleData().transpose().toArray();
-        Graph _graph = new EdgeListGraph(graph.getNodes());
-        List<Node> nodes = dataSet.getVariables();
-        Map<Node, Integer> nodesHash = new HashMap<Node, Integer>();
-
-        for (int i = 0; i < nodes.size(); i++) {
-            nodesHash.put(nodes.get(i), i);
-        }
-
-        for (Edge edge : graph.getEdges()) {
-            Node x = edge.getNode1();
-            Node y = edge.getNode2();
-
-            double sumX = 0.0;
-            int countX = 0;
-
-            double[] xData = data[nodesHash.get(edge.getNode1())];
-            double[] yData = data[nodesHash.get(edge.getNode2())];
-
-            for (int i = 0; i < xData.length; i++) {
-                double x0 = xData[i];
-                double y0 = yData[i];
-
-                double termX = (x0 * Math.tanh(y0) - Math.tanh(x0) * y0);
-
-                sumX += termX;
-                countX++;
-            }
-
-            double R = sumX / countX;
-
-            double rhoX = regressionCoef(xData, yData);
-            R *= rhoX;
-
-            if (R > 0) {
-                _graph.addDirectedEdge(x, y);
-            } else {
-                _graph.addDirectedEdge(y, x);
-            }
-        }
-
-        return _graph;
+        PairwiseOrientation pairwise = getPairwiseOrientation();
+        graph = GraphUtils.replaceNodes(graph, pairwise.getVariables());
+        return pairwise.orient(graph, PairwiseOrientation.Statistic.TANH);
     }
 
 
     // @param empirical True if the skew signs are estimated empirically.
     private Graph skewGraph(Graph graph, boolean empirical) {
-        DataSet dataSet = DataUtils.concatenate(dataSets);
-        graph = GraphUtils.replaceNodes(graph, dataSet.getVariables());
-        dataSet = DataUtils.standardizeData(dataSet);
-        double[][] data = dataSet.getDoubleData().transpose().toArray();
-        Graph _graph = new EdgeListGraph(graph.getNodes());
-        List<Node> nodes = dataSet.getVariables();
-        Map<Node, Integer> nodesHash = new HashMap<Node, Integer>();
-
-        for (int i = 0; i < nodes.size(); i++) {
-            nodesHash.put(nodes.get(i), i);
-        }
-
-        for (Edge edge : graph.getEdges()) {
-            Node x = edge.getNode1();
-            Node y = edge.getNode2();
-
-            double sumX = 0.0;
-            int countX = 0;
-
-            int _i = nodesHash.get(edge.getNode1());
-            int _j = nodesHash.get(edge.getNode2());
-
-            double[] xData = data[_i];
-            double[] yData = data[_j];
-
-            if (empirical) {
-                xData = correctSkews(xData);
-                yData = correctSkews(yData);
-            }
-
-            for (int i = 0; i < xData.length; i++) {
-                double x0 = xData[i];
-                double y0 = yData[i];
-
-                double termX = x0 * x0 * y0 - x0 * y0 * y0;
-
-                sumX += termX;
-                countX++;
-            }
-
-            double R = sumX / countX;
-
-            double rhoX = regressionCoef(xData, yData);
-
-            R *= rhoX;
-
-            if (R > 0) {
-                _graph.addDirectedEdge(x, y);
-            } else {
-                _graph.addDirectedEdge(y, x);
-            }
-        }
-
-        return _graph;
-
+        PairwiseOrientation pairwise = getPairwiseOrientation();
+        graph = GraphUtils.replaceNodes(graph, pairwise.getVariables());
+        return pairwise.orient(graph, empirical ? PairwiseOrientation.Statistic.SKEW_E
+                : PairwiseOrientation.Statistic.SKEW);
     }
 
     // @param empirical True if the skew signs are estimated empirically.
     private Graph robustSkewGraph(Graph graph, boolean empirical) {
-        DataSet dataSet = DataUtils.concatenate(dataSets);
-        graph = GraphUtils.replaceNodes(graph, dataSet.getVariables());
-        dataSet = DataUtils.standardizeData(dataSet);
-        double[][] data = dataSet.getDoubleData().transpose().toArray();
-        Graph _graph = new EdgeListGraph(graph.getNodes());
-        List<Node> nodes = dataSet.getVariables();
-        Map<Node, Integer> nodesHash = new HashMap<Node, Integer>();
-
-        for (int i = 0; i < nodes.size(); i++) {
-            nodesHash.put(nodes.get(i), i);
-        }
-
-        for (Edge edge : graph.getEdges()) {
-            Node x = edge.getNode1();
-            Node y = edge.getNode2();
-
-            double sumX = 0.0;
-            int countX = 0;
-
-            double[] xData = data[nodesHash.get(edge.getNode1())];
-            double[] yData = data[nodesHash.get(edge.getNode2())];
-
-            if (empirical) {
-                xData = correctSkews(xData);
-                yData = correctSkews(yData);
-            }
-
-            for (int i = 0; i < xData.length; i++) {
-                double x0 = xData[i];
-                double y0 = yData[i];
-
-                double termX = g(x0) * y0 - x0 * g(y0);
-
-                sumX += termX;
-                countX++;
-            }
-
-            double R = sumX / countX;
-
-            double rhoX = regressionCoef(xData, yData);
-            R *= rhoX;
-
-            if (R > 0) {
-                _graph.addDirectedEdge(x, y);
-            } else if (R < 0) {
-                _graph.addDirectedEdge(y, x);
-            } else {
-                _graph.addUndirectedEdge(x, y);
-            }
-        }
-
-        return _graph;
-    }
-
-    private double g(double x) {
-        return Math.log(Math.cosh(Math.max(x, 0)));
+        PairwiseOrientation pairwise = getPairwiseOrientation();
+        graph = GraphUtils.replaceNodes(graph, pairwise.getVariables());
+        return pairwise.orient(graph, empirical ? PairwiseOrientation.Statistic.RSKEW_E
+                : PairwiseOrientation.Statistic.RSKEW);
     }
 
     // cutoff is NaN if no thresholding is to be done, otherwise a threshold between 0 and 1.
@@ -1473,50 +1311,6 @@ public class Lofs2 {
         return _x[(int) (x.length * (percent / 100.0))];
     }
 
-    private List<double[]> extractData(DataSet data, Node _x, Node _y) {
-        int xIndex = data.getColumn(_x);
-        int yIndex = data.getColumn(_y);
-
-        double[][] _data = data.getDoubleData().transpose().toArray();
-
-//        double[] xData = _data.viewColumn(xIndex).toArray();
-//        double[] yData = _data.viewColumn(yIndex).toArray();
-
-        double[] xData = _data[xIndex];
-        double[] yData = _data[yIndex];
-
-        List<Double> xValues = new ArrayList<Double>();
-        List<Double> yValues = new ArrayList<Double>();
-
-        for (int i = 0; i < data.getNumRows(); i++) {
-            if (!Double.isNaN(xData[i]) && !Double.isNaN(yData[i])) {
-                xValues.add(xData[i]);
-                yValues.add(yData[i]);
-            }
-        }
-
-        xData = new double[xValues.size()];
-        yData = new double[yValues.size()];
-
-        for (int i = 0; i < xValues.size(); i++) {
-            xData[i] = xValues.get(i);
-            yData[i] = yValues.get(i);
-        }
-
-        List<double[]> ret = new ArrayList<double[]>();
-        ret.add(xData);
-        ret.add(yData);
-
-        return ret;
-    }
-
-    private double[] correctSkews(double[] data) {
-        double skewness = StatUtils.skewness(data);
-        double[] data2 = new double[data.length];
-        for (int i = 0; i < data.length; i++) data2[i] = data[i] * Math.signum(skewness);
-        return data2;
-    }
-
     private List<double[]> prepareData(DataSet concatData, Node _x, Node _y, boolean skewCorrection, boolean coefCorrection) {
         int xIndex = concatData.getColumn(_x);
         int yIndex = concatData.getColumn(_y);
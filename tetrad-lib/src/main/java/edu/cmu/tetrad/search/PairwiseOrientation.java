@@ -0,0 +1,453 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DataUtils;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.StatUtils;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Orients every edge of a skeleton by a two-variable statistic, as in the pairwise rules of Lofs2 (Hyvarinen and
+ * Smith, Pairwise likelihood ratios for estimation of non-Gaussian structural equation models). The data are
+ * concatenated and standardized once, column by column, and anything a statistic needs per variable (skew signs,
+ * transformed columns, entropy approximations) is computed once per variable rather than once per edge. The edges
+ * are then scored in parallel batches.
+ * <p>
+ * Along with the orientation, each edge gets a confidence, the absolute value of the statistic that decided its
+ * direction.
+ */
+public class PairwiseOrientation {
+
+    /**
+     * The pairwise statistics that may be used to orient edges.
+     */
+    public enum Statistic {SKEW, SKEW_E, RSKEW, RSKEW_E, TANH, EB}
+
+    /**
+     * The number of edges scored in one batch.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    // The standardized concatenated data, indexed as columns[variable][case].
+    private final double[][] columns;
+
+    // The variables of the data.
+    private final List<Node> variables;
+
+    // Column indices, by variable name.
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    // True for columns containing missing values.
+    private final boolean[] hasMissing;
+
+    // Cached skew signs and transformed columns, filled in lazily.
+    private double[] skewSigns;
+    private double[][] gColumns;
+    private double[][] gColumnsE;
+    private double[][] tanhColumns;
+    private double[] entropies;
+
+    private final ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
+    // The orientations from the last call to orient(Graph, Statistic).
+    private List<Orientation> orientations = new ArrayList<>();
+
+    /**
+     * Constructs an engine for the given data sets, which must all have the same continuous variables. The data
+     * sets are concatenated and standardized.
+     */
+    public PairwiseOrientation(List<DataSet> dataSets) {
+        if (dataSets == null || dataSets.isEmpty()) {
+            throw new IllegalArgumentException("Data must be specified.");
+        }
+
+        DataSet dataSet = DataUtils.standardizeData(DataUtils.concatenate(dataSets));
+        this.columns = dataSet.getDoubleData().transpose().toArray();
+        this.variables = dataSet.getVariables();
+        this.hasMissing = new boolean[columns.length];
+
+        for (int i = 0; i < variables.size(); i++) {
+            indices.put(variables.get(i).getName(), i);
+
+            for (double d : columns[i]) {
+                if (Double.isNaN(d)) {
+                    hasMissing[i] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the variables of the data, which are the nodes of graphs returned by orient.
+     */
+    public List<Node> getVariables() {
+        return new ArrayList<>(variables);
+    }
+
+    /**
+     * Orients each edge of the given graph using the given statistic and returns the oriented graph, over the nodes
+     * of the given graph. The orientations, with confidences, are available afterward from getOrientations().
+     */
+    public Graph orient(Graph graph, Statistic statistic) {
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        this.orientations = orientations(edges, statistic);
+
+        Graph _graph = new EdgeListGraph(graph.getNodes());
+
+        for (Orientation orientation : orientations) {
+            if (orientation.isDirected()) {
+                _graph.addDirectedEdge(orientation.getFrom(), orientation.getTo());
+            } else {
+                _graph.addUndirectedEdge(orientation.getFrom(), orientation.getTo());
+            }
+        }
+
+        return _graph;
+    }
+
+    /**
+     * @return the orientations from the last call to orient(Graph, Statistic).
+     */
+    public List<Orientation> getOrientations() {
+        return new ArrayList<>(orientations);
+    }
+
+    /**
+     * Orients each of the given edges using the given statistic, returning an orientation for each, in order. Edge
+     * endpoints are matched to the variables of the data by name.
+     */
+    public List<Orientation> orientations(final List<Edge> edges, final Statistic statistic) {
+        if (statistic == null) throw new NullPointerException("Statistic not specified.");
+
+        final int[][] pairs = new int[edges.size()][];
+
+        for (int i = 0; i < edges.size(); i++) {
+            Edge edge = edges.get(i);
+            pairs[i] = new int[]{index(edge.getNode1()), index(edge.getNode2())};
+        }
+
+        prepare(statistic, pairs);
+
+        final Orientation[] results = new Orientation[edges.size()];
+
+        class OrientTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private OrientTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= BATCH_SIZE) {
+                    for (int i = from; i < to; i++) {
+                        Edge edge = edges.get(i);
+                        double r = statistic(statistic, pairs[i][0], pairs[i][1]);
+                        results[i] = orientation(statistic, edge.getNode1(), edge.getNode2(), r);
+                    }
+                } else {
+                    int mid = (to + from) / 2;
+                    invokeAll(new OrientTask(from, mid), new OrientTask(mid, to));
+                }
+            }
+        }
+
+        pool.invoke(new OrientTask(0, edges.size()));
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * The orientation of a single edge.
+     */
+    public static final class Orientation {
+        private final Node from;
+        private final Node to;
+        private final boolean directed;
+        private final double statistic;
+
+        private Orientation(Node from, Node to, boolean directed, double statistic) {
+            this.from = from;
+            this.to = to;
+            this.directed = directed;
+            this.statistic = statistic;
+        }
+
+        /**
+         * @return the tail of the edge, if it is directed.
+         */
+        public Node getFrom() {
+            return from;
+        }
+
+        /**
+         * @return the head of the edge, if it is directed.
+         */
+        public Node getTo() {
+            return to;
+        }
+
+        /**
+         * @return true unless the statistic could not decide a direction.
+         */
+        public boolean isDirected() {
+            return directed;
+        }
+
+        /**
+         * @return the value of the statistic, positive for the edge as originally given, node1 --> node2.
+         */
+        public double getStatistic() {
+            return statistic;
+        }
+
+        /**
+         * @return the absolute value of the statistic, or zero if the statistic is undefined.
+         */
+        public double getConfidence() {
+            return Double.isNaN(statistic) ? 0.0 : Math.abs(statistic);
+        }
+
+        public String toString() {
+            return from + (directed ? " --> " : " --- ") + to + " (" + statistic + ")";
+        }
+    }
+
+    //==============================PRIVATE METHODS============================//
+
+    private int index(Node node) {
+        Integer index = indices.get(node.getName());
+
+        if (index == null) {
+            throw new IllegalArgumentException("Node not in the data: " + node);
+        }
+
+        return index;
+    }
+
+    // Fills in whatever the statistic needs per variable, for the variables of the given pairs.
+    private synchronized void prepare(Statistic statistic, int[][] pairs) {
+        boolean[] used = new boolean[columns.length];
+
+        for (int[] pair : pairs) {
+            used[pair[0]] = true;
+            used[pair[1]] = true;
+        }
+
+        if (statistic == Statistic.SKEW_E || statistic == Statistic.RSKEW_E) {
+            if (skewSigns == null) skewSigns = new double[columns.length];
+        }
+
+        if (statistic == Statistic.RSKEW && gColumns == null) gColumns = new double[columns.length][];
+        if (statistic == Statistic.RSKEW_E && gColumnsE == null) gColumnsE = new double[columns.length][];
+        if (statistic == Statistic.TANH && tanhColumns == null) tanhColumns = new double[columns.length][];
+
+        if (statistic == Statistic.EB && entropies == null) {
+            entropies = new double[columns.length];
+            Arrays.fill(entropies, Double.NaN);
+        }
+
+        for (int i = 0; i < columns.length; i++) {
+            if (!used[i]) continue;
+
+            if ((statistic == Statistic.SKEW_E || statistic == Statistic.RSKEW_E) && skewSigns[i] == 0.0) {
+                skewSigns[i] = Math.signum(StatUtils.skewness(columns[i]));
+            }
+
+            if (statistic == Statistic.RSKEW && gColumns[i] == null) {
+                gColumns[i] = g(columns[i], 1.0);
+            } else if (statistic == Statistic.RSKEW_E && gColumnsE[i] == null) {
+                gColumnsE[i] = g(columns[i], skewSigns[i]);
+            } else if (statistic == Statistic.TANH && tanhColumns[i] == null) {
+                double[] t = new double[columns[i].length];
+                for (int k = 0; k < t.length; k++) t[k] = Math.tanh(columns[i][k]);
+                tanhColumns[i] = t;
+            } else if (statistic == Statistic.EB && Double.isNaN(entropies[i]) && !hasMissing[i]) {
+                entropies[i] = StatUtils.maxEntApprox(columns[i]);
+            }
+        }
+    }
+
+    // g(s * x) for each x in the column, with g(x) = log cosh(max(x, 0)).
+    private double[] g(double[] column, double s) {
+        double[] g = new double[column.length];
+
+        for (int k = 0; k < column.length; k++) {
+            g[k] = Math.log(Math.cosh(Math.max(s * column[k], 0)));
+        }
+
+        return g;
+    }
+
+    private Orientation orientation(Statistic statistic, Node x, Node y, double r) {
+        if (r > 0) {
+            return new Orientation(x, y, true, r);
+        } else if (r < 0 || statistic != Statistic.RSKEW && statistic != Statistic.RSKEW_E) {
+            return new Orientation(y, x, true, r);
+        } else {
+            return new Orientation(x, y, false, r);
+        }
+    }
+
+    // The statistic for i --> j; positive if i --> j is preferred.
+    private double statistic(Statistic statistic, int i, int j) {
+        double[] x = columns[i];
+        double[] y = columns[j];
+        int n = x.length;
+
+        switch (statistic) {
+            case SKEW:
+            case SKEW_E: {
+                double sx = statistic == Statistic.SKEW_E ? skewSigns[i] : 1.0;
+                double sy = statistic == Statistic.SKEW_E ? skewSigns[j] : 1.0;
+                double sum = 0.0;
+
+                for (int k = 0; k < n; k++) {
+                    double x0 = sx * x[k];
+                    double y0 = sy * y[k];
+                    sum += x0 * x0 * y0 - x0 * y0 * y0;
+                }
+
+                return (sum / n) * sx * sy * regressionCoef(x, y);
+            }
+            case RSKEW:
+            case RSKEW_E: {
+                boolean empirical = statistic == Statistic.RSKEW_E;
+                double sx = empirical ? skewSigns[i] : 1.0;
+                double sy = empirical ? skewSigns[j] : 1.0;
+                double[] gx = empirical ? gColumnsE[i] : gColumns[i];
+                double[] gy = empirical ? gColumnsE[j] : gColumns[j];
+                double sum = 0.0;
+
+                for (int k = 0; k < n; k++) {
+                    sum += gx[k] * sy * y[k] - sx * x[k] * gy[k];
+                }
+
+                return (sum / n) * sx * sy * regressionCoef(x, y);
+            }
+            case TANH: {
+                double[] tx = tanhColumns[i];
+                double[] ty = tanhColumns[j];
+                double sum = 0.0;
+
+                for (int k = 0; k < n; k++) {
+                    sum += x[k] * ty[k] - tx[k] * y[k];
+                }
+
+                return (sum / n) * regressionCoef(x, y);
+            }
+            case EB:
+                return entropyBased(i, j);
+            default:
+                throw new IllegalArgumentException("Unrecognized statistic: " + statistic);
+        }
+    }
+
+    // The likelihood ratio approximation from maximum entropy approximations of the marginal entropies.
+    private double entropyBased(int i, int j) {
+        double[] x = columns[i];
+        double[] y = columns[j];
+        double hx = entropies[i];
+        double hy = entropies[j];
+
+        if (hasMissing[i] || hasMissing[j]) {
+            double[][] complete = completeCases(x, y);
+            x = complete[0];
+            y = complete[1];
+            hx = StatUtils.maxEntApprox(x);
+            hy = StatUtils.maxEntApprox(y);
+        }
+
+        double[] d = new double[x.length];
+        double[] e = new double[x.length];
+
+        double cov = StatUtils.covariance(x, y);
+
+        for (int k = 0; k < x.length; k++) {
+            d[k] = y[k] - cov * x[k];  // y regressed on x
+            e[k] = x[k] - cov * y[k];  // x regressed on y
+        }
+
+        return -hx - StatUtils.maxEntApprox(d) + hy + StatUtils.maxEntApprox(e);
+    }
+
+    private double[][] completeCases(double[] x, double[] y) {
+        int count = 0;
+
+        for (int k = 0; k < x.length; k++) {
+            if (!Double.isNaN(x[k]) && !Double.isNaN(y[k])) count++;
+        }
+
+        double[][] complete = new double[2][count];
+        int c = 0;
+
+        for (int k = 0; k < x.length; k++) {
+            if (!Double.isNaN(x[k]) && !Double.isNaN(y[k])) {
+                complete[0][c] = x[k];
+                complete[1][c] = y[k];
+                c++;
+            }
+        }
+
+        return complete;
+    }
+
+    // The coefficient of y in the regression of x on y, with an intercept.
+    private double regressionCoef(double[] x, double[] y) {
+        int n = x.length;
+        double meanX = 0.0;
+        double meanY = 0.0;
+
+        for (int k = 0; k < n; k++) {
+            meanX += x[k];
+            meanY += y[k];
+        }
+
+        meanX /= n;
+        meanY /= n;
+
+        double sxy = 0.0;
+        double syy = 0.0;
+
+        for (int k = 0; k < n; k++) {
+            double dy = y[k] - meanY;
+            sxy += (x[k] - meanX) * dy;
+            syy += dy * dy;
+        }
+
+        if (syy == 0.0) return Double.NaN;
+
+        return sxy / syy;
+    }
+}
+
+
+
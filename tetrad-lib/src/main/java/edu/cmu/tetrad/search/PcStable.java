@@ -55,7 +55,7 @@ public class PcStable implements GraphSearch {
     /**
      * Sepset information accumulated in the search.
      */
-    private SepsetMap sepsets;
+    private ISepsetMap sepsets;
 
     /**
      * The maximum number of nodes conditioned on in the search. The default it 1000.
@@ -153,9 +153,10 @@ public class PcStable implements GraphSearch {
 
     /**
      * @return the sepset map from the most recent search. Non-null after the first call to <code>search()</code>.
+     * The sepsets are kept compactly during the search and copied into a new SepsetMap on each call.
      */
     public SepsetMap getSepsets() {
-        return this.sepsets;
+        return SearchGraphUtils.toSepsetMap(sepsets);
     }
 
     /**
@@ -238,7 +239,7 @@ public class PcStable implements GraphSearch {
         fas.setVerbose(verbose);
 
         graph = fas.search();
-        sepsets = fas.getSepsets();
+        sepsets = SearchGraphUtils.getSepsets(fas);
 
         SearchGraphUtils.pcOrientbk(knowledge, graph, nodes);
         SearchGraphUtils.orientCollidersUsingSepsets(this.sepsets, knowledge, graph, initialGraph, verbose);
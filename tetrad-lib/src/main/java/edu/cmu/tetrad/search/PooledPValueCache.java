@@ -0,0 +1,650 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.IndependenceFact;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.ProbUtils;
+
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Caches the pooled judgments of a list of independence tests over overlapping datasets, so that each fact
+ * x _||_ y | z is tested at most once in each dataset that measures its variables. DCI and ION pool the same facts
+ * over and over again--once in the adjacency search of every dataset, again when checking for conflicts and again
+ * when pooling--and all of these read from the cache.
+ * <p>
+ * Only the statistics the pooling methods of ResolveSepsets need are kept for a fact--sums, extremes and counts
+ * over its datasets--so an entry takes constant space however many datasets there are; the p values of the
+ * individual datasets are dropped once they have been pooled. At most a fixed number of facts are kept (see
+ * setCacheSize), the least recently used being dropped first and retested if asked for again.
+ * <p>
+ * Facts may be computed in batches. When parallelized, each dataset's facts are tested in a task of their own on
+ * the shared ForkJoin pool; independence tests are not thread safe, so no test is ever used by two tasks at once.
+ */
+public final class PooledPValueCache {
+
+    /**
+     * The independence tests, one for each dataset.
+     */
+    private final List<IndependenceTest> tests;
+
+    /**
+     * The names of the variables measured by each test.
+     */
+    private final List<Set<String>> variables = new ArrayList<>();
+
+    /**
+     * For each test, whether a variable (by name) has missing values in that test's data. Filled in lazily; each
+     * map is only touched by the task for its own test.
+     */
+    private final List<Map<String, Boolean>> missing = new ArrayList<>();
+
+    /**
+     * The maximum number of facts to cache.
+     */
+    private int cacheSize = 100000;
+
+    /**
+     * The cached facts, least recently used first.
+     */
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    /**
+     * True if uncomputed facts should be tested in parallel over datasets.
+     */
+    private boolean parallelized = false;
+
+    //==========================CONSTRUCTORS=============================//
+
+    public PooledPValueCache(List<IndependenceTest> tests) {
+        if (tests == null || tests.isEmpty()) {
+            throw new IllegalArgumentException("At least one independence test is required.");
+        }
+
+        this.tests = new ArrayList<>(tests);
+
+        for (IndependenceTest test : tests) {
+            Set<String> names = new HashSet<>();
+
+            for (Node node : test.getVariables()) {
+                names.add(node.getName());
+            }
+
+            this.variables.add(names);
+            this.missing.add(new HashMap<String, Boolean>());
+        }
+    }
+
+    //==========================PUBLIC METHODS===========================//
+
+    /**
+     * @return the cached results for x _||_ y | condSet, testing the fact in every dataset that measures it if it has
+     * not been tested already.
+     */
+    public synchronized Entry get(Node x, Node y, List<Node> condSet) {
+        Entry entry = lookup(x, y, condSet);
+
+        if (!entry.computed) {
+            compute(Collections.singletonList(entry));
+        }
+
+        return entry;
+    }
+
+    /**
+     * Tests all of the given facts that have not been tested already, in every dataset that measures them.
+     */
+    public synchronized void computeAll(Collection<IndependenceFact> facts) {
+        Set<Entry> uncomputed = new LinkedHashSet<>();
+
+        for (IndependenceFact fact : facts) {
+            Entry entry = lookup(fact.getX(), fact.getY(), fact.getZ());
+
+            if (!entry.computed) {
+                uncomputed.add(entry);
+            }
+        }
+
+        compute(new ArrayList<>(uncomputed));
+    }
+
+    /**
+     * @return the independence tests, one for each dataset.
+     */
+    public List<IndependenceTest> getTests() {
+        return Collections.unmodifiableList(tests);
+    }
+
+    /**
+     * @return the tests of the datasets measuring the variables of x _||_ y | condSet, in order.
+     */
+    public List<IndependenceTest> getMeasuringTests(Node x, Node y, List<Node> condSet) {
+        List<IndependenceTest> measuring = new ArrayList<>();
+
+        for (int k : measuring(x, y, condSet)) {
+            measuring.add(tests.get(k));
+        }
+
+        return measuring;
+    }
+
+    /**
+     * @return the significance level of the pooled judgments, that of the first test.
+     */
+    public double getAlpha() {
+        return tests.get(0).getAlpha();
+    }
+
+    /**
+     * @return the number of distinct facts cached.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Sets the maximum number of facts to cache; the least recently used are dropped first. An entry takes on the
+     * order of 200 bytes plus its conditioning set, whatever the number of datasets. The default is 100,000.
+     */
+    public synchronized void setCacheSize(int cacheSize) {
+        if (cacheSize < 0) throw new IllegalArgumentException("Cache size must be >= 0: " + cacheSize);
+        this.cacheSize = cacheSize;
+        entries.clear();
+    }
+
+    public boolean isParallelized() {
+        return parallelized;
+    }
+
+    /**
+     * True if uncomputed facts should be tested in parallel over datasets. By default false.
+     */
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
+
+    /**
+     * Tests x _||_ y | condSet in each of the given tests without caching the results. Used by the pooling methods
+     * that are handed a list of tests directly.
+     */
+    public static Entry evaluate(List<IndependenceTest> tests, Node x, Node y, List<Node> condSet) {
+        PooledPValueCache cache = new PooledPValueCache(tests);
+        Entry entry = cache.newEntry(x, y, condSet);
+        cache.compute(Collections.singletonList(entry));
+        return entry;
+    }
+
+    //==============================CLASSES==============================//
+
+    /**
+     * The pooled results for one fact over the datasets measuring its variables. A dataset's p value is available
+     * if its test succeeded and its data has no missing values for the fact; a failed test has p value NaN and
+     * judges dependence. Counts against alpha use the significance level of the cache when the fact was tested.
+     */
+    public static final class Entry {
+        private final Node x;
+        private final Node y;
+        private final List<Node> condSet;
+        private final int size;
+        private boolean computed = false;
+
+        private int numIndependent;
+        private int numAvailable;
+        private double fisherSum;
+        private double minPValue = -1.0;
+        private double maxPValue = -1.0;
+        private double stoufferSum;
+        private double logitSum;
+        private double availableLogitSum;
+        private double averageSum;
+        private int averageCount;
+        private int numAboveAlpha;
+        private int numAvailableBelowAlpha;
+        private int fdrCount;
+
+        private Entry(Node x, Node y, List<Node> condSet, int size) {
+            this.x = x;
+            this.y = y;
+            this.condSet = condSet;
+            this.size = size;
+        }
+
+        public Node getX() {
+            return x;
+        }
+
+        public Node getY() {
+            return y;
+        }
+
+        public List<Node> getCondSet() {
+            return Collections.unmodifiableList(condSet);
+        }
+
+        /**
+         * @return the number of datasets measuring the variables of the fact.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the number of datasets judging the fact independent.
+         */
+        public int getNumIndependent() {
+            return numIndependent;
+        }
+
+        /**
+         * @return true if the datasets all judge the fact the same way.
+         */
+        public boolean isConsistent() {
+            return numIndependent == 0 || numIndependent == size;
+        }
+
+        /**
+         * @return the number of datasets whose p values are available.
+         */
+        public int getNumAvailable() {
+            return numAvailable;
+        }
+
+        /**
+         * @return the sum of -2 log p over the available p values (Fisher's statistic).
+         */
+        public double getFisherSum() {
+            return fisherSum;
+        }
+
+        /**
+         * @return the least available p value, or -1 if there are none.
+         */
+        public double getMinPValue() {
+            return minPValue;
+        }
+
+        /**
+         * @return the greatest available p value, or -1 if there are none.
+         */
+        public double getMaxPValue() {
+            return maxPValue;
+        }
+
+        /**
+         * @return the sum of the normal quantiles of all of the p values (Stouffer's statistic, unscaled).
+         */
+        public double getStoufferSum() {
+            return stoufferSum;
+        }
+
+        /**
+         * @return the sum of -log(p / (1 - p)) over all of the p values other than 0 and 1.
+         */
+        public double getLogitSum() {
+            return logitSum;
+        }
+
+        /**
+         * @return the sum of -log(p / (1 - p)) over the available p values.
+         */
+        public double getAvailableLogitSum() {
+            return availableLogitSum;
+        }
+
+        /**
+         * @return the average of the available p values that are not NaN.
+         */
+        public double getAveragePValue() {
+            return averageSum / averageCount;
+        }
+
+        /**
+         * @return the number of p values, available or not, greater than alpha.
+         */
+        public int getNumAboveAlpha() {
+            return numAboveAlpha;
+        }
+
+        /**
+         * @return the number of available p values less than alpha.
+         */
+        public int getNumAvailableBelowAlpha() {
+            return numAvailableBelowAlpha;
+        }
+
+        /**
+         * @return the number of available p values rejected by the Benjamini-Hochberg step-up rule at alpha.
+         */
+        public int getFdrCount() {
+            return fdrCount;
+        }
+
+        public String toString() {
+            return SearchLogUtils.independenceFact(x, y, condSet) + " independent in " + numIndependent + " of "
+                    + size + ", p in [" + minPValue + ", " + maxPValue + "]";
+        }
+
+        /**
+         * Pools the results of the fact in each of its datasets, in order.
+         */
+        private void pool(double[] pValues, boolean[] independent, boolean[] available, double alpha) {
+            double[] availablePValues = new double[size];
+
+            for (int i = 0; i < size; i++) {
+                double p = pValues[i];
+
+                if (independent[i]) numIndependent++;
+
+                stoufferSum += ProbUtils.normalQuantile(p);
+                if (p != 0 && p != 1) logitSum += -Math.log(p / (1 - p));
+                if (p > alpha) numAboveAlpha++;
+
+                if (!available[i]) continue;
+
+                availablePValues[numAvailable++] = p;
+                fisherSum += -2.0 * Math.log(p);
+                availableLogitSum += -Math.log(p / (1 - p));
+                if (minPValue == -1.0 || p < minPValue) minPValue = p;
+                if (maxPValue == -1.0 || p > maxPValue) maxPValue = p;
+                if (p < alpha) numAvailableBelowAlpha++;
+
+                if (!Double.isNaN(p)) {
+                    averageSum += p;
+                    averageCount++;
+                }
+            }
+
+            availablePValues = Arrays.copyOf(availablePValues, numAvailable);
+            Arrays.sort(availablePValues);
+
+            while (fdrCount < numAvailable && availablePValues[fdrCount] < alpha * (fdrCount + 1.) / numAvailable) {
+                fdrCount++;
+            }
+
+            computed = true;
+        }
+    }
+
+    /**
+     * Identifies a fact by variable names, with x and y in order and the conditioning set sorted.
+     */
+    private static final class Key {
+        private final String x;
+        private final String y;
+        private final String[] z;
+        private final int hashCode;
+
+        private Key(Node x, Node y, List<Node> condSet) {
+            String _x = x.getName();
+            String _y = y.getName();
+
+            if (_x.compareTo(_y) <= 0) {
+                this.x = _x;
+                this.y = _y;
+            } else {
+                this.x = _y;
+                this.y = _x;
+            }
+
+            this.z = new String[condSet.size()];
+
+            for (int i = 0; i < condSet.size(); i++) {
+                z[i] = condSet.get(i).getName();
+            }
+
+            Arrays.sort(z);
+            this.hashCode = 31 * (31 * this.x.hashCode() + this.y.hashCode()) + Arrays.hashCode(z);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return x.equals(key.x) && y.equals(key.y) && Arrays.equals(z, key.z);
+        }
+    }
+
+    /**
+     * The results of one batch of facts in each of their datasets, held only until they are pooled.
+     */
+    private static final class Batch {
+        private final List<Entry> entries;
+        private final double[][] pValues;
+        private final boolean[][] independent;
+        private final boolean[][] available;
+
+        private Batch(List<Entry> entries) {
+            this.entries = entries;
+            this.pValues = new double[entries.size()][];
+            this.independent = new boolean[entries.size()][];
+            this.available = new boolean[entries.size()][];
+
+            for (int e = 0; e < entries.size(); e++) {
+                int size = entries.get(e).size;
+                pValues[e] = new double[size];
+                independent[e] = new boolean[size];
+                available[e] = new boolean[size];
+            }
+        }
+    }
+
+    /**
+     * Tests the facts assigned to the datasets from..to.
+     */
+    private class DatasetTask extends RecursiveAction {
+        private final Batch batch;
+        private final List<List<Integer>> byTest;
+        private final List<List<Integer>> slots;
+        private final int from;
+        private final int to;
+
+        DatasetTask(Batch batch, List<List<Integer>> byTest, List<List<Integer>> slots, int from, int to) {
+            this.batch = batch;
+            this.byTest = byTest;
+            this.slots = slots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                List<Integer> entries = byTest.get(from);
+                List<Integer> _slots = slots.get(from);
+
+                for (int i = 0; i < entries.size(); i++) {
+                    test(from, batch, entries.get(i), _slots.get(i));
+                }
+            } else {
+                int mid = (from + to) / 2;
+                invokeAll(new DatasetTask(batch, byTest, slots, from, mid),
+                        new DatasetTask(batch, byTest, slots, mid, to));
+            }
+        }
+    }
+
+    //==============================PRIVATE METHODS======================//
+
+    private Entry lookup(Node x, Node y, List<Node> condSet) {
+        Key key = new Key(x, y, condSet);
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            entry = newEntry(x, y, condSet);
+            entries.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    private Entry newEntry(Node x, Node y, List<Node> condSet) {
+        return new Entry(x, y, new ArrayList<>(condSet), measuring(x, y, condSet).length);
+    }
+
+    /**
+     * @return the indices of the tests of the datasets measuring the variables of the fact.
+     */
+    private int[] measuring(Node x, Node y, List<Node> condSet) {
+        int[] measuring = new int[tests.size()];
+        int n = 0;
+
+        for (int k = 0; k < tests.size(); k++) {
+            if (measures(k, x, y, condSet)) {
+                measuring[n++] = k;
+            }
+        }
+
+        return Arrays.copyOf(measuring, n);
+    }
+
+    private boolean measures(int k, Node x, Node y, List<Node> condSet) {
+        Set<String> names = variables.get(k);
+
+        if (!names.contains(x.getName()) || !names.contains(y.getName())) {
+            return false;
+        }
+
+        for (Node z : condSet) {
+            if (!names.contains(z.getName())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Tests the given entries, grouping them by dataset so that each dataset's facts can be run as one batch, and
+     * pools the results.
+     */
+    private void compute(List<Entry> uncomputed) {
+        if (uncomputed.isEmpty()) {
+            return;
+        }
+
+        Batch batch = new Batch(uncomputed);
+        List<List<Integer>> byTest = new ArrayList<>();
+        List<List<Integer>> slots = new ArrayList<>();
+
+        for (int k = 0; k < tests.size(); k++) {
+            byTest.add(new ArrayList<Integer>());
+            slots.add(new ArrayList<Integer>());
+        }
+
+        for (int e = 0; e < uncomputed.size(); e++) {
+            Entry entry = uncomputed.get(e);
+            int[] measuring = measuring(entry.x, entry.y, entry.condSet);
+
+            for (int i = 0; i < measuring.length; i++) {
+                byTest.get(measuring[i]).add(e);
+                slots.get(measuring[i]).add(i);
+            }
+        }
+
+        int busy = 0;
+
+        for (List<Integer> entries : byTest) {
+            if (!entries.isEmpty()) busy++;
+        }
+
+        if (parallelized && busy > 1) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new DatasetTask(batch, byTest, slots, 0, tests.size()));
+        } else {
+            for (int k = 0; k < tests.size(); k++) {
+                for (int i = 0; i < byTest.get(k).size(); i++) {
+                    test(k, batch, byTest.get(k).get(i), slots.get(k).get(i));
+                }
+            }
+        }
+
+        double alpha = getAlpha();
+
+        for (int e = 0; e < uncomputed.size(); e++) {
+            uncomputed.get(e).pool(batch.pValues[e], batch.independent[e], batch.available[e], alpha);
+        }
+    }
+
+    /**
+     * Tests the fact of the e'th entry of the batch with test k, storing the results in the given slot.
+     */
+    private void test(int k, Batch batch, int e, int slot) {
+        IndependenceTest test = tests.get(k);
+        Entry entry = batch.entries.get(e);
+        boolean missing = isMissing(k, entry.x) || isMissing(k, entry.y);
+
+        List<Node> localCondSet = new ArrayList<>();
+
+        for (Node node : entry.condSet) {
+            missing = missing || isMissing(k, node);
+            localCondSet.add(test.getVariable(node.getName()));
+        }
+
+        try {
+            batch.independent[e][slot] = test.isIndependent(test.getVariable(entry.x.getName()),
+                    test.getVariable(entry.y.getName()), localCondSet);
+            batch.pValues[e][slot] = test.getPValue();
+            batch.available[e][slot] = !missing;
+        } catch (Exception ex) {
+            batch.pValues[e][slot] = Double.NaN;
+            batch.available[e][slot] = false;
+        }
+    }
+
+    private boolean isMissing(int k, Node node) {
+        Map<String, Boolean> missing = this.missing.get(k);
+        Boolean _missing = missing.get(node.getName());
+
+        if (_missing == null) {
+            _missing = false;
+            DataModel data = tests.get(k).getData();
+
+            if (data instanceof DataSet) {
+                DataSet dataSet = (DataSet) data;
+                int col = dataSet.getColumn(dataSet.getVariable(node.getName()));
+
+                for (int i = 0; i < dataSet.getNumRows(); i++) {
+                    if (Double.isNaN(dataSet.getDouble(i, col))) {
+                        _missing = true;
+                        break;
+                    }
+                }
+            }
+
+            missing.put(node.getName(), _missing);
+        }
+
+        return _missing;
+    }
+}
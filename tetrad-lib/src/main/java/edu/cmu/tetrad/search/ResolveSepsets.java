@@ -21,7 +21,7 @@
 
 package edu.cmu.tetrad.search;
 
-import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.IndependenceFact;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.graph.NodePair;
 import edu.cmu.tetrad.util.ProbUtils;
@@ -50,14 +50,64 @@ public final class ResolveSepsets {
      */
     public static SepsetMapDci ResolveSepsets(List<SepsetMapDci> sepsets, List<IndependenceTest> independenceTests,
                                               Method method, SepsetMapDci resolvedIndependent, SepsetMapDci resolvedDependent) {
+        return ResolveSepsets(sepsets, independenceTests, method, resolvedIndependent, resolvedDependent, false);
+    }
+
+    /**
+     * As above, testing the facts to check concurrently over datasets if parallelized is true.
+     */
+    public static SepsetMapDci ResolveSepsets(List<SepsetMapDci> sepsets, List<IndependenceTest> independenceTests,
+                                              Method method, SepsetMapDci resolvedIndependent, SepsetMapDci resolvedDependent,
+                                              boolean parallelized) {
+        PooledPValueCache cache = new PooledPValueCache(independenceTests);
+        cache.setParallelized(parallelized);
+        return ResolveSepsets(sepsets, cache, method, resolvedIndependent, resolvedDependent);
+    }
+
+    /**
+     * Resolves all inconsistencies between sepsets as above, reading the judgments and p values of the tests from the
+     * given cache. Every (pair, sepset) fact that may need checking is tested up front in one batch, each dataset's
+     * facts together, so that the tests can run concurrently over datasets if the cache is parallelized.
+     */
+    public static SepsetMapDci ResolveSepsets(List<SepsetMapDci> sepsets, PooledPValueCache cache,
+                                              Method method, SepsetMapDci resolvedIndependent, SepsetMapDci resolvedDependent) {
+        List<IndependenceTest> independenceTests = cache.getTests();
         SepsetMapDci resolvedSepset = new SepsetMapDci();
         // get all variables
         Set<Node> allVars = new HashSet<Node>();
         for (IndependenceTest independenceTest : independenceTests) {
             allVars.addAll(independenceTest.getVariables());
         }
+        List<NodePair> pairs = allNodePairs(new ArrayList<Node>(allVars));
+        // gather the sepsets for each pair from every dataset with the pair
+        List<List<List<Node>>> allConditioningSets = new ArrayList<List<List<Node>>>();
+        List<IndependenceFact> facts = new ArrayList<IndependenceFact>();
+        for (NodePair pair : pairs) {
+            List<List<Node>> conditioningSets = new ArrayList<List<Node>>();
+            int testsWithPair = 0;
+            for (int k = 0; k < independenceTests.size(); k++) {
+                IndependenceTest independenceTest = independenceTests.get(k);
+                if (independenceTest.getVariables().containsAll(Arrays.asList(pair.getFirst(), pair.getSecond()))) {
+                    List<List<Node>> pairSepsets = sepsets.get(k).getSet(pair.getFirst(), pair.getSecond());
+                    if (pairSepsets != null) {
+                        conditioningSets.addAll(pairSepsets);
+                    }
+                    testsWithPair++;
+                }
+            }
+            allConditioningSets.add(conditioningSets);
+            // only check if pair is included in more than one dataset
+            if (testsWithPair < 2) {
+                continue;
+            }
+            for (List<Node> conditioningSet : conditioningSets) {
+                facts.add(new IndependenceFact(pair.getFirst(), pair.getSecond(), conditioningSet));
+            }
+        }
+        cache.computeAll(facts);
         // checks each pair of nodes for inconsistencies across independenceTests
-        for (NodePair pair : allNodePairs(new ArrayList<Node>(allVars))) {
+        for (int p = 0; p < pairs.size(); p++) {
+            NodePair pair = pairs.get(p);
             // gets independenceTests and sepsets for every dataset with the pair
             List<List<List<Node>>> pairSepsets = new ArrayList<List<List<Node>>>();
             List<IndependenceTest> testsWithPair = new ArrayList<IndependenceTest>();
@@ -82,133 +132,24 @@ public final class ResolveSepsets {
                 continue;
             }
             // check each conditioning set from a dataset
-            List<List<Node>> allConditioningSets = new ArrayList<List<Node>>();
-            for (List<List<Node>> conditioningSet : pairSepsets) {
-                if (conditioningSet == null) {
-                    continue;
-                }
-                allConditioningSets.addAll(conditioningSet);
-            }
-            for (List<Node> conditioningSet : allConditioningSets) {
-                List<IndependenceTest> testsWithSet = new ArrayList<IndependenceTest>();
-                for (IndependenceTest independenceTest : testsWithPair) {
-                    if (independenceTest.getVariables().containsAll(conditioningSet) || conditioningSet.isEmpty()) {
-                        testsWithSet.add(independenceTest);
-                    }
-                }
+            for (List<Node> conditioningSet : allConditioningSets.get(p)) {
+                PooledPValueCache.Entry entry = cache.get(pair.getFirst(), pair.getSecond(), conditioningSet);
                 // only check if more than one dataset have test
-                if (testsWithSet.size() < 2) {
+                if (entry.size() < 2) {
                     // if conditioning set only in one dataset then add to resolvedSepset
                     if (testsWithPair.size() == 1) {
                         resolvedSepset.set(pair.getFirst(), pair.getSecond(), conditioningSet);
                     }
                     continue;
                 }
-                boolean separated = false;
-                boolean inconsistent = false;
-                for (int k = 0; k < testsWithSet.size(); k++) {
-                    IndependenceTest testWithSet = testsWithSet.get(k);
-                    if (k == 0) {
-                        separated = testWithSet.isIndependent(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        continue;
-                    }
-                    // checks to see if inconsistent
-                    if (separated != testWithSet.isIndependent(pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                        inconsistent = true;
-                        break;
-                    }
-                }
                 // if inconsistent then use pooling method
-                if (inconsistent) {
-                    // if using Fisher pooling
-                    if (method == Method.fisher) {
-                        if (isIndependentPooledFisher(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.fisher2) {
-                        if (isIndependentPooledFisher2(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.tippett) {
-                        if (isIndependentPooledTippett(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.worsleyfriston) {
-                        if (isIndependentPooledWorsleyFriston(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.stouffer) {
-                        if (isIndependentPooledStouffer(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.mudholkergeorge) {
-                        if (isIndependentPooledMudholkerGeorge(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.mudholkergeorge2) {
-                        if (isIndependentPooledMudholkerGeorge2(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.averagetest) {
-                        if (isIndependentPooledAverageTest(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.average) {
-                        if (isIndependentPooledAverage(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.random) {
-                        if (isIndependentPooledRandom(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.fdr) {
-                        if (isIndependentMajorityFdr(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
-                    } else if (method == Method.majority) {
-                        if (isIndependentMajorityIndep(testsWithSet, pair.getFirst(), pair.getSecond(), conditioningSet)) {
-                            resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
-                            resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        } else {
-                            resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
-                        }
+                if (!entry.isConsistent()) {
+                    if (isIndependentPooled(method, cache, entry)) {
+                        resolvedSepset.set(pair.getFirst(), pair.getFirst(), conditioningSet);
+                        resolvedIndependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
                     } else {
-                        throw new RuntimeException("Invalid Test");
+                        resolvedDependent.set(pair.getFirst(), pair.getSecond(), conditioningSet);
                     }
-
                 } else {
                     resolvedSepset.set(pair.getFirst(), pair.getSecond(), conditioningSet);
                 }
@@ -221,30 +162,59 @@ public final class ResolveSepsets {
      * Tests for independence using one of the pooled methods
      */
     public static boolean isIndependentPooled(Method method, List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
+        if (method == Method.averagetest) {
+            return isIndependentPooledAverageTest(independenceTests, x, y, condSet);
+        } else if (method == Method.random) {
+            return isIndependentPooledRandom(independenceTests, x, y, condSet);
+        }
+        PooledPValueCache.Entry entry = PooledPValueCache.evaluate(independenceTests, x, y, condSet);
+        return isIndependentPooled(method, independenceTests.get(0).getAlpha(), entry);
+    }
+
+    /**
+     * Tests for independence using one of the pooled methods, pooling the cached p values of every dataset that
+     * measures x, y and condSet.
+     */
+    public static boolean isIndependentPooled(Method method, PooledPValueCache cache, Node x, Node y, List<Node> condSet) {
+        return isIndependentPooled(method, cache, cache.get(x, y, condSet));
+    }
+
+    private static boolean isIndependentPooled(Method method, PooledPValueCache cache, PooledPValueCache.Entry entry) {
+        if (method == Method.averagetest) {
+            List<IndependenceTest> tests = cache.getMeasuringTests(entry.getX(), entry.getY(), entry.getCondSet());
+            return isIndependentPooledAverageTest(tests, entry.getX(), entry.getY(), entry.getCondSet());
+        }
+        return isIndependentPooled(method, cache.getAlpha(), entry);
+    }
+
+    /**
+     * Pools the p values of an entry using one of the methods that need only p values, from the statistics the
+     * entry keeps for them.
+     */
+    private static boolean isIndependentPooled(Method method, double alpha, PooledPValueCache.Entry entry) {
         if (method == Method.fisher) {
-            return isIndependentPooledFisher(independenceTests, x, y, condSet);
+            return pooledFisher(entry, alpha);
         } else if (method == Method.fisher2) {
-            return isIndependentPooledFisher2(independenceTests, x, y, condSet);
+            return pooledFisher2(entry, alpha);
         } else if (method == Method.tippett) {
-            return isIndependentPooledTippett(independenceTests, x, y, condSet);
+            return pooledTippett(entry, alpha);
         } else if (method == Method.worsleyfriston) {
-            return isIndependentPooledWorsleyFriston(independenceTests, x, y, condSet);
+            return pooledWorsleyFriston(entry, alpha);
         } else if (method == Method.stouffer) {
-            return isIndependentPooledStouffer(independenceTests, x, y, condSet);
+            return pooledStouffer(entry, alpha);
         } else if (method == Method.mudholkergeorge) {
-            return isIndependentPooledMudholkerGeorge(independenceTests, x, y, condSet);
+            return pooledMudholkerGeorge(entry, alpha);
         } else if (method == Method.mudholkergeorge2) {
-            return isIndependentPooledMudholkerGeorge2(independenceTests, x, y, condSet);
-        } else if (method == Method.averagetest) {
-            return isIndependentPooledAverageTest(independenceTests, x, y, condSet);
+            return pooledMudholkerGeorge2(entry, alpha);
         } else if (method == Method.average) {
-            return isIndependentPooledAverage(independenceTests, x, y, condSet);
+            return pooledAverage(entry, alpha);
         } else if (method == Method.random) {
-            return isIndependentPooledRandom(independenceTests, x, y, condSet);
+            // a randomly chosen dataset's p value is above alpha with probability (# above alpha) / (# datasets)
+            return RandomUtil.getInstance().nextInt(entry.size()) < entry.getNumAboveAlpha();
         } else if (method == Method.fdr) {
-            return isIndependentMajorityFdr(independenceTests, x, y, condSet);
+            return majorityFdr(entry);
         } else if (method == Method.majority) {
-            return isIndependentMajorityIndep(independenceTests, x, y, condSet);
+            return majorityIndep(entry);
         } else {
             throw new RuntimeException("Invalid Test");
         }
@@ -256,18 +226,12 @@ public final class ResolveSepsets {
      * See R. A. Fisher. Statistical Methods for Research Workers. Oliver and Boyd, 11th edition, 1950.
      */
     public static boolean isIndependentPooledFisher(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        double alpha = independenceTests.get(0).getAlpha();
-        double tf = 0.0;
-        for (IndependenceTest independenceTest : independenceTests) {
-            if (missingVariable(x, y, condSet, independenceTest)) continue;
-            List<Node> localCondSet = new ArrayList<Node>();
-            for (Node node : condSet) {
-                localCondSet.add(independenceTest.getVariable(node.getName()));
-            }
-            independenceTest.isIndependent(independenceTest.getVariable(x.getName()), independenceTest.getVariable(y.getName()), localCondSet);
-            tf += -2.0 * Math.log(independenceTest.getPValue());
-        }
-        double p = 1.0 - ProbUtils.chisqCdf(tf, 2 * independenceTests.size());
+        return pooledFisher(PooledPValueCache.evaluate(independenceTests, x, y, condSet), independenceTests.get(0).getAlpha());
+    }
+
+    private static boolean pooledFisher(PooledPValueCache.Entry entry, double alpha) {
+        double tf = entry.getFisherSum();
+        double p = 1.0 - ProbUtils.chisqCdf(tf, 2 * entry.size());
         return (p > alpha);
     }
 
@@ -275,18 +239,12 @@ public final class ResolveSepsets {
      * Eliminates from considerations independence tests that cannot be evaluated (due to missing variables mainly).
      */
     public static boolean isIndependentPooledFisher2(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        double alpha = independenceTests.get(0).getAlpha();
-        List<Double> pValues = getAvailablePValues(independenceTests, x, y, condSet);
-
-        double tf = 0.0;
-        int numPValues = 0;
+        return pooledFisher2(PooledPValueCache.evaluate(independenceTests, x, y, condSet), independenceTests.get(0).getAlpha());
+    }
 
-        for (double p : pValues) {
-//            if (p > 0) {
-            tf += -2.0 * Math.log(p);
-            numPValues++;
-//            }
-        }
+    private static boolean pooledFisher2(PooledPValueCache.Entry entry, double alpha) {
+        double tf = entry.getFisherSum();
+        int numPValues = entry.getNumAvailable();
 
         double p = 1.0 - ProbUtils.chisqCdf(tf, 2 * numPValues);
 
@@ -299,25 +257,12 @@ public final class ResolveSepsets {
      * See L. H. C. Tippett. The Method of Statistics. Williams and Norgate, 1st edition, 1950.
      */
     public static boolean isIndependentPooledTippett(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        double alpha = independenceTests.get(0).getAlpha();
-        double p = -1.0;
-        for (IndependenceTest independenceTest : independenceTests) {
-            if (missingVariable(x, y, condSet, independenceTest)) continue;
-            List<Node> localCondSet = new ArrayList<Node>();
-            for (Node node : condSet) {
-                localCondSet.add(independenceTest.getVariable(node.getName()));
-            }
-            independenceTest.isIndependent(independenceTest.getVariable(x.getName()), independenceTest.getVariable(y.getName()), localCondSet);
-            if (p == -1.0) {
-                p = independenceTest.getPValue();
-                continue;
-            }
-            double newp = independenceTest.getPValue();
-            if (newp < p) {
-                p = newp;
-            }
-        }
-        return (p > (1 - Math.pow(1 - alpha, (1 / (double) independenceTests.size()))));
+        return pooledTippett(PooledPValueCache.evaluate(independenceTests, x, y, condSet), independenceTests.get(0).getAlpha());
+    }
+
+    private static boolean pooledTippett(PooledPValueCache.Entry entry, double alpha) {
+        double p = entry.getMinPValue();
+        return (p > (1 - Math.pow(1 - alpha, (1 / (double) entry.size()))));
     }
 
     /**
@@ -344,25 +289,12 @@ public final class ResolveSepsets {
      * 2000.
      */
     public static boolean isIndependentPooledWorsleyFriston(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        double alpha = independenceTests.get(0).getAlpha();
-        double p = -1.0;
-        for (IndependenceTest independenceTest : independenceTests) {
-            List<Node> localCondSet = new ArrayList<Node>();
-            if (missingVariable(x, y, condSet, independenceTest)) continue;
-            for (Node node : condSet) {
-                localCondSet.add(independenceTest.getVariable(node.getName()));
-            }
-            independenceTest.isIndependent(independenceTest.getVariable(x.getName()), independenceTest.getVariable(y.getName()), localCondSet);
-            if (p == -1.0) {
-                p = independenceTest.getPValue();
-                continue;
-            }
-            double newp = independenceTest.getPValue();
-            if (newp > p) {
-                p = newp;
-            }
-        }
-        return (p > Math.pow(alpha, (1 / (double) independenceTests.size())));
+        return pooledWorsleyFriston(PooledPValueCache.evaluate(independenceTests, x, y, condSet), independenceTests.get(0).getAlpha());
+    }
+
+    private static boolean pooledWorsleyFriston(PooledPValueCache.Entry entry, double alpha) {
+        double p = entry.getMaxPValue();
+        return (p > Math.pow(alpha, (1 / (double) entry.size())));
     }
 
     /**
@@ -372,16 +304,11 @@ public final class ResolveSepsets {
      * Adjustment During Army Life. Princeton University Press, 1949.
      */
     public static boolean isIndependentPooledStouffer(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        double alpha = independenceTests.get(0).getAlpha();
-        double ts = 0.0;
-        for (IndependenceTest independenceTest : independenceTests) {
-            List<Node> localCondSet = new ArrayList<Node>();
-            for (Node node : condSet) {
-                localCondSet.add(independenceTest.getVariable(node.getName()));
-            }
-            independenceTest.isIndependent(independenceTest.getVariable(x.getName()), independenceTest.getVariable(y.getName()), localCondSet);
-            ts += ProbUtils.normalQuantile(independenceTest.getPValue()) / Math.sqrt(independenceTests.size());
-        }
+        return pooledStouffer(PooledPValueCache.evaluate(independenceTests, x, y, condSet), independenceTests.get(0).getAlpha());
+    }
+
+    private static boolean pooledStouffer(PooledPValueCache.Entry entry, double alpha) {
+        double ts = entry.getStoufferSum() / Math.sqrt(entry.size());
         double p = 2.0 * (1.0 - RandomUtil.getInstance().normalCdf(0, 1, Math.abs(ts)));
         return (p > alpha);
     }
@@ -393,21 +320,14 @@ public final class ResolveSepsets {
      * Symposium on Optimizing Method in Statistics, pages 345-366. Academic Press, 1979.
      */
     public static boolean isIndependentPooledMudholkerGeorge(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        double alpha = independenceTests.get(0).getAlpha();
-        double c = Math.sqrt(3 * (5 * independenceTests.size() + 4) / (double) (independenceTests.size() * Math.pow(Math.PI, 2) * (5 * independenceTests.size() + 2)));
-        double tm = 0.0;
-        for (IndependenceTest independenceTest : independenceTests) {
-            List<Node> localCondSet = new ArrayList<Node>();
-            for (Node node : condSet) {
-                localCondSet.add(independenceTest.getVariable(node.getName()));
-            }
-            independenceTest.isIndependent(independenceTest.getVariable(x.getName()), independenceTest.getVariable(y.getName()), localCondSet);
-            double pk = independenceTest.getPValue();
-            if (pk != 0 && pk != 1) {
-                tm += -c * Math.log(pk / (1 - pk));
-            }
-        }
-        double p = 2.0 * (1.0 - ProbUtils.tCdf(Math.abs(tm), 5 * independenceTests.size() + 4));
+        return pooledMudholkerGeorge(PooledPValueCache.evaluate(independenceTests, x, y, condSet), independenceTests.get(0).getAlpha());
+    }
+
+    private static boolean pooledMudholkerGeorge(PooledPValueCache.Entry entry, double alpha) {
+        int n = entry.size();
+        double c = Math.sqrt(3 * (5 * n + 4) / (double) (n * Math.pow(Math.PI, 2) * (5 * n + 2)));
+        double tm = c * entry.getLogitSum();
+        double p = 2.0 * (1.0 - ProbUtils.tCdf(Math.abs(tm), 5 * n + 4));
         return (p > alpha);
     }
 
@@ -415,14 +335,14 @@ public final class ResolveSepsets {
      * The same as isIndepenentPooledMudholkerGeoerge, except that only available independence tests are used.
      */
     public static boolean isIndependentPooledMudholkerGeorge2(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        double alpha = independenceTests.get(0).getAlpha();
-        List<Double> pValues = getAvailablePValues(independenceTests, x, y, condSet);
-        double c = Math.sqrt(3 * (5 * pValues.size() + 4) / (double) (pValues.size() * Math.pow(Math.PI, 2) * (5 * pValues.size() + 2)));
-        double tm = 0.0;
-        for (double pk : pValues) {
-            tm += -c * Math.log(pk / (1 - pk));
-        }
-        double p = 2.0 * (1.0 - ProbUtils.tCdf(Math.abs(tm), 5 * pValues.size() + 4));
+        return pooledMudholkerGeorge2(PooledPValueCache.evaluate(independenceTests, x, y, condSet), independenceTests.get(0).getAlpha());
+    }
+
+    private static boolean pooledMudholkerGeorge2(PooledPValueCache.Entry entry, double alpha) {
+        int n = entry.getNumAvailable();
+        double c = Math.sqrt(3 * (5 * n + 4) / (double) (n * Math.pow(Math.PI, 2) * (5 * n + 2)));
+        double tm = c * entry.getAvailableLogitSum();
+        double p = 2.0 * (1.0 - ProbUtils.tCdf(Math.abs(tm), 5 * n + 4));
         return (p > alpha);
     }
 
@@ -430,69 +350,11 @@ public final class ResolveSepsets {
      * Checks independence from pooled samples by taking the average p value
      */
     public static boolean isIndependentPooledAverage(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        double alpha = independenceTests.get(0).getAlpha();
-        double sum = 0.0;
-        int numTests = 0;
-
-        for (IndependenceTest independenceTest : independenceTests) {
-            if (missingVariable(x, y, condSet, independenceTest)) continue;
-
-            List<Node> localCondSet = new ArrayList<Node>();
-            for (Node node : condSet) {
-                localCondSet.add(independenceTest.getVariable(node.getName()));
-            }
-
-            independenceTest.isIndependent(independenceTest.getVariable(x.getName()), independenceTest.getVariable(y.getName()), localCondSet);
-            double p = independenceTest.getPValue();
-
-            if (Double.isNaN(p)) continue;
-
-            sum += p;
-            numTests++;
-        }
-
-//        if (p > alpha) {
-//            System.out.println("Independent: " + SearchLogUtils.independenceFact(x, y, condSet) + " " + p);
-//        }
-//        else {
-//            System.out.println("Dependent: " + SearchLogUtils.independenceFact(x, y, condSet) + " " + p);
-//        }
-
-
-        return (sum / numTests > alpha);
+        return pooledAverage(PooledPValueCache.evaluate(independenceTests, x, y, condSet), independenceTests.get(0).getAlpha());
     }
 
-    private static boolean missingVariable(Node x, Node y, List<Node> condSet, IndependenceTest independenceTest) {
-        DataSet dataSet = (DataSet) independenceTest.getData();
-
-        if (isMissing(x, dataSet)) {
-            return true;
-        }
-
-        if (isMissing(y, dataSet)) {
-            return true;
-        }
-
-        for (Node z : condSet) {
-            if (isMissing(z, dataSet)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private static boolean isMissing(Node node, DataSet dataSet) {
-        Node _node = dataSet.getVariable(node.getName());
-
-        int col = dataSet.getColumn(_node);
-
-        for (int i = 0; i < dataSet.getNumRows(); i++) {
-            if (Double.isNaN(dataSet.getDouble(i, col))) {
-                return true;
-            }
-        }
-
-        return false;
+    private static boolean pooledAverage(PooledPValueCache.Entry entry, double alpha) {
+        return (entry.getAveragePValue() > alpha);
     }
 
     /**
@@ -555,18 +417,17 @@ public final class ResolveSepsets {
      * threshold.
      */
     private static boolean isIndependentMajorityFdr(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        List<Double> allPValues = getAvailablePValues(independenceTests, x, y, condSet);
-
-        Collections.sort(allPValues);
-        int c = 0;
-        while (c < allPValues.size() &&
-                allPValues.get(c) < independenceTests.get(0).getAlpha() * (c + 1.) / allPValues.size()) {
-            c++;
-        }
+        return majorityFdr(PooledPValueCache.evaluate(independenceTests, x, y, condSet));
+    }
 
+    private static boolean majorityFdr(PooledPValueCache.Entry entry) {
+        Node x = entry.getX();
+        Node y = entry.getY();
+        List<Node> condSet = entry.getCondSet();
+        int c = entry.getFdrCount();
 
         // At least half of the judgments are for independence.
-        boolean independent = c < allPValues.size() / 2;
+        boolean independent = c < entry.getNumAvailable() / 2;
 //        boolean independent = c < allPValues.size() - 2;
 
         if (independent) {
@@ -580,45 +441,24 @@ public final class ResolveSepsets {
         return independent;
     }
 
-    private static List<Double> getAvailablePValues(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        List<Double> allPValues = new ArrayList<Double>();
-
-        for (IndependenceTest test : independenceTests) {
-            if (missingVariable(x, y, condSet, test)) continue;
-            List<Node> localCondSet = new ArrayList<Node>();
-            for (Node node : condSet) {
-                localCondSet.add(test.getVariable(node.getName()));
-            }
-
-            try {
-                test.isIndependent(test.getVariable(x.getName()), test.getVariable(y.getName()), localCondSet);
-                allPValues.add(test.getPValue());
-            } catch (Exception e) {
-                // Skip that test.
-            }
-        }
-
-        return allPValues;
-    }
-
     /**
      * Judges x to be independent of y conditional on condSet if the false discovery rate of the p values for the
      * separate judgements for their collective alpha level identifies no more than # p values / 2 values below
      * threshold.
      */
     private static boolean isIndependentMajorityIndep(List<IndependenceTest> independenceTests, Node x, Node y, List<Node> condSet) {
-        List<Double> allPValues = getAvailablePValues(independenceTests, x, y, condSet);
-
-        Collections.sort(allPValues);
-        int c = 0;
-        while (c < allPValues.size() && allPValues.get(c) < independenceTests.get(0).getAlpha()) {
-            c++;
-        }
+        return majorityIndep(PooledPValueCache.evaluate(independenceTests, x, y, condSet));
+    }
 
+    private static boolean majorityIndep(PooledPValueCache.Entry entry) {
+        Node x = entry.getX();
+        Node y = entry.getY();
+        List<Node> condSet = entry.getCondSet();
+        int c = entry.getNumAvailableBelowAlpha();
 
         // At least half of the judgments are for independence.
 //        boolean independent = c < 40;
-        boolean independent = c < allPValues.size() / 2;
+        boolean independent = c < entry.getNumAvailable() / 2;
 
         if (independent) {
             TetradLogger.getInstance().log("independence", "***Majority = " + SearchLogUtils.independenceFact(x, y, condSet) + " independent");
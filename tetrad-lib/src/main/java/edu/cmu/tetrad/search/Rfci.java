@@ -55,7 +55,7 @@ public final class Rfci implements GraphSearch {
     /**
      * The SepsetMap being constructed.
      */
-    private SepsetMap sepsets;
+    private ISepsetMap sepsets;
 
     /**
      * The background knowledge.
@@ -197,7 +197,7 @@ public final class Rfci implements GraphSearch {
 //        fas.setFci(true);
         graph = fas.search();
         graph.reorientAllWith(Endpoint.CIRCLE);
-        this.sepsets = fas.getSepsets();
+        this.sepsets = SearchGraphUtils.getSepsets(fas);
 
         long stop1 = System.currentTimeMillis();
         long start2 = System.currentTimeMillis();
@@ -219,8 +219,12 @@ public final class Rfci implements GraphSearch {
         return graph;
     }
 
+    /**
+     * @return the sepsets from the most recent search, copied into a new SepsetMap if the adjacency search kept them
+     * compactly.
+     */
     public SepsetMap getSepsets() {
-        return this.sepsets;
+        return SearchGraphUtils.toSepsetMap(sepsets);
     }
 
     public IKnowledge getKnowledge() {
@@ -475,7 +479,7 @@ public final class Rfci implements GraphSearch {
         }
 
         if (indep) {
-            getSepsets().set(x, y, empty);
+            sepsets.set(x, y, empty);
             return;
         }
 
@@ -494,7 +498,7 @@ public final class Rfci implements GraphSearch {
                 }
 
                 if (indep) {
-                    getSepsets().set(x, y, condSet);
+                    sepsets.set(x, y, condSet);
                     return;
                 }
             }
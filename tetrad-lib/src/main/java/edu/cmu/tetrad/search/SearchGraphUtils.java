@@ -226,7 +226,7 @@ public final class SearchGraphUtils {
      * Step C of PC; orients colliders using specified sepset. That is, orients x *-* y *-* z as x *-> y <-* z just in
      * case y is in Sepset({x, z}).
      */
-    public static List<Triple> orientCollidersUsingSepsets(SepsetMap set, IKnowledge knowledge, Graph graph, boolean verbose) {
+    public static List<Triple> orientCollidersUsingSepsets(ISepsetMap set, IKnowledge knowledge, Graph graph, boolean verbose) {
         TetradLogger.getInstance().log("details", "Starting Collider Orientation:");
         List<Triple> colliders = new ArrayList<Triple>();
 
@@ -330,7 +330,7 @@ public final class SearchGraphUtils {
 
     //use this for oritentation with an initial graph if using null trick for unconditional independence
     //AJ
-    public static List<Triple> orientCollidersUsingSepsets(SepsetMap set, IKnowledge knowledge, Graph graph, Graph initialGraph, boolean verbose) {
+    public static List<Triple> orientCollidersUsingSepsets(ISepsetMap set, IKnowledge knowledge, Graph graph, Graph initialGraph, boolean verbose) {
         TetradLogger.getInstance().log("details", "Starting Collider Orientation:");
         List<Triple> colliders = new ArrayList<Triple>();
 
@@ -392,6 +392,30 @@ public final class SearchGraphUtils {
         return false;
     }
 
+    /**
+     * @return the sepsets found by the last search of the given adjacency search, in the compact store if it keeps
+     * one, so that they are not copied into a SepsetMap.
+     */
+    public static ISepsetMap getSepsets(IFas fas) {
+        if (fas instanceof FasStableConcurrent) {
+            return ((FasStableConcurrent) fas).getCompactSepsets();
+        }
+
+        return fas.getSepsets();
+    }
+
+    /**
+     * @return the given sepsets as a SepsetMap, copying them into a new one if they are in a CompactSepsetMap, or null
+     * if they are null.
+     */
+    public static SepsetMap toSepsetMap(ISepsetMap sepsets) {
+        if (sepsets instanceof CompactSepsetMap) {
+            return ((CompactSepsetMap) sepsets).toSepsetMap();
+        }
+
+        return (SepsetMap) sepsets;
+    }
+
     // Tests whether adding a for b--a--c to the sepset (if it's not there) yields independence. Poor man's CPC.
     public static void orientCollidersUsingSepsets(SepsetMap set,
                                                    IKnowledge knowledge, Graph graph,
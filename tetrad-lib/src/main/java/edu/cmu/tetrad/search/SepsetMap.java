@@ -42,7 +42,7 @@ import java.util.concurrent.ConcurrentHashMap;
  *
  * @author Joseph Ramsey
  */
-public final class SepsetMap implements TetradSerializable {
+public final class SepsetMap implements ISepsetMap, TetradSerializable {
     static final long serialVersionUID = 23L;
 
     /**
@@ -29,33 +29,34 @@ import java.util.List;
  * Created by josephramsey on 3/24/15.
  */
 public class SepsetsSet implements SepsetProducer {
-    private final SepsetMap sepsets;
+    private final ISepsetMap sepsets;
     private final IndependenceTest test;
     private double p;
     private boolean verbose = false;
 
-    public SepsetsSet(SepsetMap sepsets, IndependenceTest test) {
+    public SepsetsSet(ISepsetMap sepsets, IndependenceTest test) {
         this.sepsets = sepsets;
         this.test = test;
     }
 
     @Override
     public List<Node> getSepset(Node a, Node b) {
-        isIndependent(a, b, sepsets.get(a, b));
-        return sepsets.get(a, b);
+        List<Node> sepset = sepsets.get(a, b);
+        isIndependent(a, b, sepset);
+        return sepset;
     }
 
     @Override
     public boolean isCollider(Node i, Node j, Node k) {
         List<Node> sepset = sepsets.get(i, k);
-        isIndependent(i, k, sepsets.get(i, k));
+        isIndependent(i, k, sepset);
         return sepset != null && !sepset.contains(j);
     }
 
     @Override
     public boolean isNoncollider(Node i, Node j, Node k) {
         List<Node> sepset = sepsets.get(i, k);
-        isIndependent(i, k, sepsets.get(i, k));
+        isIndependent(i, k, sepset);
         return sepset != null && sepset.contains(j);
     }
 
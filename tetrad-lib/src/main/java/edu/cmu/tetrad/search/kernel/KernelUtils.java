@@ -58,6 +58,7 @@ public class KernelUtils {
                         keval *= gram.get(i, j);
                         gram.set(i, j, keval);
                     }
+                    gram.set(j, i, keval);
                 }
             }
         }
@@ -96,6 +97,7 @@ public class KernelUtils {
                     H.set(i, j, d);
                 } else {
                     H.set(i, j, od);
+                    H.set(j, i, od);
                 }
             }
         }
@@ -141,7 +143,7 @@ public class KernelUtils {
 
             // exit if best element does not exceed precision
             if (best < precision) {
-                cols = k - 1;
+                cols = k;
                 break;
             }
 
@@ -176,11 +178,11 @@ public class KernelUtils {
             Dadv[k] = 0;
         }
 
-        // trim columns
+        // trim columns, returning rows to the order of the data
         TetradMatrix Gm = new TetradMatrix(m, cols);
         for (int i = 0; i < m; i++) {
             for (int j = 0; j < cols; j++) {
-                Gm.set(i, j, G.get(i, j));
+                Gm.set(p[i], j, G.get(i, j));
             }
         }
         return Gm;
@@ -27,14 +27,13 @@ import edu.cmu.tetrad.data.DoubleDataBox;
 import edu.cmu.tetrad.data.VerticalDoubleDataBox;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.RandomStream;
 import edu.cmu.tetrad.util.RandomUtil;
 import edu.cmu.tetrad.util.TetradAlgebra;
 import edu.cmu.tetrad.util.dist.Distribution;
 import edu.cmu.tetrad.util.dist.Split;
 import edu.cmu.tetrad.util.dist.Uniform;
 import org.apache.commons.collections4.map.HashedMap;
-import org.apache.commons.math3.distribution.NormalDistribution;
-import org.apache.commons.math3.random.Well1024a;
 
 import java.io.PrintStream;
 import java.util.*;
@@ -139,11 +138,12 @@ public final class LargeSemSimulator {
         return dataSet;
     }
 
-    long seed = new Date().getTime();
-
-
     // Trying again to parallelize simulateDataAcyclic.
     public DataSet simulateDataAcyclic2(int sampleSize) {
+
+        // Each row draws from its own child stream, so the data don't depend on the order the rows are done in.
+        final RandomStream stream = RandomStream.fromRandomUtil();
+
         class SimulateRowTask extends RecursiveTask<double[]> {
             private final int i;
 
@@ -153,8 +153,7 @@ public final class LargeSemSimulator {
 
             @Override
             protected double[] compute() {
-                NormalDistribution normal = new NormalDistribution(new Well1024a(++seed), 0, 1);//sqrt(errorVars[col]));
-                normal.sample();
+                RandomStream random = stream.split(i);
 
                 if (verbose && (i + 1) % 50 == 0)
                     System.out.println("Simulating " + (i + 1));
@@ -162,7 +161,7 @@ public final class LargeSemSimulator {
                 double[] _row = new double[tierIndices.length];
 
                 for (int col : tierIndices) {
-                    double value = normal.sample() * sqrt(errorVars[col]);
+                    double value = random.nextGaussian() * sqrt(errorVars[col]);
 
 //                    double value = RandomUtil.getInstance().nextNormal(0, sqrt(errorVars[col]));
 
@@ -230,6 +229,10 @@ public final class LargeSemSimulator {
     }
 
     public DataSet simulateDataAcyclic(int sampleSize) {
+
+        // Each row draws from its own child stream, so the data don't depend on how the rows are divided among tasks.
+        final RandomStream stream = RandomStream.fromRandomUtil();
+
         class SimulateTask extends RecursiveTask<Boolean> {
             private final int from;
             private final int to;
@@ -245,8 +248,8 @@ public final class LargeSemSimulator {
 
             @Override
             protected Boolean compute() {
-                if (from - to > chunk) {
-                    int mid = from + to / 2;
+                if (to - from > chunk) {
+                    int mid = (from + to) / 2;
                     SimulateTask left = new SimulateTask(from, mid, all, chunk);
                     SimulateTask right = new SimulateTask(mid, to, all, chunk);
                     left.fork();
@@ -255,14 +258,13 @@ public final class LargeSemSimulator {
                     return true;
                 } else {
                     for (int i = from; i < to; i++) {
-                        NormalDistribution normal = new NormalDistribution(new Well1024a(++seed), 0, 1);//sqrt(errorVars[col]));
-                        normal.sample();
+                        RandomStream random = stream.split(i);
 
                         if (verbose && (i + 1) % 50 == 0)
                             System.out.println("Simulating " + (i + 1));
 
                         for (int col : tierIndices) {
-                            double value = normal.sample() * sqrt(errorVars[col]);
+                            double value = random.nextGaussian() * sqrt(errorVars[col]);
 
                             for (int j = 0; j < parents[col].length; j++) {
                                 value += all[parents[col][j]][i] * coefs[col][j];
@@ -21,15 +21,17 @@
 
 package edu.cmu.tetrad.sem;
 
-import edu.cmu.tetrad.util.MatrixUtils;
-import edu.cmu.tetrad.util.NumberFormatUtil;
-import edu.cmu.tetrad.util.RandomUtil;
-import edu.cmu.tetrad.util.TetradMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.SemGraph;
+import edu.cmu.tetrad.util.*;
+import org.apache.commons.math3.random.RandomGenerator;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements the Gibbs sampler apporach to obtain samples of arbitrary size
@@ -38,12 +40,22 @@ import java.util.List;
  * interval estimates for the freeParameters can be computed from these samples. See
  * "Bayesian Estimation and Testing of Structural Equation Models" by Scheines,
  * Hoijtink and Boomsma, Psychometrika, v. 64, no. 1.
+ * <p>
+ * Several independent chains may be run in parallel, each drawing from its own
+ * split of a RandomStream. The split R-hat and the effective sample size of
+ * each parameter are computed over the chains and, if a report interval is
+ * set, logged while the chains run.
  *
  * @author Frank Wimberly
  */
 public final class SemEstimatorGibbs {
     static final long serialVersionUID = 23L;
 
+    /**
+     * Every this many iterations the state of each chain is stored as a sample.
+     */
+    private static final int SUBSAMPLE_STRIDE = 50;
+
     private int numIterations;
     private double stretch1;
     private double stretch2;
@@ -83,6 +95,29 @@ public final class SemEstimatorGibbs {
 
     private TetradMatrix dataSet;
 
+    /**
+     * The number of independent chains; if more than one, they are run in parallel.
+     */
+    private int numChains = 1;
+
+    /**
+     * The number of iterations between convergence reports, or 0 if diagnostics are only
+     * computed at the end.
+     */
+    private int reportInterval = 0;
+
+    /**
+     * The indices in semPm.getParameters() of the parameters that are sampled.
+     */
+    private int[] freeIndices;
+
+    /**
+     * Split R-hat and effective sample size for each parameter; NaN for parameters that
+     * are not sampled.
+     */
+    private double[] rHat;
+    private double[] effectiveSampleSizes;
+
     //=============================CONSTRUCTORS============================//
 
     /**
@@ -138,8 +173,6 @@ public final class SemEstimatorGibbs {
         this.parameterMeans = new double[numParameters];
         this.paramConstraints = new ParamConstraint[numParameters];
 
-        TetradMatrix data = new TetradMatrix(parameters.size(), numIterations / 50);
-
         //PRIORINIT
         if (flatPrior) {
             // this is used to construct the prior covariance matrix, means
@@ -173,257 +206,822 @@ public final class SemEstimatorGibbs {
         //END PRIORINIT
 
         //GIBBSINIT
-        SemIm posteriorIm = new SemIm(this.startIm);
-
-        List postFreeParams = posteriorIm.getFreeParameters();
-
-        System.out.println("entering main loop");
-
-        for (int iter = 1; iter <= this.numIterations; iter++) {
-            System.out.println(iter);
-
-            for (int param = 0; param < postFreeParams.size(); param++) {
-
-                Parameter p = parameters.get(param);
-                ParamConstraint constraint = this.paramConstraints[param];
-
-                if (!p.isFixed()) {
-                    //FORMAPPROXDIST begin
-                    double number = (constraint.getParam2() == null)
-                            ? constraint.getNumber()
-                            : this.startIm.getParamValue(constraint.getParam2());
-
-                    double ax, bx, cx;
-
-                    // Mark - these constraints follow pascal code
-                    if (constraint.getType() == ParamConstraintType.NONE) {
-                        ax = -500.0;
-                        bx = 0.0;
-                        cx = 500.0;
-                    } else if (constraint.getType() == ParamConstraintType.GT) {
-                        ax = number;
-                        cx = number + 500.0;
-                        bx = (ax + cx) / 2.0;
-                    } else if (constraint.getType() == ParamConstraintType.LT) {
-                        cx = number;
-                        ax = number - 500.0;
-                        bx = (ax + cx) / 2.0;
-                    } else if (constraint.getType() == ParamConstraintType.EQ) {
-                        bx = number;
-                        ax = number - 500.0;
-                        cx = number + 500.0;
-                    } else {
-                        ax = -500.0;
-                        bx = 0.0;
-                        cx = 500.0;
-                    }
+        if (this.startIm.getSampleCovar() == null) {
+            throw new IllegalStateException("The starting SEM IM must have a sample covariance matrix.");
+        }
 
-                    double[] mean = new double[1];
-                    // dmean is the density at the mean
-                    double dmean = -brent(param, ax, bx, cx, this.tolerance, mean, parameters);
-                    double gap = 0.005;
-                    double denom;
+        List<Parameter> freeParameters = this.semPm.getFreeParameters();
+        this.freeIndices = new int[freeParameters.size()];
 
-                    do {
-                        gap = 2.0 * gap;
+        for (int i = 0; i < freeParameters.size(); i++) {
+            this.freeIndices[i] = parameters.indexOf(freeParameters.get(i));
+        }
 
-                        int gapThreshold = 1;
-                        double minDenom = 0.01;
+        int numSamples = this.numIterations / SUBSAMPLE_STRIDE;
+        Chain[] chains = new Chain[this.numChains];
 
-                        if (gap > gapThreshold) {
-                            denom = minDenom;
-                            break;
-                        }
+        if (this.numChains == 1) {
+            chains[0] = new Chain(RandomUtil.getInstance().getRandomGenerator(), numSamples);
+        } else {
+            RandomStream stream = RandomStream.fromRandomUtil();
 
-                        System.out.println(p.getNodeA() + " " + p.getNodeA().getNodeType());
-                        System.out.println(p.getNodeB() + " " + p.getNodeB().getNodeType());
-                        double dmeanplus = neglogpost(param, mean[0] + gap, parameters);
-                        denom = dmean + dmeanplus;
+            for (int c = 0; c < this.numChains; c++) {
+                chains[c] = new Chain(stream.split(c), numSamples);
+            }
+        }
 
-                        if (denom < minDenom) denom = minDenom;
+        int interval = this.reportInterval > 0 ? this.reportInterval : this.numIterations;
+        NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
 
-//						System.out.println("gap = "+gap+"; denom = "+denom+"; dmean = "+dmean+"; dmeanplus = "+dmeanplus);
-                    } while (denom < 0.0);
+        for (int from = 0; from < this.numIterations; from += interval) {
+            int to = Math.min(from + interval, this.numIterations);
 
-                    double vr = (this.stretch1 * 0.5 * gap * gap) / denom;
+            if (chains.length == 1) {
+                chains[0].run(from, to);
+            } else {
+                ForkJoinPoolInstance.getInstance().getPool().invoke(new ChainTask(chains, 0, chains.length, from, to));
+            }
 
-                    //System.out.println("vr = "+vr+" param = "+param);
+            computeDiagnostics(chains, to / SUBSAMPLE_STRIDE);
 
-                    //FORMAPPROXDIST end
+            if (this.reportInterval > 0) {
+                TetradLogger.getInstance().log("info", "Gibbs iteration " + to + ": max R-hat = "
+                        + nf.format(extreme(this.rHat, true)) + ", min effective sample size = "
+                        + nf.format(extreme(this.effectiveSampleSizes, false)));
+            }
+        }
 
-                    //DRAWFROMAPPROX begin
-                    boolean realdraw = false;
-                    double rj = 0.0, accept = 0.0, cand = 0.0;
+        TetradMatrix data = new TetradMatrix(numParameters, this.numChains * numSamples);
 
-                    while (!realdraw || rj <= accept) {
-                        cand = mean[0] + Math.max(RandomUtil.getInstance().nextNormal(0, 1) * Math.sqrt(vr), 0);
-                        realdraw = (constraint.wouldBeSatisfied(cand));
-                        if (realdraw) {
+        for (int c = 0; c < this.numChains; c++) {
+            for (int i = 0; i < numParameters; i++) {
+                for (int s = 0; s < numSamples; s++) {
+                    data.set(i, c * numSamples + s, chains[c].samples[i][s]);
+                }
+            }
+        }
 
-//							System.out.println("dcand start");
+        dataSet = data;
+        this.estimatedSem = chains[0].toSemIm();
+        //setMeans(posteriorIm, data);
 
-                            double dcand = -1.0 * neglogpost(param, cand, parameters);
-//							System.out.println("dcand end");
-                            double numer = dcand - dmean;
-                            double denom1 = (-1.0 * Math.sqrt(cand - mean[0]) /
-                                    (2.0 * vr)) - Math.log(this.stretch2);
-                            rj = numer - denom1;
-                            accept = Math.log(RandomUtil.getInstance().nextDouble());
+    }
 
-                            int rejectionThreshold = 5;
+    /**
+     * The number of independent chains to run. Chains after the first draw from split
+     * streams of a RandomStream seeded from RandomUtil and are run in parallel; their
+     * samples are appended, chain by chain, as columns of getDataSet().
+     */
+    public void setNumChains(int numChains) {
+        if (numChains < 1) {
+            throw new IllegalArgumentException("Number of chains must be at least 1: " + numChains);
+        }
 
-                            if (rj > rejectionThreshold) {
-                                //System.out.println("rj = "+rj);
-                                rj = rejectionThreshold;
-                            }
-                        }
-                    }
-                    //DRAWFROMAPPROX end
+        this.numChains = numChains;
+    }
 
-                    //System.out.println("end of iteration");
+    public int getNumChains() {
+        return numChains;
+    }
 
-                    //UPDATEPARM
-                    Parameter ppost = (Parameter) postFreeParams.get(param);
-                    if (ppost.isFixed())
-                        posteriorIm.setFixedParamValue(ppost, cand);
-                    else
-                        posteriorIm.setParamValue(ppost, cand);
-                    //UPDATEPARM end
-                }
+    /**
+     * If positive, the chains pause every this many iterations so that R-hat and the
+     * effective sample sizes can be computed and logged. 0 (the default) computes them
+     * only at the end.
+     */
+    public void setReportInterval(int reportInterval) {
+        if (reportInterval < 0) {
+            throw new IllegalArgumentException("Report interval must be >= 0: " + reportInterval);
+        }
+
+        this.reportInterval = reportInterval;
+    }
+
+    /**
+     * @return the split R-hat of each parameter of the SemPm, in the order of
+     * getParameters(); NaN for parameters that are not sampled or if there are too few
+     * samples.
+     */
+    public double[] getRHat() {
+        return rHat;
+    }
+
+    /**
+     * @return the effective sample size of each parameter, pooled over chains, in the
+     * order of getParameters(); NaN for parameters that are not sampled.
+     */
+    public double[] getEffectiveSampleSizes() {
+        return effectiveSampleSizes;
+    }
+
+    /**
+     * Split R-hat (Gelman et al., Bayesian Data Analysis, 3rd ed., 11.4) of the first n
+     * values of each chain. Each chain is split in half so that drift within a single
+     * chain is detected as well.
+     *
+     * @return NaN if there are fewer than 4 values per chain or no variation.
+     */
+    public static double rHat(double[][] chains, int n) {
+        int half = n / 2;
+
+        if (half < 2) {
+            return Double.NaN;
+        }
+
+        double[][] halves = new double[2 * chains.length][];
+
+        for (int c = 0; c < chains.length; c++) {
+            halves[2 * c] = Arrays.copyOfRange(chains[c], 0, half);
+            halves[2 * c + 1] = Arrays.copyOfRange(chains[c], n - half, n);
+        }
+
+        double[] moments = moments(halves, half);
+        double w = moments[0];
+        double varPlus = moments[1];
+
+        if (!(w > 0)) {
+            return Double.NaN;
+        }
 
+        return Math.sqrt(varPlus / w);
+    }
+
+    /**
+     * The effective sample size of the first n values of the given chains, taken
+     * together, using Geyer's initial positive sequence estimator of the
+     * autocorrelation time, as in Bayesian Data Analysis, 3rd ed., 11.5.
+     *
+     * @return NaN if there are fewer than 4 values per chain or no variation.
+     */
+    public static double effectiveSampleSize(double[][] chains, int n) {
+        if (n < 4) {
+            return Double.NaN;
+        }
+
+        int m = chains.length;
+        double[] moments = moments(chains, n);
+        double w = moments[0];
+        double varPlus = moments[1];
+
+        if (!(varPlus > 0)) {
+            return Double.NaN;
+        }
+
+        double[] means = new double[m];
+
+        for (int c = 0; c < m; c++) {
+            means[c] = StatUtils.mean(chains[c], n);
+        }
+
+        double tau = -1.0;
+
+        for (int t = 0; t + 1 < n; t += 2) {
+            double pair = autocorrelation(chains, means, n, t, w, varPlus)
+                    + autocorrelation(chains, means, n, t + 1, w, varPlus);
+
+            if (pair <= 0) {
+                break;
             }
 
-            int subsampleStride = 50;
+            tau += 2 * pair;
+        }
 
-            if (iter % subsampleStride == 0 && iter > 0) {
-                for (int i = 0; i < numParameters; i++) {
-                    Parameter ppost = (posteriorIm.getSemPm()).getParameters().get(i);
-                    data.set(i, iter / subsampleStride - 1, posteriorIm.getParamValue(ppost));
-                }
+        return m * n / Math.max(tau, 1.0 / Math.log10(m * n));
+    }
+
+    //==============================PRIVATE METHODS=========================//
+
+    /**
+     * @return {W, var+}: the mean within-chain variance and the pooled estimate of the
+     * marginal posterior variance.
+     */
+    private static double[] moments(double[][] chains, int n) {
+        int m = chains.length;
+        double[] means = new double[m];
+        double w = 0.0;
+
+        for (int c = 0; c < m; c++) {
+            means[c] = StatUtils.mean(chains[c], n);
+            w += StatUtils.variance(chains[c], n);
+        }
+
+        w /= m;
+        double b = m > 1 ? n * StatUtils.variance(means) : 0.0;
+
+        return new double[]{w, (n - 1) / (double) n * w + b / n};
+    }
+
+    private static double autocorrelation(double[][] chains, double[] means, int n, int lag,
+                                          double w, double varPlus) {
+        double sum = 0.0;
+
+        for (int c = 0; c < chains.length; c++) {
+            double[] x = chains[c];
+            double mean = means[c];
+            double cov = 0.0;
+
+            for (int i = 0; i + lag < n; i++) {
+                cov += (x[i] - mean) * (x[i + lag] - mean);
             }
+
+            sum += cov / n;
         }
 
-        dataSet = data;
-        this.estimatedSem = posteriorIm;
-        //setMeans(posteriorIm, data);
+        return 1.0 - (w - sum / chains.length) / varPlus;
+    }
 
+    /**
+     * @return the largest (or smallest) value in x that is not NaN, or NaN if there is none.
+     */
+    private static double extreme(double[] x, boolean max) {
+        double extreme = Double.NaN;
+
+        for (double v : x) {
+            if (Double.isNaN(v)) continue;
+            if (Double.isNaN(extreme) || (max ? v > extreme : v < extreme)) extreme = v;
+        }
+
+        return extreme;
     }
 
-    private double brent(int param, double ax, double bx, double cx, double tol, double[] xmin, List<Parameter> parameters) {
+    private void computeDiagnostics(Chain[] chains, int n) {
+        int numParameters = this.semPm.getParameters().size();
+        this.rHat = new double[numParameters];
+        this.effectiveSampleSizes = new double[numParameters];
+        Arrays.fill(this.rHat, Double.NaN);
+        Arrays.fill(this.effectiveSampleSizes, Double.NaN);
+
+        double[][] values = new double[chains.length][];
+
+        for (int param : this.freeIndices) {
+            for (int c = 0; c < chains.length; c++) {
+                values[c] = chains[c].samples[param];
+            }
+
+            this.rHat[param] = rHat(values, n);
+            this.effectiveSampleSizes[param] = effectiveSampleSize(values, n);
+        }
+    }
+
+    /**
+     * Runs a range of chains in parallel from iteration <code>from</code> up to
+     * iteration <code>to</code>.
+     */
+    private static class ChainTask extends RecursiveAction {
+        private final Chain[] chains;
+        private final int lo;
+        private final int hi;
+        private final int from;
+        private final int to;
+
+        ChainTask(Chain[] chains, int lo, int hi, int from, int to) {
+            this.chains = chains;
+            this.lo = lo;
+            this.hi = hi;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                chains[lo].run(from, to);
+            } else {
+                int mid = (lo + hi) / 2;
+                invokeAll(new ChainTask(chains, lo, mid, from, to), new ChainTask(chains, mid, hi, from, to));
+            }
+        }
+    }
+
+    /**
+     * One chain of the sampler. The current state of the chain is held in a
+     * TruncatedLikelihood, so that each conditional density is evaluated at the most
+     * recent values of all the other parameters.
+     */
+    private final class Chain {
+        private final RandomGenerator random;
+        private final TruncatedLikelihood likelihood;
+        private final List<Parameter> parameters;
+
+        /**
+         * samples[i][s] is the value of parameter i at the s'th stored iteration.
+         */
+        private final double[][] samples;
+
+        private final double[] mean = new double[1];
+
+        Chain(RandomGenerator random, int numSamples) {
+            this.random = random;
+            this.parameters = semPm.getParameters();
+            this.likelihood = new TruncatedLikelihood(startIm, parameters);
+            this.samples = new double[parameters.size()][numSamples];
+        }
+
+        void run(int from, int to) {
+            for (int iter = from + 1; iter <= to; iter++) {
+                for (int param : freeIndices) {
+                    likelihood.setValue(param, draw(param));
+                }
+
+                if (iter % SUBSAMPLE_STRIDE == 0) {
+                    for (int i = 0; i < samples.length; i++) {
+                        samples[i][iter / SUBSAMPLE_STRIDE - 1] = likelihood.getValue(i);
+                    }
+                }
+            }
+        }
+
+        SemIm toSemIm() {
+            SemIm posteriorIm = new SemIm(startIm);
+            List<Parameter> postParameters = posteriorIm.getSemPm().getParameters();
+
+            for (int param : freeIndices) {
+                posteriorIm.setParamValue(postParameters.get(param), likelihood.getValue(param));
+            }
+
+            return posteriorIm;
+        }
 
-        int ITMAX = 100, iter;
-        double CGOLD = 0.3819660;
-        double ZEPS = 1.0e-10;
-        double a, b, d, e, etemp, p, q, r, tol1, tol2, u, v, w, x, xm, fu, fv, fw, fx;
+        private double draw(int param) {
+            ParamConstraint constraint = paramConstraints[param];
+
+            //FORMAPPROXDIST begin
+            double number = (constraint.getParam2() == null)
+                    ? constraint.getNumber()
+                    : startIm.getParamValue(constraint.getParam2());
+
+            double ax, bx, cx;
+
+            // Mark - these constraints follow pascal code
+            if (constraint.getType() == ParamConstraintType.NONE) {
+                ax = -500.0;
+                bx = 0.0;
+                cx = 500.0;
+            } else if (constraint.getType() == ParamConstraintType.GT) {
+                ax = number;
+                cx = number + 500.0;
+                bx = (ax + cx) / 2.0;
+            } else if (constraint.getType() == ParamConstraintType.LT) {
+                cx = number;
+                ax = number - 500.0;
+                bx = (ax + cx) / 2.0;
+            } else if (constraint.getType() == ParamConstraintType.EQ) {
+                bx = number;
+                ax = number - 500.0;
+                cx = number + 500.0;
+            } else {
+                ax = -500.0;
+                bx = 0.0;
+                cx = 500.0;
+            }
 
-        //init
-        x = w = v = bx;
-        e = d = 0.0;
-        a = (ax < cx) ? ax : cx;
-        b = (ax > cx) ? ax : cx;
-        fw = fv = fx = neglogpost(param, x, parameters);
+            // dmean is the density at the mean
+            double dmean = -brent(param, ax, bx, cx, tolerance, mean);
+            double gap = 0.005;
+            double denom;
+
+            do {
+                gap = 2.0 * gap;
+
+                int gapThreshold = 1;
+                double minDenom = 0.01;
+
+                if (gap > gapThreshold) {
+                    denom = minDenom;
+                    break;
+                }
 
-        for (iter = 1; iter <= ITMAX; iter++) {
-            xm = 0.5 * (a + b);
-            tol1 = tol * Math.abs(x) + ZEPS;
-            tol2 = 2.0 * tol1;
+                double dmeanplus = neglogpost(param, mean[0] + gap);
+                denom = dmean + dmeanplus;
 
-            if (Math.abs(x - xm) <= tol2 - 0.5 * (b - a)) {
-                xmin[0] = x;
-                return fx;
+                if (denom < minDenom) denom = minDenom;
+            } while (denom < 0.0);
+
+            double vr = (stretch1 * 0.5 * gap * gap) / denom;
+
+            //FORMAPPROXDIST end
+
+            //DRAWFROMAPPROX begin
+            boolean realdraw = false;
+            double rj = 0.0, accept = 0.0, cand = 0.0;
+
+            while (!realdraw || rj <= accept) {
+                cand = mean[0] + Math.max(random.nextGaussian() * Math.sqrt(vr), 0);
+                realdraw = (constraint.wouldBeSatisfied(cand));
+                if (realdraw) {
+                    double dcand = -1.0 * neglogpost(param, cand);
+                    double numer = dcand - dmean;
+                    double denom1 = (-1.0 * Math.sqrt(cand - mean[0]) /
+                            (2.0 * vr)) - Math.log(stretch2);
+                    rj = numer - denom1;
+                    accept = Math.log(random.nextDouble());
+
+                    int rejectionThreshold = 5;
+
+                    if (rj > rejectionThreshold) {
+                        rj = rejectionThreshold;
+                    }
+                }
             }
+            //DRAWFROMAPPROX end
 
-            if (Math.abs(e) > tol1) {
-                r = (x - w) * (fx - fv);
-                q = (x - v) * (fx - fw);
-                p = (x - v) * q - (x - w) * r;
-                q = 2.0 * (q - r);
+            return cand;
+        }
+
+        private double brent(int param, double ax, double bx, double cx, double tol, double[] xmin) {
+
+            int ITMAX = 100, iter;
+            double CGOLD = 0.3819660;
+            double ZEPS = 1.0e-10;
+            double a, b, d, e, etemp, p, q, r, tol1, tol2, u, v, w, x, xm, fu, fv, fw, fx;
 
-                if (q > 0.0) p = -p;
+            //init
+            x = w = v = bx;
+            e = d = 0.0;
+            a = (ax < cx) ? ax : cx;
+            b = (ax > cx) ? ax : cx;
+            fw = fv = fx = neglogpost(param, x);
 
-                q = Math.abs(q);
-                etemp = e;
-                e = d;
+            for (iter = 1; iter <= ITMAX; iter++) {
+                xm = 0.5 * (a + b);
+                tol1 = tol * Math.abs(x) + ZEPS;
+                tol2 = 2.0 * tol1;
+
+                if (Math.abs(x - xm) <= tol2 - 0.5 * (b - a)) {
+                    xmin[0] = x;
+                    return fx;
+                }
 
-                if ((Math.abs(p) >= Math.abs(0.5 * q * etemp)) ||
-                        (p <= q * (a - x)) || (p >= q * (b - x))) {
+                if (Math.abs(e) > tol1) {
+                    r = (x - w) * (fx - fv);
+                    q = (x - v) * (fx - fw);
+                    p = (x - v) * q - (x - w) * r;
+                    q = 2.0 * (q - r);
+
+                    if (q > 0.0) p = -p;
+
+                    q = Math.abs(q);
+                    etemp = e;
+                    e = d;
+
+                    if ((Math.abs(p) >= Math.abs(0.5 * q * etemp)) ||
+                            (p <= q * (a - x)) || (p >= q * (b - x))) {
+                        e = (x >= xm) ? a - x : b - x;
+                        d = CGOLD * e;
+                    } else {
+                        d = p / q;
+                        u = x + d;
+                        if ((u - a) < tol2 || (b - u) < tol2)
+                            d = (xm - x >= 0.0) ? Math.abs(tol1) : -Math.abs(tol1);
+                    }
+                } else {
                     e = (x >= xm) ? a - x : b - x;
                     d = CGOLD * e;
-                } else {
-                    d = p / q;
-                    u = x + d;
-                    if ((u - a) < tol2 || (b - u) < tol2)
-                        d = (xm - x >= 0.0) ? Math.abs(tol1) : -Math.abs(tol1);
                 }
-            } else {
-                e = (x >= xm) ? a - x : b - x;
-                d = CGOLD * e;
-            }
-
-            double s = (tol1 > -0.0) ? Math.abs(d) : -Math.abs(d);
-            u = (Math.abs(d) >= tol1) ? x + d : x + s;
-            fu = neglogpost(param, u, parameters);
-            if (fu <= fx) {
-                if (u >= x) a = x;
-                else b = x;
-
-                v = w;
-                fv = fw;
-                w = x;
-                fw = fx;
-                x = u;
-                fx = fu;
-            } else {
-                if (u < x) a = u;
-                else b = u;
 
-                if (fu <= fw || w == x) {
+                double s = (tol1 > -0.0) ? Math.abs(d) : -Math.abs(d);
+                u = (Math.abs(d) >= tol1) ? x + d : x + s;
+                fu = neglogpost(param, u);
+                if (fu <= fx) {
+                    if (u >= x) a = x;
+                    else b = x;
+
                     v = w;
                     fv = fw;
-                    w = u;
-                    fw = fu;
-                } else if (fu <= fv || v == x || v == w) {
-                    v = u;
-                    fv = fu;
+                    w = x;
+                    fw = fx;
+                    x = u;
+                    fx = fu;
+                } else {
+                    if (u < x) a = u;
+                    else b = u;
+
+                    if (fu <= fw || w == x) {
+                        v = w;
+                        fv = fw;
+                        w = u;
+                        fw = fu;
+                    } else if (fu <= fv || v == x || v == w) {
+                        v = u;
+                        fv = fu;
+                    }
                 }
             }
+
+            xmin[0] = x;
+            return fx;
+
         }
 
-        xmin[0] = x;
-        return fx;
+        private double neglogpost(int param, double x) {
+            double a = negloglike(param, x);
+            double b = 0.0;
 
-    }
+            // this is never called since flatprior is never false
+            if (!flatPrior) b = neglogprior(param, x, parameters);
+
+            return a + b;
+        }
+
+        private double negloglike(int param, double x) {
+            Parameter p = parameters.get(param);
+
+            double tparm = likelihood.getValue(param);
+
+            if ((p.getType() == ParamType.VAR || p.getType() == ParamType.COEF) && paramConstraints[param].wouldBeSatisfied(x)) {
+                likelihood.setValue(param, x);
+            }
 
-    private double neglogpost(int param, double x, List<Parameter> parameters) {
-        double a = negloglike(param, x);
-        double b = 0.0;
+            double nll = -likelihood.truncLL();
 
-        // this is never called since flatprior is never false
-        if (!this.flatPrior) b = neglogprior(param, x, parameters);
+            likelihood.setValue(param, tparm);
 
-        return a + b;
+            return nll;
+        }
     }
 
-    private double negloglike(int param, double x) {
-        // Mark - I'm not entirely sure about this method
+    /**
+     * Evaluates SemIm.getTruncLL() for a chain's current parameter values, using
+     * matrices allocated once per chain rather than per evaluation.
+     */
+    private static final class TruncatedLikelihood {
+        private final int numVars;
+        private final int numMeasured;
+        private final int[] measured;
+        private final int sampleSize;
+
+        private final ParamType[] types;
+        private final int[] rows;
+        private final int[] cols;
+
+        /**
+         * Values of the parameters that are not stored in edgeCoef or errCovar.
+         */
+        private final double[] values;
+
+        /**
+         * edgeCoef[i][j] is the coefficient of the edge i --> j.
+         */
+        private final double[][] edgeCoef;
+        private final double[][] errCovar;
+        private final double[][] sampleCovar;
+
+        private final double[][] work;
+        private final double[][] inverse;
+        private final double[][] product;
+        private final double[][] sigma;
+        private final double[][] solution;
+
+        TruncatedLikelihood(SemIm im, List<Parameter> parameters) {
+            List<Node> variableNodes = im.getVariableNodes();
+            List<Node> measuredNodes = im.getMeasuredNodes();
+            SemGraph graph = im.getSemPm().getGraph();
+
+            this.numVars = variableNodes.size();
+            this.numMeasured = measuredNodes.size();
+            this.measured = new int[numMeasured];
+
+            for (int i = 0; i < numMeasured; i++) {
+                measured[i] = variableNodes.indexOf(measuredNodes.get(i));
+            }
+
+            this.sampleSize = im.getSampleSize();
+            this.edgeCoef = im.getEdgeCoef().toArray();
+            this.errCovar = im.getErrCovar().toArray();
+            this.sampleCovar = im.getSampleCovar().toArray();
 
-        Parameter p = this.semPm.getParameters().get(param);
+            this.types = new ParamType[parameters.size()];
+            this.rows = new int[parameters.size()];
+            this.cols = new int[parameters.size()];
+            this.values = new double[parameters.size()];
 
-        double tparm = this.startIm.getParamValue(p);
+            for (int k = 0; k < parameters.size(); k++) {
+                Parameter parameter = parameters.get(k);
+                types[k] = parameter.getType();
 
-//		System.out.println(tparm);
+                if (types[k] == ParamType.COEF || types[k] == ParamType.VAR || types[k] == ParamType.COVAR) {
+                    rows[k] = variableNodes.indexOf(graph.getVarNode(parameter.getNodeA()));
+                    cols[k] = variableNodes.indexOf(graph.getVarNode(parameter.getNodeB()));
+                } else {
+                    values[k] = im.getParamValue(parameter);
+                }
+            }
 
-        if ((p.getType() == ParamType.VAR || p.getType() == ParamType.COEF) && paramConstraints[param].wouldBeSatisfied(x)) {
-            this.startIm.setParamValue(p, x);
+            this.work = new double[numVars][numVars];
+            this.inverse = new double[numVars][numVars];
+            this.product = new double[numMeasured][numVars];
+            this.sigma = new double[numMeasured][numMeasured];
+            this.solution = new double[numMeasured][numMeasured];
         }
 
+        double getValue(int k) {
+            if (types[k] == ParamType.COEF) {
+                return edgeCoef[rows[k]][cols[k]];
+            } else if (types[k] == ParamType.VAR || types[k] == ParamType.COVAR) {
+                return errCovar[rows[k]][cols[k]];
+            } else {
+                return values[k];
+            }
+        }
+
+        void setValue(int k, double x) {
+            if (types[k] == ParamType.COEF) {
+                edgeCoef[rows[k]][cols[k]] = x;
+            } else if (types[k] == ParamType.VAR || types[k] == ParamType.COVAR) {
+                errCovar[rows[k]][cols[k]] = x;
+                errCovar[cols[k]][rows[k]] = x;
+            } else {
+                values[k] = x;
+            }
+        }
+
+        /**
+         * -(n - 1) / 2 (log |Sigma| + tr(Sigma^-1 S)), Bollen p. 263, where Sigma is the
+         * implied covariance matrix of the measured variables.
+         */
+        double truncLL() {
+            // I - B', so that Sigma = (I - B')^-1 Omega (I - B')^-T.
+            for (int r = 0; r < numVars; r++) {
+                for (int c = 0; c < numVars; c++) {
+                    work[r][c] = (r == c ? 1.0 : 0.0) - edgeCoef[c][r];
+                }
+            }
+
+            if (!invert(work, inverse, numVars)) {
+                return Double.NEGATIVE_INFINITY;
+            }
 
-        double nll = -this.startIm.getTruncLL();
+            // Only the rows for the measured variables are needed.
+            for (int a = 0; a < numMeasured; a++) {
+                double[] row = inverse[measured[a]];
 
-        this.startIm.setParamValue(p, tparm);
+                for (int k = 0; k < numVars; k++) {
+                    double sum = 0.0;
 
-        return nll;
+                    for (int l = 0; l < numVars; l++) {
+                        sum += row[l] * errCovar[l][k];
+                    }
+
+                    product[a][k] = sum;
+                }
+            }
 
+            for (int a = 0; a < numMeasured; a++) {
+                for (int b = 0; b <= a; b++) {
+                    double[] row = inverse[measured[b]];
+                    double sum = 0.0;
+
+                    for (int k = 0; k < numVars; k++) {
+                        sum += product[a][k] * row[k];
+                    }
+
+                    sigma[a][b] = sum;
+                    sigma[b][a] = sum;
+                }
+            }
+
+            for (int a = 0; a < numMeasured; a++) {
+                System.arraycopy(sampleCovar[a], 0, solution[a], 0, numMeasured);
+            }
+
+            double logDet = solve(sigma, solution, numMeasured);
+
+            if (Double.isNaN(logDet)) {
+                return Double.NEGATIVE_INFINITY;
+            }
+
+            double trace = 0.0;
+
+            for (int a = 0; a < numMeasured; a++) {
+                trace += solution[a][a];
+            }
+
+            if (trace < -1e-8) {
+                trace = 0;
+            }
+
+            return -(sampleSize - 1) / 2. * (logDet + trace);
+        }
+
+        /**
+         * Inverts the first n rows and columns of a into inverse by Gauss-Jordan
+         * elimination with partial pivoting; a is overwritten.
+         *
+         * @return false if a is singular.
+         */
+        private static boolean invert(double[][] a, double[][] inverse, int n) {
+            for (int r = 0; r < n; r++) {
+                for (int c = 0; c < n; c++) {
+                    inverse[r][c] = r == c ? 1.0 : 0.0;
+                }
+            }
+
+            for (int col = 0; col < n; col++) {
+                int pivot = pivot(a, col, n);
+
+                if (pivot == -1) {
+                    return false;
+                }
+
+                swap(a, col, pivot);
+                swap(inverse, col, pivot);
+
+                double scale = 1.0 / a[col][col];
+
+                for (int c = 0; c < n; c++) {
+                    a[col][c] *= scale;
+                    inverse[col][c] *= scale;
+                }
+
+                for (int r = 0; r < n; r++) {
+                    double factor = a[r][col];
+
+                    if (r == col || factor == 0.0) continue;
+
+                    for (int c = 0; c < n; c++) {
+                        a[r][c] -= factor * a[col][c];
+                        inverse[r][c] -= factor * inverse[col][c];
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Overwrites b with a^-1 b, for the first n rows and columns, by Gaussian
+         * elimination with partial pivoting; a is overwritten.
+         *
+         * @return log |det(a)|, or NaN if a is singular.
+         */
+        private static double solve(double[][] a, double[][] b, int n) {
+            double logDet = 0.0;
+
+            for (int col = 0; col < n; col++) {
+                int pivot = pivot(a, col, n);
+
+                if (pivot == -1) {
+                    return Double.NaN;
+                }
+
+                swap(a, col, pivot);
+                swap(b, col, pivot);
+
+                double diag = a[col][col];
+                logDet += Math.log(Math.abs(diag));
+
+                for (int r = col + 1; r < n; r++) {
+                    double factor = a[r][col] / diag;
+
+                    if (factor == 0.0) continue;
+
+                    for (int c = col; c < n; c++) {
+                        a[r][c] -= factor * a[col][c];
+                    }
+
+                    for (int c = 0; c < n; c++) {
+                        b[r][c] -= factor * b[col][c];
+                    }
+                }
+            }
+
+            for (int r = n - 1; r >= 0; r--) {
+                for (int c = 0; c < n; c++) {
+                    double sum = b[r][c];
+
+                    for (int k = r + 1; k < n; k++) {
+                        sum -= a[r][k] * b[k][c];
+                    }
+
+                    b[r][c] = sum / a[r][r];
+                }
+            }
+
+            return logDet;
+        }
+
+        private static int pivot(double[][] a, int col, int n) {
+            int pivot = -1;
+            double max = 0.0;
+
+            for (int r = col; r < n; r++) {
+                double abs = Math.abs(a[r][col]);
+
+                if (abs > max) {
+                    max = abs;
+                    pivot = r;
+                }
+            }
+
+            return pivot;
+        }
+
+        private static void swap(double[][] a, int i, int j) {
+            if (i == j) return;
+            double[] tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
     }
 
     private double negchi2(int param, double x, List<Parameter> parameters) {
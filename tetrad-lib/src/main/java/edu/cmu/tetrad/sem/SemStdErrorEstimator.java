@@ -21,15 +21,25 @@
 
 package edu.cmu.tetrad.sem;
 
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.graph.SemGraph;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.TetradMatrix;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <p>Includes methods for estimating the standard errors of the freeParameters of
  * an estimated SEM.  The standard errors are the square roots of the diagonal
  * elements of the inverse of the "information matrix" (see Bollen page
  * 135).</p> </p> <p>This class resembles the SemOptimizer implementations.</p>
+ * <p>For a SemIm the information matrix is by default computed analytically
+ * from (I - B)^-1 and the error covariance matrix. Otherwise it is the Hessian
+ * of the fitting function, computed by finite differences; the second partial
+ * derivatives are then evaluated in parallel, each worker using its own copy
+ * of the SEM.</p>
  *
  * @author Frank Wimberly
  */
@@ -48,6 +58,16 @@ public class SemStdErrorEstimator {
     private double[] stdErrs = null;
 //    private SemIm semIm;
 
+    /**
+     * True if the information matrix should be computed analytically when possible.
+     */
+    private boolean analytic = true;
+
+    /**
+     * True if finite difference derivatives should be computed in parallel.
+     */
+    private boolean parallelized = true;
+
     /**
      * Blank constructor.
      */
@@ -80,77 +100,18 @@ public class SemStdErrorEstimator {
 //        this.semIm = estSem;
         estSem.setParameterBoundsEnforced(false);
         double[] paramsOriginal = estSem.getFreeParamValues();
-        double delta;
-        FittingFunction fcn = new SemFittingFunction(estSem);
-        boolean ridder = false;  // Ridder is more accurate but a lot slower.
-
-        int n = fcn.getNumParameters();
-
-        //Store the free freeParameters of the SemIm so that they can be reset to these
-        //values.  The differentiation methods change them.
-        double[] params = new double[n];
-        System.arraycopy(paramsOriginal, 0, params, 0, n);
-
-        //If the Ridder method (secondPartialDerivativeRidr) is used to search for
-        //the best delta it is initially set to 0.1.  Otherwise the delta is set to
-        //0.005.  That value has worked well for those fitting functions tested to
-        //date.
-        if (ridder) {
-            delta = 0.1;
-        } else {
-            delta = 0.005;
-        }
+        int n = estSem.getNumFreeParams();
 
         //The Hessian matrix of second order partial derivatives is called the
         //information matrix.
-        TetradMatrix hess = new TetradMatrix(n, n);
-
-        List<Parameter> freeParameters = estSem.getFreeParameters();
-        boolean containsCovararianceParameter = false;
+        TetradMatrix hess = null;
 
-        for (Parameter p : freeParameters) {
-            if (p.getType() == ParamType.COVAR) {
-                containsCovararianceParameter = true;
-                break;
-            }
+        if (analytic && estSem instanceof SemIm) {
+            hess = informationMatrix((SemIm) estSem);
         }
 
-        for (int i = 0; i < n; i++) {
-            for (int j = i; j < n; j++) {
-                Parameter pi = freeParameters.get(i);
-                Parameter pj = freeParameters.get(j);
-
-                if (!containsCovararianceParameter) {
-
-                    // Restrict off-diagonal to just collider edge freeParameters.
-                    if (i != j && (pi.getType() != ParamType.COEF || pj.getType() != ParamType.COEF)) {
-                        continue;
-                    }
-
-                    if (pi.getNodeB() != pj.getNodeB()) {
-                        continue;
-                    }
-                }
-
-                double v;
-
-                if (ridder) {
-                    v = secondPartialDerivativeRidr(fcn, i, j, params, delta);
-                } else {
-                    v = secondPartialDerivative(fcn, i, j, params, delta);
-                }
-
-                if (Math.abs(v) < 1e-7) {
-                    v = 0;
-                }
-
-//                if (Double.isNaN(v)) {
-//                    v = 0;
-//                }
-
-                hess.set(i, j, v);
-                hess.set(j, i, v);
-            }
+        if (hess == null) {
+            hess = finiteDifferenceHessian(estSem, paramsOriginal);
         }
 
         ROWS:
@@ -218,18 +179,273 @@ public class SemStdErrorEstimator {
         return stdErrs;
     }
 
+    /**
+     * True (the default) if the information matrix of a SemIm should be computed
+     * analytically; false if the Hessian should always be computed by finite
+     * differences.
+     */
+    public void setAnalytic(boolean analytic) {
+        this.analytic = analytic;
+    }
+
+    /**
+     * True (the default) if finite difference derivatives should be computed in
+     * parallel. Only SemIm's can be copied for this; other models are done serially.
+     */
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
+
+    /**
+     * The expected information matrix of FML, tr(Sigma^-1 dSigma/dp_i Sigma^-1
+     * dSigma/dp_j) (Bollen p. 135), where Sigma is the implied covariance matrix of
+     * the measured variables. For FGLS the weight matrix S^-1 is used in place of
+     * Sigma^-1, which gives the Hessian of FGLS at its minimum. With A = (I - B)^-1 and Omega the error covariance
+     * matrix, the full implied covariance matrix is A Omega A', and each of its
+     * derivatives has the form x y' + y x':
+     * <ul>
+     * <li>for the coefficient of r --> c, x = A(., c) and y = (A Omega A')(., r);</li>
+     * <li>for the error covariance of i and j, x = A(., i) and y = A(., j);</li>
+     * <li>for the error variance of i, x = A(., i) and y = x / 2.</li>
+     * </ul>
+     * With X and Y holding these columns, restricted to the measured variables, and
+     * P = Sigma^-1, the information matrix is 2 (C .* C') + 2 (X'PX .* Y'PY), where
+     * C = Y'PX and .* is the elementwise product.
+     *
+     * @return null if Sigma or I - B is singular.
+     */
+    private TetradMatrix informationMatrix(SemIm semIm) {
+        List<Node> variableNodes = semIm.getVariableNodes();
+        List<Node> measuredNodes = semIm.getMeasuredNodes();
+        List<Parameter> freeParameters = semIm.getFreeParameters();
+        SemGraph graph = semIm.getSemPm().getGraph();
+
+        int numVars = variableNodes.size();
+        int m = measuredNodes.size();
+        int n = freeParameters.size();
+
+        TetradMatrix a;
+        TetradMatrix sigma;
+
+        try {
+            a = TetradMatrix.identity(numVars).minus(semIm.getEdgeCoef().transpose()).inverse();
+            TetradMatrix full = a.times(semIm.getErrCovar()).times(a.transpose());
+
+            int[] measured = new int[m];
+
+            for (int i = 0; i < m; i++) {
+                measured[i] = variableNodes.indexOf(measuredNodes.get(i));
+            }
+
+            sigma = full.getSelection(measured, measured);
+
+            TetradMatrix x = new TetradMatrix(m, n);
+            TetradMatrix y = new TetradMatrix(m, n);
+
+            for (int k = 0; k < n; k++) {
+                Parameter parameter = freeParameters.get(k);
+                int i = variableNodes.indexOf(graph.getVarNode(parameter.getNodeA()));
+                int j = variableNodes.indexOf(graph.getVarNode(parameter.getNodeB()));
+
+                for (int u = 0; u < m; u++) {
+                    int _u = measured[u];
+
+                    if (parameter.getType() == ParamType.COEF) {
+                        x.set(u, k, a.get(_u, j));
+                        y.set(u, k, full.get(_u, i));
+                    } else if (parameter.getType() == ParamType.COVAR) {
+                        x.set(u, k, a.get(_u, i));
+                        y.set(u, k, a.get(_u, j));
+                    } else {
+                        x.set(u, k, a.get(_u, i));
+                        y.set(u, k, a.get(_u, i) / 2.0);
+                    }
+                }
+            }
+
+            TetradMatrix p = semIm.getScoreType() == SemIm.ScoreType.Fgls && semIm.getSampleCovar() != null
+                    ? semIm.getSampleCovar().inverse()
+                    : sigma.inverse();
+            TetradMatrix px = p.times(x);
+            TetradMatrix py = p.times(y);
+            TetradMatrix xpx = x.transpose().times(px);
+            TetradMatrix ypy = y.transpose().times(py);
+            TetradMatrix c = y.transpose().times(px);
+
+            TetradMatrix info = new TetradMatrix(n, n);
+
+            for (int k = 0; k < n; k++) {
+                for (int l = k; l < n; l++) {
+                    double v = 2.0 * (c.get(k, l) * c.get(l, k) + xpx.get(k, l) * ypy.get(k, l));
+
+                    if (Math.abs(v) < 1e-7) {
+                        v = 0;
+                    }
+
+                    info.set(k, l, v);
+                    info.set(l, k, v);
+                }
+            }
+
+            return info;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * The Hessian of the fitting function at the given parameter values, by finite
+     * differences. The value at the base point is computed once and shared by all
+     * of the second partial derivatives.
+     */
+    private TetradMatrix finiteDifferenceHessian(ISemIm estSem, double[] paramsOriginal) {
+        FittingFunction fcn = new SemFittingFunction(estSem);
+        boolean ridder = false;  // Ridder is more accurate but a lot slower.
+
+        int n = fcn.getNumParameters();
+
+        //Store the free freeParameters of the SemIm so that they can be reset to these
+        //values.  The differentiation methods change them.
+        double[] params = new double[n];
+        System.arraycopy(paramsOriginal, 0, params, 0, n);
+
+        //If the Ridder method (secondPartialDerivativeRidr) is used to search for
+        //the best delta it is initially set to 0.1.  Otherwise the delta is set to
+        //0.005.  That value has worked well for those fitting functions tested to
+        //date.
+        double delta = ridder ? 0.1 : 0.005;
+
+        List<Parameter> freeParameters = estSem.getFreeParameters();
+        boolean containsCovararianceParameter = false;
+
+        for (Parameter p : freeParameters) {
+            if (p.getType() == ParamType.COVAR) {
+                containsCovararianceParameter = true;
+                break;
+            }
+        }
+
+        List<int[]> pairs = new ArrayList<>();
+
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                Parameter pi = freeParameters.get(i);
+                Parameter pj = freeParameters.get(j);
+
+                if (!containsCovararianceParameter) {
+
+                    // Restrict off-diagonal to just collider edge freeParameters.
+                    if (i != j && (pi.getType() != ParamType.COEF || pj.getType() != ParamType.COEF)) {
+                        continue;
+                    }
+
+                    if (pi.getNodeB() != pj.getNodeB()) {
+                        continue;
+                    }
+                }
+
+                pairs.add(new int[]{i, j});
+            }
+        }
+
+        double center = fcn.evaluate(params.clone());
+        TetradMatrix hess = new TetradMatrix(n, n);
+
+        if (parallelized && estSem instanceof SemIm && pairs.size() > 1) {
+            int chunk = Math.max(pairs.size() / (4 * ForkJoinPoolInstance.getInstance().getPool().getParallelism()), 1);
+            ForkJoinPoolInstance.getInstance().getPool().invoke(
+                    new HessianTask((SemIm) estSem, pairs, 0, pairs.size(), chunk, params, center, delta, ridder, hess));
+        } else {
+            computeEntries(fcn, pairs, 0, pairs.size(), params, center, delta, ridder, hess);
+        }
+
+        return hess;
+    }
+
+    /**
+     * Computes the Hessian entries for pairs[from..to).
+     */
+    private void computeEntries(FittingFunction fcn, List<int[]> pairs, int from, int to, double[] params,
+                                double center, double delta, boolean ridder, TetradMatrix hess) {
+        for (int k = from; k < to; k++) {
+            int i = pairs.get(k)[0];
+            int j = pairs.get(k)[1];
+
+            double v;
+
+            if (ridder) {
+                v = secondPartialDerivativeRidr(fcn, i, j, params, delta, center);
+            } else {
+                v = secondPartialDerivative(fcn, i, j, params, delta, center);
+            }
+
+            if (Math.abs(v) < 1e-7) {
+                v = 0;
+            }
+
+//                if (Double.isNaN(v)) {
+//                    v = 0;
+//                }
+
+            // Each entry is written by exactly one task.
+            hess.set(i, j, v);
+            hess.set(j, i, v);
+        }
+    }
+
+    /**
+     * Splits the Hessian entries over the pool. Each leaf works on its own copy of
+     * the SEM, since evaluating the fitting function sets its parameter values.
+     */
+    private class HessianTask extends RecursiveAction {
+        private final SemIm semIm;
+        private final List<int[]> pairs;
+        private final int from;
+        private final int to;
+        private final int chunk;
+        private final double[] params;
+        private final double center;
+        private final double delta;
+        private final boolean ridder;
+        private final TetradMatrix hess;
+
+        HessianTask(SemIm semIm, List<int[]> pairs, int from, int to, int chunk, double[] params,
+                    double center, double delta, boolean ridder, TetradMatrix hess) {
+            this.semIm = semIm;
+            this.pairs = pairs;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.params = params;
+            this.center = center;
+            this.delta = delta;
+            this.ridder = ridder;
+            this.hess = hess;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                FittingFunction fcn = new SemFittingFunction(new SemIm(semIm));
+                computeEntries(fcn, pairs, from, to, params, center, delta, ridder, hess);
+            } else {
+                int mid = (from + to) / 2;
+                invokeAll(new HessianTask(semIm, pairs, from, mid, chunk, params, center, delta, ridder, hess),
+                        new HessianTask(semIm, pairs, mid, to, chunk, params, center, delta, ridder, hess));
+            }
+        }
+    }
+
     /**
      * This method straightforwardly applies the standard definition of the
      * numerical estimates of the second order partial derivatives.  See for
      * example Section 5.7 of Numerical Recipes in C.
      */
     private double secondPartialDerivative(FittingFunction f, int i, int j,
-                                           double[] p, double delt) {
+                                           double[] p, double delt, double center) {
         double[] arg = new double[p.length];
         System.arraycopy(p, 0, arg, 0, p.length);
 
-        double center = f.evaluate(arg);
-
         arg[i] += delt;
         arg[j] += delt;
         double ff1 = f.evaluate(arg);
@@ -274,7 +490,7 @@ public class SemStdErrorEstimator {
      * be adequately accurate and faster that this one.
      */
     private double secondPartialDerivativeRidr(FittingFunction f, int i, int j,
-                                               double[] args, double delt) {
+                                               double[] args, double delt, double center) {
 
         double[] arg = new double[args.length];
         double[][] a = new double[NTAB][NTAB];
@@ -285,8 +501,6 @@ public class SemStdErrorEstimator {
 
         System.arraycopy(args, 0, arg, 0, args.length);
 
-        double center = f.evaluate(arg);
-
         arg[i] += delt;
         arg[j] += delt;
         double ff1 = f.evaluate(arg);
@@ -0,0 +1,347 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enumerates a range of the combinations of a choose b, in the same order as ChoiceGenerator, or of the combinations
+ * of a choose 0, 1, ..., depth, in the same order as DepthChoiceGenerator. Combinations are numbered by rank, and a
+ * range can start at any rank (the combination is computed directly, without enumerating its predecessors) and can
+ * be split in two, so that the combinations of a large set can be divided among several workers.
+ * <p>
+ * Unlike ChoiceGenerator, this class is not synchronized, and next() returns the same array each time, overwritten,
+ * so that enumeration allocates nothing. Each worker should enumerate its own range.
+ */
+public final class ChoiceRange {
+
+    /**
+     * The number of objects being selected from.
+     */
+    private final int a;
+
+    /**
+     * The smallest and largest number of objects selected.
+     */
+    private final int minB;
+    private final int maxB;
+
+    /**
+     * The rank of the next combination and one past the rank of the last.
+     */
+    private long rank;
+    private long to;
+
+    /**
+     * The combination last returned, of size b, or null if there is none to advance from.
+     */
+    private int[] choice;
+    private int b;
+
+    /**
+     * The arrays returned for each size of combination.
+     */
+    private final int[][] choices;
+
+    //==========================CONSTRUCTORS=============================//
+
+    /**
+     * Constructs a range over all of the combinations of a choose b.
+     */
+    public ChoiceRange(int a, int b) {
+        this(a, b, b, 0, choose(a, b));
+    }
+
+    private ChoiceRange(int a, int minB, int maxB, long from, long to) {
+        if (a < 0 || minB < 0 || maxB < minB || a < maxB) {
+            throw new IllegalArgumentException("For 'a choose b', a and b must be " +
+                    "nonnegative with a >= b: " + "a = " + a + ", b = " + maxB);
+        }
+
+        this.a = a;
+        this.minB = minB;
+        this.maxB = maxB;
+        this.rank = from;
+        this.to = to;
+        this.choices = new int[maxB + 1][];
+
+        for (int b = minB; b <= maxB; b++) {
+            choices[b] = new int[b];
+        }
+    }
+
+    /**
+     * @return a range over all of the combinations of a choose 0, 1, ..., depth, in the order of
+     * DepthChoiceGenerator. A depth of -1 (or greater than a) means a.
+     */
+    public static ChoiceRange depth(int a, int depth) {
+        if (a < 0 || depth < -1) {
+            throw new IllegalArgumentException();
+        }
+
+        int maxB = depth == -1 || depth > a ? a : depth;
+        long size = 0;
+
+        for (int b = 0; b <= maxB; b++) {
+            size += choose(a, b);
+        }
+
+        return new ChoiceRange(a, 0, maxB, 0, size);
+    }
+
+    //==========================PUBLIC METHODS===========================//
+
+    /**
+     * @return the next combination in the range, or null if the range is finished. The array returned is reused by
+     * the next call.
+     */
+    public int[] next() {
+        if (rank >= to) {
+            return null;
+        }
+
+        if (choice == null || !successor()) {
+            unrank(rank);
+        }
+
+        rank++;
+        return choice;
+    }
+
+    /**
+     * @return the number of combinations left in the range.
+     */
+    public long size() {
+        return to - rank;
+    }
+
+    /**
+     * @return the rank of the combination that next() will return.
+     */
+    public long getRank() {
+        return rank;
+    }
+
+    /**
+     * Splits off the first half of the remaining combinations as a new range, leaving this range with the second
+     * half.
+     *
+     * @return the first half, or null if fewer than two combinations are left.
+     */
+    public ChoiceRange trySplit() {
+        if (size() < 2) {
+            return null;
+        }
+
+        long mid = rank + size() / 2;
+        ChoiceRange first = new ChoiceRange(a, minB, maxB, rank, mid);
+        rank = mid;
+        choice = null;
+        return first;
+    }
+
+    /**
+     * @return the combination of the given rank, in a new array.
+     */
+    public int[] get(long rank) {
+        ChoiceRange range = new ChoiceRange(a, minB, maxB, rank, rank + 1);
+        int[] choice = range.next();
+        return choice == null ? null : choice.clone();
+    }
+
+    /**
+     * The number of combinations of a choose b, exactly.
+     *
+     * @throws IllegalArgumentException if the number does not fit in a long.
+     */
+    public static long choose(int a, int b) {
+        if (b < 0 || b > a) {
+            return 0;
+        }
+
+        b = Math.min(b, a - b);
+        long c = 1;
+
+        for (int i = 0; i < b; i++) {
+            if (c > Long.MAX_VALUE / (a - i)) {
+                throw new IllegalArgumentException("Too many combinations: " + a + " choose " + b);
+            }
+
+            c = c * (a - i) / (i + 1);
+        }
+
+        return c;
+    }
+
+    /**
+     * @return the rank of the given combination of a choose choice.length in the order of ChoiceGenerator.
+     */
+    public static long rank(int a, int[] choice) {
+        long rank = 0;
+        int v = 0;
+
+        for (int i = 0; i < choice.length; i++) {
+            for (; v < choice[i]; v++) {
+                rank += choose(a - v - 1, choice.length - i - 1);
+            }
+
+            v++;
+        }
+
+        return rank;
+    }
+
+    /**
+     * Finds the first combination in the range, in rank order, that satisfies the condition, dividing the range
+     * among tasks on the ForkJoin pool of about grain combinations each. Once a combination is found, tasks stop as
+     * soon as they have passed its rank, so the answer is the one a sequential scan would give. The condition is
+     * called from several threads at once.
+     *
+     * @return the combination found, in a new array, or null if there is none.
+     */
+    public static int[] findFirst(ChoiceRange range, Condition condition, int grain) {
+        AtomicLong found = new AtomicLong(Long.MAX_VALUE);
+        FindTask task = new FindTask(range, condition, Math.max(1, grain), found);
+
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(task);
+        }
+
+        return found.get() == Long.MAX_VALUE ? null : range.get(found.get());
+    }
+
+    /**
+     * A condition on combinations for findFirst.
+     */
+    public interface Condition {
+        boolean holds(int[] choice);
+    }
+
+    //==============================PRIVATE METHODS======================//
+
+    /**
+     * Sets the choice to the combination of the given rank.
+     */
+    private void unrank(long rank) {
+        int b = minB;
+
+        for (; b < maxB; b++) {
+            long count = choose(a, b);
+            if (rank < count) break;
+            rank -= count;
+        }
+
+        int[] choice = choices[b];
+        int v = 0;
+
+        for (int i = 0; i < b; i++) {
+            long count;
+
+            while (rank >= (count = choose(a - v - 1, b - i - 1))) {
+                rank -= count;
+                v++;
+            }
+
+            choice[i] = v++;
+        }
+
+        this.choice = choice;
+        this.b = b;
+    }
+
+    /**
+     * Advances the choice to the next combination of the same size, as ChoiceGenerator does.
+     *
+     * @return false if the choice was the last of its size.
+     */
+    private boolean successor() {
+        int diff = a - b;
+        int i = b;
+
+        while (--i > -1) {
+            if (choice[i] < i + diff) {
+                choice[i]++;
+
+                for (int j = i + 1; j < b; j++) {
+                    choice[j] = choice[j - 1] + 1;
+                }
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static class FindTask extends RecursiveAction {
+        private final ChoiceRange range;
+        private final Condition condition;
+        private final int grain;
+        private final AtomicLong found;
+
+        FindTask(ChoiceRange range, Condition condition, int grain, AtomicLong found) {
+            this.range = range;
+            this.condition = condition;
+            this.grain = grain;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (range.size() > grain) {
+                List<FindTask> tasks = new ArrayList<>();
+                ChoiceRange rest = new ChoiceRange(range.a, range.minB, range.maxB, range.rank, range.to);
+
+                while (rest.size() > grain) {
+                    ChoiceRange first = rest.trySplit();
+                    tasks.add(new FindTask(rest, condition, grain, found));
+                    rest = first;
+                }
+
+                tasks.add(new FindTask(rest, condition, grain, found));
+                invokeAll(tasks);
+                return;
+            }
+
+            int[] choice;
+
+            while (range.rank < found.get() && (choice = range.next()) != null) {
+                if (condition.holds(choice)) {
+                    long rank = range.rank - 1;
+                    long current;
+
+                    while (rank < (current = found.get()) && !found.compareAndSet(current, rank)) {
+                        // Retry.
+                    }
+
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import org.apache.commons.math3.random.AbstractRandomGenerator;
+
+/**
+ * A fast, unsynchronized random number generator (SplitMix64) that can be split into any number of child streams,
+ * each determined by the seed of its parent and its own index. Parallel code can give each task (or each row, or each
+ * resample) the child stream of its index, so that the numbers drawn do not depend on how the work is divided among
+ * threads or on the order in which tasks run, and results are the same from run to run for the same root seed.
+ * <p>
+ * A root stream is usually made with fromRandomUtil(), which takes its seed from RandomUtil, so that setting the seed
+ * of RandomUtil makes parallel simulations reproducible as well. Since this is a RandomGenerator, it can also be used
+ * with the Apache distributions.
+ * <p>
+ * A stream should not be shared between threads; split it instead.
+ */
+public final class RandomStream extends AbstractRandomGenerator {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * The seed the stream was made with, from which its children are derived.
+     */
+    private long seed;
+
+    /**
+     * The current state.
+     */
+    private long state;
+
+    /**
+     * A second normal deviate from the last pair generated, if there is one.
+     */
+    private double nextNormal;
+    private boolean haveNextNormal = false;
+
+    //========================================CONSTRUCTORS===================================//
+
+    public RandomStream(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * @return a root stream seeded from RandomUtil.
+     */
+    public static RandomStream fromRandomUtil() {
+        return new RandomStream(RandomUtil.getInstance().nextLong());
+    }
+
+    //=======================================PUBLIC METHODS=================================//
+
+    /**
+     * @return the child stream with the given index. The child depends only on the seed of this stream and the index,
+     * not on how many numbers have been drawn from this stream, and different indices give independent streams.
+     */
+    public RandomStream split(long index) {
+        return new RandomStream(mix64(mix64(seed ^ 0x632be59bd9b4e019L) + (index + 1) * GOLDEN_GAMMA));
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.state = seed;
+        this.haveNextNormal = false;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * @return an integer uniformly distributed in [0, n).
+     */
+    @Override
+    public int nextInt(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Bound must be positive: " + n);
+        }
+
+        int r = (int) (nextLong() >>> 33);
+        int m = n - 1;
+
+        if ((n & m) == 0) {
+            return (int) ((n * (long) r) >> 31);
+        }
+
+        for (int u = r; u - (r = u % n) + m < 0; u = (int) (nextLong() >>> 33)) {
+            // Reject values from the incomplete last interval.
+        }
+
+        return r;
+    }
+
+    /**
+     * @return a double uniformly distributed in [0, 1).
+     */
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return a standard normal deviate, by the polar method.
+     */
+    @Override
+    public double nextGaussian() {
+        if (haveNextNormal) {
+            haveNextNormal = false;
+            return nextNormal;
+        }
+
+        double v1, v2, s;
+
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+
+        double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+        nextNormal = v2 * multiplier;
+        haveNextNormal = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * Fills a[from..to) with normal deviates with the given mean and standard deviation.
+     */
+    public void fillNormal(double[] a, int from, int to, double mean, double sd) {
+        for (int i = from; i < to; i++) {
+            a[i] = mean + sd * nextGaussian();
+        }
+    }
+
+    /**
+     * Fills a[from..to) with values uniformly distributed in [low, high).
+     */
+    public void fillUniform(double[] a, int from, int to, double low, double high) {
+        double range = high - low;
+
+        for (int i = from; i < to; i++) {
+            a[i] = low + range * nextDouble();
+        }
+    }
+
+    //=======================================PRIVATE METHODS=================================//
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
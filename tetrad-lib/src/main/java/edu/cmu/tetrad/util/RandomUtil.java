@@ -101,6 +101,10 @@ public class RandomUtil {
         return randomGenerator.nextDouble();
     }
 
+    public long nextLong() {
+        return randomGenerator.nextLong();
+    }
+
     /**
      * @param low  Ibid.
      * @param high Ibid.
@@ -32,6 +32,7 @@ import edu.cmu.tetrad.search.GraphSearch;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.sem.GeneralizedSemIm;
 import edu.cmu.tetrad.sem.GeneralizedSemPm;
 import edu.cmu.tetrad.util.StatUtils;
@@ -67,6 +68,9 @@ public class MGM extends ConvexProximal implements GraphSearch{
     //Discrete Data coded as integers, no IntMatrix2D apparently...
     private DoubleMatrix2D yDat;
 
+    //X'X of the standardized continuous data, when built from a covariance matrix instead of data
+    private double[][] gram;
+
     private List<Node> variables;
     private List<Node> initVariables = null;
 
@@ -90,6 +94,11 @@ public class MGM extends ConvexProximal implements GraphSearch{
     //parameter weights
     private DoubleMatrix1D weights;
 
+    //primitive-array likelihood and its buffers, built on first use
+    private MGMLikelihood likelihood;
+    private double[] parBuffer;
+    private double[] gradBuffer;
+
     public MGM(DoubleMatrix2D x, DoubleMatrix2D y, List<Node> variables, int[] l, double[] lambda){
 
         if(l.length != y.columns())
@@ -146,6 +155,41 @@ public class MGM extends ConvexProximal implements GraphSearch{
         makeDummy();
     }
 
+    /**
+     * Builds a model over continuous variables only from their covariance matrix. Without discrete
+     * variables the pseudolikelihood depends on the standardized data only through its correlations, so
+     * this gives the same fit as the constructor taking the data set.
+     */
+    public MGM(ICovarianceMatrix cov, double[] lambda){
+        //lambda should have 3 values corresponding to cc, cd, and dd
+        if(lambda.length != 3)
+            throw new IllegalArgumentException("Lambda should have three values for cc, cd, and dd edges respectively");
+
+        for(Node node : cov.getVariables()){
+            if(!(node instanceof ContinuousVariable))
+                throw new IllegalArgumentException("Covariance matrix has a non-continuous variable: " + node);
+        }
+
+        this.variables = new ArrayList<Node>(cov.getVariables());
+        this.initVariables = cov.getVariables();
+        this.l = new int[0];
+        this.p = variables.size();
+        this.q = 0;
+        this.n = cov.getSampleSize();
+        this.lambda = factory1D.make(lambda);
+
+        //X'X of the z-scored data is (n - 1) times the correlation matrix
+        this.gram = new double[p][p];
+        for(int i = 0; i < p; i++){
+            for(int j = 0; j < p; j++){
+                gram[i][j] = (n - 1) * cov.getValue(i, j) / Math.sqrt(cov.getValue(i, i) * cov.getValue(j, j));
+            }
+        }
+
+        initParameters();
+        calcWeights();
+    }
+
     public static class MGMParams{
         //Model parameters
         private DoubleMatrix2D beta; //continuous-continuous
@@ -318,11 +362,11 @@ public class MGM extends ConvexProximal implements GraphSearch{
         lsum = lcumsum[l.length];
 
         //LH init to zeros, maybe should be random init?
-        DoubleMatrix2D beta = factory2D.make(xDat.columns(), xDat.columns()); //continuous-continuous
-        DoubleMatrix1D betad = factory1D.make(xDat.columns(), 1.0); //cont squared node pot
-        DoubleMatrix2D  theta = factory2D.make(lsum, xDat.columns());; //continuous-discrete
+        DoubleMatrix2D beta = factory2D.make(p, p); //continuous-continuous
+        DoubleMatrix1D betad = factory1D.make(p, 1.0); //cont squared node pot
+        DoubleMatrix2D  theta = factory2D.make(lsum, p);; //continuous-discrete
         DoubleMatrix2D phi = factory2D.make(lsum, lsum); //discrete-discrete
-        DoubleMatrix1D alpha1 = factory1D.make(xDat.columns()); //cont linear node pot
+        DoubleMatrix1D alpha1 = factory1D.make(p); //cont linear node pot
         DoubleMatrix1D alpha2 = factory1D.make(lsum); //disc node potbeta =
         params = new MGMParams(beta, betad, theta, phi, alpha1, alpha2);
 
@@ -341,7 +385,8 @@ public class MGM extends ConvexProximal implements GraphSearch{
     private void calcWeights(){
         weights = factory1D.make(p+q);
         for(int i = 0; i < p; i++){
-            weights.set(i, StatUtils.sd(xDat.viewColumn(i).toArray()));
+            //the standardized data have unit standard deviation
+            weights.set(i, xDat == null ? 1.0 : StatUtils.sd(xDat.viewColumn(i).toArray()));
         }
         for(int j = 0; j < q; j++){
             double curWeight = 0;
@@ -372,12 +417,14 @@ public class MGM extends ConvexProximal implements GraphSearch{
      * checks if yDat is zero indexed and converts to 1 index. zscores x
      */
     private void fixData(){
-        double ymin = StatUtils.min(flatten(yDat).toArray());
-        if(ymin < 0 || ymin > 1)
-            throw new IllegalArgumentException("Discrete data must be either zero or one indexed. Found min index: " + ymin);
+        if(q > 0){
+            double ymin = StatUtils.min(flatten(yDat).toArray());
+            if(ymin < 0 || ymin > 1)
+                throw new IllegalArgumentException("Discrete data must be either zero or one indexed. Found min index: " + ymin);
 
-        if(ymin==0){
-            yDat.assign(Functions.plus(1.0));
+            if(ymin==0){
+                yDat.assign(Functions.plus(1.0));
+            }
         }
 
 
@@ -394,79 +441,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
      * @return
      */
     public double smoothValue(DoubleMatrix1D parIn){
-        //work with copy
-        MGMParams par = new MGMParams(parIn, p, lsum);
-
-        for(int i = 0; i < par.betad.size(); i++){
-            if(par.betad.get(i)<0)
-                return Double.POSITIVE_INFINITY;
-        }
-        //double nll = 0;
-        //int n = xDat.rows();
-        //beta=beta+beta';
-        //phi=phi+phi';
-        upperTri(par.beta, 1);
-        par.beta.assign(alg.transpose(par.beta), Functions.plus);
-
-        for(int i = 0; i < q; i++){
-            par.phi.viewPart(lcumsum[i], lcumsum[i], l[i], l[i]).assign(0);
-        }
-        // ensure mats are upper triangular
-        upperTri(par.phi,0);
-        par.phi.assign(alg.transpose(par.phi), Functions.plus);
-
-
-        //Xbeta=X*beta*diag(1./betad);
-        DoubleMatrix2D divBetaD = factory2D.diagonal(factory1D.make(p,1.0).assign(par.betad, Functions.div));
-        DoubleMatrix2D xBeta = alg.mult(xDat,alg.mult(par.beta, divBetaD));
-
-        //Dtheta=D*theta*diag(1./betad);
-        DoubleMatrix2D dTheta = alg.mult(alg.mult(dDat, par.theta), divBetaD);
-
-        // Squared loss
-        //sqloss=-n/2*sum(log(betad))+...
-        //.5*norm((X-e*alpha1'-Xbeta-Dtheta)*diag(sqrt(betad)),'fro')^2;
-        DoubleMatrix2D tempLoss = factory2D.make(n, xDat.columns());
-
-        //wxprod=X*(theta')+D*phi+e*alpha2';
-        DoubleMatrix2D wxProd = alg.mult(xDat, alg.transpose(par.theta));
-        wxProd.assign(alg.mult(dDat, par.phi), Functions.plus);
-        for(int i = 0; i < n; i++){
-            for(int j = 0; j < xDat.columns(); j++){
-                tempLoss.set(i,j,xDat.get(i,j) - par.alpha1.get(j) - xBeta.get(i,j) - dTheta.get(i,j));
-            }
-            for(int j = 0; j < dDat.columns(); j++){
-                wxProd.set(i,j,wxProd.get(i,j) + par.alpha2.get(j));
-            }
-        }
-
-        double sqloss = -n/2.0*par.betad.copy().assign(Functions.log).zSum() +
-                .5 * Math.pow(alg.normF(alg.mult(tempLoss, factory2D.diagonal(par.betad.copy().assign(Functions.sqrt)))), 2);
-
-
-        // categorical loss
-        /*catloss=0;
-        wxprod=X*(theta')+D*phi+e*alpha2'; %this is n by Ltot
-        for r=1:q
-            wxtemp=wxprod(:,Lsum(r)+1:Lsum(r)+L(r));
-            denom= logsumexp(wxtemp,2); %this is n by 1
-            catloss=catloss-sum(wxtemp(sub2ind([n L(r)],(1:n)',Y(:,r))));
-            catloss=catloss+sum(denom);
-        end
-        */
-
-        double catloss = 0;
-        for(int i = 0; i < yDat.columns(); i++){
-            DoubleMatrix2D wxTemp = wxProd.viewPart(0, lcumsum[i], n, l[i]);
-            for(int k = 0; k < n; k++){
-                DoubleMatrix1D curRow = wxTemp.viewRow(k);
-
-                catloss -= curRow.get((int) yDat.get(k, i) - 1);
-                catloss += logsumexp(curRow);
-            }
-        }
-
-        return (sqloss + catloss)/((double) n);
+        return getLikelihood().compute(toBuffer(parIn), null);
     }
 
     /**
@@ -480,155 +455,58 @@ public class MGM extends ConvexProximal implements GraphSearch{
      * @return
      */
     public double smooth(DoubleMatrix1D parIn, DoubleMatrix1D gradOutVec){
-        //work with copy
-        MGMParams par = new MGMParams(parIn, p, lsum);
-        MGMParams gradOut = new MGMParams();
+        double nll = getLikelihood().compute(toBuffer(parIn), gradBuffer);
 
-        for(int i = 0; i < par.betad.size(); i++){
-            if(par.betad.get(i)<0)
-                return Double.POSITIVE_INFINITY;
+        if(nll != Double.POSITIVE_INFINITY){
+            gradOutVec.assign(gradBuffer);
         }
 
-        //beta=beta-diag(diag(beta));
-        //for r=1:q
-        //  phi(Lsum(r)+1:Lsum(r+1),Lsum(r)+1:Lsum(r+1))=0;
-        //end
-        //beta=triu(beta); phi=triu(phi);
-        //beta=beta+beta';
-        //phi=phi+phi';
-        upperTri(par.beta, 1);
-        par.beta.assign(alg.transpose(par.beta), Functions.plus);
+        return nll;
+    }
 
-        for(int i = 0; i < q; i++){
-            par.phi.viewPart(lcumsum[i], lcumsum[i], l[i], l[i]).assign(0);
-        }
-        //ensure matrix is upper triangular
-        upperTri(par.phi,0);
-        par.phi.assign(alg.transpose(par.phi), Functions.plus);
-
-        //Xbeta=X*beta*diag(1./betad);
-        DoubleMatrix2D divBetaD = factory2D.diagonal(factory1D.make(p,1.0).assign(par.betad, Functions.div));
-        DoubleMatrix2D xBeta = alg.mult(xDat,alg.mult(par.beta, divBetaD));
-
-        //Dtheta=D*theta*diag(1./betad);
-        DoubleMatrix2D dTheta = alg.mult(alg.mult(dDat, par.theta), divBetaD);
-
-        // Squared loss
-        //tempLoss =  (X-e*alpha1'-Xbeta-Dtheta) = -res (in gradient code)
-        DoubleMatrix2D tempLoss = factory2D.make(n, xDat.columns());
-
-        //wxprod=X*(theta')+D*phi+e*alpha2';
-        DoubleMatrix2D wxProd = alg.mult(xDat, alg.transpose(par.theta));
-        wxProd.assign(alg.mult(dDat, par.phi), Functions.plus);
-        for(int i = 0; i < n; i++){
-            for(int j = 0; j < xDat.columns(); j++){
-                tempLoss.set(i,j,xDat.get(i,j) - par.alpha1.get(j) - xBeta.get(i,j) - dTheta.get(i,j));
-            }
-            for(int j = 0; j < dDat.columns(); j++){
-                wxProd.set(i,j,wxProd.get(i,j) + par.alpha2.get(j));
+    /**
+     * Likelihood engine over primitive copies of the data; see MGMLikelihood.
+     */
+    private MGMLikelihood getLikelihood(){
+        if(likelihood == null && gram != null){
+            likelihood = new MGMLikelihood(gram, n);
+            parBuffer = new double[likelihood.getLength()];
+            gradBuffer = new double[likelihood.getLength()];
+        } else if(likelihood == null){
+            double[][] xCols = new double[p][n];
+            for(int j = 0; j < p; j++){
+                for(int i = 0; i < n; i++){
+                    xCols[j][i] = xDat.getQuick(i, j);
+                }
             }
-        }
-
-        //sqloss=-n/2*sum(log(betad))+...
-        //.5*norm((X-e*alpha1'-Xbeta-Dtheta)*diag(sqrt(betad)),'fro')^2;
-        double sqloss = -n/2.0*par.betad.copy().assign(Functions.log).zSum() +
-                .5 * Math.pow(alg.normF(alg.mult(tempLoss, factory2D.diagonal(par.betad.copy().assign(Functions.sqrt)))), 2);
-
-        //ok now tempLoss = res
-        tempLoss.assign(Functions.mult(-1));
-
-        //gradbeta=X'*(res);
-        gradOut.beta = alg.mult(alg.transpose(xDat), tempLoss);
-
-        //gradbeta=gradbeta-diag(diag(gradbeta)); % zero out diag
-        //gradbeta=tril(gradbeta)'+triu(gradbeta);
-        DoubleMatrix2D lowerBeta = alg.transpose(lowerTri(gradOut.beta.copy(), -1));
-        upperTri(gradOut.beta, 1).assign(lowerBeta, Functions.plus);
-
-        //gradalpha1=diag(betad)*sum(res,1)';
-        gradOut.alpha1 = alg.mult(factory2D.diagonal(par.betad),margSum(tempLoss, 1));
-
-        //gradtheta=D'*(res);
-        gradOut.theta = alg.mult(alg.transpose(dDat), tempLoss);
-
-        // categorical loss
-        /*catloss=0;
-        wxprod=X*(theta')+D*phi+e*alpha2'; %this is n by Ltot
-        for r=1:q
-            wxtemp=wxprod(:,Lsum(r)+1:Lsum(r)+L(r));
-            denom= logsumexp(wxtemp,2); %this is n by 1
-            catloss=catloss-sum(wxtemp(sub2ind([n L(r)],(1:n)',Y(:,r))));
-            catloss=catloss+sum(denom);
-        end
-        */
-
-        double catloss = 0;
-        for(int i = 0; i < yDat.columns(); i++){
-            DoubleMatrix2D wxTemp = wxProd.viewPart(0, lcumsum[i], n, l[i]);
-            //need to copy init values for calculating nll
-            DoubleMatrix2D wxTemp0 = wxTemp.copy();
-
-            // does this need to be done in log space??
-            wxTemp.assign(Functions.exp);
-            DoubleMatrix1D invDenom = factory1D.make(n,1.0).assign(margSum(wxTemp, 2), Functions.div);
-            wxTemp.assign(alg.mult(factory2D.diagonal(invDenom), wxTemp));
-            for(int k = 0; k < n; k++){
-                DoubleMatrix1D curRow = wxTemp.viewRow(k);
-                DoubleMatrix1D curRow0 = wxTemp0.viewRow(k);
-
-                catloss -= curRow0.get((int) yDat.get(k, i) - 1);
-                catloss += logsumexp(curRow0);
-
 
-                //wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))=wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))-1;
-                curRow.set((int) yDat.get(k,i)-1, curRow.get((int) yDat.get(k,i)-1) - 1);
+            int[][] yIdx = new int[q][n];
+            for(int j = 0; j < q; j++){
+                for(int i = 0; i < n; i++){
+                    yIdx[j][i] = lcumsum[j] + (int) yDat.getQuick(i, j) - 1;
+                }
             }
-        }
 
-        //gradalpha2=sum(wxprod,1)';
-        gradOut.alpha2 = margSum(wxProd,1);
+            likelihood = new MGMLikelihood(xCols, yIdx, l);
+            parBuffer = new double[likelihood.getLength()];
+            gradBuffer = new double[likelihood.getLength()];
+        }
 
-        //gradw=X'*wxprod;
-        DoubleMatrix2D gradW = alg.mult(alg.transpose(xDat), wxProd);
+        return likelihood;
+    }
 
-        //gradtheta=gradtheta+gradw';
-        gradOut.theta.assign(alg.transpose(gradW), Functions.plus);
+    //copies the parameter vector into the reusable buffer without allocating
+    private double[] toBuffer(DoubleMatrix1D parIn){
+        getLikelihood();
 
-        //gradphi=D'*wxprod;
-        gradOut.phi = alg.mult(alg.transpose(dDat), wxProd);
+        if(parIn.size() != parBuffer.length)
+            throw new IllegalArgumentException("Param vector dimension doesn't match: Found " + parIn.size() + " need " + parBuffer.length);
 
-        //zero out gradphi diagonal
-        //for r=1:q
-        //gradphi(Lsum(r)+1:Lsum(r+1),Lsum(r)+1:Lsum(r+1))=0;
-        //end
-        for(int i = 0; i < q; i++){
-            gradOut.phi.viewPart(lcumsum[i], lcumsum[i], l[i], l[i]).assign(0);
+        for(int i = 0; i < parBuffer.length; i++){
+            parBuffer[i] = parIn.getQuick(i);
         }
 
-        //gradphi=tril(gradphi)'+triu(gradphi);
-        DoubleMatrix2D lowerPhi = alg.transpose(lowerTri(gradOut.phi.copy(), 0));
-        upperTri(gradOut.phi, 0).assign(lowerPhi, Functions.plus);
-
-        /*
-        for s=1:p
-            gradbetad(s)=-n/(2*betad(s))+1/2*norm(res(:,s))^2-res(:,s)'*(Xbeta(:,s)+Dtheta(:,s));
-        end
-         */
-        gradOut.betad = factory1D.make(xDat.columns());
-        for(int i = 0; i < p; i++){
-            gradOut.betad.set(i, -n / (2.0 * par.betad.get(i)) + alg.norm2(tempLoss.viewColumn(i)) / 2.0 -
-                    alg.mult(tempLoss.viewColumn(i), xBeta.viewColumn(i).copy().assign(dTheta.viewColumn(i), Functions.plus)));
-        }
-
-        gradOut.alpha1.assign(Functions.div((double) n));
-        gradOut.alpha2.assign(Functions.div((double) n));
-        gradOut.betad.assign(Functions.div((double) n));
-        gradOut.beta.assign(Functions.div((double) n));
-        gradOut.theta.assign(Functions.div((double) n));
-        gradOut.phi.assign(Functions.div((double) n));
-
-        gradOutVec.assign(gradOut.toMatrix1D());
-        return (sqloss + catloss)/((double) n);
+        return parBuffer;
     }
 
     /**
@@ -707,127 +585,9 @@ public class MGM extends ConvexProximal implements GraphSearch{
      * @return
      */
     public DoubleMatrix1D smoothGradient(DoubleMatrix1D parIn){
-        int n = xDat.rows();
-        MGMParams grad = new MGMParams();
-
-        //
-        MGMParams par = new MGMParams(parIn, p, lsum);
-        upperTri(par.beta, 1);
-        par.beta.assign(alg.transpose(par.beta), Functions.plus);
-
-        for(int i = 0; i < q; i++){
-            par.phi.viewPart(lcumsum[i], lcumsum[i], l[i], l[i]).assign(0);
-        }
-        upperTri(par.phi, 0);
-        par.phi.assign(alg.transpose(par.phi), Functions.plus);
-
-        //Xbeta=X*beta*diag(1./betad);
-        //Dtheta=D*theta*diag(1./betad);
-        DoubleMatrix2D divBetaD = factory2D.diagonal(factory1D.make(p, 1.0).assign(par.betad, Functions.div));
-
-        DoubleMatrix2D xBeta = alg.mult(alg.mult(xDat, par.beta), divBetaD);
-        DoubleMatrix2D dTheta = alg.mult(alg.mult(dDat, par.theta), divBetaD);
-
-        //res=Xbeta-X+e*alpha1'+Dtheta;
-        DoubleMatrix2D negLoss = factory2D.make(n, xDat.columns());
-
-        //wxprod=X*(theta')+D*phi+e*alpha2';
-        DoubleMatrix2D wxProd = alg.mult(xDat, alg.transpose(par.theta));
-        wxProd.assign(alg.mult(dDat, par.phi), Functions.plus);
-        for(int i = 0; i < n; i++){
-            for(int j = 0; j < p; j++){
-                negLoss.set(i,j, xBeta.get(i,j) - xDat.get(i,j) + par.alpha1.get(j) + dTheta.get(i,j));
-            }
-            for(int j = 0; j < dDat.columns(); j++){
-                wxProd.set(i,j,wxProd.get(i,j) + par.alpha2.get(j));
-            }
-        }
-
-        //gradbeta=X'*(res);
-        grad.beta = alg.mult(alg.transpose(xDat), negLoss);
-
-        //gradbeta=gradbeta-diag(diag(gradbeta)); % zero out diag
-        //gradbeta=tril(gradbeta)'+triu(gradbeta);
-        DoubleMatrix2D lowerBeta = alg.transpose(lowerTri(grad.beta.copy(), -1));
-        upperTri(grad.beta, 1).assign(lowerBeta, Functions.plus);
-
-        //gradalpha1=diag(betad)*sum(res,1)';
-        grad.alpha1 = alg.mult(factory2D.diagonal(par.betad),margSum(negLoss, 1));
-
-        //gradtheta=D'*(res);
-        grad.theta = alg.mult(alg.transpose(dDat), negLoss);
-
-        /*
-        wxprod=X*(theta')+D*phi+e*alpha2'; %this is n by Ltot
-        Lsum=[0;cumsum(L)];
-        for r=1:q
-            idx=Lsum(r)+1:Lsum(r)+L(r);
-            wxtemp=wxprod(:,idx); %n by L(r)
-            denom=sum(exp(wxtemp),2); % this is n by 1
-            wxtemp=diag(sparse(1./denom))*exp(wxtemp);
-            wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))=wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))-1;
-            wxprod(:,idx)=wxtemp;
-        end
-        */
-
-        for(int i = 0; i < yDat.columns(); i++){
-            DoubleMatrix2D wxTemp = wxProd.viewPart(0, lcumsum[i], n, l[i]);
-
-            // does this need to be done in log space??
-            wxTemp.assign(Functions.exp);
-            DoubleMatrix1D invDenom = factory1D.make(n,1.0).assign(margSum(wxTemp, 2), Functions.div);
-            wxTemp.assign(alg.mult(factory2D.diagonal(invDenom), wxTemp));
-            for(int k = 0; k < n; k++){
-                DoubleMatrix1D curRow = wxTemp.viewRow(k);
-
-                //wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))=wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))-1;
-                curRow.set((int) yDat.get(k,i)-1, curRow.get((int) yDat.get(k,i)-1) - 1);
-            }
-        }
-
-        //gradalpha2=sum(wxprod,1)';
-        grad.alpha2 = margSum(wxProd,1);
-
-        //gradw=X'*wxprod;
-        DoubleMatrix2D gradW = alg.mult(alg.transpose(xDat), wxProd);
-
-        //gradtheta=gradtheta+gradw';
-        grad.theta.assign(alg.transpose(gradW), Functions.plus);
-
-        //gradphi=D'*wxprod;
-        grad.phi = alg.mult(alg.transpose(dDat), wxProd);
-
-        //zero out gradphi diagonal
-        //for r=1:q
-        //gradphi(Lsum(r)+1:Lsum(r+1),Lsum(r)+1:Lsum(r+1))=0;
-        //end
-        for(int i = 0; i < q; i++){
-            grad.phi.viewPart(lcumsum[i], lcumsum[i], l[i], l[i]).assign(0);
-        }
-
-        //gradphi=tril(gradphi)'+triu(gradphi);
-        DoubleMatrix2D lowerPhi = alg.transpose(lowerTri(grad.phi.copy(), 0));
-        upperTri(grad.phi, 0).assign(lowerPhi, Functions.plus);
-
-        /*
-        for s=1:p
-            gradbetad(s)=-n/(2*betad(s))+1/2*norm(res(:,s))^2-res(:,s)'*(Xbeta(:,s)+Dtheta(:,s));
-        end
-         */
-        grad.betad = factory1D.make(xDat.columns());
-        for(int i = 0; i < p; i++){
-            grad.betad.set(i, -n / (2.0 * par.betad.get(i)) + alg.norm2(negLoss.viewColumn(i)) / 2.0 -
-                    alg.mult(negLoss.viewColumn(i), xBeta.viewColumn(i).copy().assign(dTheta.viewColumn(i), Functions.plus)));
-        }
-
-        grad.alpha1.assign(Functions.div((double) n));
-        grad.alpha2.assign(Functions.div((double) n));
-        grad.betad.assign(Functions.div((double) n));
-        grad.beta.assign(Functions.div((double) n));
-        grad.theta.assign(Functions.div((double) n));
-        grad.phi.assign(Functions.div((double) n));
-
-        return grad.toMatrix1D();
+        double[] grad = new double[getLikelihood().getLength()];
+        likelihood.compute(toBuffer(parIn), grad);
+        return factory1D.make(grad);
     }
 
     /**
@@ -1189,6 +949,195 @@ public class MGM extends ConvexProximal implements GraphSearch{
         return graphFromMGM();
     }
 
+    /**
+     * Learns a graph for each lambda triple in turn, warm-starting each fit from the previous
+     * solution. Lambdas should be decreasing. Before each fit, edge groups are screened with the
+     * sequential strong rules (Tibshirani et al 2012) and the model is fit with the screened-out groups
+     * held at zero, so their gradients are never computed. The screened-out groups are then checked
+     * against the KKT conditions and the fit is repeated with any violators added back, so the result
+     * is a solution of the full problem.
+     *
+     * Each fit is solved to an objective tolerance of 1e-6 as in learn(double, int), not to edge
+     * convergence: a warm-started fit only agrees with a cold fit at the optimum, while edge convergence
+     * stops at a point that depends on where the fit started.
+     *
+     * @param lambdas array of [cc, cd, dd] lambda triples, largest first
+     * @return the graph learned at each lambda; the parameters of the last fit are kept
+     */
+    public List<Graph> searchPath(double[][] lambdas){
+        return searchPath(lambdas, 1e-6, 100000);
+    }
+
+    /**
+     * As searchPath(double[][]), solving each fit to the given tolerance, so that each graph is the one
+     * learn(epsilon, iterLimit) gives from a cold start at the same lambda.
+     *
+     * @param lambdas array of [cc, cd, dd] lambda triples, largest first
+     * @param epsilon tolerance in change of objective function
+     * @param iterLimit iteration limit for each fit
+     * @return the graph learned at each lambda; the parameters of the last fit are kept
+     */
+    public List<Graph> searchPath(double[][] lambdas, double epsilon, int iterLimit){
+        long startTime = System.currentTimeMillis();
+        MGMLikelihood lik = getLikelihood();
+        List<Graph> graphs = new ArrayList<Graph>();
+
+        double[] grad = new double[lik.getLength()];
+        double[] prevLambda = null;
+        boolean[][] active = {new boolean[p * p], new boolean[p * q], new boolean[q * q]};
+
+        try {
+            for (double[] lam : lambdas) {
+                if (lam.length != 3)
+                    throw new IllegalArgumentException("Lambda should have three values for cc, cd, and dd edges respectively");
+
+                double[] par = params.toMatrix1D().toArray();
+                lik.setActive(null, null, null);
+                lik.compute(par, grad);
+
+                //on the first step compare to the smallest lambda giving an empty graph
+                if (prevLambda == null) {
+                    prevLambda = new double[3];
+                    updateActive(par, grad, prevLambda, active, 2);
+                }
+
+                double[] cut = new double[3];
+                for (int t = 0; t < 3; t++) {
+                    cut[t] = 2 * lam[t] - prevLambda[t];
+                }
+
+                updateActive(par, grad, cut, active, 0);
+                this.lambda = factory1D.make(lam);
+
+                while (true) {
+                    lik.setActive(active[0], active[1], active[2]);
+                    setParams(new MGMParams(factory1D.make(par), p, lsum));
+                    learn(epsilon, iterLimit);
+
+                    par = params.toMatrix1D().toArray();
+                    lik.setActive(null, null, null);
+                    lik.compute(par, grad);
+
+                    if (updateActive(par, grad, lam, active, 1) == 0) break;
+                }
+
+                graphs.add(graphFromMGM());
+                prevLambda = lam;
+            }
+        } finally {
+            lik.setActive(null, null, null);
+        }
+
+        elapsedTime = System.currentTimeMillis() - startTime;
+        return graphs;
+    }
+
+    /**
+     * Sets the penalty weights [cc, cd, dd] for subsequent learning, leaving the current parameters
+     * in place as a warm start.
+     */
+    public void setLambda(double[] lambda){
+        if(lambda.length != 3)
+            throw new IllegalArgumentException("Lambda should have three values for cc, cd, and dd edges respectively");
+
+        this.lambda = factory1D.make(lambda);
+    }
+
+    /**
+     * Goes over the beta, theta and phi edge groups comparing the norm of each group's gradient (the
+     * spectral norm for phi blocks, matching the prox) to its
+     * weight times cut[type]. In mode 0 (strong rules) a group is active if it is nonzero or the norm is
+     * at least the cut; in mode 1 (KKT check) inactive groups exceeding the cut are activated; in mode 2
+     * cut is filled with the largest norm to weight ratio of each type. In par, inactive groups are
+     * zeroed.
+     *
+     * @return the number of groups activated in mode 1.
+     */
+    private int updateActive(double[] par, double[] grad, double[] cut, boolean[][] active, int mode){
+        int offTheta = p * p + p;
+        int offPhi = offTheta + p * lsum;
+        int changes = 0;
+
+        for (int g = 0; g < 3; g++) {
+            int numRows = g == 0 ? p : g == 1 ? p : q;
+            int numCols = g == 0 ? p : q;
+
+            for (int i = 0; i < numRows; i++) {
+                for (int j = g == 1 ? 0 : i + 1; j < numCols; j++) {
+                    double norm = 0;
+                    boolean nonZero = false;
+                    double w;
+
+                    if (g == 0) {
+                        int k = j * p + i;
+                        norm = Math.abs(grad[k]);
+                        nonZero = par[k] != 0;
+                        w = weights.get(i) * weights.get(j);
+                    } else if (g == 1) {
+                        for (int r = lcumsum[j]; r < lcumsum[j + 1]; r++) {
+                            int k = offTheta + i * lsum + r;
+                            norm += grad[k] * grad[k];
+                            nonZero |= par[k] != 0;
+                        }
+                        norm = Math.sqrt(norm);
+                        w = weights.get(i) * weights.get(p + j);
+                    } else {
+                        //the prox shrinks phi blocks by their spectral norm, so a zero block is optimal
+                        //exactly when the spectral norm of its gradient is within the cut
+                        DoubleMatrix2D block = factory2D.make(l[i], l[j]);
+                        for (int r = lcumsum[j]; r < lcumsum[j + 1]; r++) {
+                            for (int s = lcumsum[i]; s < lcumsum[i + 1]; s++) {
+                                int k = offPhi + r * lsum + s;
+                                block.set(s - lcumsum[i], r - lcumsum[j], grad[k]);
+                                nonZero |= par[k] != 0;
+                            }
+                        }
+                        norm = norm2(block);
+                        w = weights.get(p + i) * weights.get(p + j);
+                    }
+
+                    int index = i * numCols + j;
+
+                    if (mode == 0) {
+                        active[g][index] = nonZero || norm >= w * cut[g];
+                    } else if (mode == 1) {
+                        if (!active[g][index] && norm > w * cut[g]) {
+                            active[g][index] = true;
+                            changes++;
+                        }
+                    } else if (w > 0) {
+                        cut[g] = Math.max(cut[g], norm / w);
+                    }
+
+                    if (mode == 0 && !active[g][index]) {
+                        zeroGroup(par, g, i, j);
+                    }
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    private void zeroGroup(double[] par, int g, int i, int j){
+        int offTheta = p * p + p;
+        int offPhi = offTheta + p * lsum;
+
+        if (g == 0) {
+            par[j * p + i] = 0;
+        } else if (g == 1) {
+            for (int r = lcumsum[j]; r < lcumsum[j + 1]; r++) {
+                par[offTheta + i * lsum + r] = 0;
+            }
+        } else {
+            for (int r = lcumsum[j]; r < lcumsum[j + 1]; r++) {
+                for (int s = lcumsum[i]; s < lcumsum[i + 1]; s++) {
+                    par[offPhi + r * lsum + s] = 0;
+                }
+            }
+        }
+    }
+
     /**
      * Return time of execution for learning.
      * @return
@@ -0,0 +1,528 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.pitt.csb.mgm;
+
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Negative log pseudolikelihood of the MGM, and its gradient, computed on flat primitive arrays in
+ * buffers allocated once per model. This is the smooth function g(x) used by MGM in proximal gradient.
+ * Parameters and gradients use the flattened layout of MGM.MGMParams.toMatrix1D.
+ * <p>
+ * The work is split over the ForkJoin pool in two passes: one over rows, computing the continuous
+ * residuals and the categorical softmax residuals, and one over parameter columns, forming the cross
+ * products that make up the gradient. Zero entries of beta and theta are skipped in the first pass, and
+ * when an active set is given, gradients of inactive edge groups are neither computed nor reported
+ * (they are returned as zero), which is what lets MGM's path mode skip blocks screened out by the
+ * strong rules.
+ * <p>
+ * A model with no discrete variables can instead be built from the Gram matrix X'X of the standardized
+ * data, since its pseudolikelihood depends on the data only through those cross products; compute then
+ * costs nothing per row, which is what lets MGM run from a covariance matrix.
+ */
+class MGMLikelihood {
+    private final int n;
+    private final int p;
+    private final int q;
+    private final int lsum;
+    private final int[] l;
+    private final int[] lcumsum;
+
+    // offsets of each parameter block in the flattened parameter vector
+    private final int offBetad;
+    private final int offTheta;
+    private final int offPhi;
+    private final int offAlpha1;
+    private final int offAlpha2;
+    private final int length;
+
+    //continuous data by column, and discrete data as 0-based dummy column indices (lcumsum[v] + level)
+    private final double[][] xCols;
+    private final int[][] yIdx;
+
+    //X'X of the standardized continuous data, row major, if built from it rather than from rows
+    private final double[] gram;
+    private final double[] gramB;
+
+    //symmetrized parameters; beta and phi are p x p and lsum x lsum, theta is lsum x p, all row major
+    private final double[] beta;
+    private final double[] theta;
+    private final double[] phi;
+    private final int[] betaNz;
+    private final int[] betaNzCount;
+    private final int[] thetaNz;
+    private final int[] thetaNzCount;
+
+    //residuals of the continuous regressions and of the categorical softmaxes, by column
+    private final double[][] res;
+    private final double[][] catRes;
+
+    //active edge groups, or null if all are active
+    private boolean[] activeBeta;
+    private boolean[] activeTheta;
+    private boolean[] activePhi;
+
+    //rows per chunk of the row pass; fixed rather than tied to the pool size, so the chunk sums, and
+    //with them the fitted parameters, are the same on every machine
+    private static final int ROWS_PER_CHUNK = 128;
+
+    private final int numChunks;
+    private final double[][] wxScratch;
+    private final double[] valueParts;
+
+    MGMLikelihood(double[][] xCols, int[][] yIdx, int[] l) {
+        this(xCols, yIdx, l, null, numRows(xCols, yIdx));
+    }
+
+    /**
+     * A likelihood for continuous variables only, computed from gram = X'X, where X is the n x p
+     * standardized data (columns with mean zero).
+     */
+    MGMLikelihood(double[][] gram, int n) {
+        this(null, new int[0][], new int[0], gram, n);
+    }
+
+    private MGMLikelihood(double[][] xCols, int[][] yIdx, int[] l, double[][] gram, int n) {
+        this.xCols = xCols;
+        this.yIdx = yIdx;
+        this.l = l;
+        this.p = gram != null ? gram.length : xCols.length;
+        this.q = yIdx.length;
+        this.n = n;
+
+        lcumsum = new int[q + 1];
+        for (int v = 0; v < q; v++) lcumsum[v + 1] = lcumsum[v] + l[v];
+        lsum = lcumsum[q];
+
+        offBetad = p * p;
+        offTheta = offBetad + p;
+        offPhi = offTheta + p * lsum;
+        offAlpha1 = offPhi + lsum * lsum;
+        offAlpha2 = offAlpha1 + p;
+        length = offAlpha2 + lsum;
+
+        beta = new double[p * p];
+        theta = new double[lsum * p];
+        phi = new double[lsum * lsum];
+        betaNz = new int[p * p];
+        betaNzCount = new int[p];
+        thetaNz = new int[lsum * p];
+        thetaNzCount = new int[lsum];
+
+        if (gram != null) {
+            this.gram = new double[p * p];
+            this.gramB = new double[p * p];
+
+            for (int j = 0; j < p; j++) {
+                System.arraycopy(gram[j], 0, this.gram, j * p, p);
+            }
+
+            res = null;
+            catRes = new double[0][];
+            numChunks = 1;
+        } else {
+            this.gram = null;
+            this.gramB = null;
+            res = new double[p][n];
+            catRes = new double[lsum][n];
+            numChunks = Math.max(1, (n + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK);
+        }
+
+        wxScratch = new double[numChunks][lsum];
+        valueParts = new double[numChunks];
+    }
+
+    private static int numRows(double[][] xCols, int[][] yIdx) {
+        return xCols.length > 0 ? xCols[0].length : yIdx[0].length;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Restricts gradient computation to the given edge groups. activeBeta is p x p (only i < j is
+     * used), activeTheta is p x q (continuous by discrete variable) and activePhi is q x q (only
+     * i < j is used). Null arguments make every group active.
+     */
+    void setActive(boolean[] activeBeta, boolean[] activeTheta, boolean[] activePhi) {
+        this.activeBeta = activeBeta;
+        this.activeTheta = activeTheta;
+        this.activePhi = activePhi;
+    }
+
+    /**
+     * @param par  flattened parameters.
+     * @param grad if not null, receives the flattened gradient.
+     * @return the negative log pseudolikelihood divided by n, or infinity if some betad is negative.
+     */
+    double compute(double[] par, final double[] grad) {
+        for (int j = 0; j < p; j++) {
+            if (par[offBetad + j] < 0) return Double.POSITIVE_INFINITY;
+        }
+
+        unpack(par);
+
+        if (gram != null) return computeFromGram(par, grad);
+
+        //first pass, over rows
+        new RowTask(0, numChunks, par).invokeOnPool();
+
+        double value = 0.0;
+        for (int c = 0; c < numChunks; c++) value += valueParts[c];
+
+        double logBetad = 0.0;
+        for (int j = 0; j < p; j++) logBetad += Math.log(par[offBetad + j]);
+        value += -n / 2.0 * logBetad;
+
+        if (grad != null) {
+            java.util.Arrays.fill(grad, 0.0);
+
+            //second pass, over columns: continuous variables then discrete variables
+            new ColumnTask(0, p + q, par, grad).invokeOnPool();
+
+            for (int k = 0; k < length; k++) grad[k] /= n;
+        }
+
+        return value / n;
+    }
+
+    //=================================PRIVATE METHODS===============================//
+
+    //beta=triu(beta,1)+triu(beta,1)'; phi=triu(phi)+triu(phi)' with the within-variable blocks zeroed
+    private void unpack(double[] par) {
+        for (int j = 0; j < p; j++) {
+            int count = 0;
+
+            for (int k = 0; k < p; k++) {
+                double b = k < j ? par[j * p + k] : k > j ? par[k * p + j] : 0.0;
+                beta[k * p + j] = b;
+                if (b != 0) betaNz[j * p + count++] = k;
+            }
+
+            betaNzCount[j] = count;
+        }
+
+        for (int r = 0; r < lsum; r++) {
+            int count = 0;
+
+            for (int j = 0; j < p; j++) {
+                double t = par[offTheta + j * lsum + r];
+                theta[r * p + j] = t;
+                if (t != 0) thetaNz[r * p + count++] = j;
+            }
+
+            thetaNzCount[r] = count;
+        }
+
+        for (int v = 0; v < q; v++) {
+            for (int s = lcumsum[v]; s < lcumsum[v + 1]; s++) {
+                for (int r = 0; r < lsum; r++) {
+                    double f;
+
+                    if (r >= lcumsum[v] && r < lcumsum[v + 1]) {
+                        f = 0.0;
+                    } else if (s < r) {
+                        f = par[offPhi + r * lsum + s];
+                    } else {
+                        f = par[offPhi + s * lsum + r];
+                    }
+
+                    phi[s * lsum + r] = f;
+                }
+            }
+        }
+    }
+
+    //with X standardized and res_j=X*b_j+alpha1_j, where b_j=beta(:,j)/betad_j-e_j, every sum over rows
+    //reduces to the quadratic forms of X'X: res_j'*res_j=b_j'*X'X*b_j+n*alpha1_j^2, X'*res_j=X'X*b_j and
+    //sum(res_j)=n*alpha1_j
+    private double computeFromGram(double[] par, double[] grad) {
+        double value = 0.0;
+        double[] sumSq = new double[p];
+
+        for (int j = 0; j < p; j++) {
+            double betad = par[offBetad + j];
+            int offset = j * p;
+
+            //gramB(j,:)=X'X*b_j
+            for (int k = 0; k < p; k++) {
+                gramB[offset + k] = -gram[k * p + j];
+            }
+
+            for (int c = 0; c < betaNzCount[j]; c++) {
+                int m = betaNz[offset + c];
+                double b = beta[m * p + j] / betad;
+
+                for (int k = 0; k < p; k++) {
+                    gramB[offset + k] += gram[k * p + m] * b;
+                }
+            }
+
+            double bGb = -gramB[offset + j];
+
+            for (int c = 0; c < betaNzCount[j]; c++) {
+                int m = betaNz[offset + c];
+                bGb += beta[m * p + j] / betad * gramB[offset + m];
+            }
+
+            double alpha1 = par[offAlpha1 + j];
+            sumSq[j] = bGb + n * alpha1 * alpha1;
+            value += .5 * betad * sumSq[j] - n / 2.0 * Math.log(betad);
+        }
+
+        if (grad != null) {
+            java.util.Arrays.fill(grad, 0.0);
+
+            for (int j = 0; j < p; j++) {
+                for (int k = 0; k < j; k++) {
+                    if (activeBeta != null && !activeBeta[k * p + j]) continue;
+                    grad[j * p + k] = gramB[j * p + k] + gramB[k * p + j];
+                }
+
+                double betad = par[offBetad + j];
+                double alpha1 = par[offAlpha1 + j];
+                grad[offAlpha1 + j] = betad * n * alpha1;
+                grad[offBetad + j] = -n / (2.0 * betad) - .5 * sumSq[j] - gramB[j * p + j] + alpha1 * n * alpha1;
+            }
+
+            for (int k = 0; k < length; k++) grad[k] /= n;
+        }
+
+        return value / n;
+    }
+
+    private void rows(int chunk, double[] par) {
+        int from = (int) ((long) n * chunk / numChunks);
+        int to = (int) ((long) n * (chunk + 1) / numChunks);
+        double[] wx = wxScratch[chunk];
+        double value = 0.0;
+
+        for (int i = from; i < to; i++) {
+
+            //res=Xbeta-X+e*alpha1'+Dtheta, with Xbeta=X*beta*diag(1./betad), Dtheta=D*theta*diag(1./betad)
+            for (int j = 0; j < p; j++) {
+                double s = 0.0;
+                int offset = j * p;
+
+                for (int c = 0; c < betaNzCount[j]; c++) {
+                    int k = betaNz[offset + c];
+                    s += xCols[k][i] * beta[k * p + j];
+                }
+
+                for (int v = 0; v < q; v++) {
+                    s += theta[yIdx[v][i] * p + j];
+                }
+
+                double betad = par[offBetad + j];
+                double r = s / betad - xCols[j][i] + par[offAlpha1 + j];
+                res[j][i] = r;
+                value += .5 * betad * r * r;
+            }
+
+            //wxprod=X*(theta')+D*phi+e*alpha2'
+            for (int r = 0; r < lsum; r++) {
+                double s = par[offAlpha2 + r];
+                int offset = r * p;
+
+                for (int c = 0; c < thetaNzCount[r]; c++) {
+                    int j = thetaNz[offset + c];
+                    s += xCols[j][i] * theta[offset + j];
+                }
+
+                for (int v = 0; v < q; v++) {
+                    s += phi[yIdx[v][i] * lsum + r];
+                }
+
+                wx[r] = s;
+            }
+
+            //catloss=catloss-wxtemp(y)+logsumexp(wxtemp); wxtemp=softmax(wxtemp)-1(y)
+            for (int v = 0; v < q; v++) {
+                int start = lcumsum[v];
+                int end = lcumsum[v + 1];
+                int y = yIdx[v][i];
+
+                double max = Double.NEGATIVE_INFINITY;
+                for (int r = start; r < end; r++) max = Math.max(max, wx[r]);
+
+                double sum = 0.0;
+                for (int r = start; r < end; r++) sum += Math.exp(wx[r] - max);
+
+                value += Math.log(sum) + max - wx[y];
+
+                for (int r = start; r < end; r++) {
+                    catRes[r][i] = Math.exp(wx[r] - max) / sum - (r == y ? 1.0 : 0.0);
+                }
+            }
+        }
+
+        valueParts[chunk] = value;
+    }
+
+    //gradients for continuous variable j, or for discrete variable j - p
+    private void column(int j, double[] par, double[] grad) {
+        if (j < p) {
+            double[] rj = res[j];
+            double[] xj = xCols[j];
+
+            //gradbeta=X'*res, folded onto the upper triangle
+            for (int k = 0; k < j; k++) {
+                if (activeBeta != null && !activeBeta[k * p + j]) continue;
+
+                double[] rk = res[k];
+                double[] xk = xCols[k];
+                double s = 0.0;
+
+                for (int i = 0; i < n; i++) {
+                    s += xk[i] * rj[i] + xj[i] * rk[i];
+                }
+
+                grad[j * p + k] = s;
+            }
+
+            //gradalpha1=diag(betad)*sum(res,1)'
+            //gradbetad=-n/(2*betad)+1/2*norm(res)^2-res'*(Xbeta+Dtheta), with Xbeta+Dtheta=res+X-alpha1
+            double sum = 0.0, sumSq = 0.0, sumX = 0.0;
+
+            for (int i = 0; i < n; i++) {
+                sum += rj[i];
+                sumSq += rj[i] * rj[i];
+                sumX += rj[i] * xj[i];
+            }
+
+            double betad = par[offBetad + j];
+            grad[offAlpha1 + j] = betad * sum;
+            grad[offBetad + j] = -n / (2.0 * betad) - .5 * sumSq - sumX + par[offAlpha1 + j] * sum;
+
+            //gradtheta=D'*res+(X'*wxprod)'
+            for (int v = 0; v < q; v++) {
+                if (activeTheta != null && !activeTheta[j * q + v]) continue;
+
+                int[] y = yIdx[v];
+
+                for (int i = 0; i < n; i++) {
+                    grad[offTheta + j * lsum + y[i]] += rj[i];
+                }
+
+                for (int r = lcumsum[v]; r < lcumsum[v + 1]; r++) {
+                    double[] cr = catRes[r];
+                    double s = 0.0;
+
+                    for (int i = 0; i < n; i++) {
+                        s += xj[i] * cr[i];
+                    }
+
+                    grad[offTheta + j * lsum + r] += s;
+                }
+            }
+        } else {
+            int v = j - p;
+
+            //gradalpha2=sum(wxprod,1)'
+            for (int r = lcumsum[v]; r < lcumsum[v + 1]; r++) {
+                double[] cr = catRes[r];
+                double s = 0.0;
+                for (int i = 0; i < n; i++) s += cr[i];
+                grad[offAlpha2 + r] = s;
+            }
+
+            //gradphi=D'*wxprod, zero within-variable blocks, folded onto the upper triangle
+            int[] yv = yIdx[v];
+
+            for (int u = 0; u < v; u++) {
+                if (activePhi != null && !activePhi[u * q + v]) continue;
+
+                int[] yu = yIdx[u];
+
+                for (int i = 0; i < n; i++) {
+                    int s = yu[i];
+                    int t = yv[i];
+
+                    for (int r = lcumsum[v]; r < lcumsum[v + 1]; r++) {
+                        grad[offPhi + r * lsum + s] += catRes[r][i];
+                    }
+
+                    for (int r = lcumsum[u]; r < lcumsum[u + 1]; r++) {
+                        grad[offPhi + t * lsum + r] += catRes[r][i];
+                    }
+                }
+            }
+        }
+    }
+
+    private class RowTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final double[] par;
+
+        RowTask(int from, int to, double[] par) {
+            this.from = from;
+            this.to = to;
+            this.par = par;
+        }
+
+        void invokeOnPool() {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(this);
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int c = from; c < to; c++) rows(c, par);
+            } else {
+                int mid = (to + from) / 2;
+                invokeAll(new RowTask(from, mid, par), new RowTask(mid, to, par));
+            }
+        }
+    }
+
+    private class ColumnTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final double[] par;
+        private final double[] grad;
+
+        ColumnTask(int from, int to, double[] par, double[] grad) {
+            this.from = from;
+            this.to = to;
+            this.par = par;
+            this.grad = grad;
+        }
+
+        void invokeOnPool() {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(this);
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int j = from; j < to; j++) column(j, par, grad);
+            } else {
+                int mid = (to + from) / 2;
+                invokeAll(new ColumnTask(from, mid, par, grad), new ColumnTask(mid, to, par, grad));
+            }
+        }
+    }
+}
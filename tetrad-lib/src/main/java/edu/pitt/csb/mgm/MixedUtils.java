@@ -570,7 +570,7 @@ public class MixedUtils {
         for(int i =0; i < a.length; i++){
             l.add(i, a[i]);
         }
-        Collections.shuffle(l);
+        shuffle(l);
         for(int i =0; i < a.length; i++){
             out[i] = l.get(i);
         }
@@ -584,13 +584,24 @@ public class MixedUtils {
         for(int i =0; i < a.length; i++){
             l.add(i, a[i]);
         }
-        Collections.shuffle(l);
+        shuffle(l);
         for(int i =0; i < a.length; i++){
             out[i] = l.get(i);
         }
         return out;
     }
 
+    //shuffles with RandomUtil rather than Collections.shuffle's own unseeded generator, so permutations
+    //repeat with the RandomUtil seed
+    private static <T> void shuffle(List<T> l){
+        for(int i = l.size() - 1; i > 0; i--){
+            int j = RandomUtil.getInstance().nextInt(i + 1);
+            T t = l.get(i);
+            l.set(i, l.get(j));
+            l.set(j, t);
+        }
+    }
+
     //generates a vector of length L that starts with -w and increases with consistent steps to w
     public static double[] evenSplitVector(double w, int L){
         double[] vec = new double[L];
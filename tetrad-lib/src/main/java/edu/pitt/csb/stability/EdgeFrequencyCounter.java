@@ -0,0 +1,132 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.pitt.csb.stability;
+
+import cern.colt.matrix.DoubleFactory2D;
+import cern.colt.matrix.DoubleMatrix2D;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Thread-safe, streaming counter of how often each (undirected) adjacency appears over a series of
+ * searches. Counts are kept in a packed upper triangle, so memory is p(p-1)/2 ints no matter how many
+ * graphs are added, and graphs may be added concurrently from any number of search threads without
+ * holding a dense matrix per run.
+ */
+public class EdgeFrequencyCounter {
+    private final List<Node> variables;
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final AtomicIntegerArray counts;
+    private final AtomicInteger numGraphs = new AtomicInteger(0);
+
+    public EdgeFrequencyCounter(List<Node> variables) {
+        this.variables = variables;
+
+        for (int i = 0; i < variables.size(); i++) {
+            indices.put(variables.get(i).getName(), i);
+        }
+
+        int p = variables.size();
+        this.counts = new AtomicIntegerArray(p * (p - 1) / 2);
+    }
+
+    /**
+     * Records the adjacencies of the given graph. Nodes are matched to variables by name; edges
+     * touching nodes that are not among the variables are ignored.
+     */
+    public void add(Graph graph) {
+        for (Edge edge : graph.getEdges()) {
+            Integer i = indices.get(edge.getNode1().getName());
+            Integer j = indices.get(edge.getNode2().getName());
+
+            if (i == null || j == null || i.equals(j)) continue;
+
+            counts.incrementAndGet(index(i, j));
+        }
+
+        numGraphs.incrementAndGet();
+    }
+
+    /**
+     * @return the number of graphs in which the adjacency i--j appeared.
+     */
+    public int getCount(int i, int j) {
+        if (i == j) return 0;
+        return counts.get(index(i, j));
+    }
+
+    /**
+     * @return the number of graphs added so far.
+     */
+    public int getNumGraphs() {
+        return numGraphs.get();
+    }
+
+    /**
+     * @return the fraction of graphs in which the adjacency i--j appeared.
+     */
+    public double getFrequency(int i, int j) {
+        int n = numGraphs.get();
+        return n == 0 ? 0.0 : getCount(i, j) / (double) n;
+    }
+
+    /**
+     * @return a symmetric matrix of edge frequencies, in the same form as returned by
+     * StabilityUtils.StabilitySearch.
+     */
+    public DoubleMatrix2D getFrequencies() {
+        int p = variables.size();
+        DoubleMatrix2D freqs = DoubleFactory2D.dense.make(p, p, 0.0);
+
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                double f = getFrequency(i, j);
+                freqs.set(i, j, f);
+                freqs.set(j, i, f);
+            }
+        }
+
+        return freqs;
+    }
+
+    public List<Node> getVariables() {
+        return variables;
+    }
+
+    //index into the packed strict upper triangle
+    private int index(int i, int j) {
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+
+        return j * (j - 1) / 2 + i;
+    }
+}
@@ -0,0 +1,233 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.pitt.csb.stability;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Partial sums and cross products of a continuous data set over disjoint blocks of rows. The rows are
+ * shuffled once and cut into blocks of equal size; a subsample is then a union of blocks, and its
+ * covariance matrix is assembled from the block sums in O(k p^2) for k blocks rather than
+ * recomputed from its rows in O(b p^2). The blocks are computed once, in parallel, and shared read-only
+ * by every subsample and every search that uses them.
+ *
+ * Memory is numBlocks * p(p+1)/2 doubles, so for wide data the block size should be chosen so that
+ * the number of blocks stays modest.
+ */
+public class RowBlockSums {
+    private final List<Node> variables;
+    private final int numVars;
+    private final int blockSize;
+    private final int[][] blockRows;
+    private final double[][] sums;
+    private final double[][] crossProducts;
+
+    /**
+     * @param data      A continuous data set without missing values.
+     * @param blockSize The number of rows in each block; rows left over after the last full block are
+     *                  not used.
+     */
+    public RowBlockSums(final DataSet data, int blockSize) {
+        if (!data.isContinuous()) {
+            throw new IllegalArgumentException("Row block sums need continuous data.");
+        }
+
+        if (blockSize < 1 || blockSize > data.getNumRows()) {
+            throw new IllegalArgumentException("Block size must be between 1 and the sample size: " + blockSize);
+        }
+
+        this.variables = data.getVariables();
+        this.numVars = data.getNumColumns();
+        this.blockSize = blockSize;
+
+        final int numBlocks = data.getNumRows() / blockSize;
+        final int[] perm = shuffledRows(data.getNumRows());
+
+        this.blockRows = new int[numBlocks][blockSize];
+        this.sums = new double[numBlocks][];
+        this.crossProducts = new double[numBlocks][];
+
+        for (int k = 0; k < numBlocks; k++) {
+            System.arraycopy(perm, k * blockSize, blockRows[k], 0, blockSize);
+        }
+
+        // Center by the overall means first so that summing block cross products doesn't lose precision.
+        final double[] means = new double[numVars];
+
+        for (int j = 0; j < numVars; j++) {
+            double sum = 0.0;
+
+            for (int i = 0; i < data.getNumRows(); i++) {
+                double d = data.getDouble(i, j);
+
+                if (Double.isNaN(d)) {
+                    throw new IllegalArgumentException("Please remove or impute missing values.");
+                }
+
+                sum += d;
+            }
+
+            means[j] = sum / data.getNumRows();
+        }
+
+        class BlockTask extends RecursiveAction {
+            private int from;
+            private int to;
+
+            public BlockTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= 1) {
+                    for (int k = from; k < to; k++) {
+                        computeBlock(data, means, k);
+                    }
+                } else {
+                    int mid = (to + from) / 2;
+                    invokeAll(new BlockTask(from, mid), new BlockTask(mid, to));
+                }
+            }
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new BlockTask(0, numBlocks));
+    }
+
+    /**
+     * @return the covariance matrix of the rows in the given blocks.
+     */
+    public ICovarianceMatrix getCovariance(int[] blocks) {
+        if (blocks.length == 0) {
+            throw new IllegalArgumentException("Need at least one block.");
+        }
+
+        int n = blocks.length * blockSize;
+
+        if (n < 2) {
+            throw new IllegalArgumentException("Need at least two rows for a covariance matrix.");
+        }
+
+        double[] s = new double[numVars];
+        double[] c = new double[crossProducts[0].length];
+
+        for (int k : blocks) {
+            double[] bs = sums[k];
+            double[] bc = crossProducts[k];
+
+            for (int j = 0; j < numVars; j++) s[j] += bs[j];
+            for (int j = 0; j < c.length; j++) c[j] += bc[j];
+        }
+
+        TetradMatrix cov = new TetradMatrix(numVars, numVars);
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = 0; j <= i; j++) {
+                double v = (c[i * (i + 1) / 2 + j] - s[i] * s[j] / n) / (n - 1);
+                cov.set(i, j, v);
+                cov.set(j, i, v);
+            }
+        }
+
+        return new CovarianceMatrix(variables, cov, n);
+    }
+
+    /**
+     * @return the data set rows making up the given blocks.
+     */
+    public int[] getRows(int[] blocks) {
+        int[] rows = new int[blocks.length * blockSize];
+
+        for (int b = 0; b < blocks.length; b++) {
+            System.arraycopy(blockRows[blocks[b]], 0, rows, b * blockSize, blockSize);
+        }
+
+        return rows;
+    }
+
+    public int getNumBlocks() {
+        return blockRows.length;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public List<Node> getVariables() {
+        return variables;
+    }
+
+    //=================================PRIVATE METHODS===============================//
+
+    private void computeBlock(DataSet data, double[] means, int k) {
+        double[] s = new double[numVars];
+        double[] c = new double[numVars * (numVars + 1) / 2];
+        double[] row = new double[numVars];
+
+        for (int r : blockRows[k]) {
+            for (int j = 0; j < numVars; j++) {
+                row[j] = data.getDouble(r, j) - means[j];
+                s[j] += row[j];
+            }
+
+            int index = 0;
+
+            for (int i = 0; i < numVars; i++) {
+                double ri = row[i];
+
+                for (int j = 0; j <= i; j++) {
+                    c[index++] += ri * row[j];
+                }
+            }
+        }
+
+        sums[k] = s;
+        crossProducts[k] = c;
+    }
+
+    private static int[] shuffledRows(int n) {
+        int[] perm = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            perm[i] = i;
+        }
+
+        for (int i = n - 1; i > 0; i--) {
+            int j = RandomUtil.getInstance().nextInt(i + 1);
+            int t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+        }
+
+        return perm;
+    }
+}
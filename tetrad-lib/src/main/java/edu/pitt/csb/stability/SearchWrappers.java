@@ -23,6 +23,7 @@ package edu.pitt.csb.stability;
 
 import edu.cmu.tetrad.data.CovarianceMatrixOnTheFly;
 import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.search.*;
 import edu.pitt.csb.mgm.MGM;
@@ -47,7 +48,7 @@ public class SearchWrappers {
         }
     }
 
-    public static class MGMWrapper extends DataGraphSearch {
+    public static class MGMWrapper extends DataGraphSearch implements CovarianceGraphSearch {
         //should be array three parameters for lambdas of each edge type
         public MGMWrapper(double... params) {
             super(params);
@@ -59,9 +60,19 @@ public class SearchWrappers {
             MGM m = new MGM(ds, searchParams);
             return m.search();
         }
+
+        //with no discrete variables the pseudolikelihood depends on the data only through the correlations
+        public boolean usesCovariance(DataSet data) {
+            return data.isContinuous();
+        }
+
+        public Graph search(ICovarianceMatrix cov) {
+            MGM m = new MGM(cov, searchParams);
+            return m.search();
+        }
     }
 
-    public static class FgsWrapper extends DataGraphSearch{
+    public static class FgsWrapper extends DataGraphSearch implements CovarianceGraphSearch {
         public FgsWrapper(double...params){
             super(params);
         }
@@ -69,11 +80,19 @@ public class SearchWrappers {
         public FgsWrapper copy() {return new FgsWrapper(searchParams);}
 
         public Graph search(DataSet ds){
-            SemBicScore score = new SemBicScore(new CovarianceMatrixOnTheFly(MixedUtils.makeContinuousData(ds)));
+            return search(new CovarianceMatrixOnTheFly(MixedUtils.makeContinuousData(ds)));
+        }
+
+        public Graph search(ICovarianceMatrix cov){
+            SemBicScore score = new SemBicScore(cov);
             score.setPenaltyDiscount(searchParams[0]);
             Fgs fg = new Fgs(score);
             return fg.search();
         }
+
+        public boolean usesCovariance(DataSet data) {
+            return true;
+        }
     }
 }
 
@@ -0,0 +1,227 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.pitt.csb.stability;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.pitt.csb.mgm.MixedUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs one or more searches (typically the same search over a path of regularization parameters, as
+ * in StARS) over a common set of subsamples and counts how often each edge is found.
+ * <p>
+ * The work is organized subsample by subsample: each subsample is materialized once and every search
+ * in the path is run on it before it is dropped, so at most one subsample per worker is held in memory
+ * at a time. Searches that can run from a covariance matrix (see CovarianceGraphSearch) are given a
+ * covariance assembled from shared row-block partial sums (see RowBlockSums); the others are given
+ * the subsampled rows. Edge counts are accumulated in one EdgeFrequencyCounter per search,
+ * so no per-run adjacency matrices are kept.
+ * <p>
+ * When covariance searches are present, subsamples are unions of randomly shuffled row blocks, so the
+ * subsample size actually used is the requested size rounded down to a multiple of the block size.
+ * Otherwise rows are subsampled directly, as in StabilityUtils.
+ */
+public class StabilitySelection {
+    private final DataSet data;
+    private final int numSubsamples;
+    private final int subsampleSize;
+    private int blocksPerSubsample = 10;
+    private int parallelism = -1;
+
+    /**
+     * @param data          The data to subsample.
+     * @param numSubsamples The number of subsamples, N.
+     * @param subsampleSize The size of each subsample, b.
+     */
+    public StabilitySelection(DataSet data, int numSubsamples, int subsampleSize) {
+        if (numSubsamples < 1) {
+            throw new IllegalArgumentException("Number of subsamples must be > 0: " + numSubsamples);
+        }
+
+        if (subsampleSize < 2 || subsampleSize > data.getNumRows()) {
+            throw new IllegalArgumentException("Subsample size must be between 2 and the sample size: "
+                    + subsampleSize);
+        }
+
+        this.data = data;
+        this.numSubsamples = numSubsamples;
+        this.subsampleSize = subsampleSize;
+    }
+
+    /**
+     * Runs a single search over the subsamples.
+     */
+    public EdgeFrequencyCounter search(DataGraphSearch search) {
+        return search(Collections.singletonList(search)).get(0);
+    }
+
+    /**
+     * Runs each of the given searches over the same subsamples.
+     *
+     * @return one edge frequency counter per search, in the same order.
+     */
+    public List<EdgeFrequencyCounter> search(final List<DataGraphSearch> searches) {
+        final boolean[] useCov = new boolean[searches.size()];
+        boolean anyCov = false;
+
+        for (int l = 0; l < searches.size(); l++) {
+            DataGraphSearch search = searches.get(l);
+            useCov[l] = search instanceof CovarianceGraphSearch && ((CovarianceGraphSearch) search).usesCovariance(data);
+            if (useCov[l]) anyCov = true;
+        }
+
+        final RowBlockSums blockSums;
+        final int[][] samps;
+
+        if (anyCov) {
+            int blockSize = Math.max(1, subsampleSize / blocksPerSubsample);
+            int numBlocks = subsampleSize / blockSize;
+
+            DataSet contData = data.isContinuous() ? data : MixedUtils.makeContinuousData(data);
+            blockSums = new RowBlockSums(contData, blockSize);
+
+            if (numBlocks > blockSums.getNumBlocks()) {
+                throw new IllegalArgumentException("Subsample size too large for the block size.");
+            }
+
+            samps = StabilityUtils.subSampleNoReplacement(blockSums.getNumBlocks(), numBlocks, numSubsamples);
+        } else {
+            blockSums = null;
+            samps = StabilityUtils.subSampleNoReplacement(data.getNumRows(), subsampleSize, numSubsamples);
+        }
+
+        final List<EdgeFrequencyCounter> counters = new ArrayList<>();
+
+        for (int l = 0; l < searches.size(); l++) {
+            counters.add(new EdgeFrequencyCounter(data.getVariables()));
+        }
+
+        class SubsampleAction extends RecursiveAction {
+            private int from;
+            private int to;
+
+            public SubsampleAction(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= 1) {
+                    for (int s = from; s < to; s++) {
+                        ICovarianceMatrix cov = blockSums != null ? blockSums.getCovariance(samps[s]) : null;
+                        DataSet subsample = null;
+
+                        for (int l = 0; l < searches.size(); l++) {
+                            DataGraphSearch gs = searches.get(l).copy();
+                            Graph g;
+
+                            if (useCov[l]) {
+                                g = ((CovarianceGraphSearch) gs).search(cov);
+                            } else {
+                                if (subsample == null) {
+                                    int[] rows = blockSums != null ? blockSums.getRows(samps[s]) : samps[s];
+                                    subsample = data.subsetRows(rows);
+                                }
+
+                                g = gs.search(subsample);
+                            }
+
+                            counters.get(l).add(g);
+                        }
+                    }
+                } else {
+                    int mid = (to + from) / 2;
+                    invokeAll(new SubsampleAction(from, mid), new SubsampleAction(mid, to));
+                }
+            }
+        }
+
+        if (parallelism > 0) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+            try {
+                pool.invoke(new SubsampleAction(0, numSubsamples));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new SubsampleAction(0, numSubsamples));
+        }
+
+        return counters;
+    }
+
+    /**
+     * StARS selection (Liu et al): given counters for a path of searches ordered from sparsest to
+     * densest, returns the index of the densest search whose monotonized total instability is at
+     * most beta, or 0 if there is none.
+     */
+    public static int stars(List<EdgeFrequencyCounter> path, double beta) {
+        int selected = 0;
+        double maxInstability = 0.0;
+
+        for (int l = 0; l < path.size(); l++) {
+            EdgeFrequencyCounter counter = path.get(l);
+            double instability = StabilityUtils.totalInstabilityUndir(counter.getFrequencies(),
+                    counter.getVariables())[0];
+
+            maxInstability = Math.max(maxInstability, instability);
+
+            if (maxInstability <= beta) {
+                selected = l;
+            } else {
+                break;
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * The number of row blocks making up each subsample. More blocks give subsamples closer to
+     * uniform row subsamples; fewer make assembling each covariance matrix cheaper. Default 10.
+     */
+    public void setBlocksPerSubsample(int blocksPerSubsample) {
+        if (blocksPerSubsample < 1) {
+            throw new IllegalArgumentException("Blocks per subsample must be > 0: " + blocksPerSubsample);
+        }
+
+        this.blocksPerSubsample = blocksPerSubsample;
+    }
+
+    /**
+     * The maximum number of subsamples searched at once, which bounds the memory used for
+     * materialized subsamples. By default the shared pool is used.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+}
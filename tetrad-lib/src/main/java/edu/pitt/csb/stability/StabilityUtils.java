@@ -26,17 +26,18 @@ import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.linalg.Algebra;
 import cern.jet.math.Functions;
 import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DataUtils;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.RandomStream;
 import edu.pitt.csb.mgm.MGM;
 import edu.pitt.csb.mgm.MixedUtils;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
@@ -47,6 +48,8 @@ import java.util.concurrent.RecursiveAction;
  *
  * This is under construction...likely to be buggy
  *
+ * See StabilitySelection for a version that shares subsamples across a path of searches.
+ *
  * Created by ajsedgewick on 9/4/15.
  */
 public class StabilityUtils {
@@ -59,7 +62,7 @@ public class StabilityUtils {
         int[][] samps = subSampleNoReplacement(data.getNumRows(), b, N);
 
         for(int s = 0; s < N; s++){
-            DataSet dataSubSamp = data.subsetRows(samps[s]);
+            DataSet dataSubSamp = DataUtils.viewRows(data, samps[s]);
             Graph g = gs.search(dataSubSamp);
 
             DoubleMatrix2D curAdj = MixedUtils.skeletonToMatrix(g);
@@ -73,8 +76,7 @@ public class StabilityUtils {
     //returns an adjacency matrix containing the edgewise instability as defined in Liu et al
     public static DoubleMatrix2D StabilitySearchPar(final DataSet data, final DataGraphSearch gs, int N, int b){
 
-        final int numVars = data.getNumColumns();
-        final DoubleMatrix2D thetaMat = DoubleFactory2D.dense.make(numVars, numVars, 0.0);
+        final EdgeFrequencyCounter counter = new EdgeFrequencyCounter(data.getVariables());
 
         final int[][] samps = subSampleNoReplacement(data.getNumRows(), b, N);
 
@@ -91,22 +93,16 @@ public class StabilityUtils {
                 this.to = to;
             }
 
-            //could avoid using syncronized if we keep track of array of mats and add at end, but that needs lots of
-            //memory
-            private synchronized void addToMat(DoubleMatrix2D matSum, DoubleMatrix2D curMat){
-                matSum.assign(curMat, Functions.plus);
-            }
-
             @Override
             protected void compute(){
                 if (to - from <= chunk) {
                     for (int s = from; s < to; s++) {
-                        DataSet dataSubSamp = data.subsetRows(samps[s]).copy();
+                        DataSet dataSubSamp = DataUtils.viewRows(data, samps[s]);
                         DataGraphSearch curGs = gs.copy();
                         Graph g = curGs.search(dataSubSamp);
 
-                        DoubleMatrix2D curAdj = MixedUtils.skeletonToMatrix(g); //set weights so that undirected stability works
-                        addToMat(thetaMat, curAdj);
+                        //edges are counted concurrently, so no per-run adjacency matrix is needed
+                        counter.add(g);
                     }
 
                     return;
@@ -130,11 +126,9 @@ public class StabilityUtils {
 
         pool.invoke(new StabilityAction(chunk, 0, N));
 
-        thetaMat.assign(Functions.mult(1.0 / N));
-
         //do this elsewhere
         //thetaMat.assign(thetaMat.copy().assign(Functions.minus(1.0)), Functions.mult).assign(Functions.mult(-2.0));
-        return thetaMat;
+        return counter.getFrequencies();
     }
 
     //needs a symmetric matrix
@@ -188,24 +182,24 @@ public class StabilityUtils {
 
     //returns an numSub by subSize matrix of subsamples of the sequence 1:sampSize
     public static int[][] subSampleNoReplacement(int sampSize, int subSize, int numSub){
+        return subSampleNoReplacement(sampSize, subSize, numSub, RandomStream.fromRandomUtil());
+    }
+
+    //as above; subsample i is drawn from child stream i of the given stream, so the same stream gives the same subsamples
+    public static int[][] subSampleNoReplacement(int sampSize, int subSize, int numSub, RandomStream stream){
 
         if (subSize < 1) {
             throw new IllegalArgumentException("Sample size must be > 0.");
         }
 
-        List<Integer> indices = new ArrayList<Integer>(sampSize);
-        for (int i = 0; i < sampSize; i++) {
-            indices.add(i);
-        }
-
         int[][] sampMat = new int[numSub][subSize];
 
         for(int i = 0; i < numSub; i++) {
-            Collections.shuffle(indices);
+            RandomStream random = stream.split(i);
             int[] curSamp;
             SAMP:
             while(true){
-                curSamp = subSampleIndices(sampSize, subSize);
+                curSamp = subSampleIndices(sampSize, subSize, random);
                 for(int j = 0; j < i; j++){
                     if(Arrays.equals(curSamp, sampMat[j])){
                         continue SAMP;
@@ -219,18 +213,21 @@ public class StabilityUtils {
         return sampMat;
     }
 
-    private static int[] subSampleIndices(int N, int subSize){
-        List<Integer> indices = new ArrayList<Integer>(N);
+    //the first subSize entries of a random permutation of 0:N-1
+    private static int[] subSampleIndices(int N, int subSize, RandomStream random){
+        int[] indices = new int[N];
         for (int i = 0; i < N; i++) {
-            indices.add(i);
+            indices[i] = i;
         }
 
-        Collections.shuffle(indices);
-        int[] samp = new int[subSize];
-        for(int i = 0; i < subSize; i++){
-            samp[i] = indices.get(i);
+        for (int i = 0; i < subSize; i++) {
+            int j = i + random.nextInt(N - i);
+            int temp = indices[i];
+            indices[i] = indices[j];
+            indices[j] = temp;
         }
-        return samp;
+
+        return Arrays.copyOf(indices, subSize);
     }
 
 
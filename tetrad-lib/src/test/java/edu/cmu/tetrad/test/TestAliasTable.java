@@ -0,0 +1,112 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesIm;
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesEstimator;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.AliasTable;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests alias table sampling and the parallel simulation of Bayes nets that uses it.
+ */
+public class TestAliasTable {
+
+    @Test
+    public void testFrequencies() {
+        double[] weights = {0.1, 0.0, 0.25, 0.5, 0.15};
+        AliasTable table = new AliasTable(weights);
+        RandomStream random = new RandomStream(2834L);
+
+        int n = 200000;
+        int[] counts = new int[weights.length];
+
+        for (int i = 0; i < n; i++) {
+            counts[table.sample(random)]++;
+        }
+
+        assertEquals(0, counts[1]);
+
+        for (int k = 0; k < weights.length; k++) {
+            assertEquals(weights[k], counts[k] / (double) n, 0.005);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNaN() {
+        new AliasTable(new double[]{0.5, Double.NaN});
+    }
+
+    @Test
+    public void testBayesSimulation() {
+        RandomUtil.getInstance().setSeed(492834L);
+        Graph graph = GraphUtils.randomGraph(8, 0, 10, 3, 3, 3, false);
+        BayesPm pm = new BayesPm(graph);
+        MlBayesIm im = new MlBayesIm(pm, MlBayesIm.RANDOM);
+
+        DataSet data = im.simulateData(200000, true, new RandomStream(7343L));
+        BayesIm estimated = new MlBayesEstimator().estimate(pm, data);
+
+        for (int node = 0; node < im.getNumNodes(); node++) {
+            for (int row = 0; row < im.getNumRows(node); row++) {
+                int count = countParentValues(im, data, node, row);
+                if (count < 1000) continue;
+
+                for (int col = 0; col < im.getNumColumns(node); col++) {
+                    assertEquals(im.getProbability(node, row, col),
+                            estimated.getProbability(node, row, col), 0.05);
+                }
+            }
+        }
+    }
+
+    private int countParentValues(BayesIm im, DataSet data, int node, int row) {
+        int[] values = im.getParentValues(node, row);
+        int count = 0;
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            boolean matches = true;
+
+            for (int k = 0; k < values.length; k++) {
+                int column = data.getColumn(data.getVariable(im.getNode(im.getParent(node, k)).getName()));
+
+                if (data.getInt(i, column) != values[k]) {
+                    matches = false;
+                    break;
+                }
+            }
+
+            if (matches) count++;
+        }
+
+        return count;
+    }
+}
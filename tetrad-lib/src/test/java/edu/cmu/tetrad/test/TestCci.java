@@ -0,0 +1,131 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.search.Cci;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.StatUtils;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Math.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the kernel regression residuals of the conditional correlation test against a direct
+ * calculation over all pairs of rows.
+ */
+public class TestCci {
+
+    @Test
+    public void testResiduals() {
+        RandomUtil.getInstance().setSeed(938402934L);
+
+        int N = 700;
+        double[][] data = new double[N][5];
+
+        for (int i = 0; i < N; i++) {
+            data[i][0] = RandomUtil.getInstance().nextNormal(0, 1);
+            data[i][1] = sin(data[i][0]) + RandomUtil.getInstance().nextNormal(0, .3);
+            data[i][2] = data[i][0] * data[i][1] + RandomUtil.getInstance().nextNormal(0, .3);
+            data[i][3] = RandomUtil.getInstance().nextUniform(-2, 2);
+            data[i][4] = abs(data[i][2]) + data[i][3] + RandomUtil.getInstance().nextNormal(0, .3);
+        }
+
+        List<String> names = Arrays.asList("X1", "X2", "X3", "X4", "X5");
+        RealMatrix matrix = new Array2DRowRealMatrix(data);
+        Cci cci = new Cci(matrix, names, 0.05);
+
+        checkResiduals(cci, matrix, 4, new int[0]);
+        checkResiduals(cci, matrix, 4, new int[]{2});
+        checkResiduals(cci, matrix, 4, new int[]{3, 0});
+        checkResiduals(cci, matrix, 1, new int[]{0, 2, 3, 4});
+
+        // Cached residuals are copies.
+        double[] r1 = cci.residuals("X5", Arrays.asList("X3", "X4"));
+        r1[0] = Double.NaN;
+        double[] r2 = cci.residuals("X5", Arrays.asList("X4", "X3"));
+        assertEquals(direct(matrix, 4, new int[]{2, 3})[0], r2[0], 1e-10);
+    }
+
+    private void checkResiduals(Cci cci, RealMatrix data, int x, int[] z) {
+        List<String> names = new ArrayList<>();
+        for (int c : z) names.add("X" + (c + 1));
+
+        double[] expected = direct(data, x, z);
+        double[] residuals = cci.residuals("X" + (x + 1), names);
+
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], residuals[i], 1e-10);
+        }
+    }
+
+    // Residuals by averaging x over all rows within bandwidth, visiting every pair of rows.
+    private double[] direct(RealMatrix data, int x, int[] z) {
+        int N = data.getRowDimension();
+        double[] residuals = new double[N];
+
+        if (z.length == 0) return data.getColumn(x);
+
+        double h = 0.0;
+
+        for (int c : z) {
+            h = max(h, bandwidth(data.getColumn(c)));
+        }
+
+        h *= sqrt(z.length);
+
+        for (int i = 0; i < N; i++) {
+            double sum = 0.0;
+            int count = 0;
+
+            for (int j = 0; j < N; j++) {
+                double d = 0.0;
+
+                for (int c : z) {
+                    d += pow(data.getEntry(i, c) - data.getEntry(j, c), 2);
+                }
+
+                if (sqrt(d) / h <= 1) {
+                    sum += data.getEntry(j, x);
+                    count++;
+                }
+            }
+
+            residuals[i] = data.getEntry(i, x) - sum / count;
+        }
+
+        return residuals;
+    }
+
+    private double bandwidth(double[] col) {
+        double median = StatUtils.median(col);
+        double[] g = new double[col.length];
+        for (int j = 0; j < col.length; j++) g[j] = abs(col[j] - median);
+        return (1.4826 * StatUtils.median(g)) * pow((4.0 / 3.0) / col.length, 0.2);
+    }
+}
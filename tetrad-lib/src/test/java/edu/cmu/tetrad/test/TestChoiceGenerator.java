@@ -22,12 +22,19 @@
 package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ChoiceRange;
 import edu.cmu.tetrad.util.DepthChoiceGenerator;
 import edu.cmu.tetrad.util.PermutationGenerator;
 import edu.cmu.tetrad.util.SelectionGenerator;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 /**
@@ -118,10 +125,96 @@ public class TestChoiceGenerator {
         }
     }
 
+    /**
+     * Ranges should give the combinations of ChoiceGenerator in the same order, by rank, and split ranges
+     * should cover them exactly.
+     */
+    @Test
+    public void testChoiceRange() {
+        for (int a = 0; a <= 9; a++) {
+            for (int b = 0; b <= a; b++) {
+                List<int[]> expected = new ArrayList<>();
+                List<String> expectedStrings = new ArrayList<>();
+                ChoiceGenerator generator = new ChoiceGenerator(a, b);
+                int[] choice;
 
-}
+                while ((choice = generator.next()) != null) {
+                    expected.add(choice.clone());
+                    expectedStrings.add(Arrays.toString(choice));
+                }
 
+                assertEquals(expected.size(), ChoiceRange.choose(a, b));
 
+                ChoiceRange range = new ChoiceRange(a, b);
 
+                for (int r = 0; r < expected.size(); r++) {
+                    assertArrayEquals(expected.get(r), range.get(r));
+                    assertEquals(r, ChoiceRange.rank(a, expected.get(r)));
+                }
 
+                assertEquals(expectedStrings, splitAll(range));
+            }
+        }
+    }
+
+    @Test
+    public void testDepthChoiceRange() {
+        for (int a = 0; a <= 7; a++) {
+            for (int depth = -1; depth <= a + 1; depth++) {
+                List<String> expected = new ArrayList<>();
+                DepthChoiceGenerator generator = new DepthChoiceGenerator(a, depth);
+                int[] choice;
+
+                while ((choice = generator.next()) != null) {
+                    expected.add(Arrays.toString(choice));
+                }
+
+                assertEquals(expected, splitAll(ChoiceRange.depth(a, depth)));
+            }
+        }
+    }
 
+    @Test
+    public void testFindFirst() {
+        final int[] target = {3, 7, 9};
+
+        ChoiceRange.Condition condition = new ChoiceRange.Condition() {
+            public boolean holds(int[] choice) {
+                return choice[1] >= target[1] && choice[2] >= target[2];
+            }
+        };
+
+        int[] first = ChoiceRange.findFirst(new ChoiceRange(14, 3), condition, 5);
+        assertArrayEquals(new int[]{0, 7, 9}, first);
+
+        ChoiceRange.Condition never = new ChoiceRange.Condition() {
+            public boolean holds(int[] choice) {
+                return false;
+            }
+        };
+
+        assertNull(ChoiceRange.findFirst(new ChoiceRange(14, 3), never, 5));
+    }
+
+    /**
+     * Splits the range into ranges of at most three combinations and concatenates their combinations.
+     */
+    private List<String> splitAll(ChoiceRange range) {
+        List<String> choices = new ArrayList<>();
+
+        if (range.size() > 3) {
+            ChoiceRange first = range.trySplit();
+            choices.addAll(splitAll(first));
+            choices.addAll(splitAll(range));
+            return choices;
+        }
+
+        int[] choice;
+
+        while ((choice = range.next()) != null) {
+            choices.add(Arrays.toString(choice));
+        }
+
+        return choices;
+    }
+}
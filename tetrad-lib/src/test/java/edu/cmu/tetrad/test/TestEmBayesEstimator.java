@@ -0,0 +1,102 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.*;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphConverter;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests EM estimation of Bayes IM's.
+ */
+public class TestEmBayesEstimator {
+
+    /**
+     * With no missing values one expectation step gives the maximum likelihood
+     * estimate.
+     */
+    @Test
+    public void testComplete() {
+        RandomUtil.getInstance().setSeed(4938493L);
+
+        BayesPm pm = new BayesPm(new Dag(GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4")), 3, 3);
+        BayesIm im = new MlBayesIm(pm, MlBayesIm.RANDOM);
+        DataSet data = im.simulateData(2000, false);
+
+        EmBayesEstimator estimator = new EmBayesEstimator(pm, data);
+        estimator.expectationOnly();
+        BayesIm emIm = estimator.getEstimatedIm();
+        BayesIm mlIm = new MlBayesEstimator().estimate(pm, data);
+
+        assertTrue(estimator.getNumPatterns() <= 81);
+
+        for (int v = 0; v < pm.getDag().getNumNodes(); v++) {
+            for (int row = 0; row < emIm.getNumRows(v); row++) {
+                for (int col = 0; col < emIm.getNumColumns(v); col++) {
+                    double p = mlIm.getProbability(v, row, col);
+                    if (Double.isNaN(p)) continue;
+                    assertEquals(p, emIm.getProbability(v, row, col), 1e-10);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMissing() {
+        RandomUtil.getInstance().setSeed(3849382L);
+
+        BayesPm pm = new BayesPm(new Dag(GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4")), 2, 2);
+        BayesIm im = new MlBayesIm(pm, MlBayesIm.RANDOM);
+        DataSet data = im.simulateData(10000, false);
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            for (int j = 1; j < 3; j++) {
+                if (RandomUtil.getInstance().nextDouble() < 0.2) {
+                    data.setInt(i, data.getColumn(data.getVariable("X" + (j + 1))), DiscreteVariable.MISSING_VALUE);
+                }
+            }
+        }
+
+        EmBayesEstimator serial = new EmBayesEstimator(pm, data);
+        serial.setParallelized(false);
+        BayesIm serialIm = serial.maximization(1e-6);
+
+        EmBayesEstimator parallel = new EmBayesEstimator(pm, data);
+        BayesIm parallelIm = parallel.maximization(1e-6);
+
+        for (int v = 0; v < pm.getDag().getNumNodes(); v++) {
+            for (int row = 0; row < im.getNumRows(v); row++) {
+                for (int col = 0; col < im.getNumColumns(v); col++) {
+                    assertEquals(serialIm.getProbability(v, row, col), parallelIm.getProbability(v, row, col), 1e-6);
+                    assertEquals(im.getProbability(v, row, col), serialIm.getProbability(v, row, col), 0.05);
+                }
+            }
+        }
+    }
+}
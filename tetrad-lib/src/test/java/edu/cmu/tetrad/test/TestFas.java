@@ -58,9 +58,31 @@ public class TestFas {
 
         assertEquals(fasGraph, GraphUtils.undirectedGraph(pcGraph));
     }
-}
 
+    /**
+     * A dense graph, so that some conditioning sets are searched in parallel.
+     */
+    @Test
+    public void test2() {
+        int numVars = 14;
+
+        List<Node> vars = new ArrayList<Node>();
+
+        for (int i = 0; i < numVars; i++) {
+            vars.add(new ContinuousVariable("X" + i));
+        }
+
+        Graph graph = GraphUtils.randomGraphRandomForwardEdges(vars, 0, 45, 30, 15, 15, false, true);
 
+        IndependenceTest test = new IndTestDSep(graph);
 
+        FasStableConcurrent fas = new FasStableConcurrent(test);
+        fas.setDepth(4);
+        Graph fasGraph = fas.search();
 
+        FasStable fasStable = new FasStable(test);
+        fasStable.setDepth(4);
 
+        assertEquals(fasStable.search(), fasGraph);
+    }
+}
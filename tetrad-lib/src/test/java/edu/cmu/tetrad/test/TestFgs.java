@@ -43,6 +43,7 @@ import java.util.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Joseph Ramsey
@@ -213,6 +214,88 @@ public class TestFgs {
     }
 
 
+    @Test
+    public void testIncremental() {
+        RandomUtil.getInstance().setSeed(492834923L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph dag = GraphUtils.randomGraph(nodes, 0, 20, 30, 15, 15, false);
+        Graph pattern = new Fgs(new GraphScore(dag)).search();
+
+        List<Node> order = dag.getCausalOrdering();
+        Node a = null, b = null;
+
+        for (int i = 0; i < order.size() && a == null; i++) {
+            for (int j = i + 1; j < order.size(); j++) {
+                if (!dag.isAdjacentTo(order.get(i), order.get(j))) {
+                    a = order.get(i);
+                    b = order.get(j);
+                    break;
+                }
+            }
+        }
+
+        Graph added = new EdgeListGraph(dag);
+        added.addDirectedEdge(a, b);
+
+        Fgs fgs = new Fgs(new GraphScore(added));
+        fgs.setInitialGraph(pattern);
+        fgs.setChangedNodes(Arrays.asList(a, b));
+        Graph updated = fgs.search();
+
+        assertEquals(SearchGraphUtils.patternForDag(added), updated);
+
+        Edge edge = dag.getEdges().iterator().next();
+        Graph removed = new EdgeListGraph(dag);
+        removed.removeEdge(edge);
+
+        fgs = new Fgs(new GraphScore(removed));
+        fgs.setInitialGraph(pattern);
+        fgs.setChangedNodes(Arrays.asList(edge.getNode1(), edge.getNode2()));
+        updated = fgs.search();
+
+        assertEquals(SearchGraphUtils.patternForDag(removed), updated);
+    }
+
+    @Test
+    public void testIncrementalAfterFailure() {
+        Graph dag = GraphConverter.convert("X1-->X2,X3-->X4,X5");
+
+        // The initial graph has a spurious edge away from the changed node X5.
+        Graph initial = SearchGraphUtils.patternForDag(dag);
+        initial.addUndirectedEdge(initial.getNode("X1"), initial.getNode("X4"));
+
+        final boolean[] failing = {true};
+
+        Fgs fgs = new Fgs(new GraphScore(dag) {
+            public double localScoreDiff(int x, int y, int[] z) {
+                if (failing[0]) throw new IllegalStateException("Scoring failed.");
+                return super.localScoreDiff(x, y, z);
+            }
+        });
+
+        fgs.setInitialGraph(initial);
+        fgs.setChangedNodes(Collections.singletonList(initial.getNode("X5")));
+
+        try {
+            fgs.search();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // The failed incremental search must not restrict the next, full one, which removes X1---X4.
+        failing[0] = false;
+        fgs.setChangedNodes(null);
+
+        assertEquals(SearchGraphUtils.patternForDag(dag), fgs.search());
+    }
+
     @Test
     public void testFromGraphSimpleFgs() {
 
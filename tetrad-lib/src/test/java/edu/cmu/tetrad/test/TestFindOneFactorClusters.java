@@ -0,0 +1,106 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataGraphUtils;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.FindOneFactorClusters;
+import edu.cmu.tetrad.search.MimUtils;
+import edu.cmu.tetrad.search.TestType;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemImInitializationParams;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests FOFC on simulated single factor models.
+ */
+public class TestFindOneFactorClusters {
+
+    @Test
+    public void testDelta() {
+        test(TestType.TETRAD_DELTA, FindOneFactorClusters.Algorithm.GAP);
+        test(TestType.TETRAD_DELTA, FindOneFactorClusters.Algorithm.SAG);
+    }
+
+    @Test
+    public void testWishart() {
+        test(TestType.TETRAD_WISHART, FindOneFactorClusters.Algorithm.GAP);
+        test(TestType.TETRAD_WISHART, FindOneFactorClusters.Algorithm.SAG);
+    }
+
+    private void test(TestType testType, FindOneFactorClusters.Algorithm algorithm) {
+        RandomUtil.getInstance().setSeed(49283494L);
+
+        Graph mim = DataGraphUtils.randomSingleFactorModel(3, 3, 6, 0, 0, 0);
+
+        SemImInitializationParams params = new SemImInitializationParams();
+        params.setCoefRange(.5, 1.5);
+
+        SemIm im = new SemIm(new SemPm(mim), params);
+        DataSet data = im.simulateData(3000, false);
+
+        FindOneFactorClusters fofc = new FindOneFactorClusters(data, testType, algorithm, 0.001);
+        fofc.search();
+        List<List<Node>> clusters = fofc.getClusters();
+
+        // Every cluster found must lie within a single true cluster, and no two may share a latent.
+        List<List<Node>> trueClusters = MimUtils.convertToClusters2(mim);
+        Set<Integer> found = new HashSet<>();
+
+        for (List<Node> cluster : clusters) {
+            assertTrue(cluster.size() >= 3);
+            int index = trueClusterIndex(cluster, trueClusters);
+            assertTrue(index != -1);
+            assertTrue(found.add(index));
+        }
+
+        assertEquals(3, clusters.size());
+    }
+
+    private int trueClusterIndex(List<Node> cluster, List<List<Node>> trueClusters) {
+        for (int i = 0; i < trueClusters.size(); i++) {
+            Set<String> names = new HashSet<>();
+            for (Node node : trueClusters.get(i)) names.add(node.getName());
+
+            boolean contained = true;
+            for (Node node : cluster) contained &= names.contains(node.getName());
+
+            if (contained) return i;
+        }
+
+        return -1;
+    }
+}
+
+
+
@@ -0,0 +1,114 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.search.GlassoPath;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the graphical lasso path against its optimality conditions.
+ */
+public class TestGlassoPath {
+
+    @Test
+    public void testOptimality() {
+        TetradMatrix cov = covariance(30, 40, 500);
+        GlassoPath glasso = new GlassoPath(cov);
+        glasso.setThr(1e-8);
+
+        double rhoMax = glasso.getRhoMax();
+        List<GlassoPath.Result> path = glasso.search(new double[]{0.05, rhoMax, 0.2, 0.1});
+
+        assertEquals(4, path.size());
+        assertEquals(rhoMax, path.get(0).getRho(), 0.0);
+        assertEquals(30, path.get(0).getNumComponents());
+        assertEquals(0, path.get(0).getNumEdges());
+
+        for (int r = 0; r < path.size(); r++) {
+            GlassoPath.Result result = path.get(r);
+            checkOptimality(cov, result);
+
+            if (r > 0) {
+                assertTrue(result.getNumComponents() <= path.get(r - 1).getNumComponents());
+                assertTrue(result.getLogLikelihood() >= path.get(r - 1).getLogLikelihood());
+            }
+        }
+    }
+
+    @Test
+    public void testWarmStart() {
+        TetradMatrix cov = covariance(20, 25, 300);
+        GlassoPath glasso = new GlassoPath(cov);
+        glasso.setThr(1e-8);
+
+        GlassoPath.Result warm = glasso.search(new double[]{0.3, 0.15, 0.08}).get(2);
+
+        glasso.setParallelized(false);
+        GlassoPath.Result cold = glasso.search(0.08);
+
+        assertTrue(warm.getPrecision().equals(cold.getPrecision(), 1e-4));
+        assertEquals(warm.getNumComponents(), cold.getNumComponents());
+    }
+
+    private TetradMatrix covariance(int numVars, int numEdges, int sampleSize) {
+        RandomUtil.getInstance().setSeed(2938749L);
+        Graph graph = GraphUtils.randomGraph(numVars, 0, numEdges, 4, 4, 4, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        DataSet data = im.simulateData(sampleSize, false);
+        return data.getCovarianceMatrix();
+    }
+
+    // W = Theta^-1 should match S on the diagonal and within rho off the diagonal, exactly where Theta is nonzero.
+    private void checkOptimality(TetradMatrix cov, GlassoPath.Result result) {
+        TetradMatrix w = result.getCov();
+        TetradMatrix theta = result.getPrecision();
+        double rho = result.getRho();
+
+        assertTrue(w.times(theta).equals(TetradMatrix.identity(cov.rows()), 1e-4));
+
+        for (int i = 0; i < cov.rows(); i++) {
+            assertEquals(cov.get(i, i), w.get(i, i), 1e-10);
+
+            for (int j = 0; j < cov.rows(); j++) {
+                if (i == j) continue;
+                double gap = w.get(i, j) - cov.get(i, j);
+
+                if (theta.get(i, j) == 0.0) {
+                    assertTrue(Math.abs(gap) <= rho + 1e-4);
+                } else {
+                    assertEquals(Math.signum(theta.get(i, j)) * rho, gap, 1e-4);
+                }
+            }
+        }
+    }
+}
@@ -279,6 +279,39 @@ public final class TestGraphUtils {
         }
     }
 
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        RandomUtil.getInstance().setSeed(4923842L);
+
+        Graph graph = GraphUtils.randomGraph(30, 0, 45, 5, 5, 5, false);
+        List<Node> nodes = graph.getNodes();
+        nodes.get(3).setNodeType(NodeType.LATENT);
+        nodes.get(5).setCenter(100, 200);
+
+        Edge edge = graph.getEdges().iterator().next();
+        graph.removeEdge(edge);
+        graph.addEdge(Edges.partiallyOrientedEdge(edge.getNode1(), edge.getNode2()));
+        graph.addAmbiguousTriple(nodes.get(0), nodes.get(1), nodes.get(2));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GraphBinary.write(graph, out);
+        Graph graph2 = GraphBinary.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(graph.getNodeNames(), graph2.getNodeNames());
+        assertEquals(graph.getNumEdges(), graph2.getNumEdges());
+        assertEquals(graph, graph2);
+        assertEquals(NodeType.LATENT, graph2.getNodes().get(3).getNodeType());
+        assertEquals(200, graph2.getNodes().get(5).getCenterY());
+        assertEquals(1, graph2.getAmbiguousTriples().size());
+
+        for (Edge _edge : graph.getEdges()) {
+            Node node1 = graph2.getNode(_edge.getNode1().getName());
+            Node node2 = graph2.getNode(_edge.getNode2().getName());
+            assertEquals(_edge.getEndpoint1(), graph2.getEndpoint(node2, node1));
+            assertEquals(_edge.getEndpoint2(), graph2.getEndpoint(node1, node2));
+        }
+    }
+
     private List<Node> list(Node... z) {
         List<Node> list = new ArrayList<>();
         Collections.addAll(list, z);
@@ -0,0 +1,167 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the pooled multi-data-set score against the IMaGES SEM BIC score.
+ */
+public class TestImagesScore {
+
+    @Test
+    public void testSameScores() {
+        RandomUtil.getInstance().setSeed(593849234L);
+
+        List<DataModel> dataSets = simulate(8, 5, 300);
+        SemBicScoreImages images = new SemBicScoreImages(dataSets);
+
+        ImagesScore pooled = new ImagesScore(semBicScores(dataSets));
+        pooled.setBoundPruning(false);
+
+        assertEquals(images.localScore(3), pooled.localScore(3), 1e-8);
+        assertEquals(images.localScore(3, new int[]{0, 5}), pooled.localScore(3, new int[]{5, 0}), 1e-8);
+        assertEquals(images.localScoreDiff(1, 3, new int[]{0, 5}), pooled.localScoreDiff(1, 3, new int[]{0, 5}), 1e-8);
+        assertEquals(images.localScoreDiff(1, 3), pooled.localScoreDiff(1, 3), 1e-8);
+    }
+
+    @Test
+    public void testBoundPruning() {
+        RandomUtil.getInstance().setSeed(203948234L);
+
+        List<DataModel> dataSets = simulate(8, 6, 300);
+
+        ImagesScore exact = new ImagesScore(semBicScores(dataSets));
+        exact.setBoundPruning(false);
+
+        ImagesScore pruned = new ImagesScore(semBicScores(dataSets));
+        int numPruned = 0;
+
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                if (x == y) continue;
+
+                for (int[] z : new int[][]{{}, {(y + 1) % 8}, {(y + 1) % 8, (y + 2) % 8}}) {
+                    if (z.length > 0 && (z[0] == x || z[z.length - 1] == x)) continue;
+
+                    pruned.localScore(y, z);
+
+                    double bump = exact.localScoreDiff(x, y, z);
+                    double bound = pruned.localScoreDiff(x, y, z);
+
+                    if (bump > 0) {
+                        assertEquals(bump, bound, 1e-8);
+                    } else {
+                        assertTrue(bound <= 0);
+                        assertTrue(bound >= bump - 1e-8);
+                        if (bound != bump) numPruned++;
+                    }
+                }
+            }
+        }
+
+        assertTrue(numPruned > 0);
+    }
+
+    @Test
+    public void testSameSearch() {
+        RandomUtil.getInstance().setSeed(492834923L);
+
+        List<DataModel> dataSets = simulate(10, 4, 500);
+
+        Graph pattern1 = new Fgs(new SemBicScoreImages(dataSets)).search();
+        Graph pattern2 = new Fgs(new ImagesScore(semBicScores(dataSets))).search();
+
+        assertEquals(pattern1, GraphUtils.replaceNodes(pattern2, pattern1.getNodes()));
+
+        ImagesScore small = new ImagesScore(semBicScores(dataSets));
+        small.setCacheSize(5);
+        Graph pattern3 = new Fgs(small).search();
+
+        assertEquals(pattern1, GraphUtils.replaceNodes(pattern3, pattern1.getNodes()));
+    }
+
+    @Test
+    public void testMissingVariables() {
+        RandomUtil.getInstance().setSeed(102938475L);
+
+        List<DataModel> dataSets = simulate(5, 3, 200);
+        DataSet third = (DataSet) dataSets.get(2);
+        third.removeColumn(third.getVariable("X5"));
+
+        List<Score> scores = semBicScores(dataSets);
+        ImagesScore pooled = new ImagesScore(scores);
+
+        assertEquals(5, pooled.getVariables().size());
+
+        double expected = (scores.get(0).localScore(4, 0) + scores.get(1).localScore(4, 0)) / 2;
+        assertEquals(expected, pooled.localScore(4, 0), 1e-8);
+
+        expected = (scores.get(0).localScore(1, 0) + scores.get(1).localScore(1, 0)
+                + scores.get(2).localScore(1, 0)) / 3;
+        assertEquals(expected, pooled.localScore(1, 0), 1e-8);
+    }
+
+    private List<Score> semBicScores(List<DataModel> dataSets) {
+        List<Score> scores = new ArrayList<>();
+
+        for (DataModel dataSet : dataSets) {
+            scores.add(new SemBicScore(new CovarianceMatrix((DataSet) dataSet)));
+        }
+
+        return scores;
+    }
+
+    private List<DataModel> simulate(int numVars, int numDataSets, int sampleSize) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Graph dag = GraphUtils.randomGraph(nodes, 0, numVars, 30, 15, 15, false);
+        SemPm pm = new SemPm(dag);
+
+        List<DataModel> dataSets = new ArrayList<>();
+
+        for (int i = 0; i < numDataSets; i++) {
+            dataSets.add(new SemIm(pm).simulateData(sampleSize, false));
+        }
+
+        return dataSets;
+    }
+}
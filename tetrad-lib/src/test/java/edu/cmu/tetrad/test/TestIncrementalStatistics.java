@@ -0,0 +1,215 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesIm;
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.search.SemBicScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the incrementally updated covariance matrix and count tables.
+ */
+public class TestIncrementalStatistics {
+
+    @Test
+    public void testCovariance() {
+        RandomUtil.getInstance().setSeed(938402934L);
+
+        DataSet data = continuousData(6, 600);
+        DataSet first = data.subsetRows(range(0, 250));
+        DataSet second = data.subsetRows(range(250, 600));
+
+        IncrementalCovarianceMatrix cov = new IncrementalCovarianceMatrix(first);
+        cov.addRows(second);
+
+        assertEquals(600, cov.getSampleSize());
+        assertSameMatrix(new CovarianceMatrix(data), cov);
+
+        cov.removeRows(first);
+        assertEquals(350, cov.getSampleSize());
+        assertSameMatrix(new CovarianceMatrix(second), cov);
+
+        SemBicScore score1 = new SemBicScore(cov);
+        SemBicScore score2 = new SemBicScore(new CovarianceMatrix(second));
+        assertEquals(score2.localScore(2, new int[]{0, 1}), score1.localScore(2, new int[]{0, 1}), 1e-8);
+    }
+
+    @Test
+    public void testCovarianceWindow() throws Exception {
+        RandomUtil.getInstance().setSeed(203948234L);
+
+        DataSet data = continuousData(5, 300);
+
+        IncrementalCovarianceMatrix cov = new IncrementalCovarianceMatrix(data.getVariables());
+        cov.setWindowSize(2);
+
+        for (int b = 0; b < 3; b++) {
+            cov.addRows(data.subsetRows(range(100 * b, 100 * (b + 1))));
+        }
+
+        assertEquals(2, cov.getNumBatches());
+        assertSameMatrix(new CovarianceMatrix(data.subsetRows(range(100, 300))), cov);
+
+        IncrementalCovarianceMatrix copy = roundTrip(cov);
+        copy.addRows(data.subsetRows(range(0, 100)));
+        cov.addRows(data.subsetRows(range(0, 100)));
+        assertSameMatrix(new CovarianceMatrix(cov), copy);
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        RandomUtil.getInstance().setSeed(394820394L);
+
+        DataSet data = discreteData(5, 500);
+
+        IncrementalCountTables counts = new IncrementalCountTables(data.getVariables());
+        counts.setWindowSize(2);
+        counts.addRows(data.subsetRows(range(0, 200)));
+
+        BDeuScore incremental = new BDeuScore(counts);
+        incremental.localScore(3, new int[]{0, 1});
+
+        counts.addRows(data.subsetRows(range(200, 350)));
+        counts.addRows(data.subsetRows(range(350, 500)));
+        assertEquals(300, counts.getSampleSize());
+
+        BDeuScore full = new BDeuScore(data.subsetRows(range(200, 500)));
+
+        assertEquals(full.localScore(3, new int[]{0, 1}), incremental.localScore(3, new int[]{0, 1}), 1e-8);
+        assertEquals(full.localScore(4, new int[]{2}), incremental.localScore(4, new int[]{2}), 1e-8);
+        assertEquals(full.localScore(1), incremental.localScore(1), 1e-8);
+
+        IncrementalCountTables copy = roundTrip(counts);
+        assertEquals(full.localScore(3, new int[]{0, 1}), new BDeuScore(copy).localScore(3, new int[]{0, 1}), 1e-8);
+    }
+
+    @Test
+    public void testCountsBackedByData() {
+        RandomUtil.getInstance().setSeed(203948203L);
+
+        DataSet data = discreteData(5, 600);
+
+        IncrementalCountTables counts = IncrementalCountTables.backedBy(data.subsetRows(range(0, 400)));
+        assertEquals(400, counts.getSampleSize());
+        assertEquals(0, counts.getNumDistinctRows());
+
+        BDeuScore incremental = new BDeuScore(counts);
+        incremental.localScore(3, new int[]{0, 1});
+
+        counts.addRows(data.subsetRows(range(400, 600)));
+        BDeuScore full = new BDeuScore(data);
+
+        assertEquals(full.localScore(3, new int[]{0, 1}), incremental.localScore(3, new int[]{0, 1}), 1e-8);
+        assertEquals(full.localScore(4, new int[]{2}), incremental.localScore(4, new int[]{2}), 1e-8);
+    }
+
+    @Test
+    public void testCountsBounded() {
+        RandomUtil.getInstance().setSeed(582039482L);
+
+        DataSet data = discreteData(4, 2000);
+
+        IncrementalCountTables counts = new IncrementalCountTables(data.getVariables());
+
+        for (int b = 0; b < 10; b++) {
+            counts.addRows(data.subsetRows(range(200 * b, 200 * (b + 1))));
+        }
+
+        // Rows are kept only as a histogram of distinct rows, and no batches without a window.
+        assertEquals(2000, counts.getSampleSize());
+        assertEquals(0, counts.getNumBatches());
+        assertTrue(counts.getNumDistinctRows() <= 3 * 3 * 3 * 3);
+
+        // With room for only one table, each request evicts the last one; recounted tables are still right.
+        counts.setMaxCachedCells(1);
+        BDeuScore incremental = new BDeuScore(counts);
+        BDeuScore full = new BDeuScore(data);
+
+        for (int k = 0; k < 2; k++) {
+            assertEquals(full.localScore(3, new int[]{0, 1}), incremental.localScore(3, new int[]{0, 1}), 1e-8);
+            assertEquals(full.localScore(2, new int[]{1}), incremental.localScore(2, new int[]{1}), 1e-8);
+            assertEquals(1, counts.getNumCachedTables());
+        }
+    }
+
+    private void assertSameMatrix(ICovarianceMatrix expected, ICovarianceMatrix actual) {
+        for (int i = 0; i < expected.getDimension(); i++) {
+            for (int j = 0; j < expected.getDimension(); j++) {
+                assertEquals(expected.getValue(i, j), actual.getValue(i, j), 1e-10);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(T object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return (T) in.readObject();
+    }
+
+    private int[] range(int from, int to) {
+        int[] rows = new int[to - from];
+        for (int i = 0; i < rows.length; i++) rows[i] = from + i;
+        return rows;
+    }
+
+    private DataSet continuousData(int numVars, int sampleSize) {
+        Graph dag = GraphUtils.randomGraph(nodes(numVars), 0, numVars, 30, 15, 15, false);
+        SemIm im = new SemIm(new SemPm(dag));
+        return im.simulateData(sampleSize, false);
+    }
+
+    private DataSet discreteData(int numVars, int sampleSize) {
+        Graph dag = GraphUtils.randomGraph(nodes(numVars), 0, numVars, 30, 15, 15, false);
+        BayesIm im = new MlBayesIm(new BayesPm(dag, 2, 3), MlBayesIm.RANDOM);
+        return im.simulateData(sampleSize, false);
+    }
+
+    private List<Node> nodes(int numVars) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            nodes.add(new GraphNode("X" + i));
+        }
+
+        return nodes;
+    }
+}
@@ -0,0 +1,151 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestHsic;
+import edu.cmu.tetrad.search.kernel.Kernel;
+import edu.cmu.tetrad.search.kernel.KernelGaussian;
+import edu.cmu.tetrad.search.kernel.KernelUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the HSIC independence test.
+ */
+public class TestIndTestHsic {
+
+    @Test
+    public void testStatistic() {
+        RandomUtil.getInstance().setSeed(492834923L);
+        DataSet data = simulate(120);
+
+        IndTestHsic test = new IndTestHsic(data, 0.05);
+        test.setPerms(20);
+
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+
+        TetradMatrix Gx = factor(data, x);
+        TetradMatrix Gy = factor(data, y);
+        TetradMatrix Gz = factor(data, z);
+
+        test.isIndependent(y, x);
+        assertEquals(test.empiricalHSICincompleteCholesky(Gy, Gx, 120), test.getHsic(), 1e-8);
+
+        test.isIndependent(y, x, z);
+        assertEquals(test.empiricalHSICincompleteCholesky(Gy, Gx, Gz, 120), test.getHsic(), 1e-6);
+    }
+
+    @Test
+    public void testDecisions() {
+        RandomUtil.getInstance().setSeed(938402934L);
+        DataSet data = simulate(200);
+
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+        Node w = data.getVariable("W");
+
+        IndTestHsic test = new IndTestHsic(data, 0.05);
+
+        assertFalse(test.isIndependent(z, y));
+        assertTrue(test.isIndependent(x, w));
+        assertTrue(test.isIndependent(x, y, z));
+
+        test.setGammaApproximation(true);
+
+        assertFalse(test.isIndependent(z, y));
+        assertTrue(test.getPValue() < 0.01);
+        assertTrue(test.isIndependent(x, w));
+    }
+
+    @Test
+    public void testPermutationsReproducible() {
+        RandomUtil.getInstance().setSeed(2938471L);
+        DataSet data = simulate(100);
+
+        Node x = data.getVariable("X");
+        Node y = data.getVariable("Y");
+        Node z = data.getVariable("Z");
+        Node w = data.getVariable("W");
+
+        IndTestHsic test = new IndTestHsic(data, 0.05);
+        test.setPerms(50);
+
+        // The permutations are drawn in parallel, but from streams fixed by the seed.
+        double[] first = pValues(test, x, y, z, w);
+        double[] second = pValues(test, x, y, z, w);
+        assertArrayEquals(first, second, 0.0);
+    }
+
+    private double[] pValues(IndTestHsic test, Node x, Node y, Node z, Node w) {
+        RandomUtil.getInstance().setSeed(19384L);
+        test.isIndependent(x, w);
+        double unconditional = test.getPValue();
+        test.isIndependent(x, y, z);
+        return new double[]{unconditional, test.getPValue()};
+    }
+
+    // X -> Z -> Y, nonlinearly, and W independent of the rest.
+    private DataSet simulate(int sampleSize) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (String name : new String[]{"X", "Y", "Z", "W"}) {
+            nodes.add(new ContinuousVariable(name));
+        }
+
+        DataSet data = new ColtDataSet(sampleSize, nodes);
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int i = 0; i < sampleSize; i++) {
+            double x = random.nextUniform(-2, 2);
+            double z = x * x + random.nextNormal(0, .3);
+            double y = Math.sin(2 * z) + random.nextNormal(0, .3);
+
+            data.setDouble(i, 0, x);
+            data.setDouble(i, 1, y);
+            data.setDouble(i, 2, z);
+            data.setDouble(i, 3, random.nextNormal(0, 1));
+        }
+
+        return data;
+    }
+
+    private TetradMatrix factor(DataSet data, Node node) {
+        Kernel kernel = new KernelGaussian(1);
+        kernel.setDefaultBw(data, node);
+        return KernelUtils.incompleteCholeskyGramMatrix(Collections.singletonList(kernel), data,
+                Collections.singletonList(node), 1e-18);
+    }
+}
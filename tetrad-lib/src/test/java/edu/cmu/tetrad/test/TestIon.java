@@ -0,0 +1,137 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.DagToPag;
+import edu.cmu.tetrad.search.GraphChange;
+import edu.cmu.tetrad.search.Ion;
+import edu.cmu.tetrad.search.IonHittingSet;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ION search on PAGs of overlapping marginals of a DAG.
+ */
+public class TestIon {
+
+    @Test
+    public void testParallel() {
+        RandomUtil.getInstance().setSeed(29384729L);
+
+        for (int i = 0; i < 2; i++) {
+            List<Graph> pags = pags();
+
+            Ion ion = new Ion(pags);
+            List<Graph> sequential = ion.search();
+            assertTrue(ion.isComplete());
+
+            Ion ion2 = new Ion(pags);
+            ion2.setParallelized(true);
+            List<Graph> parallel = ion2.search();
+            assertTrue(ion2.isComplete());
+
+            assertFalse(sequential.isEmpty());
+            assertEquals(new HashSet<>(sequential), new HashSet<>(parallel));
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        RandomUtil.getInstance().setSeed(29384729L);
+
+        // A budget of no time is used up as soon as the search starts, however fast the clock.
+        Ion ion = new Ion(pags());
+        ion.setTimeLimit(0);
+        ion.search();
+        assertFalse(ion.isComplete());
+    }
+
+    @Test
+    public void testHittingSetDeadline() {
+        Node x = new GraphNode("X");
+        Node y = new GraphNode("Y");
+        Node z = new GraphNode("Z");
+
+        List<Set<GraphChange>> changes = new ArrayList<>();
+
+        for (Node[] pair : new Node[][]{{x, y}, {y, z}}) {
+            GraphChange remove = new GraphChange();
+            remove.addRemove(Edges.nondirectedEdge(pair[0], pair[1]));
+            GraphChange orient = new GraphChange();
+            orient.addOrient(pair[0], pair[1]);
+
+            Set<GraphChange> set = new HashSet<>();
+            set.add(remove);
+            set.add(orient);
+            changes.add(set);
+        }
+
+        List<GraphChange> all = new ArrayList<>();
+        assertTrue(IonHittingSet.findHittingSet(changes, Integer.MAX_VALUE, Long.MAX_VALUE, all));
+        assertEquals(4, all.size());
+
+        List<GraphChange> truncated = new ArrayList<>();
+        assertFalse(IonHittingSet.findHittingSet(changes, Integer.MAX_VALUE, Long.MIN_VALUE, truncated));
+        assertTrue(truncated.isEmpty());
+    }
+
+    /**
+     * PAGs of two overlapping marginals of a random DAG.
+     */
+    private List<Graph> pags() {
+        Graph dag = GraphUtils.randomGraph(6, 0, 6, 3, 3, 3, false);
+        List<Node> nodes = dag.getNodes();
+
+        List<Graph> pags = new ArrayList<>();
+        pags.add(marginalPag(dag, nodes.subList(0, 4)));
+        pags.add(marginalPag(dag, nodes.subList(2, 6)));
+        return pags;
+    }
+
+    private Graph marginalPag(Graph dag, List<Node> measured) {
+        Graph graph = new EdgeListGraph(dag);
+
+        for (Node node : graph.getNodes()) {
+            if (!measured.contains(node)) {
+                node.setNodeType(NodeType.LATENT);
+            }
+        }
+
+        Graph pag = new DagToPag(graph).convert();
+
+        for (Node node : graph.getNodes()) {
+            node.setNodeType(NodeType.MEASURED);
+        }
+
+        return pag;
+    }
+}
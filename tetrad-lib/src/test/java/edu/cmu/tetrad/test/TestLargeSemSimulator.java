@@ -25,6 +25,7 @@ import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.sem.LargeSemSimulator;
+import edu.cmu.tetrad.util.RandomUtil;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -52,9 +53,24 @@ public class TestLargeSemSimulator {
 
         assertEquals(1000, dataset.getNumRows());
     }
-}
 
+    /**
+     * Rows are simulated in parallel from child streams of a seed taken from RandomUtil, so the same seed should give
+     * the same data.
+     */
+    @Test
+    public void testReproducible() {
+        List<Node> nodes = new ArrayList<Node>();
+        for (int i = 1; i <= 10; i++) nodes.add(new ContinuousVariable("X" + i));
 
+        Graph graph = GraphUtils.randomGraph(nodes, 0, 10, 5, 5, 5, false);
 
+        RandomUtil.getInstance().setSeed(3940392L);
+        DataSet data1 = new LargeSemSimulator(graph).simulateDataAcyclic(2000);
 
+        RandomUtil.getInstance().setSeed(3940392L);
+        DataSet data2 = new LargeSemSimulator(graph).simulateDataAcyclic(2000);
 
+        assertEquals(data1, data2);
+    }
+}
@@ -0,0 +1,154 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphConverter;
+import edu.cmu.tetrad.sem.GeneralizedSemIm;
+import edu.cmu.tetrad.sem.GeneralizedSemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.pitt.csb.mgm.MGM;
+import edu.pitt.csb.mgm.MixedUtils;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the MGM pseudolikelihood gradient and the warm-started lambda path.
+ */
+public class TestMgmPath {
+
+    @Test
+    public void testGradient() {
+        RandomUtil.getInstance().setSeed(49382034L);
+        DataSet data = simulate(300);
+
+        MGM model = new MGM(data, new double[]{.1, .1, .1});
+
+        // 3 continuous variables; discrete variables with 3, 2 and 4 levels.
+        int p = 3;
+        int lsum = 9;
+        int length = p * p + p + p * lsum + lsum * lsum + p + lsum;
+
+        DoubleMatrix1D x = DoubleFactory1D.dense.make(length);
+
+        for (int i = 0; i < length; i++) {
+            x.set(i, .3 * RandomUtil.getInstance().nextNormal(0, 1));
+        }
+
+        for (int i = p * p; i < p * p + p; i++) {
+            x.set(i, .5 + RandomUtil.getInstance().nextDouble());
+        }
+
+        DoubleMatrix1D grad = model.smoothGradient(x);
+        DoubleMatrix1D grad2 = DoubleFactory1D.dense.make(length);
+        double value = model.smooth(x, grad2);
+
+        assertEquals(model.smoothValue(x), value, 1e-12);
+
+        double h = 1e-6;
+
+        for (int i = 0; i < length; i++) {
+            assertEquals(grad.get(i), grad2.get(i), 1e-12);
+
+            double xi = x.get(i);
+            x.set(i, xi + h);
+            double f1 = model.smoothValue(x);
+            x.set(i, xi - h);
+            double f2 = model.smoothValue(x);
+            x.set(i, xi);
+
+            // Entries outside the parameterization (lower triangles, within-variable blocks) have zero
+            // gradient, and the value doesn't depend on them either.
+            assertEquals((f1 - f2) / (2 * h), grad.get(i), 1e-5);
+        }
+    }
+
+    @Test
+    public void testPath() {
+        RandomUtil.getInstance().setSeed(2934820934L);
+        DataSet data = simulate(500);
+
+        double[][] lambdas = new double[5][];
+
+        for (int k = 0; k < lambdas.length; k++) {
+            double lam = 10 * Math.pow(.2, k);
+            lambdas[k] = new double[]{lam, lam, lam};
+        }
+
+        double epsilon = 1e-6;
+        int iterLimit = 100000;
+
+        MGM model = new MGM(data, lambdas[0]);
+        List<Graph> graphs = model.searchPath(lambdas, epsilon, iterLimit);
+
+        assertEquals(lambdas.length, graphs.size());
+        assertEquals(0, graphs.get(0).getNumEdges());
+        assertTrue(graphs.get(lambdas.length - 1).getNumEdges() > 0);
+
+        // Warm starts and screening must not change the result: each graph on the path is the one a
+        // cold fit at the same lambda, solved to the same tolerance, finds.
+        MGM cold = null;
+
+        for (int k = 0; k < lambdas.length; k++) {
+            cold = new MGM(data, lambdas[k]);
+            cold.learn(epsilon, iterLimit);
+            assertEquals(cold.graphFromMGM(), graphs.get(k));
+        }
+
+        // The path keeps the parameters of its last fit, whose edge strengths agree with the cold fit.
+        DoubleMatrix2D warmAdj = model.adjMatFromMGM();
+        DoubleMatrix2D coldAdj = cold.adjMatFromMGM();
+
+        for (int i = 0; i < warmAdj.rows(); i++) {
+            for (int j = 0; j < warmAdj.columns(); j++) {
+                assertEquals(coldAdj.get(i, j), warmAdj.get(i, j), 1e-3);
+            }
+        }
+    }
+
+    private DataSet simulate(int sampleSize) {
+        Graph g = GraphConverter.convert("X1-->X2,X3-->X2,X4-->X5,X1-->X4,X6-->X3");
+
+        HashMap<String, Integer> nd = new HashMap<>();
+        nd.put("X1", 0);
+        nd.put("X2", 0);
+        nd.put("X3", 3);
+        nd.put("X4", 2);
+        nd.put("X5", 4);
+        nd.put("X6", 0);
+
+        g = MixedUtils.makeMixedGraph(g, nd);
+
+        GeneralizedSemPm pm = MixedUtils.GaussianCategoricalPm(g, "Split(-1.5,-.5,.5,1.5)");
+        GeneralizedSemIm im = MixedUtils.GaussianCategoricalIm(pm);
+        return MixedUtils.makeMixedData(im.simulateDataAvoidInfinity(sampleSize, false), nd);
+    }
+}
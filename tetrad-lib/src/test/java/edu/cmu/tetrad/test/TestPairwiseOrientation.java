@@ -0,0 +1,90 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ColtDataSet;
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.PairwiseOrientation;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the pairwise orientation engine on a chain with skewed errors.
+ */
+public class TestPairwiseOrientation {
+
+    @Test
+    public void testChain() {
+        RandomUtil.getInstance().setSeed(2938483L);
+
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) nodes.add(new ContinuousVariable("X" + (i + 1)));
+
+        int n = 2000;
+        DataSet data = new ColtDataSet(n, nodes);
+
+        for (int i = 0; i < n; i++) {
+            double previous = 0.0;
+
+            for (int j = 0; j < nodes.size(); j++) {
+                double value = 0.8 * previous + RandomUtil.getInstance().nextExponential(1);
+                data.setDouble(i, j, value);
+                previous = value;
+            }
+        }
+
+        Graph skeleton = new EdgeListGraph(nodes);
+        for (int j = 1; j < nodes.size(); j++) skeleton.addUndirectedEdge(nodes.get(j - 1), nodes.get(j));
+
+        PairwiseOrientation pairwise = new PairwiseOrientation(Collections.singletonList(data));
+
+        for (PairwiseOrientation.Statistic statistic : new PairwiseOrientation.Statistic[]{
+                PairwiseOrientation.Statistic.SKEW, PairwiseOrientation.Statistic.RSKEW,
+                PairwiseOrientation.Statistic.TANH}) {
+            Graph oriented = pairwise.orient(skeleton, statistic);
+
+            for (int j = 1; j < nodes.size(); j++) {
+                assertTrue(statistic.toString(), oriented.isParentOf(nodes.get(j - 1), nodes.get(j)));
+            }
+
+            assertEquals(skeleton.getNumEdges(), pairwise.getOrientations().size());
+
+            for (PairwiseOrientation.Orientation orientation : pairwise.getOrientations()) {
+                assertTrue(orientation.getConfidence() > 0);
+            }
+        }
+    }
+}
+
+
+
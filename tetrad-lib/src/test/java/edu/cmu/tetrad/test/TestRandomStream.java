@@ -0,0 +1,104 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.StatUtils;
+import edu.pitt.csb.stability.StabilityUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the splittable random streams.
+ */
+public class TestRandomStream {
+
+    @Test
+    public void testSplit() {
+        RandomStream root = new RandomStream(2938472L);
+
+        // Children depend only on the root's seed and their index.
+        long first = root.split(3).nextLong();
+        root.nextLong();
+        root.nextGaussian();
+        assertEquals(first, root.split(3).nextLong());
+        assertEquals(first, new RandomStream(2938472L).split(3).nextLong());
+
+        assertNotEquals(first, root.split(4).nextLong());
+        assertNotEquals(first, new RandomStream(2938473L).split(3).nextLong());
+    }
+
+    @Test
+    public void testDistributions() {
+        RandomStream random = new RandomStream(48392L);
+
+        double[] normal = new double[100000];
+        random.fillNormal(normal, 0, normal.length, 1.0, 2.0);
+        assertEquals(1.0, StatUtils.mean(normal), 0.05);
+        assertEquals(2.0, StatUtils.sd(normal), 0.05);
+
+        double[] uniform = new double[100000];
+        random.fillUniform(uniform, 0, uniform.length, -1.0, 3.0);
+        assertEquals(1.0, StatUtils.mean(uniform), 0.05);
+        assertTrue(StatUtils.min(uniform) >= -1.0 && StatUtils.max(uniform) < 3.0);
+
+        int[] counts = new int[7];
+
+        for (int i = 0; i < 70000; i++) {
+            counts[random.nextInt(7)]++;
+        }
+
+        for (int count : counts) {
+            assertEquals(10000, count, 500);
+        }
+    }
+
+    @Test
+    public void testBayesSimulation() {
+        RandomUtil.getInstance().setSeed(3847384L);
+        Graph graph = GraphUtils.randomGraph(8, 0, 10, 3, 3, 3, false);
+        MlBayesIm im = new MlBayesIm(new BayesPm(graph), MlBayesIm.RANDOM);
+
+        DataSet data1 = im.simulateData(3000, false, new RandomStream(394L));
+        DataSet data2 = im.simulateData(3000, false, new RandomStream(394L));
+
+        assertEquals(3000, data1.getNumRows());
+        assertEquals(data1, data2);
+    }
+
+    @Test
+    public void testSubsamples() {
+        int[][] samples1 = StabilityUtils.subSampleNoReplacement(100, 20, 10, new RandomStream(87L));
+        int[][] samples2 = StabilityUtils.subSampleNoReplacement(100, 20, 10, new RandomStream(87L));
+
+        for (int i = 0; i < samples1.length; i++) {
+            assertArrayEquals(samples1[i], samples2[i]);
+        }
+    }
+}
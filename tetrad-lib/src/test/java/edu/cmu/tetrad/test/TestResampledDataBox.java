@@ -0,0 +1,148 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests bootstrap and subsample views of data sets.
+ */
+public class TestResampledDataBox {
+
+    @Test
+    public void testBootstrapCovariance() {
+        RandomUtil.getInstance().setSeed(4928374923L);
+
+        DataSet data = new SemIm(new SemPm(randomDag(6))).simulateData(300, false);
+        data.setDouble(5, 2, Double.NaN);
+
+        DataSet sample = new BootstrapSampler().sample(data, 400);
+        assertTrue(((BoxDataSet) sample).getDataBox() instanceof ResampledDataBox);
+
+        ICovarianceMatrix cov1 = new CovarianceMatrix(sample);
+        ICovarianceMatrix cov2 = new CovarianceMatrix(materialize(sample));
+
+        assertEquals(400, cov1.getSampleSize());
+
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 6; j++) {
+                assertEquals(cov2.getValue(i, j), cov1.getValue(i, j), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testBootstrapCounts() {
+        RandomUtil.getInstance().setSeed(2938470293L);
+
+        BayesPm pm = new BayesPm(randomDag(4));
+        DataSet data = new MlBayesIm(pm, MlBayesIm.RANDOM).simulateData(500, false);
+        data.setInt(3, 1, DiscreteVariable.MISSING_VALUE);
+
+        DataSet sample = DataUtils.getBootstrapSample(data, 800);
+        DataSet copy = materialize(sample);
+
+        int[] indices = {0, 1, 3};
+        int[] dims = new int[indices.length];
+
+        for (int i = 0; i < indices.length; i++) {
+            dims[i] = ((DiscreteVariable) data.getVariable(indices[i])).getNumCategories();
+        }
+
+        CellTable table1 = new CellTable(dims);
+        table1.addToTable(sample, indices);
+        CellTable table2 = new CellTable(dims);
+        table2.addToTable(copy, indices);
+
+        int[] cell = new int[indices.length];
+
+        for (int a = 0; a < dims[0]; a++) {
+            for (int b = 0; b < dims[1]; b++) {
+                for (int c = 0; c < dims[2]; c++) {
+                    cell[0] = a;
+                    cell[1] = b;
+                    cell[2] = c;
+                    assertEquals(table2.getValue(cell), table1.getValue(cell));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        RandomUtil.getInstance().setSeed(9283749823L);
+
+        DataSet data = new SemIm(new SemPm(randomDag(3))).simulateData(50, false);
+        DataSet view = DataUtils.viewRows(data, new int[]{4, 4, 7, 0});
+
+        assertEquals(4, view.getNumRows());
+        assertEquals(data.getDouble(4, 1), view.getDouble(1, 1), 0.0);
+        assertEquals(data.getDouble(7, 2), view.getDouble(2, 2), 0.0);
+
+        double original = data.getDouble(4, 0);
+        view.setDouble(0, 0, original + 1);
+
+        assertEquals(original, data.getDouble(4, 0), 0.0);
+        assertEquals(original + 1, view.getDouble(0, 0), 0.0);
+        assertEquals(original, view.getDouble(1, 0), 0.0);
+        assertTrue(!((ResampledDataBox) ((BoxDataSet) view).getDataBox()).isView());
+    }
+
+    private DataSet materialize(DataSet sample) {
+        DataBox box = ((BoxDataSet) sample).getDataBox();
+        DataBox copy = new DoubleDataBox(box.numRows(), box.numCols());
+
+        if (sample.isDiscrete()) {
+            copy = new VerticalIntDataBox(box.numRows(), box.numCols());
+        }
+
+        for (int i = 0; i < box.numRows(); i++) {
+            for (int j = 0; j < box.numCols(); j++) {
+                copy.set(i, j, box.get(i, j));
+            }
+        }
+
+        return new BoxDataSet(copy, sample.getVariables());
+    }
+
+    private Graph randomDag(int numVars) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            nodes.add(new GraphNode("X" + i));
+        }
+
+        return GraphUtils.randomGraph(nodes, 0, numVars, 30, 15, 15, false);
+    }
+}
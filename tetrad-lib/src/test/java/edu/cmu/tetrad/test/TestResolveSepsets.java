@@ -0,0 +1,202 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.ProbUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests pooling of independence tests over overlapping datasets from the p value cache.
+ */
+public class TestResolveSepsets {
+
+    @Test
+    public void testCachedPooling() {
+        RandomUtil.getInstance().setSeed(4928374L);
+
+        Graph dag = GraphUtils.randomGraph(6, 0, 7, 3, 3, 3, false);
+        List<IndependenceTest> tests = tests(dag);
+        PooledPValueCache cache = new PooledPValueCache(tests);
+
+        ResolveSepsets.Method[] methods = {
+                ResolveSepsets.Method.fisher, ResolveSepsets.Method.fisher2, ResolveSepsets.Method.tippett,
+                ResolveSepsets.Method.worsleyfriston, ResolveSepsets.Method.stouffer,
+                ResolveSepsets.Method.mudholkergeorge, ResolveSepsets.Method.mudholkergeorge2,
+                ResolveSepsets.Method.average, ResolveSepsets.Method.fdr, ResolveSepsets.Method.majority
+        };
+
+        List<Node> nodes = tests.get(0).getVariables();
+        Node x = nodes.get(0);
+        Node z = nodes.get(3);
+
+        for (Node y : nodes.subList(1, 3)) {
+            List<Node> condSet = Collections.singletonList(z);
+            List<IndependenceTest> measuring = new ArrayList<>(tests.subList(0, 2));
+
+            PooledPValueCache.Entry entry = cache.get(x, y, condSet);
+            assertEquals(2, entry.size());
+
+            // Fisher's statistic by hand.
+            double tf = 0.0;
+
+            for (IndependenceTest test : measuring) {
+                test.isIndependent(x, y, condSet);
+                tf += -2.0 * Math.log(test.getPValue());
+            }
+
+            boolean fisher = 1.0 - ProbUtils.chisqCdf(tf, 4) > tests.get(0).getAlpha();
+            assertEquals(fisher, ResolveSepsets.isIndependentPooled(ResolveSepsets.Method.fisher, cache, x, y, condSet));
+
+            for (ResolveSepsets.Method method : methods) {
+                assertEquals(ResolveSepsets.isIndependentPooled(method, measuring, x, y, condSet),
+                        ResolveSepsets.isIndependentPooled(method, cache, x, y, condSet));
+            }
+        }
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testParallelResolve() {
+        RandomUtil.getInstance().setSeed(4928374L);
+
+        Graph dag = GraphUtils.randomGraph(6, 0, 7, 3, 3, 3, false);
+        List<IndependenceTest> tests = tests(dag);
+
+        List<SepsetMapDci> sepsets = new ArrayList<>();
+
+        for (IndependenceTest test : tests) {
+            Graph graph = new EdgeListGraph(test.getVariables());
+            graph.fullyConnect(Endpoint.CIRCLE);
+            sepsets.add(new FasDci(graph, test).search());
+        }
+
+        PooledPValueCache sequentialCache = new PooledPValueCache(tests);
+        SepsetMapDci sequential = ResolveSepsets.ResolveSepsets(sepsets, sequentialCache,
+                ResolveSepsets.Method.fisher, new SepsetMapDci(), new SepsetMapDci());
+
+        PooledPValueCache parallelCache = new PooledPValueCache(tests);
+        parallelCache.setParallelized(true);
+        SepsetMapDci parallel = ResolveSepsets.ResolveSepsets(sepsets, parallelCache,
+                ResolveSepsets.Method.fisher, new SepsetMapDci(), new SepsetMapDci());
+
+        assertEquals(sequential.toString(), parallel.toString());
+        assertEquals(sequentialCache.size(), parallelCache.size());
+    }
+
+    @Test
+    public void testPooledFasDci() {
+        RandomUtil.getInstance().setSeed(4928374L);
+
+        Graph dag = GraphUtils.randomGraph(6, 0, 7, 3, 3, 3, false);
+        List<IndependenceTest> tests = tests(dag);
+
+        PooledPValueCache sequentialCache = new PooledPValueCache(tests);
+        PooledPValueCache parallelCache = new PooledPValueCache(tests);
+        parallelCache.setParallelized(true);
+
+        for (IndependenceTest test : tests) {
+            SepsetMapDci sequential = pooledSearch(test, tests, sequentialCache);
+            SepsetMapDci parallel = pooledSearch(test, tests, parallelCache);
+            assertEquals(sequential.toString(), parallel.toString());
+        }
+
+        assertEquals(sequentialCache.size(), parallelCache.size());
+
+        // Without other datasets, judgments are pooled over the search's own dataset.
+        IndependenceTest test = tests.get(0);
+        Graph graph = new EdgeListGraph(test.getVariables());
+        graph.fullyConnect(Endpoint.CIRCLE);
+        SepsetMapDci alone = new FasDci(graph, test, ResolveSepsets.Method.fisher, null, null, null, null).search();
+
+        graph = new EdgeListGraph(test.getVariables());
+        graph.fullyConnect(Endpoint.CIRCLE);
+        assertEquals(new FasDci(graph, test).search().toString(), alone.toString());
+    }
+
+    @Test
+    public void testBoundedCache() {
+        RandomUtil.getInstance().setSeed(4928374L);
+
+        Graph dag = GraphUtils.randomGraph(6, 0, 7, 3, 3, 3, false);
+        List<IndependenceTest> tests = tests(dag);
+
+        PooledPValueCache unbounded = new PooledPValueCache(tests);
+        PooledPValueCache bounded = new PooledPValueCache(tests);
+        bounded.setCacheSize(3);
+
+        for (IndependenceTest test : tests) {
+            SepsetMapDci expected = pooledSearch(test, tests, unbounded);
+            SepsetMapDci actual = pooledSearch(test, tests, bounded);
+            assertEquals(expected.toString(), actual.toString());
+        }
+
+        assertTrue(unbounded.size() > 3);
+        assertEquals(3, bounded.size());
+    }
+
+    private SepsetMapDci pooledSearch(IndependenceTest test, List<IndependenceTest> tests, PooledPValueCache cache) {
+        Graph graph = new EdgeListGraph(test.getVariables());
+        graph.fullyConnect(Endpoint.CIRCLE);
+        FasDci fas = new FasDci(graph, test, ResolveSepsets.Method.fisher, null, tests, null, null);
+        fas.setPValueCache(cache);
+        return fas.search();
+    }
+
+    /**
+     * Fisher Z tests for three overlapping marginals of data simulated from the DAG, each from its own sample.
+     */
+    private List<IndependenceTest> tests(Graph dag) {
+        SemIm im = new SemIm(new SemPm(dag));
+        List<Node> nodes = dag.getNodes();
+
+        List<IndependenceTest> tests = new ArrayList<>();
+        tests.add(test(im, nodes.subList(0, 4)));
+        tests.add(test(im, nodes.subList(0, 5)));
+        tests.add(test(im, nodes.subList(1, 6)));
+        return tests;
+    }
+
+    private IndependenceTest test(SemIm im, List<Node> measured) {
+        DataSet data = im.simulateData(500, false);
+        List<Node> variables = new ArrayList<>();
+
+        for (Node node : measured) {
+            variables.add(data.getVariable(node.getName()));
+        }
+
+        return new IndTestFisherZ(data.subsetColumns(variables), 0.05);
+    }
+}
@@ -0,0 +1,129 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.*;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the sampling updater against exact updating.
+ */
+public final class TestSamplingUpdater {
+
+    @Test
+    public void testLikelihoodWeighting() {
+        checkAgainstExact(SamplingUpdater.Method.LIKELIHOOD_WEIGHTING, false);
+    }
+
+    @Test
+    public void testGibbs() {
+        checkAgainstExact(SamplingUpdater.Method.GIBBS, false);
+    }
+
+    @Test
+    public void testManipulated() {
+        checkAgainstExact(SamplingUpdater.Method.LIKELIHOOD_WEIGHTING, true);
+        checkAgainstExact(SamplingUpdater.Method.GIBBS, true);
+    }
+
+    @Test
+    public void testReproducible() {
+        RandomUtil.getInstance().setSeed(3829L);
+        BayesIm im = new MlBayesIm(new BayesPm(GraphUtils.randomGraph(20, 0, 25, 3, 3, 3, false)),
+                MlBayesIm.RANDOM);
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(5, 1);
+
+        SamplingUpdater parallel = new SamplingUpdater(im, evidence);
+        SamplingUpdater serial = new SamplingUpdater(im, evidence);
+        serial.setParallelized(false);
+
+        final int[] numEvents = new int[1];
+
+        parallel.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("marginals".equals(evt.getPropertyName())) {
+                    numEvents[0]++;
+                }
+            }
+        });
+
+        RandomUtil.getInstance().setSeed(2312L);
+        double[] marginals1 = parallel.calculateUpdatedMarginals(12);
+        RandomUtil.getInstance().setSeed(2312L);
+        double[] marginals2 = serial.calculateUpdatedMarginals(12);
+
+        assertArrayEquals(marginals1, marginals2, 0.0);
+        assertTrue(numEvents[0] > 0);
+        assertEquals(1.0, parallel.getMarginal(5, 1), 0.0);
+    }
+
+    private void checkAgainstExact(SamplingUpdater.Method method, boolean manipulated) {
+        RandomUtil.getInstance().setSeed(48203L);
+        Graph graph = GraphUtils.randomGraph(10, 0, 14, 3, 3, 3, false);
+        BayesIm im = new MlBayesIm(new BayesPm(graph), MlBayesIm.RANDOM);
+
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(3, 0);
+        evidence.getProposition().setCategory(7, 1);
+        evidence.setManipulated(3, manipulated);
+
+        SamplingUpdater updater = new SamplingUpdater(im, evidence);
+        ManipulatingBayesUpdater exact;
+
+        if (manipulated) {
+
+            // Conditioning on the manipulated node in the manipulated graph, giving it a uniform distribution, gives
+            // the same marginals as manipulating it.
+            BayesIm manipulatedIm = new MlBayesIm(updater.getManipulatedBayesIm());
+
+            for (int category = 0; category < manipulatedIm.getNumColumns(3); category++) {
+                manipulatedIm.setProbability(3, 0, category, 1.0 / manipulatedIm.getNumColumns(3));
+            }
+
+            Evidence observed = new Evidence(evidence);
+            observed.setManipulated(3, false);
+            exact = new RowSummingExactUpdater(manipulatedIm, observed);
+        } else {
+            exact = new RowSummingExactUpdater(im, evidence);
+        }
+
+        updater.setMethod(method);
+        updater.setIntervalWidth(0.01);
+
+        for (int node = 0; node < im.getNumNodes(); node++) {
+            for (int category = 0; category < im.getNumColumns(node); category++) {
+                assertEquals(exact.getMarginal(node, category), updater.getMarginal(node, category), 0.02);
+            }
+        }
+
+        assertTrue(updater.getNumSamples() < updater.getMaxSamples());
+    }
+}
@@ -0,0 +1,104 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphConverter;
+import edu.cmu.tetrad.sem.*;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the Gibbs sampler for SEM parameters.
+ */
+public class TestSemEstimatorGibbs {
+
+    @Test
+    public void testChains() {
+        RandomUtil.getInstance().setSeed(4829384L);
+
+        Graph graph = GraphConverter.convert("X1-->X2,X2-->X3,X1-->X3");
+        SemPm pm = new SemPm(graph);
+        DataSet data = new SemIm(pm).simulateData(1000, false);
+        SemIm mlIm = new SemEstimator(data, pm).estimate();
+        pm = mlIm.getSemPm();
+
+        SemEstimatorGibbs gibbs = new SemEstimatorGibbs(pm, mlIm,
+                mlIm.getSampleCovar().toArray(), true, 1.0, 500);
+        gibbs.setNumChains(3);
+        gibbs.setReportInterval(250);
+        gibbs.estimate();
+
+        List<Parameter> parameters = pm.getParameters();
+        TetradMatrix samples = gibbs.getDataSet();
+        assertEquals(parameters.size(), samples.rows());
+        assertEquals(3 * 10, samples.columns());
+
+        double[] rHat = gibbs.getRHat();
+        double[] ess = gibbs.getEffectiveSampleSizes();
+
+        for (int i = 0; i < parameters.size(); i++) {
+            Parameter parameter = parameters.get(i);
+            if (parameter.getType() != ParamType.COEF) continue;
+
+            // The posterior should be concentrated near the maximum likelihood estimate.
+            double mean = 0.0;
+
+            for (int s = 0; s < samples.columns(); s++) {
+                mean += samples.get(i, s) / samples.columns();
+            }
+
+            assertEquals(mlIm.getParamValue(parameter), mean, 0.2);
+            assertTrue(rHat[i] > 0.8 && rHat[i] < 1.5);
+            assertTrue(ess[i] > 0);
+        }
+    }
+
+    @Test
+    public void testDiagnostics() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(3829L);
+
+        double[][] mixed = new double[4][1000];
+        double[][] stuck = new double[4][1000];
+
+        for (int c = 0; c < 4; c++) {
+            for (int i = 0; i < 1000; i++) {
+                mixed[c][i] = random.nextNormal(0, 1);
+                stuck[c][i] = random.nextNormal(3 * c, 1);
+            }
+        }
+
+        assertEquals(1.0, SemEstimatorGibbs.rHat(mixed, 1000), 0.02);
+        assertTrue(SemEstimatorGibbs.rHat(stuck, 1000) > 2);
+
+        assertEquals(4000, SemEstimatorGibbs.effectiveSampleSize(mixed, 1000), 600);
+        assertTrue(SemEstimatorGibbs.effectiveSampleSize(stuck, 1000) < 100);
+    }
+}
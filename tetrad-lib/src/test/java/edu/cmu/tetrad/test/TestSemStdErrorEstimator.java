@@ -0,0 +1,101 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphConverter;
+import edu.cmu.tetrad.sem.SemEstimator;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.sem.SemStdErrorEstimator;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the standard errors of SEM parameters.
+ */
+public class TestSemStdErrorEstimator {
+
+    /**
+     * The analytic (expected) information matrix should agree with the numerical Hessian
+     * of the fitting function at its minimum, up to sampling error.
+     */
+    @Test
+    public void testAnalytic() {
+        RandomUtil.getInstance().setSeed(3829483L);
+
+        Graph graph = new EdgeListGraph(GraphConverter.convert("X1-->X2,X2-->X3,X1-->X3,X3-->X4,X2-->X5"));
+        graph.addBidirectedEdge(graph.getNode("X4"), graph.getNode("X5"));
+
+        SemPm pm = new SemPm(graph);
+        DataSet data = new SemIm(pm).simulateData(5000, false);
+
+        for (SemIm.ScoreType scoreType : SemIm.ScoreType.values()) {
+            SemEstimator estimator = new SemEstimator(data, pm);
+            estimator.setScoreType(scoreType);
+            SemIm estIm = estimator.estimate();
+
+            SemStdErrorEstimator analytic = new SemStdErrorEstimator();
+            analytic.computeStdErrors(estIm);
+            double[] se1 = analytic.getStdErrors();
+
+            SemStdErrorEstimator numerical = new SemStdErrorEstimator();
+            numerical.setAnalytic(false);
+            numerical.computeStdErrors(estIm);
+            double[] se2 = numerical.getStdErrors();
+
+            assertEquals(estIm.getNumFreeParams(), se1.length);
+
+            for (int i = 0; i < se1.length; i++) {
+                assertEquals(se2[i], se1[i], 0.1 * se2[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        RandomUtil.getInstance().setSeed(4839283L);
+
+        Graph graph = GraphConverter.convert("X1-->X2,X2-->X3,X1-->X3,X3-->X4,X2-->X4");
+        SemPm pm = new SemPm(graph);
+        DataSet data = new SemIm(pm).simulateData(1000, false);
+        SemIm estIm = new SemEstimator(data, pm).estimate();
+        double[] values = estIm.getFreeParamValues();
+
+        SemStdErrorEstimator serial = new SemStdErrorEstimator();
+        serial.setAnalytic(false);
+        serial.setParallelized(false);
+        serial.computeStdErrors(estIm);
+
+        SemStdErrorEstimator parallel = new SemStdErrorEstimator();
+        parallel.setAnalytic(false);
+        parallel.computeStdErrors(estIm);
+
+        assertArrayEquals(serial.getStdErrors(), parallel.getStdErrors(), 1e-12);
+        assertArrayEquals(values, estIm.getFreeParamValues(), 0.0);
+    }
+}
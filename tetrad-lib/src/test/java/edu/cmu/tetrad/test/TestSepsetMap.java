@@ -0,0 +1,158 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the compact sepset map against SepsetMap.
+ */
+public class TestSepsetMap {
+
+    @Test
+    public void testSetAndGet() {
+        List<Node> nodes = nodes(6);
+        Node x0 = nodes.get(0), x1 = nodes.get(1), x2 = nodes.get(2), x3 = nodes.get(3);
+
+        CompactSepsetMap map = new CompactSepsetMap(nodes);
+        assertNull(map.get(x0, x1));
+
+        map.set(x0, x1, Arrays.asList(x2, x3));
+        map.set(x3, x2, Arrays.asList(x2, x3));
+        map.set(x0, x2, Collections.<Node>emptyList());
+        map.setPValue(x1, x0, 0.3);
+
+        assertEquals(Arrays.asList(x2, x3), map.get(x1, x0));
+        assertEquals(Arrays.asList(x2, x3), map.get(x2, x3));
+        assertEquals(Collections.<Node>emptyList(), map.get(x0, x2));
+        assertEquals(0.3, map.getPValue(x0, x1), 0.0);
+        assertTrue(Double.isNaN(map.getPValue(x0, x3)));
+        assertEquals(3, map.size());
+        assertEquals(2, map.getNumDistinctSepsets());
+
+        map.set(x0, x2, null);
+        assertNull(map.get(x0, x2));
+        assertEquals(2, map.size());
+
+        map.setReturnEmptyIfNotSet(true);
+        assertEquals(Collections.<Node>emptyList(), map.get(x0, x2));
+    }
+
+    @Test
+    public void testMerge() {
+        List<Node> nodes = nodes(40);
+        CompactSepsetMap map = new CompactSepsetMap(nodes);
+        SepsetMap expected = new SepsetMap();
+
+        for (int part = 0; part < 3; part++) {
+            CompactSepsetMap local = map.emptyCopy();
+
+            for (int i = part; i < nodes.size(); i += 3) {
+                for (int j = 0; j < i; j++) {
+                    List<Node> sepset = Arrays.asList(nodes.get((i + j) % nodes.size()), nodes.get(j % 5));
+                    local.set(nodes.get(i), nodes.get(j), sepset);
+                    expected.set(nodes.get(i), nodes.get(j), sepset);
+                }
+            }
+
+            map.merge(local);
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map.toSepsetMap());
+    }
+
+    @Test
+    public void testFasSepsets() {
+        List<Node> vars = nodes(12);
+        Graph graph = GraphUtils.randomGraphRandomForwardEdges(vars, 0, 20, 30, 15, 15, false, true);
+
+        FasStableConcurrent fas = new FasStableConcurrent(new IndTestDSep(graph));
+        Graph fasGraph = fas.search();
+        CompactSepsetMap sepsets = fas.getCompactSepsets();
+
+        for (int i = 0; i < vars.size(); i++) {
+            for (int j = i + 1; j < vars.size(); j++) {
+                Node x = vars.get(i);
+                Node y = vars.get(j);
+
+                if (fasGraph.isAdjacentTo(x, y)) continue;
+
+                List<Node> sepset = sepsets.get(x, y);
+                assertNotNull(sepset);
+                assertTrue(graph.isDSeparatedFrom(x, y, sepset));
+                assertEquals(sepset, fas.getSepsets().get(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testSearchSepsets() {
+        List<Node> vars = nodes(12);
+        Graph graph = GraphUtils.randomGraphRandomForwardEdges(vars, 0, 20, 30, 15, 15, false, true);
+
+        PcStable pc = new PcStable(new IndTestDSep(graph));
+        Graph pattern = pc.search();
+        assertNotSame(pc.getSepsets(), pc.getSepsets());
+        assertSeparates(graph, pattern, pc.getSepsets());
+
+        // Rfci adds sepsets of its own to the ones it gets from the adjacency search.
+        Rfci rfci = new Rfci(new IndTestDSep(graph));
+        Graph pag = rfci.search();
+        assertSeparates(graph, pag, rfci.getSepsets());
+    }
+
+    private void assertSeparates(Graph dag, Graph graph, SepsetMap sepsets) {
+        for (Node x : graph.getNodes()) {
+            for (Node y : graph.getNodes()) {
+                if (x == y || graph.isAdjacentTo(x, y)) continue;
+
+                List<Node> sepset = sepsets.get(x, y);
+                assertNotNull(sepset);
+                assertTrue(dag.isDSeparatedFrom(dag.getNode(x.getName()), dag.getNode(y.getName()),
+                        GraphUtils.replaceNodes(sepset, dag.getNodes())));
+            }
+        }
+    }
+
+    private List<Node> nodes(int n) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < n; i++) {
+            nodes.add(new ContinuousVariable("X" + i));
+        }
+
+        return nodes;
+    }
+}
@@ -0,0 +1,187 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import cern.colt.matrix.DoubleFactory1D;
+import cern.colt.matrix.DoubleMatrix1D;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.pitt.csb.mgm.MGM;
+import edu.pitt.csb.stability.EdgeFrequencyCounter;
+import edu.pitt.csb.stability.RowBlockSums;
+import edu.pitt.csb.stability.SearchWrappers;
+import edu.pitt.csb.stability.StabilitySelection;
+import edu.pitt.csb.stability.DataGraphSearch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the subsample-sharing stability selection engine.
+ */
+public class TestStabilitySelection {
+
+    @Test
+    public void testBlockCovariance() {
+        RandomUtil.getInstance().setSeed(3920482934L);
+
+        DataSet data = simulate(8, 500);
+        RowBlockSums sums = new RowBlockSums(data, 25);
+        assertEquals(20, sums.getNumBlocks());
+
+        int[] blocks = {1, 4, 7, 12, 19};
+        ICovarianceMatrix cov1 = sums.getCovariance(blocks);
+        ICovarianceMatrix cov2 = new CovarianceMatrix(data.subsetRows(sums.getRows(blocks)));
+
+        assertEquals(125, cov1.getSampleSize());
+
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                assertEquals(cov2.getValue(i, j), cov1.getValue(i, j), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeFrequencyCounter() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            nodes.add(new GraphNode("X" + i));
+        }
+
+        EdgeFrequencyCounter counter = new EdgeFrequencyCounter(nodes);
+
+        Graph g1 = new EdgeListGraph(nodes);
+        g1.addDirectedEdge(nodes.get(0), nodes.get(1));
+        g1.addUndirectedEdge(nodes.get(2), nodes.get(3));
+
+        Graph g2 = new EdgeListGraph(nodes);
+        g2.addDirectedEdge(nodes.get(1), nodes.get(0));
+
+        counter.add(g1);
+        counter.add(g2);
+
+        assertEquals(2, counter.getNumGraphs());
+        assertEquals(2, counter.getCount(1, 0));
+        assertEquals(1.0, counter.getFrequency(0, 1), 0.0);
+        assertEquals(0.5, counter.getFrequencies().get(3, 2), 0.0);
+        assertEquals(0.0, counter.getFrequency(0, 3), 0.0);
+    }
+
+    @Test
+    public void testPath() {
+        RandomUtil.getInstance().setSeed(2938402934L);
+
+        Graph dag = randomDag(10);
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(1000, false);
+
+        List<DataGraphSearch> path = new ArrayList<>();
+        path.add(new SearchWrappers.FgsWrapper(1000.0));
+        path.add(new SearchWrappers.FgsWrapper(2.0));
+        path.add(new SearchWrappers.FgsWrapper(0.01));
+
+        StabilitySelection selection = new StabilitySelection(data, 8, 500);
+        List<EdgeFrequencyCounter> counters = selection.search(path);
+
+        assertEquals(3, counters.size());
+
+        for (EdgeFrequencyCounter counter : counters) {
+            assertEquals(8, counter.getNumGraphs());
+        }
+
+        int selected = StabilitySelection.stars(counters, 0.05);
+        assertEquals(1, selected);
+
+        // The selected search recovers the adjacencies of the true graph in every subsample.
+        EdgeFrequencyCounter counter = counters.get(selected);
+        List<Node> nodes = data.getVariables();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = i + 1; j < nodes.size(); j++) {
+                boolean adjacent = dag.isAdjacentTo(dag.getNode(nodes.get(i).getName()),
+                        dag.getNode(nodes.get(j).getName()));
+                assertEquals(adjacent ? 1.0 : 0.0, counter.getFrequency(i, j), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testMgmCovariance() {
+        RandomUtil.getInstance().setSeed(1928374651L);
+
+        DataSet data = simulate(6, 400);
+        double[] lambda = {0.2, 0.2, 0.2};
+
+        MGM fromData = new MGM(data, lambda);
+        MGM fromCov = new MGM(new CovarianceMatrix(data), lambda);
+
+        // beta, betad and alpha1 for 6 continuous variables
+        DoubleMatrix1D par = DoubleFactory1D.dense.make(6 * 6 + 6 + 6);
+
+        for (int k = 0; k < par.size(); k++) {
+            par.set(k, RandomUtil.getInstance().nextUniform(-0.5, 0.5));
+        }
+
+        for (int j = 0; j < 6; j++) {
+            par.set(6 * 6 + j, RandomUtil.getInstance().nextUniform(0.5, 2.0));
+        }
+
+        assertEquals(fromData.smoothValue(par), fromCov.smoothValue(par), 1e-8);
+
+        DoubleMatrix1D grad1 = fromData.smoothGradient(par);
+        DoubleMatrix1D grad2 = fromCov.smoothGradient(par);
+
+        for (int k = 0; k < par.size(); k++) {
+            assertEquals(grad1.get(k), grad2.get(k), 1e-8);
+        }
+
+        SearchWrappers.MGMWrapper wrapper = new SearchWrappers.MGMWrapper(lambda);
+        assertTrue(wrapper.usesCovariance(data));
+        assertEquals(fromData.search(), wrapper.search(new CovarianceMatrix(data)));
+    }
+
+    private DataSet simulate(int numVars, int sampleSize) {
+        SemPm pm = new SemPm(randomDag(numVars));
+        SemIm im = new SemIm(pm);
+        return im.simulateData(sampleSize, false);
+    }
+
+    private Graph randomDag(int numVars) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            nodes.add(new GraphNode("X" + i));
+        }
+
+        return GraphUtils.randomGraph(nodes, 0, numVars, 30, 15, 15, false);
+    }
+}